@@ -0,0 +1,159 @@
+package net.ghosttrails.openglplayground.util;
+
+import android.opengl.Matrix;
+import android.util.Log;
+
+import junit.framework.TestCase;
+
+/**
+ * Times Matrix4 against android.opengl.Matrix for what the renderer does with them. It has to
+ * run on a device, since android.opengl.Matrix is native; the timings go to the log.
+ */
+public class Matrix4Benchmark extends TestCase {
+
+    private static final String TAG = "Matrix4Benchmark";
+    private static final int WARMUP_ITERATIONS = 20000;
+    private static final int MEASURED_ITERATIONS = 200000;
+    private static final float EPSILON = 1e-4f;
+
+    private final float[] projection = new float[16];
+    private final float[] view = new float[16];
+    private final float[] viewProjection = new float[16];
+    private final float[] model = new float[16];
+    private final float[] expected = new float[16];
+    private final float[] actual = new float[16];
+    private final float[] point = new float[4];
+    private final float[] result = new float[4];
+
+    @Override
+    protected void setUp() throws Exception {
+        MatrixHelper.perspectiveM(projection, 45, 16f / 9f, 1f, 10f);
+        Matrix.setLookAtM(view, 0, 0f, 1.2f, 2.2f, 0f, 0f, 0f, 0f, 1f, 0f);
+        Matrix.multiplyMM(viewProjection, 0, projection, 0, view, 0);
+    }
+
+    public void testMultiply() throws Exception {
+        long platform = time(new Runnable() {
+            @Override
+            public void run() {
+                Matrix.multiplyMM(expected, 0, projection, 0, view, 0);
+            }
+        });
+        long matrix4 = time(new Runnable() {
+            @Override
+            public void run() {
+                Matrix4.multiply(actual, 0, projection, 0, view, 0);
+            }
+        });
+        report("multiply", platform, matrix4);
+        assertMatricesEqual(expected, actual);
+    }
+
+    public void testInvert() throws Exception {
+        long platform = time(new Runnable() {
+            @Override
+            public void run() {
+                Matrix.invertM(expected, 0, viewProjection, 0);
+            }
+        });
+        long matrix4 = time(new Runnable() {
+            @Override
+            public void run() {
+                Matrix4.invert(actual, 0, viewProjection, 0);
+            }
+        });
+        report("invert", platform, matrix4);
+        assertMatricesEqual(expected, actual);
+    }
+
+    public void testTranslate() throws Exception {
+        long platform = time(new Runnable() {
+            @Override
+            public void run() {
+                Matrix.setIdentityM(model, 0);
+                Matrix.translateM(model, 0, 0.5f, 0.1f, -0.3f);
+                Matrix.multiplyMM(expected, 0, viewProjection, 0, model, 0);
+            }
+        });
+        long matrix4 = time(new Runnable() {
+            @Override
+            public void run() {
+                Matrix4.multiplyTranslate(actual, 0, viewProjection, 0, 0.5f, 0.1f, -0.3f);
+            }
+        });
+        report("translate", platform, matrix4);
+        assertMatricesEqual(expected, actual);
+    }
+
+    public void testRotateX() throws Exception {
+        long platform = time(new Runnable() {
+            @Override
+            public void run() {
+                Matrix.setIdentityM(model, 0);
+                Matrix.rotateM(model, 0, -90f, 1f, 0f, 0f);
+                Matrix.multiplyMM(expected, 0, viewProjection, 0, model, 0);
+            }
+        });
+        long matrix4 = time(new Runnable() {
+            @Override
+            public void run() {
+                Matrix4.multiplyRotateX(actual, 0, viewProjection, 0, -90f);
+            }
+        });
+        report("rotateX", platform, matrix4);
+        assertMatricesEqual(expected, actual);
+    }
+
+    public void testTransformPoint() throws Exception {
+        Matrix.invertM(model, 0, viewProjection, 0);
+        point[0] = 0.25f;
+        point[1] = -0.5f;
+        point[2] = 1f;
+        point[3] = 1f;
+        long platform = time(new Runnable() {
+            @Override
+            public void run() {
+                Matrix.multiplyMV(result, 0, model, 0, point, 0);
+                result[0] /= result[3];
+                result[1] /= result[3];
+                result[2] /= result[3];
+            }
+        });
+        long matrix4 = time(new Runnable() {
+            @Override
+            public void run() {
+                Matrix4.transformPoint(actual, 0, model, 0, 0.25f, -0.5f, 1f);
+            }
+        });
+        report("transformPoint", platform, matrix4);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(result[i], actual[i], EPSILON * Math.max(1f, Math.abs(result[i])));
+        }
+    }
+
+    /**
+     * @return nanoseconds per run, after warming up.
+     */
+    private static long time(Runnable runnable) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            runnable.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            runnable.run();
+        }
+        return (System.nanoTime() - start) / MEASURED_ITERATIONS;
+    }
+
+    private static void report(String operation, long platformNanos, long matrix4Nanos) {
+        Log.i(TAG, operation + ": android.opengl.Matrix " + platformNanos + "ns, Matrix4 "
+                + matrix4Nanos + "ns");
+    }
+
+    private static void assertMatricesEqual(float[] expected, float[] actual) {
+        for (int i = 0; i < 16; i++) {
+            assertEquals("element " + i, expected[i], actual[i],
+                    EPSILON * Math.max(1f, Math.abs(expected[i])));
+        }
+    }
+}
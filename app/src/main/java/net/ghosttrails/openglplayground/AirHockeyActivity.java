@@ -4,6 +4,8 @@ import android.os.Bundle;
 import android.view.MotionEvent;
 import android.view.View;
 
+import net.ghosttrails.openglplayground.input.TouchEventQueue;
+
 /**
  * Created by andrewr on 17/09/16.
  */
@@ -16,29 +18,38 @@ public class AirHockeyActivity extends OpenGLBaseActivity {
         renderer = airHockeyRenderer;
         super.onCreate(savedInstanceState);
 
+        // Touch samples go into a preallocated queue which the renderer drains once per frame,
+        // rather than posting a Runnable to the GL thread for every event.
+        final TouchEventQueue touchQueue = airHockeyRenderer.getTouchQueue();
+
         glSurfaceView.setOnTouchListener(new View.OnTouchListener() {
             @Override
             public boolean onTouch(View v, MotionEvent event) {
                 if (event != null) {
-                    // Convert touch coordinates into normalized device coordinates, keeping in
-                    // mind that Android's Y coordinates are inverted.
-                    final float normalizedX = (event.getX() / (float) v.getWidth()) * 2 - 1;
-                    final float normalizedY = -((event.getY() / (float) v.getHeight()) * 2 - 1);
-
-                    if (event.getAction() == MotionEvent.ACTION_DOWN) {
-                        glSurfaceView.queueEvent(new Runnable() {
-                            @Override
-                            public void run() {
-                                airHockeyRenderer.handleTouchPress(normalizedX, normalizedY);
-                            }
-                        });
-                    } else if (event.getAction() == MotionEvent.ACTION_MOVE) {
-                        glSurfaceView.queueEvent(new Runnable() {
-                            @Override
-                            public void run() {
-                                airHockeyRenderer.handleTouchDrag(normalizedX, normalizedY);
+                    final float width = (float) v.getWidth();
+                    final float height = (float) v.getHeight();
+
+                    switch (event.getActionMasked()) {
+                        case MotionEvent.ACTION_DOWN:
+                            offer(touchQueue, TouchEventQueue.ACTION_DOWN, event.getX(),
+                                    event.getY(), event.getEventTime(), width, height);
+                            break;
+                        case MotionEvent.ACTION_MOVE:
+                            // Moves are batched; pass on every sample in the batch, not just
+                            // the latest.
+                            for (int i = 0; i < event.getHistorySize(); i++) {
+                                offer(touchQueue, TouchEventQueue.ACTION_MOVE,
+                                        event.getHistoricalX(i), event.getHistoricalY(i),
+                                        event.getHistoricalEventTime(i), width, height);
                             }
-                        });
+                            offer(touchQueue, TouchEventQueue.ACTION_MOVE, event.getX(),
+                                    event.getY(), event.getEventTime(), width, height);
+                            break;
+                        case MotionEvent.ACTION_UP:
+                        case MotionEvent.ACTION_CANCEL:
+                            offer(touchQueue, TouchEventQueue.ACTION_UP, event.getX(),
+                                    event.getY(), event.getEventTime(), width, height);
+                            break;
                     }
                     return true;
                 } else {
@@ -48,4 +59,34 @@ public class AirHockeyActivity extends OpenGLBaseActivity {
         });
 
     }
+
+    @Override
+    protected void onPause() {
+        if (rendererSet) {
+            // Runs on the GL thread even once it has paused.
+            glSurfaceView.queueEvent(new Runnable() {
+                @Override
+                public void run() {
+                    airHockeyRenderer.onPause();
+                }
+            });
+        }
+        super.onPause();
+    }
+
+    @Override
+    protected void onDestroy() {
+        // A new activity, with a new renderer, is made on every rotation.
+        airHockeyRenderer.release();
+        super.onDestroy();
+    }
+
+    private static void offer(TouchEventQueue touchQueue, int action, float x, float y,
+                              long eventTimeMillis, float width, float height) {
+        // Convert touch coordinates into normalized device coordinates, keeping in mind that
+        // Android's Y coordinates are inverted.
+        final float normalizedX = (x / width) * 2 - 1;
+        final float normalizedY = -((y / height) * 2 - 1);
+        touchQueue.offer(action, normalizedX, normalizedY, eventTimeMillis * 1000000L);
+    }
 }
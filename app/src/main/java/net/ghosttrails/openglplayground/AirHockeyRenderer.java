@@ -1,35 +1,51 @@
 package net.ghosttrails.openglplayground;
 
 import android.content.Context;
+import android.graphics.Color;
 import android.opengl.GLSurfaceView;
-import android.util.Log;
 
+import net.ghosttrails.openglplayground.data.StreamingVertexBuffer;
+import net.ghosttrails.openglplayground.data.VertexArrayObject;
+import net.ghosttrails.openglplayground.data.VertexEncoder;
+import net.ghosttrails.openglplayground.gl.CachingGles;
+import net.ghosttrails.openglplayground.gl.DirectGles;
+import net.ghosttrails.openglplayground.gl.GlContext;
+import net.ghosttrails.openglplayground.input.TouchEventQueue;
+import net.ghosttrails.openglplayground.input.TouchPredictor;
+import net.ghosttrails.openglplayground.objects.InstancedMesh;
+import net.ghosttrails.openglplayground.objects.InstancedModel;
+import net.ghosttrails.openglplayground.objects.Instances;
 import net.ghosttrails.openglplayground.objects.Mallet;
 import net.ghosttrails.openglplayground.objects.Puck;
 import net.ghosttrails.openglplayground.objects.Table;
-import net.ghosttrails.openglplayground.programs.ColorShaderProgram;
+import net.ghosttrails.openglplayground.physics.FixedTimestep;
+import net.ghosttrails.openglplayground.physics.PhysicsWorld;
+import net.ghosttrails.openglplayground.programs.InstancedColorShaderProgram;
+import net.ghosttrails.openglplayground.programs.ProgramBinaryCache;
+import net.ghosttrails.openglplayground.programs.ProgramRegistry;
+import net.ghosttrails.openglplayground.programs.PseudoInstancedColorShaderProgram;
+import net.ghosttrails.openglplayground.programs.ShaderProgram;
 import net.ghosttrails.openglplayground.programs.TextureShaderProgram;
+import net.ghosttrails.openglplayground.render.RenderQueue;
+import net.ghosttrails.openglplayground.scene.Pickables;
+import net.ghosttrails.openglplayground.scene.SceneGraph;
+import net.ghosttrails.openglplayground.util.Bounds;
+import net.ghosttrails.openglplayground.util.Camera;
+import net.ghosttrails.openglplayground.util.EventTrace;
+import net.ghosttrails.openglplayground.util.FrameProfiler;
 import net.ghosttrails.openglplayground.util.Geometry;
-import net.ghosttrails.openglplayground.util.Geometry.Vector;
-import net.ghosttrails.openglplayground.util.MatrixHelper;
-import net.ghosttrails.openglplayground.util.TextureHelper;
+import net.ghosttrails.openglplayground.util.Geometry.MutableRay;
+import net.ghosttrails.openglplayground.util.Geometry.Vec3;
+import net.ghosttrails.openglplayground.util.LoggerConfig;
+import net.ghosttrails.openglplayground.util.Matrix4;
+import net.ghosttrails.openglplayground.util.TextureLoader;
+
+import java.io.File;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 import static android.opengl.GLES20.GL_COLOR_BUFFER_BIT;
-import static android.opengl.GLES20.glClear;
-import static android.opengl.GLES20.glClearColor;
-import static android.opengl.GLES20.glViewport;
-import static android.opengl.Matrix.invertM;
-import static android.opengl.Matrix.multiplyMM;
-import static android.opengl.Matrix.multiplyMV;
-import static android.opengl.Matrix.rotateM;
-import static android.opengl.Matrix.setIdentityM;
-import static android.opengl.Matrix.setLookAtM;
-import static android.opengl.Matrix.translateM;
-import static net.ghosttrails.openglplayground.util.Geometry.Point;
-import static net.ghosttrails.openglplayground.util.Geometry.Ray;
 
 /**
  * AirHockey Renderer
@@ -37,26 +53,223 @@ import static net.ghosttrails.openglplayground.util.Geometry.Ray;
 public class AirHockeyRenderer implements GLSurfaceView.Renderer {
 
     private final static String TAG = "AirHockeyRenderer";
+
+    // Physics runs at a fixed rate, independent of the display refresh rate.
+    private static final int PHYSICS_STEPS_PER_SECOND = 120;
+    private static final int MAX_PHYSICS_STEPS_PER_FRAME = 8;
+
+    // Touch samples held between frames. Touch screens report at up to a few hundred Hz, so
+    // this is plenty even if a few frames are missed.
+    private static final int TOUCH_QUEUE_CAPACITY = 256;
+    // Limits on how long a mallet move is spread over, however the frame times fall.
+    private static final float MIN_MALLET_MOVE_SECONDS = 1f / 240f;
+    private static final float MAX_MALLET_MOVE_SECONDS = 0.1f;
+
+    // Touch prediction. A frame drawn now reaches the screen this many frames later, so that's
+    // where the mallet is drawn for; but never further ahead of the last touch sample than the
+    // horizon, or further from it than the max distance (in normalized device coordinates).
+    private static final int PRESENT_LATENCY_FRAMES = 2;
+    private static final long TOUCH_PREDICTION_HORIZON_NANOS = 32000000L;
+    private static final float TOUCH_PREDICTION_MAX_DISTANCE = 0.15f;
+    private static final float TOUCH_PREDICTION_ACCELERATION_WEIGHT = 0.5f;
+
+    // The plane representing the hockey table.
+    private static final Vec3 TABLE_PLANE_POINT = new Vec3(0f, 0f, 0f);
+    private static final Vec3 TABLE_PLANE_NORMAL = new Vec3(0f, 1f, 0f);
+
+    // Frames more than one and a half 60Hz refreshes apart count as jank.
+    private static final long JANK_THRESHOLD_NANOS = 25000000L;
+    private static final String FRAME_STATS_FILE_NAME = "frame_stats.txt";
+    private static final String TRACE_FILE_NAME = "trace.json";
+    private static final String PROGRAM_CACHE_DIRECTORY_NAME = "programs";
+    // Shader variants to keep programs for at once; more than this scene ever uses.
+    private static final int MAX_PROGRAMS = 8;
+    // Time each frame may spend uploading textures, and what the table is drawn with until
+    // its texture is uploaded.
+    private static final long TEXTURE_UPLOAD_BUDGET_NANOS = 2000000L;
+    private static final int TEXTURE_PLACEHOLDER_COLOR = Color.rgb(224, 224, 224);
+
+    // Room for a few frames of per-instance data; it grows if a frame needs more.
+    private static final int INSTANCE_DATA_BYTES = 64 * 1024;
+
+    // Render queue ids, and room for a frame's packets; it grows if a frame needs more.
+    private static final int LAYER_SCENE = 0;
+    private static final int PROGRAM_TEXTURE = 1;
+    private static final int PROGRAM_COLOR = 2;
+    private static final int COMMAND_TABLE = 0;
+    private static final int COMMAND_MALLETS = 1;
+    private static final int COMMAND_PUCK = 2;
+    private static final int RENDER_QUEUE_PACKETS = 16;
+    private static final int FLOATS_PER_MATRIX = 16;
+    private static final int SCENE_NODES = 8;
+
+    private static final EventTrace trace = EventTrace.shared();
+    private static final int TRACE_TOUCH_PRESS =
+            trace.define(TAG, "touchPress", EventTrace.VERBOSE, "x", "y", "pressed");
+    private static final int TRACE_TOUCH_DRAG =
+            trace.define(TAG, "touchDrag", EventTrace.VERBOSE, "x", "y", "pressed");
+    private static final int TRACE_PREDICTION_ERROR = trace.define(TAG, "predictionError",
+            EventTrace.INFO, "predictions", "rms", "max");
+    private static final int TRACE_MESH =
+            trace.define(TAG, "mesh", EventTrace.INFO, "vertices", "indices", "drawCalls");
+    private static final int TRACE_UNINDEXED_MESH = trace.define(TAG, "unindexedMesh",
+            EventTrace.INFO, "vertices", "drawCalls");
+    private static final int TRACE_VERTEX_FORMAT = trace.define(TAG, "vertexFormat",
+            EventTrace.INFO, "unpackedBytes", "packedBytes", "maxError");
+    private static final int TRACE_GL_CALLS =
+            trace.define(TAG, "glCalls", EventTrace.INFO, "issued", "skipped");
+    private static final int TRACE_VERTEX_ARRAYS = trace.define(TAG, "vertexArrays",
+            EventTrace.INFO, "glesVersion", "binds", "savedCalls");
+    private static final int TRACE_INSTANCING =
+            trace.define(TAG, "instancing", EventTrace.INFO, "instances", "drawCalls");
+    private static final int TRACE_RENDER_QUEUE = trace.define(TAG, "renderQueue",
+            EventTrace.INFO, "packets", "stateChanges", "unsortedStateChanges");
+    private static final int TRACE_SCENE_GRAPH = trace.define(TAG, "sceneGraph",
+            EventTrace.INFO, "nodes", "worldUpdates", "modelViewProjectionUpdates");
+    private static final int TRACE_PROGRAMS_BUILT =
+            trace.define(TAG, "programsBuilt", EventTrace.INFO, "programs", "micros");
+    private static final int TRACE_PROGRAMS_LOADED =
+            trace.define(TAG, "programsLoaded", EventTrace.INFO, "programs", "micros");
+    private static final int TRACE_SHADER_VARIANTS =
+            trace.define(TAG, "shaderVariants", EventTrace.INFO, "variants", "builds",
+                    "evictions");
+    private static final int TRACE_TEXTURE_UPLOADS =
+            trace.define(TAG, "textureUploads", EventTrace.INFO, "frames", "micros",
+                    "maxFrameMicros");
+    private static final int TRACE_CULLING =
+            trace.define(TAG, "culling", EventTrace.INFO, "drawn", "culled");
+
     private final Context context;
 
-    private final float[] viewMatrix = new float[16];
-    private final float[] viewProjectionMatrix = new float[16];
-    private final float[] modelViewProjectionMatrix = new float[16];
-    private final float[] projectionMatrix = new float[16];
-    private final float[] modelMatrix = new float[16];
-    private final float[] invertedViewProjectionMatrix = new float[16];
+    // All GL calls go through here, so redundant state changes are dropped.
+    private final CachingGles gles = new CachingGles(new DirectGles());
+
+    // The camera only works its matrices out again when it moves, and the scene graph only
+    // makes a node's matrices again when it or the camera moves.
+    private final Camera camera = new Camera();
+    private final SceneGraph scene = new SceneGraph(SCENE_NODES);
+    private int tableNode;
+    private int malletsNode;
+    private int puckNode;
+
+    // Scratch storage for touch handling, so dragging the mallet doesn't allocate.
+    private final float[] nearPointWorld = new float[3];
+    private final float[] farPointWorld = new float[3];
+    private final MutableRay touchRay = new MutableRay();
+    private final Vec3 touchedPoint = new Vec3();
+
+    // What can be touched. Only the blue mallet, for now.
+    private final Pickables pickables = new Pickables(2);
+    private final Pickables.Hit pickHit = new Pickables.Hit();
+    private int blueMalletPickable = Pickables.NONE;
+
+    // Touch input, queued by the UI thread and drained once per frame. Every drag sample
+    // drained in a frame goes into the predictor, and the mallet is then moved once, to where
+    // the finger is predicted to be when the frame is shown.
+    private final TouchEventQueue touchQueue = new TouchEventQueue(TOUCH_QUEUE_CAPACITY);
+    private final TouchPredictor touchPredictor = new TouchPredictor(
+            TOUCH_PREDICTION_HORIZON_NANOS, TOUCH_PREDICTION_MAX_DISTANCE,
+            TOUCH_PREDICTION_ACCELERATION_WEIGHT);
+    private final float[] predictedTouch = new float[2];
+    private final TouchEventQueue.Sink touchSink = new TouchEventQueue.Sink() {
+        @Override
+        public void onTouchSample(int action, float normalizedX, float normalizedY,
+                                  long timeNanos) {
+            switch (action) {
+                case TouchEventQueue.ACTION_DOWN:
+                    handleTouchPress(normalizedX, normalizedY);
+                    touchPredictor.reset();
+                    touchPredictor.addSample(normalizedX, normalizedY, timeNanos);
+                    break;
+                case TouchEventQueue.ACTION_MOVE:
+                    touchPredictor.addSample(normalizedX, normalizedY, timeNanos);
+                    break;
+                case TouchEventQueue.ACTION_UP:
+                    // Leave the mallet where the finger really was.
+                    handleTouchDrag(normalizedX, normalizedY, frameIntervalSeconds);
+                    malletPressed = false;
+                    touchPredictor.reset();
+                    if (LoggerConfig.ON) {
+                        trace.record(TRACE_PREDICTION_ERROR, touchPredictor.getErrorCount(),
+                                touchPredictor.getRmsError(), touchPredictor.getMaxError());
+                    }
+                    break;
+            }
+        }
+    };
+
+    private final FrameProfiler frameProfiler = new FrameProfiler(JANK_THRESHOLD_NANOS);
+
+    // Smoothed time between frames.
+    private long lastFrameTimeNanos = -1;
+    private long frameIntervalNanos = 16666667L;
+    private float frameIntervalSeconds = frameIntervalNanos / 1e9f;
 
     private Puck puck;
     private Table table;
     private Mallet mallet;
 
+    // The mallets and the puck are drawn as instances of their meshes: with instancing on
+    // ES 3.0, and in batches on ES 2.0. Only the program for the context's version is made.
+    private final Instances malletInstances = new Instances(2);
+    private final Instances puckInstances = new Instances(1);
+    private final StreamingVertexBuffer instanceData =
+            new StreamingVertexBuffer(gles, INSTANCE_DATA_BYTES);
+
+    // Linked programs are kept in files, so a context after the first (or a later run of the
+    // app) doesn't have to compile and link them again.
+    private final ProgramBinaryCache programCache;
+    private final ProgramRegistry programs;
     private TextureShaderProgram textureProgram;
-    private ColorShaderProgram colorProgram;
+    private InstancedColorShaderProgram instancedColorProgram;
+    private PseudoInstancedColorShaderProgram pseudoInstancedColorProgram;
+
+    // Each frame's draws are queued, then sorted to change program, texture and mesh as few
+    // times as possible. The commands get the matrix to draw with as the packet's uniforms.
+    private final RenderQueue renderQueue =
+            new RenderQueue(RENDER_QUEUE_PACKETS, RENDER_QUEUE_PACKETS * FLOATS_PER_MATRIX);
+    private final float[] commandMatrix = new float[FLOATS_PER_MATRIX];
+    private final RenderQueue.DrawCommand drawTable = new RenderQueue.DrawCommand() {
+        @Override
+        public void draw(float[] uniforms, int offset, int texture) {
+            System.arraycopy(uniforms, offset, commandMatrix, 0, FLOATS_PER_MATRIX);
+            textureProgram.setUniforms(commandMatrix, texture);
+            table.bindData(textureProgram);
+            table.draw();
+        }
+    };
+    private final RenderQueue.DrawCommand drawMallets = new RenderQueue.DrawCommand() {
+        @Override
+        public void draw(float[] uniforms, int offset, int texture) {
+            System.arraycopy(uniforms, offset, commandMatrix, 0, FLOATS_PER_MATRIX);
+            if (instancedColorProgram != null) {
+                instancedColorProgram.setUniforms(commandMatrix);
+                mallet.drawInstances(instancedColorProgram, malletInstances, instanceData);
+            } else {
+                pseudoInstancedColorProgram.setUniforms(commandMatrix);
+                mallet.drawInstances(pseudoInstancedColorProgram, malletInstances);
+            }
+        }
+    };
+    private final RenderQueue.DrawCommand drawPuck = new RenderQueue.DrawCommand() {
+        @Override
+        public void draw(float[] uniforms, int offset, int texture) {
+            System.arraycopy(uniforms, offset, commandMatrix, 0, FLOATS_PER_MATRIX);
+            if (instancedColorProgram != null) {
+                instancedColorProgram.setUniforms(commandMatrix);
+                puck.drawInstances(instancedColorProgram, puckInstances, instanceData);
+            } else {
+                pseudoInstancedColorProgram.setUniforms(commandMatrix);
+                puck.drawInstances(pseudoInstancedColorProgram, puckInstances);
+            }
+        }
+    };
 
     private boolean malletPressed = false;
-    private Point blueMalletPosition;
+    private final Vec3 blueMalletPosition = new Vec3();
 
-    private int texture;
+    private final TextureLoader textureLoader;
+    private int tableTexture;
 
     // Table bounds
     private final float leftBound = -0.5f;
@@ -64,169 +277,334 @@ public class AirHockeyRenderer implements GLSurfaceView.Renderer {
     private final float farBound = -0.8f;
     private final float nearBound = 0.8f;
 
-    private Point previousBlueMalletPosition;
-    private Point puckPosition;
-    private Vector puckVector;
+    private PhysicsWorld physicsWorld;
+    private FixedTimestep physicsTimestep;
+    private int puckBody;
+    private int redMalletBody;
+    private int blueMalletBody;
 
     AirHockeyRenderer(Context context) {
         this.context = context;
+        programCache = new ProgramBinaryCache(gles,
+                new File(context.getCacheDir(), PROGRAM_CACHE_DIRECTORY_NAME));
+        programs = new ProgramRegistry(context, gles, programCache, MAX_PROGRAMS);
+        textureLoader = new TextureLoader(context, gles, TEXTURE_PLACEHOLDER_COLOR);
+        renderQueue.setCommand(COMMAND_TABLE, drawTable);
+        renderQueue.setCommand(COMMAND_MALLETS, drawMallets);
+        renderQueue.setCommand(COMMAND_PUCK, drawPuck);
+        buildScene();
     }
 
-    @Override
-    public void onSurfaceCreated(GL10 gl, EGLConfig config) {
-        glClearColor(0.2f, 0.2f, 0.2f, 0.0f);
+    /**
+     * The table lies flat, so it's rotated to face up. The mallets and the puck are positioned
+     * by their instances' translations, so their nodes stay where the table's origin is.
+     */
+    private void buildScene() {
+        final int root = scene.addNode(SceneGraph.NO_PARENT);
+        tableNode = scene.addNode(root);
+        scene.rotateX(tableNode, -90f);
+        scene.setDrawable(tableNode, LAYER_SCENE, PROGRAM_TEXTURE, 0, COMMAND_TABLE);
+        malletsNode = scene.addNode(root);
+        scene.setDrawable(malletsNode, LAYER_SCENE, PROGRAM_COLOR, 0, COMMAND_MALLETS);
+        puckNode = scene.addNode(root);
+        scene.setDrawable(puckNode, LAYER_SCENE, PROGRAM_COLOR, 0, COMMAND_PUCK);
+    }
+
+    /**
+     * @return the queue the UI thread should put touch samples in.
+     */
+    TouchEventQueue getTouchQueue() {
+        return touchQueue;
+    }
 
-        table = new Table();
-        mallet = new Mallet(0.08f, 0.15f, 32);
-        puck = new Puck(0.06f, 0.02f, 32);
+    /**
+     * @return the touch predictor, e.g. to read its error statistics.
+     */
+    TouchPredictor getTouchPredictor() {
+        return touchPredictor;
+    }
 
-        textureProgram = new TextureShaderProgram(context);
-        colorProgram = new ColorShaderProgram(context);
+    /**
+     * @return the GL facade, e.g. to read how many redundant calls it has dropped.
+     */
+    CachingGles getGles() {
+        return gles;
+    }
 
-        texture = TextureHelper.loadTexture(context, R.drawable.air_hockey_surface);
+    /**
+     * @return per-phase frame timings. Only read them on the GL thread.
+     */
+    FrameProfiler getFrameProfiler() {
+        return frameProfiler;
+    }
 
-        blueMalletPosition = new Point(0f, mallet.height / 2f, 0.4f);
+    @Override
+    public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+        // A new context starts with default state and none of our buffers, whatever we set
+        // up in the last one.
+        gles.invalidate();
+        GlContext.onContextCreated(gles);
+        gles.glClearColor(0.2f, 0.2f, 0.2f, 0.0f);
+
+        // The meshes keep their vertex data, and upload it again into the new context when
+        // they're next drawn.
+        if (table == null) {
+            table = new Table(gles);
+            mallet = new Mallet(gles, 0.08f, 0.15f, 32);
+            puck = new Puck(gles, 0.06f, 0.02f, 32);
+            if (LoggerConfig.ON) {
+                recordMesh("mallet", mallet);
+                recordMesh("puck", puck);
+                recordVertexFormat(table.getVertices());
+                recordVertexFormat(mallet.getVertices());
+                recordVertexFormat(puck.getVertices());
+            }
+            scene.setBounds(tableNode, table.getBounds());
+            setPlayingAreaBounds(malletsNode, mallet.getBounds());
+            setPlayingAreaBounds(puckNode, puck.getBounds());
+        }
 
-        puckPosition = new Point(0f, puck.height / 2f, 0f);
-        puckVector = new Vector(0f, 0f, 0f);
+        textureProgram = new TextureShaderProgram(gles, programs);
+        renderQueue.setProgram(PROGRAM_TEXTURE, textureProgram);
+        final ShaderProgram colorProgram;
+        if (GlContext.supportsInstancing()) {
+            instancedColorProgram = new InstancedColorShaderProgram(gles, programs);
+            pseudoInstancedColorProgram = null;
+            colorProgram = instancedColorProgram;
+        } else {
+            pseudoInstancedColorProgram = new PseudoInstancedColorShaderProgram(gles, programs);
+            instancedColorProgram = null;
+            colorProgram = pseudoInstancedColorProgram;
+        }
+        renderQueue.setProgram(PROGRAM_COLOR, colorProgram);
+        // Build them now, so each context's startup cost is recorded on its own: cold starts
+        // build every program; warm ones load them all.
+        textureProgram.prepare();
+        colorProgram.prepare();
+        if (LoggerConfig.ON) {
+            trace.record(TRACE_PROGRAMS_BUILT, programCache.getMisses(),
+                    programCache.getMissNanos() / 1000);
+            trace.record(TRACE_PROGRAMS_LOADED, programCache.getHits(),
+                    programCache.getHitNanos() / 1000);
+        }
+        programCache.resetCounters();
+
+        // Drawn with the placeholder until it's decoded and uploaded.
+        tableTexture = textureLoader.load(R.drawable.air_hockey_surface);
+        scene.setTexture(tableNode, textureLoader.getTexture(tableTexture));
+
+        blueMalletPosition.set(0f, mallet.height / 2f, 0.4f);
+        if (blueMalletPickable == Pickables.NONE) {
+            blueMalletPickable = pickables.add(blueMalletPosition.x, blueMalletPosition.y,
+                    blueMalletPosition.z, mallet.height / 2f);
+        } else {
+            pickables.move(blueMalletPickable, blueMalletPosition.x, blueMalletPosition.y,
+                    blueMalletPosition.z);
+        }
+
+        physicsWorld = new PhysicsWorld(leftBound, rightBound, farBound, nearBound);
+        puckBody = physicsWorld.addPuck(0f, 0f, puck.radius, 1f);
+        redMalletBody = physicsWorld.addMallet(0f, -0.4f, mallet.radius);
+        blueMalletBody = physicsWorld.addMallet(
+                blueMalletPosition.x, blueMalletPosition.z, mallet.radius);
+        physicsTimestep = new FixedTimestep(physicsWorld, PHYSICS_STEPS_PER_SECOND,
+                MAX_PHYSICS_STEPS_PER_FRAME);
+    }
+
+    /**
+     * The instances of a mesh can be anywhere on the table, so bound the node with a sphere
+     * around everywhere an instance could be.
+     */
+    private void setPlayingAreaBounds(int node, Bounds meshBounds) {
+        final float halfWidth = (rightBound - leftBound) / 2f + meshBounds.radius;
+        final float halfLength = (nearBound - farBound) / 2f + meshBounds.radius;
+        final float height = meshBounds.radius * 2f;
+        scene.setBounds(node, (leftBound + rightBound) / 2f, height / 2f,
+                (farBound + nearBound) / 2f, (float) Math.sqrt(halfWidth * halfWidth
+                        + halfLength * halfLength + height * height / 4f));
     }
 
     @Override
     public void onSurfaceChanged(GL10 gl, int width, int height) {
         // Set the OpenGL viewport to fill the entire surface
-        glViewport(0, 0, width, height);
+        gles.glViewport(0, 0, width, height);
 
-        MatrixHelper.perspectiveM(projectionMatrix, 45, (float) width / (float) height, 1f, 10f);
+        camera.setPerspective(45, (float) width / (float) height, 1f, 10f);
 
         // Set Camera position.
-        setLookAtM(viewMatrix, 0, 0f, 1.2f, 2.2f, 0f, 0f, 0f, 0f, 1f, 0f);
+        camera.setLookAt(0f, 1.2f, 2.2f, 0f, 0f, 0f, 0f, 1f, 0f);
     }
 
     @Override
     public void onDrawFrame(GL10 gl) {
-        // Clear the rendering surface
-        glClear(GL_COLOR_BUFFER_BIT);
-
-        // Friction
-        puckVector = puckVector.scale(0.99f);
-
-        // Move the puck.
-        puckPosition = puckPosition.translate(puckVector);
-        if (puckPosition.x < leftBound + puck.radius
-                || puckPosition.x > rightBound - puck.radius) {
-            puckVector = new Vector(-puckVector.x, puckVector.y, puckVector.z);
-            puckVector = puckVector.scale(0.9f);
-        }
-        if (puckPosition.z < farBound + puck.radius
-                || puckPosition.z > nearBound - puck.radius) {
-            puckVector = new Vector(puckVector.x, puckVector.y, -puckVector.z);
-            puckVector = puckVector.scale(0.9f);
+        frameProfiler.beginFrame();
+
+        frameProfiler.begin(FrameProfiler.PHASE_UPLOAD);
+        textureLoader.upload(TEXTURE_UPLOAD_BUDGET_NANOS);
+        scene.setTexture(tableNode, textureLoader.getTexture(tableTexture));
+
+        // Apply all the touch input since the last frame.
+        frameProfiler.begin(FrameProfiler.PHASE_INPUT);
+        final long frameTimeNanos = System.nanoTime();
+        updateFrameInterval(frameTimeNanos);
+        touchQueue.drain(touchSink);
+        if (malletPressed && touchPredictor.hasSamples()) {
+            touchPredictor.predict(
+                    frameTimeNanos + PRESENT_LATENCY_FRAMES * frameIntervalNanos,
+                    predictedTouch);
+            handleTouchDrag(predictedTouch[0], predictedTouch[1], frameIntervalSeconds);
         }
-        // Clamp puck to table
-        puckPosition = new Point(
-                clamp(puckPosition.x, leftBound + puck.radius, rightBound - puck.radius),
-                puckPosition.y,
-                clamp(puckPosition.z, farBound + puck.radius, nearBound - puck.radius));
 
-        multiplyMM(viewProjectionMatrix, 0, projectionMatrix, 0, viewMatrix, 0);
-        invertM(invertedViewProjectionMatrix, 0, viewProjectionMatrix, 0);
-
-        positionTableInScene();
+        // Run whatever physics steps are due, then draw the puck in between the last two
+        // physics states.
+        frameProfiler.begin(FrameProfiler.PHASE_SIMULATION);
+        float alpha = physicsTimestep.advance(frameTimeNanos);
+
+        // The mallets and the puck
+        frameProfiler.begin(FrameProfiler.PHASE_TRANSFORMS);
+        malletInstances.clear();
+        malletInstances.add(physicsWorld.getInterpolatedX(redMalletBody, alpha),
+                mallet.height / 2f, physicsWorld.getInterpolatedZ(redMalletBody, alpha),
+                1f, 0f, 0f);
+        malletInstances.add(physicsWorld.getInterpolatedX(blueMalletBody, alpha),
+                mallet.height / 2f, physicsWorld.getInterpolatedZ(blueMalletBody, alpha),
+                0f, 0f, 1f);
+        puckInstances.clear();
+        puckInstances.add(physicsWorld.getInterpolatedX(puckBody, alpha), puck.height / 2f,
+                physicsWorld.getInterpolatedZ(puckBody, alpha), 0.8f, 0.8f, 1f);
+        scene.update(camera);
+        scene.submit(renderQueue, camera.getFrustum());
+
+        // Clear the rendering surface, then draw everything.
+        frameProfiler.begin(FrameProfiler.PHASE_DRAW);
+        gles.glClear(GL_COLOR_BUFFER_BIT);
+        instanceData.beginFrame();
+        renderQueue.flush();
+
+        frameProfiler.endFrame();
+    }
 
-        // Draw the table
-        textureProgram.useProgram();
-        textureProgram.setUniforms(modelViewProjectionMatrix, texture);
-        table.bindData(textureProgram);
-        table.draw();
+    /**
+     * Record the mesh's size next to what it took before it was indexed.
+     */
+    private static void recordMesh(String name, InstancedModel model) {
+        trace.record(TRACE_MESH, name, model.getVertexCount(), model.getIndexCount(),
+                model.getDrawCount());
+        trace.record(TRACE_UNINDEXED_MESH, name, model.getUnindexedVertexCount(),
+                model.getUnindexedDrawCount(), 0);
+    }
 
-        // Draw the mallets
-        positionObjectInScene(0f, mallet.height / 2f, -0.4f);
-        colorProgram.useProgram();
-        colorProgram.setUniforms(modelViewProjectionMatrix, 1f, 0f, 0f);
-        mallet.bindData(colorProgram);
-        mallet.draw();
+    private static void recordVertexFormat(VertexEncoder.PackedVertices vertices) {
+        trace.record(TRACE_VERTEX_FORMAT, vertices.getUnpackedSizeInBytes(),
+                vertices.getSizeInBytes(), vertices.maxError);
+    }
 
-        positionObjectInScene(blueMalletPosition.x, blueMalletPosition.y, blueMalletPosition.z);
-        colorProgram.setUniforms(modelViewProjectionMatrix, 0f, 0f, 1f);
-        mallet.draw();
+    /**
+     * Write the frame timing histograms to logcat and to a file in the app's files directory.
+     * Call on the GL thread, e.g. with GLSurfaceView.queueEvent().
+     */
+    void dumpFrameStats() {
+        frameProfiler.dumpToLog(TAG);
+        frameProfiler.dumpToFile(new File(context.getFilesDir(), FRAME_STATS_FILE_NAME));
+        trace.record(TRACE_GL_CALLS, gles.getIssuedCalls(), gles.getSkippedCalls());
+        trace.record(TRACE_VERTEX_ARRAYS, GlContext.getMajorVersion(),
+                VertexArrayObject.getBinds(), VertexArrayObject.getSavedCalls());
+        trace.record(TRACE_INSTANCING, InstancedMesh.getInstancesDrawn(),
+                InstancedMesh.getDrawCalls());
+        trace.record(TRACE_RENDER_QUEUE, renderQueue.getPackets(),
+                renderQueue.getStateChanges(), renderQueue.getUnsortedStateChanges());
+        trace.record(TRACE_SCENE_GRAPH, scene.getNodeCount(), scene.getWorldUpdates(),
+                scene.getModelViewProjectionUpdates());
+        trace.record(TRACE_CULLING, scene.getDrawn(), scene.getCulled());
+        trace.record(TRACE_SHADER_VARIANTS, programs.getVariantCount(), programs.getBuilds(),
+                programs.getEvictions());
+        trace.record(TRACE_TEXTURE_UPLOADS, textureLoader.getUploadFrames(),
+                textureLoader.getUploadNanos() / 1000,
+                textureLoader.getMaxFrameUploadNanos() / 1000);
+    }
 
-        // Draw the puck
-        positionObjectInScene(puckPosition.x, puckPosition.y, puckPosition.z);
-        colorProgram.setUniforms(modelViewProjectionMatrix, 0.8f, 0.8f, 1f);
-        puck.bindData(colorProgram);
-        puck.draw();
+    /**
+     * Write the trace events recorded so far to a Chrome trace file in the app's files
+     * directory. The file is written on a background thread.
+     */
+    void exportTrace() {
+        trace.exportAsync(new File(context.getFilesDir(), TRACE_FILE_NAME),
+                EventTrace.FORMAT_CHROME_JSON);
     }
 
-    private void positionTableInScene() {
-        setIdentityM(modelMatrix, 0);
-        rotateM(modelMatrix, 0, -90f, 1f, 0f, 0f);
-        multiplyMM(modelViewProjectionMatrix, 0, viewProjectionMatrix, 0, modelMatrix, 0);
+    /**
+     * Called on the GL thread when rendering is about to pause.
+     */
+    void onPause() {
+        if (LoggerConfig.ON) {
+            dumpFrameStats();
+            exportTrace();
+        }
+        // The time spent paused isn't a slow frame.
+        frameProfiler.skipNextInterval();
     }
 
-    private void positionObjectInScene(float x, float y, float z) {
-        setIdentityM(modelMatrix, 0);
-        translateM(modelMatrix, 0, x, y, z);
-        multiplyMM(modelViewProjectionMatrix, 0, viewProjectionMatrix, 0, modelMatrix, 0);
+    /**
+     * Called when the activity is destroyed, to stop the background threads. Any thread.
+     */
+    void release() {
+        textureLoader.release();
     }
 
-    private Ray convertNormalized2DPointToRay(float normalizedX, float normalizedY) {
+    /**
+     * Convert a touch point into a ray through the scene, written into touchRay.
+     */
+    private MutableRay convertNormalized2DPointToRay(float normalizedX, float normalizedY) {
         // We'll convert these normalized device coordinates into world-space coordinates. We'll
         // pick a point on the near and far planes, and draw a line between them. To do this
         // transform, we need to first multiply by the inverse matrix, and then we need to undo
         // the perspective divide.
-        final float[] nearPointNdc = {normalizedX, normalizedY, -1, 1};
-        final float[] farPointNdc = {normalizedX, normalizedY, 1, 1};
-
-        final float[] nearPointWorld = new float[4];
-        final float[] farPointWorld = new float[4];
-
-        multiplyMV(nearPointWorld, 0, invertedViewProjectionMatrix, 0, nearPointNdc, 0);
-        multiplyMV(farPointWorld, 0, invertedViewProjectionMatrix, 0, farPointNdc, 0);
-
-        divideByW(nearPointWorld);
-        divideByW(farPointWorld);
-
-        Point nearPointRay = new Point(nearPointWorld[0], nearPointWorld[1], nearPointWorld[2]);
-        Point farPointRay = new Point(farPointWorld[0], farPointWorld[1], farPointWorld[2]);
-
-        return new Ray(nearPointRay, Geometry.vectorBetween(nearPointRay, farPointRay));
-    }
-
-    private void divideByW(float[] vector) {
-        vector[0] /= vector[3];
-        vector[1] /= vector[3];
-        vector[2] /= vector[3];
+        final float[] invertedViewProjectionMatrix = camera.getInvertedViewProjectionMatrix();
+        Matrix4.transformPoint(nearPointWorld, 0, invertedViewProjectionMatrix, 0,
+                normalizedX, normalizedY, -1f);
+        Matrix4.transformPoint(farPointWorld, 0, invertedViewProjectionMatrix, 0,
+                normalizedX, normalizedY, 1f);
+
+        return touchRay.set(
+                nearPointWorld[0], nearPointWorld[1], nearPointWorld[2],
+                farPointWorld[0] - nearPointWorld[0],
+                farPointWorld[1] - nearPointWorld[1],
+                farPointWorld[2] - nearPointWorld[2]);
     }
 
     void handleTouchPress(float normalizedX, float normalizedY) {
 
-        Ray ray = convertNormalized2DPointToRay(normalizedX, normalizedY);
+        MutableRay ray = convertNormalized2DPointToRay(normalizedX, normalizedY);
 
-        // Now test if this ray intersects with the mallet by creating a bounding sphere that
-        // wraps the mallet.
-        Geometry.Sphere malletBoundingSphere = new Geometry.Sphere(new Point(
-                blueMalletPosition.x,
-                blueMalletPosition.y,
-                blueMalletPosition.z),
-                mallet.height / 2f);
+        // Now find the nearest thing the ray hits. If the user touched the mallet's bounding
+        // sphere before anything else, then set malletPressed to true.
+        malletPressed = pickables.pick(ray, pickHit) != Pickables.NONE
+                && pickHit.id == blueMalletPickable;
 
-        // If the ray intersects (if the user touched a part of the screen that intersects the
-        // mallet's bounding sphere), then set malletPressed to true.
-        malletPressed = Geometry.intersects(malletBoundingSphere, ray);
+        if (LoggerConfig.ON) {
+            trace.record(TRACE_TOUCH_PRESS, normalizedX, normalizedY, malletPressed ? 1 : 0);
+        }
+    }
 
-        Log.i(TAG, "handleTouchPress, " + normalizedX + ", " + normalizedY + ", " + malletPressed);
+    private void updateFrameInterval(long frameTimeNanos) {
+        if (lastFrameTimeNanos >= 0) {
+            // Smooth it a little; one late frame shouldn't throw the prediction off.
+            frameIntervalNanos += (frameTimeNanos - lastFrameTimeNanos - frameIntervalNanos) / 8;
+            frameIntervalSeconds = frameIntervalNanos / 1e9f;
+        }
+        lastFrameTimeNanos = frameTimeNanos;
     }
 
-    void handleTouchDrag(float normalizedX, float normalizedY) {
+    /**
+     * @param seconds how long the mallet should take to get there from where it is now.
+     */
+    void handleTouchDrag(float normalizedX, float normalizedY, float seconds) {
         if (malletPressed) {
-            Ray ray = convertNormalized2DPointToRay(normalizedX, normalizedY);
-            // Define a place representing the hosckey table
-            Geometry.Plane plane = new Geometry.Plane(new Point(0, 0, 0), new Vector(0, 1, 0));
+            MutableRay ray = convertNormalized2DPointToRay(normalizedX, normalizedY);
             // Find out where the touched point intersects the plane representing our table.
             // We'll move the mallet along this plane.
-            Point touchedPoint = Geometry.intersectionPoint(ray, plane);
-            previousBlueMalletPosition = blueMalletPosition;
-            blueMalletPosition = new Point(
+            Geometry.intersectionPoint(ray, TABLE_PLANE_POINT, TABLE_PLANE_NORMAL, touchedPoint);
+            blueMalletPosition.set(
                     clamp(touchedPoint.x,
                             leftBound + mallet.radius,
                             rightBound - mallet.radius),
@@ -234,14 +612,17 @@ public class AirHockeyRenderer implements GLSurfaceView.Renderer {
                     clamp(touchedPoint.z,
                             0f + mallet.radius,
                             nearBound - mallet.radius));
+            pickables.move(blueMalletPickable, blueMalletPosition.x, blueMalletPosition.y,
+                    blueMalletPosition.z);
 
-            float distance = Geometry.vectorBetween(blueMalletPosition, puckPosition).length();
-            if (distance < (puck.radius + mallet.radius)) {
-                // The mallet has struck the puck.
-                puckVector = Geometry.vectorBetween(previousBlueMalletPosition, blueMalletPosition);
-            }
+            // The physics world slides the mallet there over the given time, and works out
+            // whether it hit the puck.
+            physicsWorld.moveKinematic(blueMalletBody, blueMalletPosition.x, blueMalletPosition.z,
+                    clamp(seconds, MIN_MALLET_MOVE_SECONDS, MAX_MALLET_MOVE_SECONDS));
+        }
+        if (LoggerConfig.ON) {
+            trace.record(TRACE_TOUCH_DRAG, normalizedX, normalizedY, malletPressed ? 1 : 0);
         }
-        Log.i(TAG, "handleTouchDrag, " + normalizedX + ", " + normalizedY + ", " + malletPressed);
     }
 
     private float clamp(float value, float min, float max) {
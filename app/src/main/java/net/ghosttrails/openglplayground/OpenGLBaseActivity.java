@@ -27,8 +27,10 @@ public class OpenGLBaseActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
 
         if (supportsEs2() && renderer != null) {
-            // Request an OpenGL ES 2.0 compatible context
-            glSurfaceView.setEGLContextClientVersion(2);
+            // Request an OpenGL ES 3.0 context where there is one, for vertex array objects;
+            // it runs our ES 2.0 shaders just the same. Otherwise, an OpenGL ES 2.0
+            // compatible context.
+            glSurfaceView.setEGLContextClientVersion(supportsEs3() ? 3 : 2);
 
             // assign our renderer
             glSurfaceView.setRenderer(renderer);
@@ -55,6 +57,13 @@ public class OpenGLBaseActivity extends AppCompatActivity {
                 || Build.MODEL.contains("Android SDK built for x86")));
     }
 
+    boolean supportsEs3() {
+        final ActivityManager activityManager =
+                (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+        final ConfigurationInfo configurationInfo = activityManager.getDeviceConfigurationInfo();
+        return configurationInfo.reqGlEsVersion >= 0x30000;
+    }
+
     @Override
     protected void onPause() {
         super.onPause();
@@ -6,4 +6,5 @@ package net.ghosttrails.openglplayground.data;
 
 public class Constants {
     public static final int BYTES_PER_FLOAT = 4;
+    public static final int BYTES_PER_SHORT = 2;
 }
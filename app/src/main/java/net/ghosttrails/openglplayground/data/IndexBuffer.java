@@ -0,0 +1,95 @@
+package net.ghosttrails.openglplayground.data;
+
+import net.ghosttrails.openglplayground.gl.GlContext;
+import net.ghosttrails.openglplayground.gl.Gles;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import static android.opengl.GLES20.GL_ELEMENT_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_STATIC_DRAW;
+import static android.opengl.GLES20.GL_UNSIGNED_SHORT;
+import static net.ghosttrails.openglplayground.data.Constants.BYTES_PER_SHORT;
+
+/**
+ * Vertex indices for glDrawElements, in an element array buffer object.
+ *
+ * Like VertexArray, the indices are uploaded the first time they're used and again after the
+ * GL context is lost.
+ */
+
+public class IndexBuffer {
+
+    private final Gles gles;
+    private final ShortBuffer shortBuffer;
+    private final int indexCount;
+
+    private final int[] bufferIds = new int[1];
+    // Context generation the buffer was created in; 0 if there isn't one.
+    private int bufferGeneration = 0;
+
+    public IndexBuffer(Gles gles, short[] indexData) {
+        this.gles = gles;
+        indexCount = indexData.length;
+        shortBuffer = ByteBuffer
+                .allocateDirect(indexData.length * BYTES_PER_SHORT)
+                .order(ByteOrder.nativeOrder())
+                .asShortBuffer()
+                .put(indexData);
+        shortBuffer.position(0);
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    /**
+     * Bind the index buffer to GL_ELEMENT_ARRAY_BUFFER, uploading it first if needed.
+     */
+    public void bind() {
+        if (bufferGeneration != GlContext.getGeneration()) {
+            gles.glGenBuffers(1, bufferIds, 0);
+            gles.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, bufferIds[0]);
+            gles.glBufferData(GL_ELEMENT_ARRAY_BUFFER, indexCount * BYTES_PER_SHORT,
+                    shortBuffer, GL_STATIC_DRAW);
+            bufferGeneration = GlContext.getGeneration();
+        } else {
+            gles.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, bufferIds[0]);
+        }
+    }
+
+    /**
+     * Draw all the indices as the given primitive, e.g. GL_TRIANGLES.
+     */
+    public void draw(int mode) {
+        draw(mode, indexCount);
+    }
+
+    /**
+     * Draw the first count indices.
+     */
+    public void draw(int mode, int count) {
+        bind();
+        gles.glDrawElements(mode, count, GL_UNSIGNED_SHORT, 0);
+    }
+
+    /**
+     * Draw all the indices instanceCount times. Only on an ES 3.0 context.
+     */
+    public void drawInstanced(int mode, int instanceCount) {
+        bind();
+        gles.glDrawElementsInstanced(mode, indexCount, GL_UNSIGNED_SHORT, 0, instanceCount);
+    }
+
+    /**
+     * Free the index buffer. It will be uploaded again if it's used after this.
+     */
+    public void release() {
+        if (bufferGeneration == GlContext.getGeneration()) {
+            gles.glDeleteBuffers(1, bufferIds, 0);
+        }
+        bufferIds[0] = 0;
+        bufferGeneration = 0;
+    }
+}
@@ -0,0 +1,229 @@
+package net.ghosttrails.openglplayground.data;
+
+import net.ghosttrails.openglplayground.gl.GlContext;
+import net.ghosttrails.openglplayground.gl.Gles;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static android.opengl.GLES20.GL_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_FLOAT;
+import static android.opengl.GLES20.GL_STREAM_DRAW;
+import static net.ghosttrails.openglplayground.data.Constants.BYTES_PER_FLOAT;
+
+/**
+ * A vertex buffer for geometry that changes every frame, e.g. trails, debug lines or HUD quads.
+ *
+ * One large buffer object is shared out as a ring: each write() copies the data into the next
+ * free range and returns its offset, to draw from with setVertexAttribPointer(). Ranges are
+ * never written again until the ring wraps, and when it does the buffer's storage is orphaned
+ * (respecified with glBufferData and no data) first, so the driver gives us fresh memory
+ * instead of waiting for the GPU to finish with the old ranges. Data is copied through a single
+ * preallocated direct buffer, so nothing is allocated per frame.
+ *
+ * An offset returned by write() is only good until a later write wraps the ring, as that
+ * gives the buffer new storage and the old ranges' data is gone. Data drawn together from
+ * several writes has to be reserve()d first, so it all lands in the same storage.
+ *
+ * Wrapping more than once in a frame means the buffer is too small for a frame's data; that
+ * keeps several orphaned copies alive at once, which is when drivers are likely to block, so it
+ * is counted separately.
+ */
+
+public class StreamingVertexBuffer {
+
+    private final Gles gles;
+    private int capacityBytes;
+    private FloatBuffer staging;
+
+    private final int[] bufferIds = new int[1];
+    private int bufferGeneration = 0;
+    private int writeOffsetBytes = 0;
+    private boolean wrappedThisFrame = false;
+
+    // Counters.
+    private long bytesStreamed = 0;
+    private long writes = 0;
+    private long frames = 0;
+    private long wraps = 0;
+    private long extraWraps = 0;
+    private long growths = 0;
+
+    /**
+     * @param capacityBytes size of the ring; a few frames' worth of data.
+     */
+    public StreamingVertexBuffer(Gles gles, int capacityBytes) {
+        this.gles = gles;
+        this.capacityBytes = roundUpToFloats(capacityBytes);
+        staging = allocateStaging(this.capacityBytes);
+    }
+
+    private static int roundUpToFloats(int bytes) {
+        return (bytes + BYTES_PER_FLOAT - 1) / BYTES_PER_FLOAT * BYTES_PER_FLOAT;
+    }
+
+    private static FloatBuffer allocateStaging(int bytes) {
+        return ByteBuffer
+                .allocateDirect(bytes)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+    }
+
+    /**
+     * Call at the start of each frame, before any writes.
+     */
+    public void beginFrame() {
+        frames++;
+        wrappedThisFrame = false;
+    }
+
+    /**
+     * Make sure the next writes, of up to this many bytes in all, fit in the buffer's current
+     * storage, wrapping the ring now if they wouldn't. Then none of them invalidates the
+     * others' offsets. Leaves the buffer bound to GL_ARRAY_BUFFER.
+     */
+    public void reserve(int bytes) {
+        if (bytes > capacityBytes) {
+            grow(bytes);
+        }
+        bind();
+        if (writeOffsetBytes + bytes > capacityBytes) {
+            orphan();
+            wraps++;
+            if (wrappedThisFrame) {
+                extraWraps++;
+            }
+            wrappedThisFrame = true;
+        }
+    }
+
+    /**
+     * Copy vertex data into the buffer. Leaves the buffer bound to GL_ARRAY_BUFFER.
+     * @return byte offset of the data in the buffer; only good until a later write wraps the
+     * ring (see reserve()).
+     */
+    public int write(float[] data, int offset, int floatCount) {
+        final int bytes = floatCount * BYTES_PER_FLOAT;
+        reserve(bytes);
+
+        staging.position(0);
+        staging.put(data, offset, floatCount);
+        staging.position(0);
+        final int start = writeOffsetBytes;
+        gles.glBufferSubData(GL_ARRAY_BUFFER, start, bytes, staging);
+
+        writeOffsetBytes += bytes;
+        bytesStreamed += bytes;
+        writes++;
+        return start;
+    }
+
+    /**
+     * Point an attribute at data returned by write().
+     * @param byteOffset offset returned by write(), plus the attribute's offset in the vertex.
+     * @param stride bytes from one vertex to the next; 0 if tightly packed.
+     */
+    public void setVertexAttribPointer(int byteOffset, int attributeLocation,
+                                       int componentCount, int stride) {
+        bind();
+        gles.glVertexAttribPointer(attributeLocation, componentCount, GL_FLOAT,
+                false, stride, byteOffset);
+        gles.glEnableVertexAttribArray(attributeLocation);
+    }
+
+    /**
+     * Bind the buffer to GL_ARRAY_BUFFER, creating it first if needed.
+     */
+    public void bind() {
+        if (bufferGeneration != GlContext.getGeneration()) {
+            gles.glGenBuffers(1, bufferIds, 0);
+            gles.glBindBuffer(GL_ARRAY_BUFFER, bufferIds[0]);
+            orphan();
+            bufferGeneration = GlContext.getGeneration();
+        } else {
+            gles.glBindBuffer(GL_ARRAY_BUFFER, bufferIds[0]);
+        }
+    }
+
+    /**
+     * Give the bound buffer new storage and start again at the beginning.
+     */
+    private void orphan() {
+        gles.glBufferData(GL_ARRAY_BUFFER, capacityBytes, null, GL_STREAM_DRAW);
+        writeOffsetBytes = 0;
+    }
+
+    private void grow(int bytes) {
+        int newCapacity = capacityBytes;
+        while (newCapacity < bytes) {
+            newCapacity *= 2;
+        }
+        capacityBytes = newCapacity;
+        staging = allocateStaging(capacityBytes);
+        // The bigger storage is allocated by the orphan on the next write.
+        writeOffsetBytes = capacityBytes;
+        growths++;
+    }
+
+    /**
+     * Free the buffer object. It will be created again if the buffer is used after this.
+     */
+    public void release() {
+        if (bufferGeneration == GlContext.getGeneration()) {
+            gles.glDeleteBuffers(1, bufferIds, 0);
+        }
+        bufferIds[0] = 0;
+        bufferGeneration = 0;
+        writeOffsetBytes = 0;
+    }
+
+    public int getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    public long getBytesStreamed() {
+        return bytesStreamed;
+    }
+
+    public long getWrites() {
+        return writes;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return number of times the ring wrapped, orphaning the buffer's storage.
+     */
+    public long getWraps() {
+        return wraps;
+    }
+
+    /**
+     * @return number of wraps beyond the first in a frame. Each is a likely stall, though
+     * whether the driver actually blocks isn't known here; if this isn't zero the buffer should
+     * be bigger.
+     */
+    public long getExtraWraps() {
+        return extraWraps;
+    }
+
+    /**
+     * @return number of times a single write or reservation was bigger than the whole buffer,
+     * so it grew.
+     */
+    public long getGrowths() {
+        return growths;
+    }
+
+    public void resetCounters() {
+        bytesStreamed = 0;
+        writes = 0;
+        frames = 0;
+        wraps = 0;
+        extraWraps = 0;
+        growths = 0;
+    }
+}
@@ -1,37 +1,124 @@
 package net.ghosttrails.openglplayground.data;
 
+import net.ghosttrails.openglplayground.gl.GlContext;
+import net.ghosttrails.openglplayground.gl.Gles;
+
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
 
+import static android.opengl.GLES20.GL_ARRAY_BUFFER;
 import static android.opengl.GLES20.GL_FLOAT;
-import static android.opengl.GLES20.glEnableVertexAttribArray;
-import static android.opengl.GLES20.glVertexAttribPointer;
+import static android.opengl.GLES20.GL_STATIC_DRAW;
 import static net.ghosttrails.openglplayground.data.Constants.BYTES_PER_FLOAT;
 
 /**
  * Base class for vertex data
+ *
+ * The data is uploaded to a vertex buffer object the first time it's used, and drawn from
+ * there, so the driver doesn't copy it from client memory on every draw. A copy is kept in
+ * client memory so it can be uploaded again if the GL context is lost.
+ *
+ * The data is either plain floats, or vertices packed by VertexEncoder to a VertexLayout.
  */
 
 public class VertexArray {
 
-    private final FloatBuffer floatBuffer;
+    private final Gles gles;
+    private final Buffer data;
+    private final int sizeInBytes;
+    private final int usage;
+
+    private final int[] bufferIds = new int[1];
+    // Context generation the buffer was created in; 0 if there isn't one.
+    private int bufferGeneration = 0;
 
-    public VertexArray(float[] vertexData) {
-        floatBuffer = ByteBuffer
-                .allocateDirect(vertexData.length * BYTES_PER_FLOAT)
+    public VertexArray(Gles gles, float[] vertexData) {
+        this(gles, vertexData, GL_STATIC_DRAW);
+    }
+
+    /**
+     * @param usage buffer usage hint, e.g. GL_STATIC_DRAW for geometry that never changes.
+     */
+    public VertexArray(Gles gles, float[] vertexData, int usage) {
+        this.gles = gles;
+        this.usage = usage;
+        sizeInBytes = vertexData.length * BYTES_PER_FLOAT;
+        data = ByteBuffer
+                .allocateDirect(sizeInBytes)
                 .order(ByteOrder.nativeOrder())
                 .asFloatBuffer()
-                .put(vertexData);
+                .put(vertexData)
+                .position(0);
     }
 
+    public VertexArray(Gles gles, VertexEncoder.PackedVertices vertices) {
+        this(gles, vertices, GL_STATIC_DRAW);
+    }
+
+    public VertexArray(Gles gles, VertexEncoder.PackedVertices vertices, int usage) {
+        this.gles = gles;
+        this.usage = usage;
+        sizeInBytes = vertices.getSizeInBytes();
+        data = vertices.data;
+    }
+
+    public int getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * @param dataOffset offset of the attribute's first component, in floats.
+     * @param stride bytes from one vertex to the next; 0 if tightly packed.
+     */
     public void setVertexAttribPointer(int dataOffset, int attributeLocation, int componentCount,
                                        int stride) {
-        floatBuffer.position(dataOffset);
-        glVertexAttribPointer(attributeLocation, componentCount, GL_FLOAT,
-                false, stride, floatBuffer);
-        glEnableVertexAttribArray(attributeLocation);
+        bind();
+        gles.glVertexAttribPointer(attributeLocation, componentCount, GL_FLOAT,
+                false, stride, dataOffset * BYTES_PER_FLOAT);
+        gles.glEnableVertexAttribArray(attributeLocation);
+    }
+
+    /**
+     * Point an attribute at packed vertex data.
+     * @param attributeIndex which of the layout's attributes.
+     */
+    public void setVertexAttribPointer(VertexLayout layout, int attributeIndex,
+                                       int attributeLocation) {
+        final VertexLayout.Attribute attribute = layout.getAttribute(attributeIndex);
+        bind();
+        gles.glVertexAttribPointer(attributeLocation, attribute.componentCount, attribute.type,
+                attribute.normalized, layout.getStride(), attribute.offset);
+        gles.glEnableVertexAttribArray(attributeLocation);
+    }
+
+    /**
+     * Bind the vertex buffer to GL_ARRAY_BUFFER, uploading it first if needed.
+     */
+    public void bind() {
+        if (bufferGeneration != GlContext.getGeneration()) {
+            upload();
+        }
+        gles.glBindBuffer(GL_ARRAY_BUFFER, bufferIds[0]);
+    }
+
+    private void upload() {
+        gles.glGenBuffers(1, bufferIds, 0);
+        gles.glBindBuffer(GL_ARRAY_BUFFER, bufferIds[0]);
+        gles.glBufferData(GL_ARRAY_BUFFER, sizeInBytes, data, usage);
+        bufferGeneration = GlContext.getGeneration();
+    }
 
-        floatBuffer.position(0);
+    /**
+     * Free the vertex buffer. It will be uploaded again if the array is used after this.
+     */
+    public void release() {
+        // A buffer from a lost context has gone already, and its name may now belong to
+        // something else.
+        if (bufferGeneration == GlContext.getGeneration()) {
+            gles.glDeleteBuffers(1, bufferIds, 0);
+        }
+        bufferIds[0] = 0;
+        bufferGeneration = 0;
     }
 }
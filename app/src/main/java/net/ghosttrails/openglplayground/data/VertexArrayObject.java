@@ -0,0 +1,216 @@
+package net.ghosttrails.openglplayground.data;
+
+import net.ghosttrails.openglplayground.gl.GlContext;
+import net.ghosttrails.openglplayground.gl.Gles;
+
+/**
+ * The vertex attribute arrays (and index buffer) one object is drawn with, set up once and
+ * restored with a single bind(), instead of a glVertexAttribPointer() and
+ * glEnableVertexAttribArray() per attribute on every draw.
+ *
+ * On an ES 3.0 context it's a real vertex array object: the bindings are recorded into it the
+ * first time it's bound, and every bind after that is one glBindVertexArray(). On ES 2.0 it's
+ * emulated: binding it sets the attributes up again, unless it was the last one bound, in which
+ * case they're still set up. With a CachingGles, the calls that wouldn't change anything are
+ * dropped there too.
+ *
+ * Either way, all attribute setup has to go through these while any are in use: code that sets
+ * attributes up itself must call unbind() first, or it would change (or be undone by) whichever
+ * one is bound.
+ */
+
+public class VertexArrayObject {
+
+    private static final int MAX_ATTRIBUTES = 16;
+    // Calls to set up each attribute: bind its buffer, point at it, and enable it.
+    private static final int CALLS_PER_ATTRIBUTE = 3;
+
+    // The emulated vertex array object that's set up now, and in which context.
+    private static VertexArrayObject emulatedBound = null;
+    private static int emulatedBoundGeneration = 0;
+
+    // Counters, over all vertex array objects.
+    private static long binds = 0;
+    private static long savedCalls = 0;
+
+    private final Gles gles;
+
+    private final VertexArray[] arrays = new VertexArray[MAX_ATTRIBUTES];
+    private final VertexLayout[] layouts = new VertexLayout[MAX_ATTRIBUTES];
+    private final int[] attributeIndices = new int[MAX_ATTRIBUTES];
+    private final int[] locations = new int[MAX_ATTRIBUTES];
+    private int attributeCount = 0;
+    private IndexBuffer indexBuffer = null;
+
+    private final int[] arrayIds = new int[1];
+    // Context generation the vertex array object was created in; 0 if there isn't one.
+    private int arrayGeneration = 0;
+    // Whether the vertex array object holds the attributes as they are now.
+    private boolean recorded = false;
+
+    public VertexArrayObject(Gles gles) {
+        this.gles = gles;
+    }
+
+    /**
+     * Draw an attribute from packed vertex data.
+     * @param attributeIndex which of the layout's attributes.
+     * @param attributeLocation the program's location for the attribute.
+     */
+    public void addAttribute(VertexArray array, VertexLayout layout, int attributeIndex,
+                             int attributeLocation) {
+        if (attributeCount == MAX_ATTRIBUTES) {
+            throw new IllegalStateException("Too many vertex attributes");
+        }
+        arrays[attributeCount] = array;
+        layouts[attributeCount] = layout;
+        attributeIndices[attributeCount] = attributeIndex;
+        locations[attributeCount] = attributeLocation;
+        attributeCount++;
+        recorded = false;
+    }
+
+    /**
+     * Draw with these indices, so binding this also binds them.
+     */
+    public void setIndexBuffer(IndexBuffer indexBuffer) {
+        this.indexBuffer = indexBuffer;
+        recorded = false;
+    }
+
+    /**
+     * Forget the attributes and index buffer, e.g. to add them again for a different program.
+     */
+    public void clear() {
+        for (int i = 0; i < attributeCount; i++) {
+            arrays[i] = null;
+            layouts[i] = null;
+        }
+        attributeCount = 0;
+        indexBuffer = null;
+        recorded = false;
+    }
+
+    public int getAttributeCount() {
+        return attributeCount;
+    }
+
+    /**
+     * @return the number of calls it takes to set the attributes up without this.
+     */
+    public int getSetupCallCount() {
+        return attributeCount * CALLS_PER_ATTRIBUTE + (indexBuffer != null ? 1 : 0);
+    }
+
+    /**
+     * Make these the attributes (and index buffer) to draw with.
+     */
+    public void bind() {
+        binds++;
+        if (GlContext.supportsVertexArrayObjects()) {
+            bindVertexArrayObject();
+        } else {
+            bindEmulated();
+        }
+    }
+
+    private void bindVertexArrayObject() {
+        if (arrayGeneration != GlContext.getGeneration()) {
+            gles.glGenVertexArrays(1, arrayIds, 0);
+            arrayGeneration = GlContext.getGeneration();
+            recorded = false;
+        }
+        gles.glBindVertexArray(arrayIds[0]);
+        if (recorded) {
+            savedCalls += getSetupCallCount() - 1;
+        } else {
+            setUp();
+            recorded = true;
+        }
+    }
+
+    private void bindEmulated() {
+        final VertexArrayObject previous =
+                emulatedBoundGeneration == GlContext.getGeneration() ? emulatedBound : null;
+        if (previous == this && recorded) {
+            savedCalls += getSetupCallCount();
+            return;
+        }
+        if (previous != null) {
+            // Turn off what the last one used and this one doesn't, so nothing is read from
+            // arrays that aren't meant to be drawn.
+            for (int i = 0; i < previous.attributeCount; i++) {
+                if (!hasLocation(previous.locations[i])) {
+                    gles.glDisableVertexAttribArray(previous.locations[i]);
+                }
+            }
+        }
+        setUp();
+        recorded = true;
+        emulatedBound = this;
+        emulatedBoundGeneration = GlContext.getGeneration();
+    }
+
+    private boolean hasLocation(int location) {
+        for (int i = 0; i < attributeCount; i++) {
+            if (locations[i] == location) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void setUp() {
+        for (int i = 0; i < attributeCount; i++) {
+            arrays[i].setVertexAttribPointer(layouts[i], attributeIndices[i], locations[i]);
+        }
+        if (indexBuffer != null) {
+            indexBuffer.bind();
+        }
+    }
+
+    /**
+     * Stop using vertex array objects, before setting attributes up directly.
+     */
+    public static void unbind(Gles gles) {
+        if (GlContext.supportsVertexArrayObjects()) {
+            gles.glBindVertexArray(0);
+        }
+        emulatedBound = null;
+    }
+
+    /**
+     * Free the vertex array object. It will be set up again if it's used after this.
+     */
+    public void release() {
+        if (arrayGeneration == GlContext.getGeneration()) {
+            gles.glDeleteVertexArrays(1, arrayIds, 0);
+        }
+        if (emulatedBound == this) {
+            emulatedBound = null;
+        }
+        arrayIds[0] = 0;
+        arrayGeneration = 0;
+        recorded = false;
+    }
+
+    /**
+     * @return number of times any vertex array object was bound since the counters were reset.
+     */
+    public static long getBinds() {
+        return binds;
+    }
+
+    /**
+     * @return number of attribute and index buffer setup calls binds have saved, net of the
+     * glBindVertexArray() calls, since the counters were reset.
+     */
+    public static long getSavedCalls() {
+        return savedCalls;
+    }
+
+    public static void resetCounters() {
+        binds = 0;
+        savedCalls = 0;
+    }
+}
@@ -0,0 +1,226 @@
+package net.ghosttrails.openglplayground.data;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static android.opengl.GLES20.GL_BYTE;
+import static android.opengl.GLES20.GL_FLOAT;
+import static android.opengl.GLES20.GL_SHORT;
+import static android.opengl.GLES20.GL_UNSIGNED_BYTE;
+import static android.opengl.GLES20.GL_UNSIGNED_SHORT;
+import static net.ghosttrails.openglplayground.data.Constants.BYTES_PER_FLOAT;
+import static net.ghosttrails.openglplayground.data.VertexLayout.GL_HALF_FLOAT_OES;
+
+/**
+ * Packs float vertex data into the smaller types described by a VertexLayout, e.g. positions
+ * as normalized shorts or half floats, and measures how much precision that loses.
+ *
+ * Normalized values outside the type's range ([-1, 1] signed, [0, 1] unsigned) are clamped, so
+ * geometry to be packed that way has to fit; the error reported shows if it doesn't. Errors are
+ * measured against the ES 3.0 conversion rules. ES 2.0 maps signed normalized values slightly
+ * differently, which can add up to another half step.
+ */
+
+public class VertexEncoder {
+
+    public static class PackedVertices {
+        // Direct, in native order, ready to upload.
+        public final ByteBuffer data;
+        public final int vertexCount;
+        public final VertexLayout layout;
+        // Largest difference between a component and its packed value.
+        public final float maxError;
+
+        PackedVertices(ByteBuffer data, int vertexCount, VertexLayout layout, float maxError) {
+            this.data = data;
+            this.vertexCount = vertexCount;
+            this.layout = layout;
+            this.maxError = maxError;
+        }
+
+        public int getSizeInBytes() {
+            return vertexCount * layout.getStride();
+        }
+
+        /**
+         * @return what the same vertices take as tightly packed floats.
+         */
+        public int getUnpackedSizeInBytes() {
+            return vertexCount * layout.getComponentCount() * BYTES_PER_FLOAT;
+        }
+    }
+
+    /**
+     * @param vertexData every attribute's components for the first vertex, in the layout's
+     *                   order, then the next vertex, and so on.
+     */
+    public static PackedVertices encode(VertexLayout layout, float[] vertexData) {
+        final int componentsPerVertex = layout.getComponentCount();
+        final int vertexCount = vertexData.length / componentsPerVertex;
+        final int stride = layout.getStride();
+        final ByteBuffer data = ByteBuffer
+                .allocateDirect(vertexCount * stride)
+                .order(ByteOrder.nativeOrder());
+
+        float maxError = 0f;
+        int source = 0;
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            for (int a = 0; a < layout.getAttributeCount(); a++) {
+                final VertexLayout.Attribute attribute = layout.getAttribute(a);
+                final int componentBytes = VertexLayout.bytesPerComponent(attribute.type);
+                int position = vertex * stride + attribute.offset;
+                for (int c = 0; c < attribute.componentCount; c++) {
+                    final float value = vertexData[source++];
+                    final float packed = put(data, position, value, attribute.type,
+                            attribute.normalized);
+                    maxError = Math.max(maxError, Math.abs(packed - value));
+                    position += componentBytes;
+                }
+            }
+        }
+        data.position(0);
+        return new PackedVertices(data, vertexCount, layout, maxError);
+    }
+
+    /**
+     * Repeat some vertices, adding an instance index to each copy, for drawing several
+     * instances in one draw call without instancing. The layout of the result is the first
+     * attribute of the original, then the index as an unsigned byte.
+     * @param copies how many copies; at most 256.
+     */
+    public static PackedVertices repeatWithInstanceIndex(PackedVertices vertices, int copies) {
+        if (copies > 256) {
+            throw new IllegalArgumentException("Instance indices only go up to 255");
+        }
+        final VertexLayout.Attribute attribute = vertices.layout.getAttribute(0);
+        final VertexLayout layout = new VertexLayout.Builder()
+                .add(attribute.componentCount, attribute.type, attribute.normalized)
+                .add(1, GL_UNSIGNED_BYTE, false)
+                .build();
+        final int sourceStride = vertices.layout.getStride();
+        final int stride = layout.getStride();
+        final int attributeBytes = attribute.getSizeInBytes();
+        final int indexOffset = layout.getAttribute(1).offset;
+        final int vertexCount = vertices.vertexCount * copies;
+        final ByteBuffer data = ByteBuffer
+                .allocateDirect(vertexCount * stride)
+                .order(ByteOrder.nativeOrder());
+
+        for (int copy = 0; copy < copies; copy++) {
+            for (int vertex = 0; vertex < vertices.vertexCount; vertex++) {
+                final int source = vertex * sourceStride + attribute.offset;
+                final int target = (copy * vertices.vertexCount + vertex) * stride;
+                for (int i = 0; i < attributeBytes; i++) {
+                    data.put(target + i, vertices.data.get(source + i));
+                }
+                data.put(target + indexOffset, (byte) copy);
+            }
+        }
+        return new PackedVertices(data, vertexCount, layout, vertices.maxError);
+    }
+
+    /**
+     * Write one component.
+     * @return the value it will be read back as.
+     */
+    private static float put(ByteBuffer data, int position, float value, int type,
+                             boolean normalized) {
+        switch (type) {
+            case GL_FLOAT:
+                data.putFloat(position, value);
+                return value;
+            case GL_HALF_FLOAT_OES: {
+                final short half = toHalfFloat(value);
+                data.putShort(position, half);
+                return fromHalfFloat(half);
+            }
+            case GL_SHORT: {
+                final float scale = normalized ? 32767f : 1f;
+                final short packed = (short) Math.round(
+                        clamp(value * scale, -32767f, 32767f));
+                data.putShort(position, packed);
+                return packed / scale;
+            }
+            case GL_UNSIGNED_SHORT: {
+                final float scale = normalized ? 65535f : 1f;
+                final int packed = Math.round(clamp(value * scale, 0f, 65535f));
+                data.putShort(position, (short) packed);
+                return packed / scale;
+            }
+            case GL_BYTE: {
+                final float scale = normalized ? 127f : 1f;
+                final byte packed = (byte) Math.round(clamp(value * scale, -127f, 127f));
+                data.put(position, packed);
+                return packed / scale;
+            }
+            case GL_UNSIGNED_BYTE: {
+                final float scale = normalized ? 255f : 1f;
+                final int packed = Math.round(clamp(value * scale, 0f, 255f));
+                data.put(position, (byte) packed);
+                return packed / scale;
+            }
+            default:
+                throw new IllegalArgumentException("Unsupported vertex attribute type " + type);
+        }
+    }
+
+    private static float clamp(float value, float min, float max) {
+        return Math.min(max, Math.max(value, min));
+    }
+
+    /**
+     * Convert to an IEEE 754 half precision float, rounding to nearest even.
+     */
+    public static short toHalfFloat(float value) {
+        final int bits = Float.floatToRawIntBits(value);
+        final int sign = (bits >>> 16) & 0x8000;
+        final int exponent = ((bits >>> 23) & 0xff) - 127 + 15;
+        int mantissa = bits & 0x7fffff;
+
+        if (exponent == 0xff - 127 + 15) {
+            // Infinity stays infinity; NaN stays NaN.
+            return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        if (exponent >= 0x1f) {
+            // Too big; infinity.
+            return (short) (sign | 0x7c00);
+        }
+        if (exponent <= 0) {
+            // Too small for a normal half; make a subnormal, or zero.
+            if (exponent < -10) {
+                return (short) sign;
+            }
+            mantissa |= 0x800000;
+            final int shift = 14 - exponent;
+            return (short) (sign | roundShift(mantissa, shift));
+        }
+        // Rounding up may carry into the exponent, which is still the right answer.
+        return (short) (sign | roundShift((exponent << 23) | mantissa, 13));
+    }
+
+    private static int roundShift(int value, int shift) {
+        final int result = value >> shift;
+        final int remainder = value & ((1 << shift) - 1);
+        final int halfway = 1 << (shift - 1);
+        if (remainder > halfway || (remainder == halfway && (result & 1) != 0)) {
+            return result + 1;
+        }
+        return result;
+    }
+
+    public static float fromHalfFloat(short half) {
+        final int bits = half & 0xffff;
+        final int sign = (bits & 0x8000) << 16;
+        final int exponent = (bits >>> 10) & 0x1f;
+        final int mantissa = bits & 0x3ff;
+        if (exponent == 0) {
+            // Subnormal, or zero.
+            final float magnitude = mantissa / (float) (1 << 24);
+            return sign != 0 ? -magnitude : magnitude;
+        }
+        if (exponent == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+}
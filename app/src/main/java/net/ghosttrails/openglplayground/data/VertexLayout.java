@@ -0,0 +1,125 @@
+package net.ghosttrails.openglplayground.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static android.opengl.GLES20.GL_BYTE;
+import static android.opengl.GLES20.GL_FLOAT;
+import static android.opengl.GLES20.GL_SHORT;
+import static android.opengl.GLES20.GL_UNSIGNED_BYTE;
+import static android.opengl.GLES20.GL_UNSIGNED_SHORT;
+
+/**
+ * Describes how the attributes of one vertex are packed into a buffer: the component count,
+ * type and byte offset of each attribute, and the stride from one vertex to the next.
+ *
+ * Each attribute starts on a 4 byte boundary, and the stride is a multiple of 4, as GPUs fetch
+ * attributes fastest that way.
+ */
+
+public class VertexLayout {
+
+    // Half floats as vertex attributes need OES_vertex_half_float on ES 2.0; the ES 3.0
+    // GL_HALF_FLOAT is 0x140B.
+    public static final int GL_HALF_FLOAT_OES = 0x8D61;
+
+    private static final int ALIGNMENT = 4;
+
+    public static class Attribute {
+        public final int componentCount;
+        public final int type;
+        public final boolean normalized;
+        // Bytes from the start of the vertex.
+        public final int offset;
+
+        Attribute(int componentCount, int type, boolean normalized, int offset) {
+            this.componentCount = componentCount;
+            this.type = type;
+            this.normalized = normalized;
+            this.offset = offset;
+        }
+
+        public int getSizeInBytes() {
+            return componentCount * bytesPerComponent(type);
+        }
+    }
+
+    public static class Builder {
+        private final List<Attribute> attributes = new ArrayList<>();
+        private int offset = 0;
+
+        /**
+         * Add the next attribute.
+         * @param type GL_FLOAT, GL_HALF_FLOAT_OES, GL_SHORT, GL_UNSIGNED_SHORT, GL_BYTE or
+         *             GL_UNSIGNED_BYTE.
+         * @param normalized whether integer values are mapped to [-1, 1] (signed) or [0, 1]
+         *                   (unsigned) rather than converted directly.
+         */
+        public Builder add(int componentCount, int type, boolean normalized) {
+            final Attribute attribute = new Attribute(componentCount, type, normalized, offset);
+            attributes.add(attribute);
+            offset = align(offset + attribute.getSizeInBytes());
+            return this;
+        }
+
+        public VertexLayout build() {
+            return new VertexLayout(attributes.toArray(new Attribute[attributes.size()]),
+                    offset);
+        }
+    }
+
+    private final Attribute[] attributes;
+    private final int stride;
+
+    private VertexLayout(Attribute[] attributes, int stride) {
+        this.attributes = attributes;
+        this.stride = stride;
+    }
+
+    private static int align(int bytes) {
+        return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    public static int bytesPerComponent(int type) {
+        switch (type) {
+            case GL_FLOAT:
+                return 4;
+            case GL_HALF_FLOAT_OES:
+            case GL_SHORT:
+            case GL_UNSIGNED_SHORT:
+                return 2;
+            case GL_BYTE:
+            case GL_UNSIGNED_BYTE:
+                return 1;
+            default:
+                throw new IllegalArgumentException("Unsupported vertex attribute type " + type);
+        }
+    }
+
+    public int getAttributeCount() {
+        return attributes.length;
+    }
+
+    public Attribute getAttribute(int index) {
+        return attributes[index];
+    }
+
+    /**
+     * @return bytes from one vertex to the next.
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * @return number of floats in one vertex of the unpacked data, i.e. all the attributes'
+     * components one after another.
+     */
+    public int getComponentCount() {
+        int count = 0;
+        for (Attribute attribute : attributes) {
+            count += attribute.componentCount;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,648 @@
+package net.ghosttrails.openglplayground.gl;
+
+import android.graphics.Bitmap;
+
+import java.nio.Buffer;
+import java.util.Arrays;
+
+import static android.opengl.GLES20.GL_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_ELEMENT_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_TEXTURE0;
+import static android.opengl.GLES20.GL_TEXTURE_2D;
+
+/**
+ * Keeps a copy of the GL state set through it, and drops calls that wouldn't change anything.
+ *
+ * Shadows the current program, the active texture unit and the 2D texture bound to each unit,
+ * the bound array and element array buffers, which vertex attribute arrays are enabled and
+ * where they point, the bound vertex array object, and the value of every uniform set on each
+ * program. Anything it doesn't know yet is passed through and remembered.
+ *
+ * The element array buffer binding and the attribute arrays belong to the bound vertex array
+ * object. The element array buffer is remembered for each vertex array object; the attribute
+ * arrays are forgotten whenever a different one is bound, as they're what it sets.
+ *
+ * The copy is only right if every state change goes through this object. Call invalidate()
+ * whenever that isn't so: when a new GL context is created, or after calling GL directly.
+ */
+
+public class CachingGles implements Gles {
+
+    private static final int UNKNOWN = -1;
+    private static final int MAX_TEXTURE_UNITS = 32;
+    private static final int MAX_VERTEX_ATTRIBS = 16;
+    private static final int FLOATS_PER_MATRIX = 16;
+
+    /**
+     * Values of the uniforms set on one program, by location. Values are compared by their bits.
+     */
+    private static class ProgramUniforms {
+        int[] values = new int[0];
+        boolean[] known = new boolean[0];
+
+        void ensureLocation(int location) {
+            if (location >= known.length) {
+                final int size = Math.max(location + 1, known.length * 2);
+                values = Arrays.copyOf(values, size * FLOATS_PER_MATRIX);
+                known = Arrays.copyOf(known, size);
+            }
+        }
+    }
+
+    private final Gles gl;
+
+    private int currentProgram = UNKNOWN;
+    private ProgramUniforms currentUniforms = null;
+    private ProgramUniforms[] uniformsByProgram = new ProgramUniforms[16];
+
+    private int activeTextureUnit = UNKNOWN;
+    private final int[] boundTextures2d = new int[MAX_TEXTURE_UNITS];
+
+    private int boundArrayBuffer = UNKNOWN;
+    private int boundElementArrayBuffer = UNKNOWN;
+
+    private int boundVertexArray = UNKNOWN;
+    // Element array buffer bound in each vertex array object, by name, when it's not bound.
+    private int[] elementArrayBuffersByVertexArray = new int[16];
+
+    private final int[] attribEnabled = new int[MAX_VERTEX_ATTRIBS];
+    private final boolean[] attribPointerKnown = new boolean[MAX_VERTEX_ATTRIBS];
+    // Where each attribute pointer points: either a client-side buffer, or an offset
+    // (in attribPointerPositions) into a buffer object.
+    private final Buffer[] attribPointerBuffers = new Buffer[MAX_VERTEX_ATTRIBS];
+    private final int[] attribPointerBufferObjects = new int[MAX_VERTEX_ATTRIBS];
+    private final int[] attribPointerPositions = new int[MAX_VERTEX_ATTRIBS];
+    private final int[] attribPointerSizes = new int[MAX_VERTEX_ATTRIBS];
+    private final int[] attribPointerTypes = new int[MAX_VERTEX_ATTRIBS];
+    private final boolean[] attribPointerNormalized = new boolean[MAX_VERTEX_ATTRIBS];
+    private final int[] attribPointerStrides = new int[MAX_VERTEX_ATTRIBS];
+
+    private long issuedCalls = 0;
+    private long skippedCalls = 0;
+
+    /**
+     * @param gl where the calls that do change something are sent.
+     */
+    public CachingGles(Gles gl) {
+        this.gl = gl;
+        invalidate();
+    }
+
+    /**
+     * Forget everything known about the GL state.
+     */
+    public void invalidate() {
+        currentProgram = UNKNOWN;
+        currentUniforms = null;
+        Arrays.fill(uniformsByProgram, null);
+        activeTextureUnit = UNKNOWN;
+        Arrays.fill(boundTextures2d, UNKNOWN);
+        boundArrayBuffer = UNKNOWN;
+        boundElementArrayBuffer = UNKNOWN;
+        boundVertexArray = UNKNOWN;
+        Arrays.fill(elementArrayBuffersByVertexArray, UNKNOWN);
+        forgetVertexAttribs();
+    }
+
+    private void forgetVertexAttribs() {
+        Arrays.fill(attribEnabled, UNKNOWN);
+        Arrays.fill(attribPointerKnown, false);
+        Arrays.fill(attribPointerBuffers, null);
+    }
+
+    /**
+     * @return number of calls passed on since the counters were reset.
+     */
+    public long getIssuedCalls() {
+        return issuedCalls;
+    }
+
+    /**
+     * @return number of calls dropped as redundant since the counters were reset.
+     */
+    public long getSkippedCalls() {
+        return skippedCalls;
+    }
+
+    public void resetCounters() {
+        issuedCalls = 0;
+        skippedCalls = 0;
+    }
+
+    private ProgramUniforms uniformsFor(int program) {
+        if (program >= uniformsByProgram.length) {
+            uniformsByProgram = Arrays.copyOf(uniformsByProgram,
+                    Math.max(program + 1, uniformsByProgram.length * 2));
+        }
+        ProgramUniforms uniforms = uniformsByProgram[program];
+        if (uniforms == null) {
+            uniforms = new ProgramUniforms();
+            uniformsByProgram[program] = uniforms;
+        }
+        return uniforms;
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        issuedCalls++;
+        gl.glClearColor(red, green, blue, alpha);
+    }
+
+    @Override
+    public void glClear(int mask) {
+        issuedCalls++;
+        gl.glClear(mask);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        issuedCalls++;
+        gl.glViewport(x, y, width, height);
+    }
+
+    @Override
+    public String glGetString(int name) {
+        issuedCalls++;
+        return gl.glGetString(name);
+    }
+
+    @Override
+    public void glGetIntegerv(int pname, int[] params, int offset) {
+        issuedCalls++;
+        gl.glGetIntegerv(pname, params, offset);
+    }
+
+    @Override
+    public int glCreateProgram() {
+        issuedCalls++;
+        return gl.glCreateProgram();
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        if (program == currentProgram) {
+            skippedCalls++;
+            return;
+        }
+        issuedCalls++;
+        gl.glUseProgram(program);
+        currentProgram = program;
+        currentUniforms = program > 0 ? uniformsFor(program) : null;
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        issuedCalls++;
+        gl.glDeleteProgram(program);
+        // The name may be handed out again, to a program whose uniforms are all still zero.
+        if (program > 0 && program < uniformsByProgram.length) {
+            uniformsByProgram[program] = null;
+        }
+        if (program == currentProgram) {
+            currentProgram = UNKNOWN;
+            currentUniforms = null;
+        }
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        issuedCalls++;
+        gl.glGetProgramiv(program, pname, params, offset);
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+        issuedCalls++;
+        gl.glProgramBinary(program, binaryFormat, binary, length);
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset,
+                                   int[] binaryFormat, int binaryFormatOffset, Buffer binary) {
+        issuedCalls++;
+        gl.glGetProgramBinary(program, bufSize, length, lengthOffset, binaryFormat,
+                binaryFormatOffset, binary);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        issuedCalls++;
+        return gl.glGetAttribLocation(program, name);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        issuedCalls++;
+        return gl.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        final ProgramUniforms uniforms = currentUniforms;
+        if (location < 0 || uniforms == null) {
+            // Location -1 is silently ignored by GL anyway.
+            issuedCalls++;
+            gl.glUniform1i(location, x);
+            return;
+        }
+        uniforms.ensureLocation(location);
+        final int base = location * FLOATS_PER_MATRIX;
+        if (uniforms.known[location] && uniforms.values[base] == x) {
+            skippedCalls++;
+            return;
+        }
+        issuedCalls++;
+        gl.glUniform1i(location, x);
+        uniforms.values[base] = x;
+        uniforms.known[location] = true;
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+        final ProgramUniforms uniforms = currentUniforms;
+        if (location < 0 || uniforms == null) {
+            issuedCalls++;
+            gl.glUniform4f(location, x, y, z, w);
+            return;
+        }
+        uniforms.ensureLocation(location);
+        final int base = location * FLOATS_PER_MATRIX;
+        final int[] values = uniforms.values;
+        final int xBits = Float.floatToRawIntBits(x);
+        final int yBits = Float.floatToRawIntBits(y);
+        final int zBits = Float.floatToRawIntBits(z);
+        final int wBits = Float.floatToRawIntBits(w);
+        if (uniforms.known[location] && values[base] == xBits && values[base + 1] == yBits
+                && values[base + 2] == zBits && values[base + 3] == wBits) {
+            skippedCalls++;
+            return;
+        }
+        issuedCalls++;
+        gl.glUniform4f(location, x, y, z, w);
+        values[base] = xBits;
+        values[base + 1] = yBits;
+        values[base + 2] = zBits;
+        values[base + 3] = wBits;
+        uniforms.known[location] = true;
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset) {
+        // Uniform arrays aren't shadowed; they span several locations.
+        if (currentUniforms != null && location >= 0) {
+            forgetUniforms(currentUniforms, location, count);
+        }
+        issuedCalls++;
+        gl.glUniform4fv(location, count, v, offset);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value,
+                                   int offset) {
+        final ProgramUniforms uniforms = currentUniforms;
+        if (location < 0 || uniforms == null || count != 1 || transpose) {
+            // Arrays of matrices aren't shadowed; they'd span several locations.
+            if (uniforms != null && location >= 0) {
+                forgetUniforms(uniforms, location, count);
+            }
+            issuedCalls++;
+            gl.glUniformMatrix4fv(location, count, transpose, value, offset);
+            return;
+        }
+        uniforms.ensureLocation(location);
+        final int base = location * FLOATS_PER_MATRIX;
+        final int[] values = uniforms.values;
+        boolean same = uniforms.known[location];
+        for (int i = 0; i < FLOATS_PER_MATRIX && same; i++) {
+            same = values[base + i] == Float.floatToRawIntBits(value[offset + i]);
+        }
+        if (same) {
+            skippedCalls++;
+            return;
+        }
+        issuedCalls++;
+        gl.glUniformMatrix4fv(location, count, transpose, value, offset);
+        for (int i = 0; i < FLOATS_PER_MATRIX; i++) {
+            values[base + i] = Float.floatToRawIntBits(value[offset + i]);
+        }
+        uniforms.known[location] = true;
+    }
+
+    private static void forgetUniforms(ProgramUniforms uniforms, int location, int count) {
+        for (int i = location; i < location + count && i < uniforms.known.length; i++) {
+            uniforms.known[i] = false;
+        }
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        final int unit = texture - GL_TEXTURE0;
+        if (unit == activeTextureUnit) {
+            skippedCalls++;
+            return;
+        }
+        issuedCalls++;
+        gl.glActiveTexture(texture);
+        activeTextureUnit = unit >= 0 && unit < MAX_TEXTURE_UNITS ? unit : UNKNOWN;
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        if (target == GL_TEXTURE_2D && activeTextureUnit != UNKNOWN) {
+            if (boundTextures2d[activeTextureUnit] == texture) {
+                skippedCalls++;
+                return;
+            }
+            boundTextures2d[activeTextureUnit] = texture;
+        }
+        issuedCalls++;
+        gl.glBindTexture(target, texture);
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        issuedCalls++;
+        gl.glGenTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset) {
+        issuedCalls++;
+        gl.glDeleteTextures(n, textures, offset);
+        // Deleting a bound texture binds 0 in its place.
+        for (int i = offset; i < offset + n; i++) {
+            for (int unit = 0; unit < MAX_TEXTURE_UNITS; unit++) {
+                if (boundTextures2d[unit] == textures[i]) {
+                    boundTextures2d[unit] = 0;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param) {
+        issuedCalls++;
+        gl.glTexParameteri(target, pname, param);
+    }
+
+    @Override
+    public void glGenerateMipmap(int target) {
+        issuedCalls++;
+        gl.glGenerateMipmap(target);
+    }
+
+    @Override
+    public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+        issuedCalls++;
+        gl.texImage2D(target, level, bitmap, border);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalformat, int width, int height,
+                             int border, int format, int type, Buffer pixels) {
+        issuedCalls++;
+        gl.glTexImage2D(target, level, internalformat, width, height, border, format, type,
+                pixels);
+    }
+
+    @Override
+    public void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width,
+                                int height, int format, int type, Buffer pixels) {
+        issuedCalls++;
+        gl.glTexSubImage2D(target, level, xoffset, yoffset, width, height, format, type,
+                pixels);
+    }
+
+    @Override
+    public void glCompressedTexImage2D(int target, int level, int internalformat, int width,
+                                       int height, int border, int imageSize, Buffer data) {
+        issuedCalls++;
+        gl.glCompressedTexImage2D(target, level, internalformat, width, height, border,
+                imageSize, data);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        issuedCalls++;
+        gl.glGenBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        issuedCalls++;
+        gl.glDeleteBuffers(n, buffers, offset);
+        for (int i = offset; i < offset + n; i++) {
+            final int buffer = buffers[i];
+            // Deleting a bound buffer binds 0 in its place.
+            if (boundArrayBuffer == buffer) {
+                boundArrayBuffer = 0;
+            }
+            if (boundElementArrayBuffer == buffer) {
+                boundElementArrayBuffer = 0;
+            }
+            // Vertex array objects that aren't bound keep the name, but it's no use to them.
+            for (int array = 0; array < elementArrayBuffersByVertexArray.length; array++) {
+                if (elementArrayBuffersByVertexArray[array] == buffer) {
+                    elementArrayBuffersByVertexArray[array] = UNKNOWN;
+                }
+            }
+            // A new buffer could get the same name, so don't trust pointers into this one.
+            for (int index = 0; index < MAX_VERTEX_ATTRIBS; index++) {
+                if (attribPointerBufferObjects[index] == buffer) {
+                    attribPointerKnown[index] = false;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        if (target == GL_ARRAY_BUFFER) {
+            if (boundArrayBuffer == buffer) {
+                skippedCalls++;
+                return;
+            }
+            boundArrayBuffer = buffer;
+        } else if (target == GL_ELEMENT_ARRAY_BUFFER) {
+            if (boundElementArrayBuffer == buffer) {
+                skippedCalls++;
+                return;
+            }
+            boundElementArrayBuffer = buffer;
+        }
+        issuedCalls++;
+        gl.glBindBuffer(target, buffer);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        issuedCalls++;
+        gl.glBufferData(target, size, data, usage);
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        issuedCalls++;
+        gl.glBufferSubData(target, offset, size, data);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized,
+                                      int stride, Buffer pointer) {
+        // A client-side pointer is the buffer's address plus its position; the contents are
+        // read at draw time, so the same buffer at the same position is the same pointer.
+        setAttribPointer(index, size, type, normalized, stride, pointer, 0, pointer.position());
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized,
+                                      int stride, int offset) {
+        // An offset is into whichever array buffer is bound now.
+        setAttribPointer(index, size, type, normalized, stride, null, boundArrayBuffer, offset);
+    }
+
+    private void setAttribPointer(int index, int size, int type, boolean normalized,
+                                  int stride, Buffer pointer, int bufferObject, int position) {
+        if (index < 0 || index >= MAX_VERTEX_ATTRIBS || bufferObject == UNKNOWN) {
+            issuedCalls++;
+            sendAttribPointer(index, size, type, normalized, stride, pointer, position);
+            if (index >= 0 && index < MAX_VERTEX_ATTRIBS) {
+                attribPointerKnown[index] = false;
+            }
+            return;
+        }
+        if (attribPointerKnown[index] && attribPointerBuffers[index] == pointer
+                && attribPointerBufferObjects[index] == bufferObject
+                && attribPointerPositions[index] == position
+                && attribPointerSizes[index] == size && attribPointerTypes[index] == type
+                && attribPointerNormalized[index] == normalized
+                && attribPointerStrides[index] == stride) {
+            skippedCalls++;
+            return;
+        }
+        issuedCalls++;
+        sendAttribPointer(index, size, type, normalized, stride, pointer, position);
+        attribPointerKnown[index] = true;
+        attribPointerBuffers[index] = pointer;
+        attribPointerBufferObjects[index] = bufferObject;
+        attribPointerPositions[index] = position;
+        attribPointerSizes[index] = size;
+        attribPointerTypes[index] = type;
+        attribPointerNormalized[index] = normalized;
+        attribPointerStrides[index] = stride;
+    }
+
+    private void sendAttribPointer(int index, int size, int type, boolean normalized,
+                                   int stride, Buffer pointer, int offset) {
+        if (pointer != null) {
+            gl.glVertexAttribPointer(index, size, type, normalized, stride, pointer);
+        } else {
+            gl.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+        }
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        setAttribEnabled(index, true);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        setAttribEnabled(index, false);
+    }
+
+    private void setAttribEnabled(int index, boolean enabled) {
+        final int state = enabled ? 1 : 0;
+        if (index >= 0 && index < MAX_VERTEX_ATTRIBS) {
+            if (attribEnabled[index] == state) {
+                skippedCalls++;
+                return;
+            }
+            attribEnabled[index] = state;
+        }
+        issuedCalls++;
+        if (enabled) {
+            gl.glEnableVertexAttribArray(index);
+        } else {
+            gl.glDisableVertexAttribArray(index);
+        }
+    }
+
+    @Override
+    public void glVertexAttribDivisor(int index, int divisor) {
+        issuedCalls++;
+        gl.glVertexAttribDivisor(index, divisor);
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        issuedCalls++;
+        gl.glDrawArrays(mode, first, count);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        issuedCalls++;
+        gl.glDrawElements(mode, count, type, offset);
+    }
+
+    @Override
+    public void glDrawElementsInstanced(int mode, int count, int type, int offset,
+                                        int instanceCount) {
+        issuedCalls++;
+        gl.glDrawElementsInstanced(mode, count, type, offset, instanceCount);
+    }
+
+    @Override
+    public void glGenVertexArrays(int n, int[] arrays, int offset) {
+        issuedCalls++;
+        gl.glGenVertexArrays(n, arrays, offset);
+    }
+
+    @Override
+    public void glBindVertexArray(int array) {
+        if (array == boundVertexArray) {
+            skippedCalls++;
+            return;
+        }
+        issuedCalls++;
+        gl.glBindVertexArray(array);
+        switchVertexArray(array);
+    }
+
+    private void switchVertexArray(int array) {
+        if (boundVertexArray != UNKNOWN) {
+            elementArrayBuffersFor(boundVertexArray)[boundVertexArray] = boundElementArrayBuffer;
+        }
+        boundElementArrayBuffer = elementArrayBuffersFor(array)[array];
+        boundVertexArray = array;
+        forgetVertexAttribs();
+    }
+
+    private int[] elementArrayBuffersFor(int array) {
+        if (array >= elementArrayBuffersByVertexArray.length) {
+            final int oldLength = elementArrayBuffersByVertexArray.length;
+            elementArrayBuffersByVertexArray = Arrays.copyOf(elementArrayBuffersByVertexArray,
+                    Math.max(array + 1, oldLength * 2));
+            Arrays.fill(elementArrayBuffersByVertexArray, oldLength,
+                    elementArrayBuffersByVertexArray.length, UNKNOWN);
+        }
+        return elementArrayBuffersByVertexArray;
+    }
+
+    @Override
+    public void glDeleteVertexArrays(int n, int[] arrays, int offset) {
+        issuedCalls++;
+        gl.glDeleteVertexArrays(n, arrays, offset);
+        for (int i = offset; i < offset + n; i++) {
+            final int array = arrays[i];
+            if (array == boundVertexArray) {
+                // Deleting the bound vertex array object binds 0 in its place.
+                switchVertexArray(0);
+            }
+            if (array > 0 && array < elementArrayBuffersByVertexArray.length) {
+                elementArrayBuffersByVertexArray[array] = UNKNOWN;
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package net.ghosttrails.openglplayground.gl;
+
+import android.opengl.ETC1Util;
+
+import static android.opengl.GLES20.GL_VERSION;
+
+/**
+ * Counts GL contexts, so objects that own GL resources can tell when theirs have been lost.
+ *
+ * Android destroys the EGL context (and every buffer, texture and program in it) when the app
+ * is paused on many devices. The renderer calls onContextCreated() from onSurfaceCreated(); an
+ * object that remembers the generation it created its resources in knows they're gone if the
+ * generation has changed since, and can create them again. Only use it on the GL thread.
+ *
+ * It also remembers which OpenGL ES version the current context is, for the features that
+ * depend on it.
+ */
+
+public class GlContext {
+
+    private static final String VERSION_PREFIX = "OpenGL ES ";
+
+    private static int generation = 1;
+    private static int majorVersion = 2;
+    // Asked for when first needed; 0 if it hasn't been asked in this context.
+    private static int etc1Generation = 0;
+    private static boolean etc1Supported = false;
+
+    /**
+     * Call when a new context has been created, before creating anything in it.
+     * @param gles the new context, to ask which version it is.
+     */
+    public static void onContextCreated(Gles gles) {
+        generation++;
+        majorVersion = parseMajorVersion(gles.glGetString(GL_VERSION));
+    }
+
+    /**
+     * @param version GL_VERSION string, e.g. "OpenGL ES 3.1 V@145.0".
+     * @return major version; 2 if the string can't be understood, as that's all we ask for.
+     */
+    static int parseMajorVersion(String version) {
+        if (version == null || !version.startsWith(VERSION_PREFIX)
+                || version.length() <= VERSION_PREFIX.length()) {
+            return 2;
+        }
+        final int major = Character.digit(version.charAt(VERSION_PREFIX.length()), 10);
+        return major >= 2 ? major : 2;
+    }
+
+    /**
+     * @return the current context's generation; never 0, so 0 can mean "no resources yet".
+     */
+    public static int getGeneration() {
+        return generation;
+    }
+
+    public static int getMajorVersion() {
+        return majorVersion;
+    }
+
+    /**
+     * @return whether the current context has vertex array objects, i.e. is ES 3.0 or later.
+     * They're also in ES 2.0 as OES_vertex_array_object, but Android has no Java binding for
+     * that extension.
+     */
+    public static boolean supportsVertexArrayObjects() {
+        return majorVersion >= 3;
+    }
+
+    /**
+     * @return whether the current context has instanced drawing, i.e. is ES 3.0 or later.
+     */
+    public static boolean supportsInstancing() {
+        return majorVersion >= 3;
+    }
+
+    /**
+     * @return whether the current context can sample ETC1 compressed textures. Nearly every
+     * Android device can, but it's an extension to ES 2.0.
+     */
+    public static boolean supportsEtc1() {
+        if (etc1Generation != generation) {
+            etc1Supported = ETC1Util.isETC1Supported();
+            etc1Generation = generation;
+        }
+        return etc1Supported;
+    }
+}
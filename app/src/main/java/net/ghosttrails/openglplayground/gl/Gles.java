@@ -0,0 +1,111 @@
+package net.ghosttrails.openglplayground.gl;
+
+import android.graphics.Bitmap;
+
+import java.nio.Buffer;
+
+/**
+ * The OpenGL ES calls the rendering code makes, so that they can be intercepted, e.g. to drop
+ * redundant state changes. Methods have the same names and arguments as their GLES20 (or
+ * GLUtils) equivalents.
+ *
+ * The vertex array object, instancing and program binary calls are GLES30's, so only make them
+ * on an OpenGL ES 3.0 context; see GlContext.supportsVertexArrayObjects() and
+ * supportsInstancing().
+ */
+
+public interface Gles {
+
+    void glClearColor(float red, float green, float blue, float alpha);
+
+    void glClear(int mask);
+
+    void glViewport(int x, int y, int width, int height);
+
+    String glGetString(int name);
+
+    void glGetIntegerv(int pname, int[] params, int offset);
+
+    int glCreateProgram();
+
+    void glUseProgram(int program);
+
+    void glDeleteProgram(int program);
+
+    void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+    void glProgramBinary(int program, int binaryFormat, Buffer binary, int length);
+
+    void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset,
+                            int[] binaryFormat, int binaryFormatOffset, Buffer binary);
+
+    int glGetAttribLocation(int program, String name);
+
+    int glGetUniformLocation(int program, String name);
+
+    void glUniform1i(int location, int x);
+
+    void glUniform4f(int location, float x, float y, float z, float w);
+
+    void glUniform4fv(int location, int count, float[] v, int offset);
+
+    void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value,
+                            int offset);
+
+    void glActiveTexture(int texture);
+
+    void glBindTexture(int target, int texture);
+
+    void glGenTextures(int n, int[] textures, int offset);
+
+    void glDeleteTextures(int n, int[] textures, int offset);
+
+    void glTexParameteri(int target, int pname, int param);
+
+    void glGenerateMipmap(int target);
+
+    void texImage2D(int target, int level, Bitmap bitmap, int border);
+
+    void glTexImage2D(int target, int level, int internalformat, int width, int height,
+                      int border, int format, int type, Buffer pixels);
+
+    void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width,
+                         int height, int format, int type, Buffer pixels);
+
+    void glCompressedTexImage2D(int target, int level, int internalformat, int width,
+                                int height, int border, int imageSize, Buffer data);
+
+    void glGenBuffers(int n, int[] buffers, int offset);
+
+    void glDeleteBuffers(int n, int[] buffers, int offset);
+
+    void glBindBuffer(int target, int buffer);
+
+    void glBufferData(int target, int size, Buffer data, int usage);
+
+    void glBufferSubData(int target, int offset, int size, Buffer data);
+
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride,
+                               Buffer pointer);
+
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride,
+                               int offset);
+
+    void glEnableVertexAttribArray(int index);
+
+    void glDisableVertexAttribArray(int index);
+
+    void glVertexAttribDivisor(int index, int divisor);
+
+    void glDrawArrays(int mode, int first, int count);
+
+    void glDrawElements(int mode, int count, int type, int offset);
+
+    void glDrawElementsInstanced(int mode, int count, int type, int offset, int instanceCount);
+
+    void glGenVertexArrays(int n, int[] arrays, int offset);
+
+    void glBindVertexArray(int array);
+
+    void glDeleteVertexArrays(int n, int[] arrays, int offset);
+}
@@ -0,0 +1,112 @@
+package net.ghosttrails.openglplayground.input;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free queue of touch samples, passed from the UI thread to the GL thread.
+ *
+ * It's a fixed-size single-producer/single-consumer ring of primitive arrays, so adding a sample
+ * never allocates or blocks. Exactly one thread may call offer() and exactly one thread may call
+ * drain(). If the GL thread falls so far behind that the ring fills up, new samples are dropped
+ * and counted.
+ */
+
+public class TouchEventQueue {
+
+    public static final int ACTION_DOWN = 0;
+    public static final int ACTION_MOVE = 1;
+    public static final int ACTION_UP = 2;
+
+    /**
+     * Receives samples from drain(), oldest first.
+     */
+    public interface Sink {
+        /**
+         * @param action one of the ACTION_ constants.
+         * @param normalizedX x in normalized device coordinates.
+         * @param normalizedY y in normalized device coordinates.
+         * @param timeNanos when the sample was taken, on the SystemClock.uptimeMillis() clock
+         *                  (the same monotonic clock as System.nanoTime() on Android).
+         */
+        void onTouchSample(int action, float normalizedX, float normalizedY, long timeNanos);
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final int[] actions;
+    private final float[] normalizedXs;
+    private final float[] normalizedYs;
+    private final long[] timesNanos;
+
+    // Total samples ever written and read. Each is only advanced by its own side, and published
+    // with lazySet so the other side sees the array writes that came before it.
+    private final AtomicLong writeIndex = new AtomicLong();
+    private final AtomicLong readIndex = new AtomicLong();
+
+    // Producer-side copy of readIndex, so offer() only reads the shared one when it looks full.
+    private long cachedReadIndex = 0;
+    private final AtomicLong droppedSamples = new AtomicLong();
+
+    /**
+     * @param capacity maximum samples held; rounded up to a power of two.
+     */
+    public TouchEventQueue(int capacity) {
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        actions = new int[size];
+        normalizedXs = new float[size];
+        normalizedYs = new float[size];
+        timesNanos = new long[size];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Add a sample. Producer thread only.
+     * @return false if the queue was full and the sample was dropped.
+     */
+    public boolean offer(int action, float normalizedX, float normalizedY, long timeNanos) {
+        final long write = writeIndex.get();
+        if (write - cachedReadIndex >= capacity) {
+            cachedReadIndex = readIndex.get();
+            if (write - cachedReadIndex >= capacity) {
+                droppedSamples.lazySet(droppedSamples.get() + 1);
+                return false;
+            }
+        }
+
+        final int slot = (int) write & mask;
+        actions[slot] = action;
+        normalizedXs[slot] = normalizedX;
+        normalizedYs[slot] = normalizedY;
+        timesNanos[slot] = timeNanos;
+        writeIndex.lazySet(write + 1);
+        return true;
+    }
+
+    /**
+     * Hand every queued sample to the sink, oldest first. Consumer thread only.
+     * @return the number of samples drained.
+     */
+    public int drain(Sink sink) {
+        final long read = readIndex.get();
+        final long write = writeIndex.get();
+        for (long i = read; i < write; i++) {
+            final int slot = (int) i & mask;
+            sink.onTouchSample(actions[slot], normalizedXs[slot], normalizedYs[slot],
+                    timesNanos[slot]);
+        }
+        readIndex.lazySet(write);
+        return (int) (write - read);
+    }
+
+    /**
+     * @return samples dropped so far because the queue was full.
+     */
+    public long getDroppedSamples() {
+        return droppedSamples.get();
+    }
+}
@@ -0,0 +1,213 @@
+package net.ghosttrails.openglplayground.input;
+
+/**
+ * Predicts where a finger will be a short time in the future, to hide input latency.
+ *
+ * Velocity and acceleration are estimated from consecutive touch samples and smoothed, then
+ * extrapolated forwards. How far ahead it will predict and how far the prediction may stray from
+ * the last real sample are both capped, and prediction stops once the finger has gone still (no
+ * new samples), so the result falls back to the real position.
+ *
+ * Every prediction is remembered until real samples arrive for the time it was made for, and the
+ * distance between the two is recorded, so the error can be tuned against the latency saved.
+ * Positions are in whatever units the samples are given in; times are in nanoseconds.
+ */
+
+public class TouchPredictor {
+
+    // How much each new sample's velocity/acceleration counts towards the smoothed estimate.
+    private static final float VELOCITY_SMOOTHING = 0.5f;
+    private static final float ACCELERATION_SMOOTHING = 0.3f;
+    // Predictions waiting to be checked against real samples.
+    private static final int MAX_PENDING_PREDICTIONS = 16;
+
+    private final long maxHorizonNanos;
+    private final float maxDistance;
+    private final float accelerationWeight;
+
+    // Latest sample and the motion estimated from it.
+    private int sampleCount = 0;
+    private float lastX, lastY;
+    private long lastTimeNanos;
+    private float velocityX, velocityY;
+    private float accelerationX, accelerationY;
+
+    // Ring of predictions not yet checked.
+    private final long[] pendingTimeNanos = new long[MAX_PENDING_PREDICTIONS];
+    private final float[] pendingX = new float[MAX_PENDING_PREDICTIONS];
+    private final float[] pendingY = new float[MAX_PENDING_PREDICTIONS];
+    private int pendingStart = 0;
+    private int pendingCount = 0;
+
+    // Error statistics.
+    private int errorCount = 0;
+    private double errorSum = 0;
+    private double errorSumOfSquares = 0;
+    private float maxError = 0f;
+
+    /**
+     * @param maxHorizonNanos furthest ahead of the last sample to predict.
+     * @param maxDistance furthest a prediction may be from the last sample.
+     * @param accelerationWeight how much of the estimated acceleration to use, from 0 (constant
+     *                           velocity) to 1. Acceleration estimates are noisy, so less than
+     *                           1 overshoots less.
+     */
+    public TouchPredictor(long maxHorizonNanos, float maxDistance, float accelerationWeight) {
+        this.maxHorizonNanos = maxHorizonNanos;
+        this.maxDistance = maxDistance;
+        this.accelerationWeight = accelerationWeight;
+    }
+
+    /**
+     * Forget the current gesture, e.g. when the finger goes down or up. Error statistics are kept.
+     */
+    public void reset() {
+        sampleCount = 0;
+        velocityX = velocityY = 0f;
+        accelerationX = accelerationY = 0f;
+        pendingCount = 0;
+    }
+
+    public void addSample(float x, float y, long timeNanos) {
+        if (sampleCount > 0) {
+            checkPendingPredictions(x, y, timeNanos);
+
+            final long dtNanos = timeNanos - lastTimeNanos;
+            if (dtNanos <= 0) {
+                // Same timestamp as the last one (touch times only have millisecond
+                // resolution); just take the newer position.
+                lastX = x;
+                lastY = y;
+                return;
+            }
+            final float dt = dtNanos / 1e9f;
+            final float newVelocityX = (x - lastX) / dt;
+            final float newVelocityY = (y - lastY) / dt;
+
+            if (sampleCount > 1) {
+                accelerationX += ACCELERATION_SMOOTHING
+                        * ((newVelocityX - velocityX) / dt - accelerationX);
+                accelerationY += ACCELERATION_SMOOTHING
+                        * ((newVelocityY - velocityY) / dt - accelerationY);
+                velocityX += VELOCITY_SMOOTHING * (newVelocityX - velocityX);
+                velocityY += VELOCITY_SMOOTHING * (newVelocityY - velocityY);
+            } else {
+                velocityX = newVelocityX;
+                velocityY = newVelocityY;
+            }
+        }
+
+        lastX = x;
+        lastY = y;
+        lastTimeNanos = timeNanos;
+        sampleCount++;
+    }
+
+    /**
+     * @return true if there's a sample to predict from.
+     */
+    public boolean hasSamples() {
+        return sampleCount > 0;
+    }
+
+    /**
+     * Predict the position at a given time.
+     * @param out receives x and y.
+     */
+    public void predict(long timeNanos, float[] out) {
+        long aheadNanos = timeNanos - lastTimeNanos;
+        if (sampleCount < 2 || aheadNanos <= 0 || aheadNanos > 2 * maxHorizonNanos) {
+            // Nothing to extrapolate from, or the finger has stopped moving (no samples for a
+            // while), so stick with the real position.
+            out[0] = lastX;
+            out[1] = lastY;
+            return;
+        }
+        aheadNanos = Math.min(aheadNanos, maxHorizonNanos);
+
+        final float t = aheadNanos / 1e9f;
+        final float halfTSquared = 0.5f * t * t * accelerationWeight;
+        float dx = velocityX * t + accelerationX * halfTSquared;
+        float dy = velocityY * t + accelerationY * halfTSquared;
+
+        // Don't let a bad estimate throw the prediction too far.
+        final float distance = (float) Math.sqrt(dx * dx + dy * dy);
+        if (distance > maxDistance) {
+            dx *= maxDistance / distance;
+            dy *= maxDistance / distance;
+        }
+
+        out[0] = lastX + dx;
+        out[1] = lastY + dy;
+        remember(lastTimeNanos + aheadNanos, out[0], out[1]);
+    }
+
+    private void remember(long timeNanos, float x, float y) {
+        if (pendingCount == MAX_PENDING_PREDICTIONS) {
+            // Drop the oldest.
+            pendingStart = (pendingStart + 1) % MAX_PENDING_PREDICTIONS;
+            pendingCount--;
+        }
+        final int slot = (pendingStart + pendingCount) % MAX_PENDING_PREDICTIONS;
+        pendingTimeNanos[slot] = timeNanos;
+        pendingX[slot] = x;
+        pendingY[slot] = y;
+        pendingCount++;
+    }
+
+    /**
+     * Score every prediction for a time between the last sample and this one, against where the
+     * finger actually was at that time (interpolated between the two samples).
+     */
+    private void checkPendingPredictions(float x, float y, long timeNanos) {
+        while (pendingCount > 0) {
+            final int slot = pendingStart;
+            final long predictedTime = pendingTimeNanos[slot];
+            if (predictedTime > timeNanos) {
+                break;
+            }
+            if (predictedTime >= lastTimeNanos && timeNanos > lastTimeNanos) {
+                final float f = (float) (predictedTime - lastTimeNanos)
+                        / (float) (timeNanos - lastTimeNanos);
+                final float dx = pendingX[slot] - (lastX + (x - lastX) * f);
+                final float dy = pendingY[slot] - (lastY + (y - lastY) * f);
+                recordError((float) Math.sqrt(dx * dx + dy * dy));
+            }
+            pendingStart = (pendingStart + 1) % MAX_PENDING_PREDICTIONS;
+            pendingCount--;
+        }
+    }
+
+    private void recordError(float error) {
+        errorCount++;
+        errorSum += error;
+        errorSumOfSquares += (double) error * error;
+        maxError = Math.max(maxError, error);
+    }
+
+    public void resetErrorStats() {
+        errorCount = 0;
+        errorSum = 0;
+        errorSumOfSquares = 0;
+        maxError = 0f;
+    }
+
+    /**
+     * @return number of predictions that have been checked against real samples.
+     */
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    public float getMeanError() {
+        return errorCount == 0 ? 0f : (float) (errorSum / errorCount);
+    }
+
+    public float getRmsError() {
+        return errorCount == 0 ? 0f : (float) Math.sqrt(errorSumOfSquares / errorCount);
+    }
+
+    public float getMaxError() {
+        return maxError;
+    }
+}
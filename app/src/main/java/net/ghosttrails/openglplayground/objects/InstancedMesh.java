@@ -0,0 +1,200 @@
+package net.ghosttrails.openglplayground.objects;
+
+import net.ghosttrails.openglplayground.data.IndexBuffer;
+import net.ghosttrails.openglplayground.data.StreamingVertexBuffer;
+import net.ghosttrails.openglplayground.data.VertexArray;
+import net.ghosttrails.openglplayground.data.VertexArrayObject;
+import net.ghosttrails.openglplayground.data.VertexEncoder;
+import net.ghosttrails.openglplayground.gl.Gles;
+import net.ghosttrails.openglplayground.programs.InstancedColorShaderProgram;
+import net.ghosttrails.openglplayground.programs.PseudoInstancedColorShaderProgram;
+
+import static android.opengl.GLES20.GL_TRIANGLES;
+import static net.ghosttrails.openglplayground.data.Constants.BYTES_PER_FLOAT;
+
+/**
+ * Draws many instances of an indexed mesh, each with its own translation and color, in a
+ * number of draw calls that doesn't grow with the number of instances.
+ *
+ * On ES 3.0 it's one instanced draw call, with the translations and colors streamed to a
+ * vertex buffer each frame and read as per-instance attributes. On ES 2.0 the mesh is repeated
+ * into a batch of copies, each tagged with its instance index, and drawn a batch at a time with
+ * the instances' translations and colors in uniform arrays; the copies are made the first time
+ * they're needed.
+ */
+
+public class InstancedMesh {
+
+    // Indices are unsigned shorts.
+    private static final int MAX_VERTICES = 65536;
+    private static final int TRANSLATION_COMPONENT_COUNT = 3;
+    private static final int COLOR_COMPONENT_COUNT = 4;
+    private static final int INSTANCE_STRIDE = Instances.FLOATS_PER_INSTANCE * BYTES_PER_FLOAT;
+
+    // Counters, over all instanced meshes.
+    private static long drawCalls = 0;
+    private static long instancesDrawn = 0;
+
+    private final Gles gles;
+    private final VertexEncoder.PackedVertices vertices;
+    private final VertexArray vertexArray;
+    private final short[] indexData;
+    private final IndexBuffer indexBuffer;
+
+    // For instanced drawing.
+    private final VertexArrayObject instancedArrayObject;
+    private InstancedColorShaderProgram instancedSetUpFor = null;
+
+    // For drawing in batches, without instancing.
+    private int instancesPerBatch = 0;
+    private VertexEncoder.PackedVertices batchVertices = null;
+    private VertexArray batchVertexArray = null;
+    private IndexBuffer batchIndexBuffer = null;
+    private VertexArrayObject batchArrayObject = null;
+    private PseudoInstancedColorShaderProgram batchSetUpFor = null;
+
+    /**
+     * @param vertices the mesh's vertices; the first attribute is the position.
+     * @param vertexArray the vertices, to draw them from.
+     * @param indexData the mesh's triangles.
+     * @param indexBuffer the triangles, to draw them from.
+     */
+    InstancedMesh(Gles gles, VertexEncoder.PackedVertices vertices, VertexArray vertexArray,
+                  short[] indexData, IndexBuffer indexBuffer) {
+        this.gles = gles;
+        this.vertices = vertices;
+        this.vertexArray = vertexArray;
+        this.indexData = indexData;
+        this.indexBuffer = indexBuffer;
+        instancedArrayObject = new VertexArrayObject(gles);
+    }
+
+    /**
+     * Draw every instance with one instanced draw call. Only on an ES 3.0 context.
+     * @param instanceData where to put the instances' translations and colors.
+     */
+    void draw(InstancedColorShaderProgram program, Instances instances,
+              StreamingVertexBuffer instanceData) {
+        final int count = instances.getCount();
+        if (count == 0) {
+            return;
+        }
+        if (instancedSetUpFor != program) {
+            instancedArrayObject.clear();
+            instancedArrayObject.addAttribute(vertexArray, vertices.layout, 0,
+                    program.getPositionAttributeLocation());
+            instancedArrayObject.setIndexBuffer(indexBuffer);
+            instancedSetUpFor = program;
+        }
+        instancedArrayObject.bind();
+
+        // The per-instance attributes point somewhere new each frame, so they aren't part of
+        // what the vertex array object sets up.
+        final int translationsOffset = writeInstances(instanceData, instances);
+        final int colorsOffset = translationsOffset
+                + instances.getCount() * Instances.FLOATS_PER_INSTANCE * BYTES_PER_FLOAT;
+        final int translationLocation = program.getInstanceTranslationAttributeLocation();
+        final int colorLocation = program.getInstanceColorAttributeLocation();
+        instanceData.setVertexAttribPointer(translationsOffset, translationLocation,
+                TRANSLATION_COMPONENT_COUNT, INSTANCE_STRIDE);
+        instanceData.setVertexAttribPointer(colorsOffset, colorLocation,
+                COLOR_COMPONENT_COUNT, INSTANCE_STRIDE);
+        gles.glVertexAttribDivisor(translationLocation, 1);
+        gles.glVertexAttribDivisor(colorLocation, 1);
+
+        indexBuffer.drawInstanced(GL_TRIANGLES, count);
+        drawCalls++;
+        instancesDrawn += count;
+    }
+
+    /**
+     * Write the instances' translations, then their colors straight after them. The space for
+     * both is reserved first, so the colors can't wrap the buffer and leave the translations
+     * in storage that's been orphaned.
+     * @return byte offset of the translations.
+     */
+    static int writeInstances(StreamingVertexBuffer instanceData, Instances instances) {
+        final int floats = instances.getCount() * Instances.FLOATS_PER_INSTANCE;
+        instanceData.reserve(2 * floats * BYTES_PER_FLOAT);
+        final int translationsOffset = instanceData.write(instances.getTranslations(), 0, floats);
+        instanceData.write(instances.getColors(), 0, floats);
+        return translationsOffset;
+    }
+
+    /**
+     * Draw every instance, a batch of up to PseudoInstancedColorShaderProgram.MAX_INSTANCES
+     * per draw call.
+     */
+    void draw(PseudoInstancedColorShaderProgram program, Instances instances) {
+        final int count = instances.getCount();
+        if (count == 0) {
+            return;
+        }
+        if (batchVertices == null) {
+            createBatch();
+        }
+        if (batchSetUpFor != program) {
+            batchArrayObject.clear();
+            batchArrayObject.addAttribute(batchVertexArray, batchVertices.layout, 0,
+                    program.getPositionAttributeLocation());
+            batchArrayObject.addAttribute(batchVertexArray, batchVertices.layout, 1,
+                    program.getInstanceIndexAttributeLocation());
+            batchArrayObject.setIndexBuffer(batchIndexBuffer);
+            batchSetUpFor = program;
+        }
+        batchArrayObject.bind();
+
+        for (int first = 0; first < count; first += instancesPerBatch) {
+            final int batchCount = Math.min(instancesPerBatch, count - first);
+            program.setInstances(instances.getTranslations(), instances.getColors(), first,
+                    batchCount);
+            batchIndexBuffer.draw(GL_TRIANGLES, batchCount * indexData.length);
+            drawCalls++;
+        }
+        instancesDrawn += count;
+    }
+
+    private void createBatch() {
+        instancesPerBatch = Math.min(PseudoInstancedColorShaderProgram.MAX_INSTANCES,
+                MAX_VERTICES / vertices.vertexCount);
+        batchVertices = VertexEncoder.repeatWithInstanceIndex(vertices, instancesPerBatch);
+        batchVertexArray = new VertexArray(gles, batchVertices);
+
+        final short[] batchIndices = new short[indexData.length * instancesPerBatch];
+        for (int copy = 0; copy < instancesPerBatch; copy++) {
+            final int firstVertex = copy * vertices.vertexCount;
+            for (int i = 0; i < indexData.length; i++) {
+                batchIndices[copy * indexData.length + i] =
+                        (short) ((indexData[i] & 0xffff) + firstVertex);
+            }
+        }
+        batchIndexBuffer = new IndexBuffer(gles, batchIndices);
+        batchArrayObject = new VertexArrayObject(gles);
+    }
+
+    /**
+     * @return instances drawn per draw call without instancing.
+     */
+    int getInstancesPerBatch() {
+        return instancesPerBatch;
+    }
+
+    /**
+     * @return draw calls made by all instanced meshes since the counters were reset.
+     */
+    public static long getDrawCalls() {
+        return drawCalls;
+    }
+
+    /**
+     * @return instances drawn by all instanced meshes since the counters were reset.
+     */
+    public static long getInstancesDrawn() {
+        return instancesDrawn;
+    }
+
+    public static void resetCounters() {
+        drawCalls = 0;
+        instancesDrawn = 0;
+    }
+}
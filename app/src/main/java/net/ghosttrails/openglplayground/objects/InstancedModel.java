@@ -0,0 +1,115 @@
+package net.ghosttrails.openglplayground.objects;
+
+import net.ghosttrails.openglplayground.data.IndexBuffer;
+import net.ghosttrails.openglplayground.data.StreamingVertexBuffer;
+import net.ghosttrails.openglplayground.data.VertexArray;
+import net.ghosttrails.openglplayground.data.VertexEncoder;
+import net.ghosttrails.openglplayground.data.VertexLayout;
+import net.ghosttrails.openglplayground.gl.Gles;
+import net.ghosttrails.openglplayground.programs.InstancedColorShaderProgram;
+import net.ghosttrails.openglplayground.programs.PseudoInstancedColorShaderProgram;
+import net.ghosttrails.openglplayground.util.Bounds;
+
+import static android.opengl.GLES20.GL_SHORT;
+
+/**
+ * A solid colored object made by ObjectBuilder, drawn as many instances of one InstancedMesh.
+ * Subclasses only build the geometry.
+ */
+
+public abstract class InstancedModel {
+
+    private static final int POSITION_COMPONENT_COUNT = 3;
+
+    // Positions are small enough to pack as normalized shorts.
+    private static final VertexLayout LAYOUT = new VertexLayout.Builder()
+            .add(POSITION_COMPONENT_COUNT, GL_SHORT, true)
+            .build();
+
+    public final float radius;
+    public final float height;
+
+    private final VertexEncoder.PackedVertices vertices;
+    private final IndexBuffer indexBuffer;
+    private final InstancedMesh instancedMesh;
+    private final int vertexCount;
+    private final int drawCount;
+    private final int unindexedVertexCount;
+    private final int unindexedDrawCount;
+    private final Bounds bounds;
+
+    InstancedModel(Gles gles, float radius, float height,
+                   ObjectBuilder.GeneratedData generatedData) {
+        this.radius = radius;
+        this.height = height;
+
+        vertices = VertexEncoder.encode(LAYOUT, generatedData.vertexData);
+        indexBuffer = new IndexBuffer(gles, generatedData.indexData);
+        instancedMesh = new InstancedMesh(gles, vertices, new VertexArray(gles, vertices),
+                generatedData.indexData, indexBuffer);
+        vertexCount = generatedData.getVertexCount();
+        drawCount = generatedData.getDrawCount();
+        unindexedVertexCount = generatedData.unindexedVertexCount;
+        unindexedDrawCount = generatedData.unindexedDrawCount;
+        bounds = generatedData.bounds;
+    }
+
+    /**
+     * Draw every instance in one instanced draw call. Only on an ES 3.0 context.
+     * @param instanceData where to put the instances' translations and colors.
+     */
+    public void drawInstances(InstancedColorShaderProgram program, Instances instances,
+                              StreamingVertexBuffer instanceData) {
+        instancedMesh.draw(program, instances, instanceData);
+    }
+
+    /**
+     * Draw every instance, in batches, without instancing.
+     */
+    public void drawInstances(PseudoInstancedColorShaderProgram program, Instances instances) {
+        instancedMesh.draw(program, instances);
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getIndexCount() {
+        return indexBuffer.getIndexCount();
+    }
+
+    /**
+     * @return draw calls per instance, without instancing.
+     */
+    public int getDrawCount() {
+        return drawCount;
+    }
+
+    /**
+     * @return vertices the same geometry took as triangle fans and strips, without indices.
+     */
+    public int getUnindexedVertexCount() {
+        return unindexedVertexCount;
+    }
+
+    /**
+     * @return draw calls the same geometry took as triangle fans and strips.
+     */
+    public int getUnindexedDrawCount() {
+        return unindexedDrawCount;
+    }
+
+    /**
+     * @return the bounds of one instance, around its own origin.
+     */
+    public Bounds getBounds() {
+        return bounds;
+    }
+
+    /**
+     * @return the packed vertices, e.g. to see how big they are and how much precision was lost.
+     */
+    public VertexEncoder.PackedVertices getVertices() {
+        return vertices;
+    }
+}
@@ -0,0 +1,57 @@
+package net.ghosttrails.openglplayground.objects;
+
+import java.util.Arrays;
+
+/**
+ * Where to draw each instance of a mesh, and in what color, for one frame. Fill it in with
+ * clear() and add(); the arrays only grow, so once it's big enough nothing is allocated.
+ */
+
+public class Instances {
+
+    // Translations are x, y, z and an unused w, so both arrays are vec4s.
+    public static final int FLOATS_PER_INSTANCE = 4;
+
+    private float[] translations;
+    private float[] colors;
+    private int count = 0;
+
+    public Instances(int initialCapacity) {
+        translations = new float[initialCapacity * FLOATS_PER_INSTANCE];
+        colors = new float[initialCapacity * FLOATS_PER_INSTANCE];
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    public void add(float x, float y, float z, float r, float g, float b) {
+        if ((count + 1) * FLOATS_PER_INSTANCE > translations.length) {
+            final int size = Math.max(FLOATS_PER_INSTANCE, translations.length * 2);
+            translations = Arrays.copyOf(translations, size);
+            colors = Arrays.copyOf(colors, size);
+        }
+        final int offset = count * FLOATS_PER_INSTANCE;
+        translations[offset] = x;
+        translations[offset + 1] = y;
+        translations[offset + 2] = z;
+        translations[offset + 3] = 0f;
+        colors[offset] = r;
+        colors[offset + 1] = g;
+        colors[offset + 2] = b;
+        colors[offset + 3] = 1f;
+        count++;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    float[] getTranslations() {
+        return translations;
+    }
+
+    float[] getColors() {
+        return colors;
+    }
+}
@@ -1,45 +1,16 @@
 package net.ghosttrails.openglplayground.objects;
 
-import net.ghosttrails.openglplayground.data.VertexArray;
-import net.ghosttrails.openglplayground.programs.ColorShaderProgram;
+import net.ghosttrails.openglplayground.gl.Gles;
 import net.ghosttrails.openglplayground.util.Geometry;
 
-import java.util.List;
-
 /**
  * Geometry for Air Hockey mallets
  */
 
-public class Mallet {
-
-    private static final int POSITION_COMPONENT_COUNT = 3;
-
-    public final float radius;
-    public final float height;
-
-    private final VertexArray vertexArray;
-    private final List<ObjectBuilder.DrawCommand> drawList;
-
-    public Mallet(float radius, float height, int numPointsAroundMallet) {
-        ObjectBuilder.GeneratedData generatedData = ObjectBuilder.createMallet(
-                new Geometry.Point(0f, 0f, 0f), radius, height, numPointsAroundMallet);
-
-        this.radius = radius;
-        this.height = height;
-
-        vertexArray = new VertexArray(generatedData.vertexData);
-        drawList = generatedData.drawList;
-    }
-
-    public void bindData(ColorShaderProgram colorProgram) {
-        vertexArray.setVertexAttribPointer(0,
-                colorProgram.getPositionAttributeLocation(),
-                POSITION_COMPONENT_COUNT, 0);
-    }
+public class Mallet extends InstancedModel {
 
-    public void draw() {
-        for (ObjectBuilder.DrawCommand drawCommand: drawList) {
-            drawCommand.draw();
-        }
+    public Mallet(Gles gles, float radius, float height, int numPointsAroundMallet) {
+        super(gles, radius, height, ObjectBuilder.createMallet(
+                new Geometry.Point(0f, 0f, 0f), radius, height, numPointsAroundMallet));
     }
 }
@@ -1,80 +1,98 @@
 package net.ghosttrails.openglplayground.objects;
 
+import net.ghosttrails.openglplayground.util.Bounds;
 import net.ghosttrails.openglplayground.util.Geometry;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import static android.opengl.GLES20.GL_TRIANGLE_FAN;
-import static android.opengl.GLES20.GL_TRIANGLE_STRIP;
-import static android.opengl.GLES20.glDrawArrays;
-
 /**
  * Created by andrewr on 29/10/16.
+ *
+ * Builds meshes as a single indexed triangle list, so each object is one glDrawElements call.
+ * Each cap shares its rim vertices with the cylinder it sits on, rather than repeating them.
  */
 
 public class ObjectBuilder {
 
-    static interface DrawCommand {
-        void draw();
-    }
-
     static class GeneratedData {
         final float[] vertexData;
-        final List<DrawCommand> drawList;
-
-        GeneratedData(float[] vertexData, List<DrawCommand> drawList) {
+        final short[] indexData;
+        final Bounds bounds;
+        // What the same mesh took as a triangle fan and strip per cylinder, for comparison.
+        final int unindexedVertexCount;
+        final int unindexedDrawCount;
+
+        GeneratedData(float[] vertexData, short[] indexData, int unindexedVertexCount,
+                      int unindexedDrawCount) {
             this.vertexData = vertexData;
-            this.drawList = drawList;
+            this.indexData = indexData;
+            this.unindexedVertexCount = unindexedVertexCount;
+            this.unindexedDrawCount = unindexedDrawCount;
+            bounds = Bounds.of(vertexData, FLOATS_PER_VERTEX, FLOATS_PER_VERTEX);
+        }
+
+        int getVertexCount() {
+            return vertexData.length / FLOATS_PER_VERTEX;
+        }
+
+        /**
+         * @return draw calls for one copy of the mesh; the whole triangle list is one.
+         */
+        int getDrawCount() {
+            return indexData.length > 0 ? 1 : 0;
         }
     }
 
-    private static final int FLOATS_PER_VERTEX = 3;
+    static final int FLOATS_PER_VERTEX = 3;
     private final float[] vertexData;
+    private final short[] indexData;
     private int offset = 0;
-    private final List<DrawCommand> drawList = new ArrayList<>();
+    private int indexOffset = 0;
+    private int unindexedVertexCount = 0;
+    private int unindexedDrawCount = 0;
 
-    private ObjectBuilder(int sizeInVertices) {
+    private ObjectBuilder(int sizeInVertices, int sizeInIndices) {
         vertexData = new float[sizeInVertices * FLOATS_PER_VERTEX];
+        indexData = new short[sizeInIndices];
     }
 
     /**
-     * return number of vertices in a circle with numPoints points around the
-     * circumference.
+     * Returns number of vertices in a cylinder with a cap on top, with numPoints points around
+     * the circumference: the centre of the cap, then a ring at the top and one at the bottom.
      */
-    private static int sizeOfCircleInVertices(int numPoints) {
-        return 1 + (numPoints + 1);
+    private static int sizeOfCappedCylinderInVertices(int numPoints) {
+        return 1 + numPoints * 2;
     }
 
     /**
-     * Returns number of vertices in an open cylinder with numPoints points around the
-     * circumference.
+     * Returns number of indices in a capped cylinder: a triangle per point for the cap, and two
+     * per point for the side.
      */
-    private static int sizeOfOpenCylinderInVertices(int numPoints) {
-        return (numPoints + 1) * 2;
+    private static int sizeOfCappedCylinderInIndices(int numPoints) {
+        return numPoints * 3 * 3;
     }
 
-    static GeneratedData createPuck(Geometry.Cylinder puck, int numPoints) {
-        int size = sizeOfCircleInVertices(numPoints) + sizeOfOpenCylinderInVertices(numPoints);
-
-        ObjectBuilder builder = new ObjectBuilder(size);
+    /**
+     * Returns number of vertices the cap's triangle fan and the side's triangle strip took,
+     * each closing its loop by repeating its first point.
+     */
+    private static int sizeOfUnindexedCappedCylinderInVertices(int numPoints) {
+        return (1 + (numPoints + 1)) + (numPoints + 1) * 2;
+    }
 
-        Geometry.Circle puckTop = new Geometry.Circle(
-                puck.center.translateY(puck.height / 2f),
-                puck.radius);
+    static GeneratedData createPuck(Geometry.Cylinder puck, int numPoints) {
+        ObjectBuilder builder = new ObjectBuilder(
+                sizeOfCappedCylinderInVertices(numPoints),
+                sizeOfCappedCylinderInIndices(numPoints));
 
-        builder.appendCircle(puckTop, numPoints);
-        builder.appendOpenCylinder(puck, numPoints);
+        builder.appendCappedCylinder(puck, numPoints);
 
         return builder.build();
     }
 
     static GeneratedData createMallet(
             Geometry.Point center, float radius, float height, int numPoints) {
-        int size = sizeOfCircleInVertices(numPoints) * 2
-                + sizeOfOpenCylinderInVertices(numPoints) * 2;
-
-        ObjectBuilder builder = new ObjectBuilder(size);
+        ObjectBuilder builder = new ObjectBuilder(
+                sizeOfCappedCylinderInVertices(numPoints) * 2,
+                sizeOfCappedCylinderInIndices(numPoints) * 2);
 
         // first, generate the mallet base
         float baseHeight = height * 0.25f;
@@ -85,8 +103,7 @@ public class ObjectBuilder {
                 baseCircle.center.translateY(-baseHeight / 2f),
                 radius, baseHeight);
 
-        builder.appendCircle(baseCircle, numPoints);
-        builder.appendOpenCylinder(baseCylinder, numPoints);
+        builder.appendCappedCylinder(baseCylinder, numPoints);
 
         float handleHeight = height * 0.75f;
         float handleRadius = radius / 3f;
@@ -98,84 +115,70 @@ public class ObjectBuilder {
                 handleCircle.center.translateY(-handleHeight / 2f),
                 handleRadius, handleHeight);
 
-        builder.appendCircle(handleCircle, numPoints);
-        builder.appendOpenCylinder(handleCylinder, numPoints);
+        builder.appendCappedCylinder(handleCylinder, numPoints);
 
         return builder.build();
     }
 
-    private void appendCircle(Geometry.Circle circle, int numPoints) {
-        final int startVertex = offset / FLOATS_PER_VERTEX;
-        final int numVertices = sizeOfCircleInVertices(numPoints);
-
-        // Center point of fan
-        vertexData[offset++] = circle.center.x;
-        vertexData[offset++] = circle.center.y;
-        vertexData[offset++] = circle.center.z;
-
-        // Fan around center point. <= is used because we want to generate
-        // the point at the starting angle twice to complete the fan.
-        for (int i = 0; i <= numPoints; i++) {
-            float angleInRadians =
-                    ((float) i / (float) numPoints)
-                            * ((float) Math.PI * 2f);
-            vertexData[offset++] =
-                    circle.center.x
-                            + circle.radius * (float) Math.cos(angleInRadians);
-            vertexData[offset++] = circle.center.y;
-            vertexData[offset++] =
-                    circle.center.z
-                            + circle.radius * (float) Math.sin(angleInRadians);
-        }
-
-        drawList.add(new DrawCommand() {
-            @Override
-            public void draw() {
-                glDrawArrays(GL_TRIANGLE_FAN, startVertex, numVertices);
-            }
-        });
-    }
-
-    private void appendOpenCylinder(Geometry.Cylinder cylinder, int numPoints) {
-        final int startVertex = offset / FLOATS_PER_VERTEX;
-        final int numVertices = sizeOfOpenCylinderInVertices(numPoints);
+    /**
+     * Append an open cylinder with a flat cap on its top.
+     */
+    private void appendCappedCylinder(Geometry.Cylinder cylinder, int numPoints) {
+        final int centerVertex = appendVertex(
+                cylinder.center.x, cylinder.center.y + (cylinder.height / 2f), cylinder.center.z);
+        final int firstTopVertex = centerVertex + 1;
+        final int firstBottomVertex = firstTopVertex + numPoints;
         final float yStart = cylinder.center.y - (cylinder.height / 2f);
         final float yEnd = cylinder.center.y + (cylinder.height / 2f);
 
-        // Generate strip around center point. <= is used because we want to
-        // generate the points at the starting angle twice, to complete the
-        // strip.
-        for (int i = 0; i <= numPoints; i++) {
+        for (int i = 0; i < numPoints; i++) {
             float angleInRadians =
                     ((float) i / (float) numPoints)
                             * ((float) Math.PI * 2f);
+            appendVertex(
+                    cylinder.center.x + cylinder.radius * (float) Math.cos(angleInRadians),
+                    yEnd,
+                    cylinder.center.z + cylinder.radius * (float) Math.sin(angleInRadians));
+        }
+        for (int i = 0; i < numPoints; i++) {
+            // Same x and z as the top ring.
+            final int top = (firstTopVertex + i) * FLOATS_PER_VERTEX;
+            appendVertex(vertexData[top], yStart, vertexData[top + 2]);
+        }
 
-            float xPosition =
-                    cylinder.center.x
-                            + cylinder.radius * (float)Math.cos(angleInRadians);
+        // Wind the same way the triangle fan and strip these replace did.
+        for (int i = 0; i < numPoints; i++) {
+            final int next = (i + 1) % numPoints;
+            appendTriangle(centerVertex, firstTopVertex + i, firstTopVertex + next);
+        }
+        for (int i = 0; i < numPoints; i++) {
+            final int next = (i + 1) % numPoints;
+            appendTriangle(firstBottomVertex + i, firstTopVertex + i, firstBottomVertex + next);
+            appendTriangle(firstBottomVertex + next, firstTopVertex + i, firstTopVertex + next);
+        }
 
-            float zPosition =
-                    cylinder.center.z
-                            + cylinder.radius * (float)Math.sin(angleInRadians);
+        // A fan and a strip.
+        unindexedVertexCount += sizeOfUnindexedCappedCylinderInVertices(numPoints);
+        unindexedDrawCount += 2;
+    }
 
-            vertexData[offset++] = xPosition;
-            vertexData[offset++] = yStart;
-            vertexData[offset++] = zPosition;
+    private int appendVertex(float x, float y, float z) {
+        final int vertex = offset / FLOATS_PER_VERTEX;
+        vertexData[offset++] = x;
+        vertexData[offset++] = y;
+        vertexData[offset++] = z;
+        return vertex;
+    }
 
-            vertexData[offset++] = xPosition;
-            vertexData[offset++] = yEnd;
-            vertexData[offset++] = zPosition;
-        }
-        drawList.add(new DrawCommand() {
-            @Override
-            public void draw() {
-                glDrawArrays(GL_TRIANGLE_STRIP, startVertex, numVertices);
-            }
-        });
+    private void appendTriangle(int a, int b, int c) {
+        indexData[indexOffset++] = (short) a;
+        indexData[indexOffset++] = (short) b;
+        indexData[indexOffset++] = (short) c;
     }
 
     private GeneratedData build() {
-        return new GeneratedData(vertexData, drawList);
+        return new GeneratedData(vertexData, indexData, unindexedVertexCount,
+                unindexedDrawCount);
     }
 
 }
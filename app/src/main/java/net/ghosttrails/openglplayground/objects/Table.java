@@ -1,11 +1,16 @@
 package net.ghosttrails.openglplayground.objects;
 
 import net.ghosttrails.openglplayground.data.VertexArray;
+import net.ghosttrails.openglplayground.data.VertexArrayObject;
+import net.ghosttrails.openglplayground.data.VertexEncoder;
+import net.ghosttrails.openglplayground.data.VertexLayout;
+import net.ghosttrails.openglplayground.gl.Gles;
 import net.ghosttrails.openglplayground.programs.TextureShaderProgram;
+import net.ghosttrails.openglplayground.util.Bounds;
 
+import static android.opengl.GLES20.GL_SHORT;
 import static android.opengl.GLES20.GL_TRIANGLE_FAN;
-import static android.opengl.GLES20.glDrawArrays;
-import static net.ghosttrails.openglplayground.data.Constants.BYTES_PER_FLOAT;
+import static android.opengl.GLES20.GL_UNSIGNED_SHORT;
 
 /**
  * Geometery for the Air Hockey table.
@@ -15,8 +20,14 @@ public class Table {
 
     private static final int POSITION_COMPONENT_COUNT = 2;
     private static final int TEXTURE_COORDINATES_COMPONENT_COUNT = 2;
-    private static final int STRIDE = (POSITION_COMPONENT_COUNT
-            + TEXTURE_COORDINATES_COMPONENT_COUNT) * BYTES_PER_FLOAT;
+
+    // Positions and texture coordinates both fit in normalized shorts.
+    private static final VertexLayout LAYOUT = new VertexLayout.Builder()
+            .add(POSITION_COMPONENT_COUNT, GL_SHORT, true)
+            .add(TEXTURE_COORDINATES_COMPONENT_COUNT, GL_UNSIGNED_SHORT, true)
+            .build();
+    private static final int ATTRIBUTE_POSITION = 0;
+    private static final int ATTRIBUTE_TEXTURE_COORDINATES = 1;
 
     private static final float[] VERTEX_DATA = {
             //  X,     Y,    S,    T
@@ -28,30 +39,51 @@ public class Table {
             -0.5f,  0.8f,   0f, 0.1f,
             -0.5f, -0.8f,   0f, 0.9f
     };
+    private static final Bounds BOUNDS = Bounds.of(VERTEX_DATA,
+            POSITION_COMPONENT_COUNT + TEXTURE_COORDINATES_COMPONENT_COUNT,
+            POSITION_COMPONENT_COUNT);
 
+    private final Gles gles;
+    private final VertexEncoder.PackedVertices vertices;
     private final VertexArray vertexArray;
+    private final VertexArrayObject vertexArrayObject;
+    // The program the vertex array object is set up for.
+    private TextureShaderProgram setUpFor = null;
 
-    public Table() {
-        vertexArray = new VertexArray(VERTEX_DATA);
+    public Table(Gles gles) {
+        this.gles = gles;
+        vertices = VertexEncoder.encode(LAYOUT, VERTEX_DATA);
+        vertexArray = new VertexArray(gles, vertices);
+        vertexArrayObject = new VertexArrayObject(gles);
     }
 
     public void bindData(TextureShaderProgram textureProgram) {
-        vertexArray.setVertexAttribPointer(
-                0,
-                textureProgram.getPositionAttributeLocation(),
-                POSITION_COMPONENT_COUNT,
-                STRIDE
-        );
-
-        vertexArray.setVertexAttribPointer(
-                POSITION_COMPONENT_COUNT,
-                textureProgram.getaTextureCoordinatesAttributeLocation(),
-                TEXTURE_COORDINATES_COMPONENT_COUNT,
-                STRIDE
-        );
+        if (setUpFor != textureProgram) {
+            vertexArrayObject.clear();
+            vertexArrayObject.addAttribute(vertexArray, LAYOUT, ATTRIBUTE_POSITION,
+                    textureProgram.getPositionAttributeLocation());
+            vertexArrayObject.addAttribute(vertexArray, LAYOUT, ATTRIBUTE_TEXTURE_COORDINATES,
+                    textureProgram.getaTextureCoordinatesAttributeLocation());
+            setUpFor = textureProgram;
+        }
+        vertexArrayObject.bind();
+    }
+
+    /**
+     * @return the bounds of the table, which lies in the x-y plane before it's positioned.
+     */
+    public Bounds getBounds() {
+        return BOUNDS;
+    }
+
+    /**
+     * @return the packed vertices, e.g. to see how big they are and how much precision was lost.
+     */
+    public VertexEncoder.PackedVertices getVertices() {
+        return vertices;
     }
 
     public void draw() {
-        glDrawArrays(GL_TRIANGLE_FAN, 0, 6);
+        gles.glDrawArrays(GL_TRIANGLE_FAN, 0, 6);
     }
 }
@@ -0,0 +1,121 @@
+package net.ghosttrails.openglplayground.physics;
+
+/**
+ * Runs a simulation at a fixed rate, independent of how often frames are rendered.
+ *
+ * Each frame the elapsed real time is added to an accumulator, which is then consumed in whole
+ * simulation steps. Whatever is left over (less than one step) is returned as an interpolation
+ * factor so the renderer can draw between the previous and current simulation states.
+ */
+
+public class FixedTimestep {
+
+    public interface Simulation {
+        /**
+         * Advance the simulation by exactly one step.
+         * @param dt the step length in seconds.
+         */
+        void step(float dt);
+    }
+
+    private final Simulation simulation;
+    private final long stepNanos;
+    private final float stepSeconds;
+    private final int maxStepsPerFrame;
+
+    private long lastFrameTimeNanos = -1;
+    private long accumulatorNanos = 0;
+    private float alpha = 1f;
+
+    // Counters, so the simulation and render rates can be measured separately.
+    private int stepsLastFrame = 0;
+    private long totalSteps = 0;
+    private long totalFrames = 0;
+    private long droppedSteps = 0;
+
+    /**
+     * @param simulation the simulation to step.
+     * @param stepsPerSecond simulation rate in Hz.
+     * @param maxStepsPerFrame cap on catch-up steps in a single frame. Any time beyond this is
+     *                         dropped, so a long stall slows the game down rather than spiralling.
+     */
+    public FixedTimestep(Simulation simulation, int stepsPerSecond, int maxStepsPerFrame) {
+        this.simulation = simulation;
+        this.stepNanos = 1000000000L / stepsPerSecond;
+        this.stepSeconds = stepNanos / 1e9f;
+        this.maxStepsPerFrame = maxStepsPerFrame;
+    }
+
+    /**
+     * Run however many simulation steps are due at the given frame time.
+     * @param frameTimeNanos monotonic frame time, e.g. System.nanoTime().
+     * @return interpolation factor in [0, 1) between the previous and current simulation state.
+     */
+    public float advance(long frameTimeNanos) {
+        totalFrames++;
+
+        if (lastFrameTimeNanos < 0) {
+            // First frame after a reset: nothing has elapsed yet.
+            lastFrameTimeNanos = frameTimeNanos;
+            stepsLastFrame = 0;
+            return alpha;
+        }
+
+        accumulatorNanos += Math.max(0L, frameTimeNanos - lastFrameTimeNanos);
+        lastFrameTimeNanos = frameTimeNanos;
+
+        int steps = 0;
+        while (accumulatorNanos >= stepNanos && steps < maxStepsPerFrame) {
+            simulation.step(stepSeconds);
+            accumulatorNanos -= stepNanos;
+            steps++;
+        }
+
+        if (accumulatorNanos >= stepNanos) {
+            // Hit the catch-up cap. Throw away the whole steps we couldn't run but keep the
+            // fraction so interpolation stays smooth.
+            long dropped = accumulatorNanos / stepNanos;
+            droppedSteps += dropped;
+            accumulatorNanos -= dropped * stepNanos;
+        }
+
+        stepsLastFrame = steps;
+        totalSteps += steps;
+        alpha = (float) accumulatorNanos / (float) stepNanos;
+        return alpha;
+    }
+
+    /**
+     * Forget the last frame time, e.g. after the surface is recreated or the app resumes, so
+     * that the time spent paused isn't simulated.
+     */
+    public void reset() {
+        lastFrameTimeNanos = -1;
+        accumulatorNanos = 0;
+        alpha = 1f;
+    }
+
+    public float getStepSeconds() {
+        return stepSeconds;
+    }
+
+    public float getAlpha() {
+        return alpha;
+    }
+
+    public int getStepsLastFrame() {
+        return stepsLastFrame;
+    }
+
+    public long getTotalSteps() {
+        return totalSteps;
+    }
+
+    public long getTotalFrames() {
+        return totalFrames;
+    }
+
+    public long getDroppedSteps() {
+        return droppedSteps;
+    }
+}
@@ -0,0 +1,795 @@
+package net.ghosttrails.openglplayground.physics;
+
+import net.ghosttrails.openglplayground.util.Geometry;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Physics for any number of pucks and mallets sliding around the table.
+ *
+ * Bodies are circles on the table plane, stored structure-of-arrays style in primitive float
+ * arrays and referred to by index. Pucks are dynamic; mallets are kinematic, i.e. they are moved
+ * by the player and push pucks around but are never pushed back.
+ *
+ * Each step integrates velocities, bounces dynamic bodies off the table walls, then finds
+ * touching pairs with a uniform grid broadphase and resolves them with a circle-circle
+ * narrowphase. The grid holds only pucks, with cells at least one puck diameter wide so only
+ * neighbouring cells need checking. Mallets are usually much bigger than pucks, so rather than
+ * making every cell big enough for them, each mallet checks the cells its own bounds overlap.
+ *
+ * Wall bounces and mallet strikes are swept: they're found from where the bodies were at the
+ * start and end of the step rather than just where they end up, so a fast puck or a big mallet
+ * swipe can't pass straight through a wall or a puck when steps are long.
+ *
+ * Steps can run on a ForkJoinPool. Integration is split into ranges of bodies. Collisions are
+ * split into stripes of grid columns: a puck only ever collides with pucks in its own column or
+ * the next, so all the even stripes can be resolved at the same time, then all the odd ones.
+ * The single-threaded path processes the stripes in exactly the same order, so results are
+ * identical whichever is used and however many threads the pool has.
+ *
+ * Nothing here depends on Android, so the world can be run and load-tested on a plain JVM.
+ * Stepping does not allocate once the bodies have been added.
+ *
+ * Velocities are in world units per second. The friction and bounce constants were originally
+ * tuned per rendered frame at 60fps, so they're converted to per-second rates here to keep the
+ * game feeling the same at any step rate.
+ */
+
+public class PhysicsWorld implements FixedTimestep.Simulation {
+
+    /** Frame rate the original per-frame constants were tuned at. */
+    public static final float REFERENCE_FRAME_RATE = 60f;
+
+    // Fraction of velocity kept per reference frame.
+    private static final float FRICTION_PER_REFERENCE_FRAME = 0.99f;
+    // Fraction of velocity kept when bouncing off a wall.
+    private static final float WALL_RESTITUTION = 0.9f;
+    // Fraction of the approach speed kept when two bodies collide.
+    private static final float BODY_RESTITUTION = 0.9f;
+    // Most wall bounces followed in one step, e.g. into a corner and back out.
+    private static final int MAX_WALL_BOUNCES_PER_STEP = 4;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // How many pieces each parallel phase is split into. These depend only on the scene, never
+    // on the number of threads, so the order of work (and hence the result) never changes.
+    private static final int INTEGRATE_CHUNKS = 16;
+    private static final int TARGET_STRIPES = 16;
+
+    // Table bounds
+    private final float leftBound, rightBound, farBound, nearBound;
+
+    // Body state. Index i in every array describes the same body.
+    private int bodyCount = 0;
+    private float[] x = new float[INITIAL_CAPACITY];
+    private float[] z = new float[INITIAL_CAPACITY];
+    private float[] previousX = new float[INITIAL_CAPACITY];
+    private float[] previousZ = new float[INITIAL_CAPACITY];
+    private float[] velocityX = new float[INITIAL_CAPACITY];
+    private float[] velocityZ = new float[INITIAL_CAPACITY];
+    private float[] radius = new float[INITIAL_CAPACITY];
+    private float[] inverseMass = new float[INITIAL_CAPACITY];
+
+    // Where each kinematic body has been asked to move to, and how long it has to get there.
+    private float[] targetX = new float[INITIAL_CAPACITY];
+    private float[] targetZ = new float[INITIAL_CAPACITY];
+    private float[] targetTimeRemaining = new float[INITIAL_CAPACITY];
+
+    // Broadphase grid. Pucks are counting-sorted by cell each step: the pucks in cell c are
+    // cellBodies[cellStart[c]] to cellBodies[cellStart[c + 1] - 1].
+    private float maxPuckRadius = 0f;
+    private float cellSize;
+    private int gridColumns, gridRows;
+    private int[] cellStart = new int[1];
+    private int[] cellBodies = new int[INITIAL_CAPACITY];
+    private int[] bodyCell = new int[INITIAL_CAPACITY];
+    private int puckCount = 0;
+
+    // Collision stripes, each stripeColumns grid columns wide.
+    private int stripeColumns = 1;
+    private int stripeCount = 0;
+
+    // Mallets, in the order they were added.
+    private int[] mallets = new int[INITIAL_CAPACITY];
+    private int malletCount = 0;
+
+    // Friction factor for the last step length, so Math.pow isn't called every step.
+    private float cachedStepSeconds = -1f;
+    private float cachedFriction = 1f;
+
+    // The step being run, for the parallel tasks.
+    private float stepSeconds;
+    private float stepFriction;
+
+    // Parallel stepping. Tasks are created up front and reinitialized each step.
+    private ForkJoinPool pool = null;
+    private final StepTask stepTask = new StepTask();
+    private final IntegrateTask[] integrateTasks = new IntegrateTask[INTEGRATE_CHUNKS];
+
+    // Furthest any puck moved along either axis in the last step, per integration chunk. The
+    // swept mallet test has to look this much further to find pucks that moved past it.
+    private final float[] chunkMaxTravel = new float[INTEGRATE_CHUNKS];
+    private float maxPuckTravel;
+    private StripeTask[] evenStripeTasks = new StripeTask[0];
+    private StripeTask[] oddStripeTasks = new StripeTask[0];
+
+    // Counters from the last step. Each stripe counts separately so parallel stripes don't
+    // share a counter; the last slot is for the mallets.
+    private int[] stripePairsTested = new int[1];
+    private int[] stripeContacts = new int[1];
+    private int pairsTested;
+    private int contacts;
+
+    public PhysicsWorld(float leftBound, float rightBound, float farBound, float nearBound) {
+        this.leftBound = leftBound;
+        this.rightBound = rightBound;
+        this.farBound = farBound;
+        this.nearBound = nearBound;
+
+        for (int chunk = 0; chunk < INTEGRATE_CHUNKS; chunk++) {
+            integrateTasks[chunk] = new IntegrateTask(chunk);
+        }
+    }
+
+    /**
+     * Choose how steps are run.
+     * @param pool pool to step on, or null to step on the calling thread. The results are the
+     *             same either way.
+     */
+    public void setForkJoinPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public ForkJoinPool getForkJoinPool() {
+        return pool;
+    }
+
+    /**
+     * Add a puck at rest.
+     * @return the new body's index.
+     */
+    public int addPuck(float x, float z, float radius, float mass) {
+        return addBody(x, z, radius, 1f / mass);
+    }
+
+    /**
+     * Add a mallet, which is only ever moved with moveKinematic().
+     * @return the new body's index.
+     */
+    public int addMallet(float x, float z, float radius) {
+        return addBody(x, z, radius, 0f);
+    }
+
+    private int addBody(float bodyX, float bodyZ, float bodyRadius, float bodyInverseMass) {
+        if (bodyCount == x.length) {
+            grow(x.length * 2);
+        }
+
+        int i = bodyCount++;
+        x[i] = previousX[i] = targetX[i] = bodyX;
+        z[i] = previousZ[i] = targetZ[i] = bodyZ;
+        velocityX[i] = 0f;
+        velocityZ[i] = 0f;
+        radius[i] = bodyRadius;
+        inverseMass[i] = bodyInverseMass;
+        targetTimeRemaining[i] = 0f;
+
+        if (bodyInverseMass == 0f) {
+            mallets[malletCount++] = i;
+        } else {
+            puckCount++;
+            if (bodyRadius > maxPuckRadius) {
+                maxPuckRadius = bodyRadius;
+                resizeGrid();
+            }
+        }
+        return i;
+    }
+
+    private void grow(int capacity) {
+        x = Arrays.copyOf(x, capacity);
+        z = Arrays.copyOf(z, capacity);
+        previousX = Arrays.copyOf(previousX, capacity);
+        previousZ = Arrays.copyOf(previousZ, capacity);
+        velocityX = Arrays.copyOf(velocityX, capacity);
+        velocityZ = Arrays.copyOf(velocityZ, capacity);
+        radius = Arrays.copyOf(radius, capacity);
+        inverseMass = Arrays.copyOf(inverseMass, capacity);
+        targetX = Arrays.copyOf(targetX, capacity);
+        targetZ = Arrays.copyOf(targetZ, capacity);
+        targetTimeRemaining = Arrays.copyOf(targetTimeRemaining, capacity);
+        mallets = Arrays.copyOf(mallets, capacity);
+        cellBodies = new int[capacity];
+        bodyCell = new int[capacity];
+    }
+
+    private void resizeGrid() {
+        // A cell must be at least as wide as the biggest puck, so that any two touching pucks
+        // are in the same or neighbouring cells.
+        cellSize = maxPuckRadius * 2f;
+        gridColumns = Math.max(1, (int) Math.ceil((rightBound - leftBound) / cellSize));
+        gridRows = Math.max(1, (int) Math.ceil((nearBound - farBound) / cellSize));
+        cellStart = new int[gridColumns * gridRows + 1];
+
+        stripeColumns = Math.max(1, (gridColumns + TARGET_STRIPES - 1) / TARGET_STRIPES);
+        stripeCount = (gridColumns + stripeColumns - 1) / stripeColumns;
+        stripePairsTested = new int[stripeCount + 1];
+        stripeContacts = new int[stripeCount + 1];
+
+        evenStripeTasks = new StripeTask[(stripeCount + 1) / 2];
+        oddStripeTasks = new StripeTask[stripeCount / 2];
+        for (int stripe = 0; stripe < stripeCount; stripe++) {
+            if (stripe % 2 == 0) {
+                evenStripeTasks[stripe / 2] = new StripeTask(stripe);
+            } else {
+                oddStripeTasks[stripe / 2] = new StripeTask(stripe);
+            }
+        }
+    }
+
+    /**
+     * Remove all bodies.
+     */
+    public void clear() {
+        bodyCount = 0;
+        puckCount = 0;
+        malletCount = 0;
+        maxPuckRadius = 0f;
+        gridColumns = 0;
+        gridRows = 0;
+        stripeCount = 0;
+        cellStart = new int[1];
+        evenStripeTasks = new StripeTask[0];
+        oddStripeTasks = new StripeTask[0];
+    }
+
+    /**
+     * Move a kinematic body (a mallet) to a new position. It slides there in a straight line
+     * over the given time, so it hits pucks with a velocity matching how fast it was moved.
+     * @param seconds how long the move should take. Zero teleports the body.
+     */
+    public void moveKinematic(int body, float newX, float newZ, float seconds) {
+        targetX[body] = newX;
+        targetZ[body] = newZ;
+        targetTimeRemaining[body] = seconds;
+        if (seconds <= 0f) {
+            x[body] = previousX[body] = newX;
+            z[body] = previousZ[body] = newZ;
+            velocityX[body] = 0f;
+            velocityZ[body] = 0f;
+        }
+    }
+
+    /**
+     * Give a dynamic body a new velocity.
+     */
+    public void setVelocity(int body, float newVelocityX, float newVelocityZ) {
+        velocityX[body] = newVelocityX;
+        velocityZ[body] = newVelocityZ;
+    }
+
+    /**
+     * Place a body at rest.
+     */
+    public void reset(int body, float newX, float newZ) {
+        moveKinematic(body, newX, newZ, 0f);
+    }
+
+    @Override
+    public void step(float dt) {
+        stepSeconds = dt;
+        stepFriction = frictionForStep(dt);
+
+        if (pool == null) {
+            for (int chunk = 0; chunk < INTEGRATE_CHUNKS; chunk++) {
+                integrateChunk(chunk);
+            }
+            buildGrid();
+            for (int stripe = 0; stripe < stripeCount; stripe += 2) {
+                collideStripe(stripe);
+            }
+            for (int stripe = 1; stripe < stripeCount; stripe += 2) {
+                collideStripe(stripe);
+            }
+        } else {
+            stepTask.reinitialize();
+            pool.invoke(stepTask);
+        }
+
+        maxPuckTravel = 0f;
+        for (int chunk = 0; chunk < INTEGRATE_CHUNKS; chunk++) {
+            maxPuckTravel = Math.max(maxPuckTravel, chunkMaxTravel[chunk]);
+        }
+
+        // There are only ever a few mallets, and each can reach across stripes, so they're
+        // done last on this thread.
+        stripePairsTested[stripeCount] = 0;
+        stripeContacts[stripeCount] = 0;
+        for (int m = 0; m < malletCount; m++) {
+            collideMallet(mallets[m], stripeCount);
+        }
+
+        pairsTested = 0;
+        contacts = 0;
+        for (int slot = 0; slot <= stripeCount; slot++) {
+            pairsTested += stripePairsTested[slot];
+            contacts += stripeContacts[slot];
+        }
+    }
+
+    /**
+     * Runs a whole step on the pool.
+     */
+    private class StepTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void compute() {
+            for (IntegrateTask task : integrateTasks) {
+                task.reinitialize();
+            }
+            ForkJoinTask.invokeAll(integrateTasks);
+
+            buildGrid();
+
+            for (StripeTask task : evenStripeTasks) {
+                task.reinitialize();
+            }
+            ForkJoinTask.invokeAll(evenStripeTasks);
+
+            for (StripeTask task : oddStripeTasks) {
+                task.reinitialize();
+            }
+            ForkJoinTask.invokeAll(oddStripeTasks);
+        }
+    }
+
+    /**
+     * Integrates one range of bodies.
+     */
+    private class IntegrateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int chunk;
+
+        IntegrateTask(int chunk) {
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            integrateChunk(chunk);
+        }
+    }
+
+    /**
+     * Resolves the collisions in one stripe of grid columns.
+     */
+    private class StripeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int stripe;
+
+        StripeTask(int stripe) {
+            this.stripe = stripe;
+        }
+
+        @Override
+        protected void compute() {
+            collideStripe(stripe);
+        }
+    }
+
+    private void integrateChunk(int chunk) {
+        chunkMaxTravel[chunk] = integrate(
+                (int) ((long) bodyCount * chunk / INTEGRATE_CHUNKS),
+                (int) ((long) bodyCount * (chunk + 1) / INTEGRATE_CHUNKS));
+    }
+
+    /**
+     * Move bodies [start, end) forward by one step and bounce them off the walls.
+     * @return the furthest any puck in the range moved along either axis.
+     */
+    private float integrate(int start, int end) {
+        final float dt = stepSeconds;
+        final float friction = stepFriction;
+        float maxTravel = 0f;
+        for (int i = start; i < end; i++) {
+            previousX[i] = x[i];
+            previousZ[i] = z[i];
+
+            if (inverseMass[i] == 0f) {
+                integrateKinematic(i, dt);
+                continue;
+            }
+
+            // Friction
+            velocityX[i] *= friction;
+            velocityZ[i] *= friction;
+
+            moveBouncingOffWalls(i, dt);
+
+            maxTravel = Math.max(maxTravel, Math.max(
+                    Math.abs(x[i] - previousX[i]), Math.abs(z[i] - previousZ[i])));
+        }
+        return maxTravel;
+    }
+
+    /**
+     * Move a puck for dt seconds, bouncing off any walls it reaches on the way.
+     */
+    private void moveBouncingOffWalls(int i, float dt) {
+        float remaining = dt;
+        for (int bounce = 0; bounce < MAX_WALL_BOUNCES_PER_STEP && remaining > 0f; bounce++) {
+            final float displacementX = velocityX[i] * remaining;
+            final float displacementZ = velocityZ[i] * remaining;
+            final float tx = Geometry.timeOfImpactWithWalls(
+                    x[i], displacementX, radius[i], leftBound, rightBound);
+            final float tz = Geometry.timeOfImpactWithWalls(
+                    z[i], displacementZ, radius[i], farBound, nearBound);
+
+            if (tx < 0f && tz < 0f) {
+                x[i] += displacementX;
+                z[i] += displacementZ;
+                break;
+            }
+
+            // Move up to the first wall hit, bounce, and carry on with what's left of the step.
+            final float t = tx < 0f ? tz : (tz < 0f ? tx : Math.min(tx, tz));
+            x[i] += displacementX * t;
+            z[i] += displacementZ * t;
+            if (t == tx) {
+                velocityX[i] = -velocityX[i] * WALL_RESTITUTION;
+                velocityZ[i] *= WALL_RESTITUTION;
+            }
+            if (t == tz) {
+                velocityX[i] *= WALL_RESTITUTION;
+                velocityZ[i] = -velocityZ[i] * WALL_RESTITUTION;
+            }
+            remaining -= remaining * t;
+        }
+
+        keepOnTable(i);
+    }
+
+    private void integrateKinematic(int i, float dt) {
+        float remaining = targetTimeRemaining[i];
+        if (remaining <= 0f) {
+            velocityX[i] = 0f;
+            velocityZ[i] = 0f;
+            return;
+        }
+
+        velocityX[i] = (targetX[i] - x[i]) / remaining;
+        velocityZ[i] = (targetZ[i] - z[i]) / remaining;
+        if (dt >= remaining) {
+            x[i] = targetX[i];
+            z[i] = targetZ[i];
+            targetTimeRemaining[i] = 0f;
+        } else {
+            x[i] += velocityX[i] * dt;
+            z[i] += velocityZ[i] * dt;
+            targetTimeRemaining[i] = remaining - dt;
+        }
+    }
+
+    /**
+     * Bounce a puck that has ended up outside the table back in, and clamp it to the table.
+     */
+    private void keepOnTable(int i) {
+        final float minX = leftBound + radius[i];
+        final float maxX = rightBound - radius[i];
+        final float minZ = farBound + radius[i];
+        final float maxZ = nearBound - radius[i];
+
+        if (x[i] < minX || x[i] > maxX) {
+            velocityX[i] = -velocityX[i] * WALL_RESTITUTION;
+            velocityZ[i] *= WALL_RESTITUTION;
+        }
+        if (z[i] < minZ || z[i] > maxZ) {
+            velocityX[i] *= WALL_RESTITUTION;
+            velocityZ[i] = -velocityZ[i] * WALL_RESTITUTION;
+        }
+
+        // Clamp body to table
+        x[i] = Math.min(maxX, Math.max(x[i], minX));
+        z[i] = Math.min(maxZ, Math.max(z[i], minZ));
+    }
+
+    private float frictionForStep(float dt) {
+        if (dt != cachedStepSeconds) {
+            cachedStepSeconds = dt;
+            cachedFriction = (float) Math.pow(FRICTION_PER_REFERENCE_FRAME,
+                    REFERENCE_FRAME_RATE * dt);
+        }
+        return cachedFriction;
+    }
+
+    /**
+     * Counting sort of the pucks by grid cell.
+     */
+    private void buildGrid() {
+        final int cellCount = gridColumns * gridRows;
+        Arrays.fill(cellStart, 0);
+
+        // Count the pucks in each cell, then turn the counts into the index one past each
+        // cell's last puck.
+        for (int i = 0; i < bodyCount; i++) {
+            if (inverseMass[i] == 0f) {
+                continue;
+            }
+            int cell = cellOf(x[i], z[i]);
+            bodyCell[i] = cell;
+            cellStart[cell]++;
+        }
+        for (int cell = 1; cell < cellCount; cell++) {
+            cellStart[cell] += cellStart[cell - 1];
+        }
+        cellStart[cellCount] = puckCount;
+
+        // Fill each cell from its end, walking the pucks backwards. Each cell's entry ends up
+        // pointing at its first puck, and pucks stay in index order within a cell.
+        for (int i = bodyCount - 1; i >= 0; i--) {
+            if (inverseMass[i] != 0f) {
+                cellBodies[--cellStart[bodyCell[i]]] = i;
+            }
+        }
+    }
+
+    private int cellOf(float bodyX, float bodyZ) {
+        return rowOf(bodyZ) * gridColumns + columnOf(bodyX);
+    }
+
+    private int columnOf(float bodyX) {
+        int column = (int) ((bodyX - leftBound) / cellSize);
+        return Math.min(gridColumns - 1, Math.max(0, column));
+    }
+
+    private int rowOf(float bodyZ) {
+        int row = (int) ((bodyZ - farBound) / cellSize);
+        return Math.min(gridRows - 1, Math.max(0, row));
+    }
+
+    /**
+     * Resolve the collisions owned by the cells in one stripe of columns. These touch pucks in
+     * the stripe and the first column of the next one, never the stripe before or after that.
+     */
+    private void collideStripe(int stripe) {
+        stripePairsTested[stripe] = 0;
+        stripeContacts[stripe] = 0;
+
+        final int firstColumn = stripe * stripeColumns;
+        final int endColumn = Math.min(gridColumns, firstColumn + stripeColumns);
+        for (int column = firstColumn; column < endColumn; column++) {
+            for (int row = 0; row < gridRows; row++) {
+                collideCell(column, row, stripe);
+            }
+        }
+    }
+
+    /**
+     * Collide every puck in a cell with the pucks after it in the same cell and with the
+     * pucks in the neighbouring cells to the right and below. Together with the same pass over
+     * every other cell, that covers every neighbouring pair exactly once.
+     */
+    private void collideCell(int column, int row, int slot) {
+        final int cell = row * gridColumns + column;
+
+        for (int a = cellStart[cell]; a < cellStart[cell + 1]; a++) {
+            final int i = cellBodies[a];
+
+            for (int b = a + 1; b < cellStart[cell + 1]; b++) {
+                collide(i, cellBodies[b], slot);
+            }
+            collideWithCell(i, column + 1, row - 1, slot);
+            collideWithCell(i, column + 1, row, slot);
+            collideWithCell(i, column + 1, row + 1, slot);
+            collideWithCell(i, column, row + 1, slot);
+        }
+    }
+
+    private void collideWithCell(int i, int column, int row, int slot) {
+        if (column < 0 || column >= gridColumns || row < 0 || row >= gridRows) {
+            return;
+        }
+        final int cell = row * gridColumns + column;
+        for (int b = cellStart[cell]; b < cellStart[cell + 1]; b++) {
+            collide(i, cellBodies[b], slot);
+        }
+    }
+
+    /**
+     * Collide a mallet with every puck in the cells its path through this step could have
+     * touched.
+     */
+    private void collideMallet(int mallet, int slot) {
+        if (puckCount == 0) {
+            return;
+        }
+        final float reach = radius[mallet] + maxPuckRadius + maxPuckTravel;
+        final int firstColumn = columnOf(Math.min(previousX[mallet], x[mallet]) - reach);
+        final int lastColumn = columnOf(Math.max(previousX[mallet], x[mallet]) + reach);
+        final int firstRow = rowOf(Math.min(previousZ[mallet], z[mallet]) - reach);
+        final int lastRow = rowOf(Math.max(previousZ[mallet], z[mallet]) + reach);
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                final int cell = row * gridColumns + column;
+                for (int b = cellStart[cell]; b < cellStart[cell + 1]; b++) {
+                    sweepMallet(mallet, cellBodies[b], slot);
+                }
+            }
+        }
+    }
+
+    /**
+     * Swept mallet-puck test. Both bodies are treated as moving in straight lines from where
+     * they were at the start of the step to where they are now. If they met on the way, the
+     * puck bounces off the mallet at that moment and carries on for the rest of the step.
+     */
+    private void sweepMallet(int mallet, int puck, int slot) {
+        final float t = Geometry.timeOfImpact(
+                previousX[mallet], previousZ[mallet],
+                x[mallet] - previousX[mallet], z[mallet] - previousZ[mallet],
+                previousX[puck], previousZ[puck],
+                x[puck] - previousX[puck], z[puck] - previousZ[puck],
+                radius[mallet] + radius[puck]);
+
+        if (t <= 0f) {
+            // Either they never touched, or they were already touching at the start of the
+            // step; the ordinary overlap test deals with both.
+            collide(mallet, puck, slot);
+            return;
+        }
+        stripePairsTested[slot]++;
+        stripeContacts[slot]++;
+
+        // Where each body was at the moment of impact.
+        final float malletX = previousX[mallet] + (x[mallet] - previousX[mallet]) * t;
+        final float malletZ = previousZ[mallet] + (z[mallet] - previousZ[mallet]) * t;
+        final float puckX = previousX[puck] + (x[puck] - previousX[puck]) * t;
+        final float puckZ = previousZ[puck] + (z[puck] - previousZ[puck]) * t;
+
+        final float dx = puckX - malletX;
+        final float dz = puckZ - malletZ;
+        final float distance = (float) Math.sqrt(dx * dx + dz * dz);
+        final float nx = distance > 0f ? dx / distance : 1f;
+        final float nz = distance > 0f ? dz / distance : 0f;
+
+        // The mallet can't be pushed, so the whole bounce goes to the puck.
+        final float approachSpeed = (velocityX[puck] - velocityX[mallet]) * nx
+                + (velocityZ[puck] - velocityZ[mallet]) * nz;
+        if (approachSpeed < 0f) {
+            velocityX[puck] -= (1f + BODY_RESTITUTION) * approachSpeed * nx;
+            velocityZ[puck] -= (1f + BODY_RESTITUTION) * approachSpeed * nz;
+        }
+
+        // Carry on from the point of impact for the rest of the step. If the mallet is still
+        // catching up with the puck, the overlap test pushes it clear.
+        x[puck] = puckX;
+        z[puck] = puckZ;
+        moveBouncingOffWalls(puck, (1f - t) * stepSeconds);
+        resolveOverlap(mallet, puck);
+        keepOnTable(puck);
+    }
+
+    /**
+     * Circle-circle narrowphase. Pushes overlapping bodies apart in proportion to their inverse
+     * masses and applies a bounce impulse if they're moving towards each other.
+     * @param slot which counters to update.
+     */
+    private void collide(int i, int j, int slot) {
+        stripePairsTested[slot]++;
+        if (resolveOverlap(i, j)) {
+            stripeContacts[slot]++;
+        }
+    }
+
+    /**
+     * @return true if the bodies were overlapping.
+     */
+    private boolean resolveOverlap(int i, int j) {
+        final float inverseMassSum = inverseMass[i] + inverseMass[j];
+        if (inverseMassSum == 0f) {
+            // Two mallets.
+            return false;
+        }
+
+        final float dx = x[j] - x[i];
+        final float dz = z[j] - z[i];
+        final float minDistance = radius[i] + radius[j];
+        final float distanceSquared = dx * dx + dz * dz;
+        if (distanceSquared >= minDistance * minDistance) {
+            return false;
+        }
+
+        // Contact normal from i to j. Bodies exactly on top of each other get pushed apart
+        // along x.
+        final float distance = (float) Math.sqrt(distanceSquared);
+        final float nx = distance > 0f ? dx / distance : 1f;
+        final float nz = distance > 0f ? dz / distance : 0f;
+
+        // Separate the bodies.
+        final float correction = (minDistance - distance) / inverseMassSum;
+        x[i] -= nx * correction * inverseMass[i];
+        z[i] -= nz * correction * inverseMass[i];
+        x[j] += nx * correction * inverseMass[j];
+        z[j] += nz * correction * inverseMass[j];
+        // The correction can push a body into or through a wall.
+        if (inverseMass[i] > 0f) {
+            keepOnTable(i);
+        }
+        if (inverseMass[j] > 0f) {
+            keepOnTable(j);
+        }
+
+        // Bounce, if they're approaching.
+        final float approachSpeed = (velocityX[j] - velocityX[i]) * nx
+                + (velocityZ[j] - velocityZ[i]) * nz;
+        if (approachSpeed < 0f) {
+            final float impulse = -(1f + BODY_RESTITUTION) * approachSpeed / inverseMassSum;
+            velocityX[i] -= impulse * inverseMass[i] * nx;
+            velocityZ[i] -= impulse * inverseMass[i] * nz;
+            velocityX[j] += impulse * inverseMass[j] * nx;
+            velocityZ[j] += impulse * inverseMass[j] * nz;
+        }
+        return true;
+    }
+
+    public int getBodyCount() {
+        return bodyCount;
+    }
+
+    public float getX(int body) {
+        return x[body];
+    }
+
+    public float getZ(int body) {
+        return z[body];
+    }
+
+    public float getVelocityX(int body) {
+        return velocityX[body];
+    }
+
+    public float getVelocityZ(int body) {
+        return velocityZ[body];
+    }
+
+    public float getRadius(int body) {
+        return radius[body];
+    }
+
+    /**
+     * @param alpha interpolation factor from FixedTimestep.advance().
+     * @return x position blended between the previous and current step.
+     */
+    public float getInterpolatedX(int body, float alpha) {
+        return previousX[body] + (x[body] - previousX[body]) * alpha;
+    }
+
+    /**
+     * @param alpha interpolation factor from FixedTimestep.advance().
+     * @return z position blended between the previous and current step.
+     */
+    public float getInterpolatedZ(int body, float alpha) {
+        return previousZ[body] + (z[body] - previousZ[body]) * alpha;
+    }
+
+    /**
+     * @return number of body pairs that passed the broadphase in the last step.
+     */
+    public int getPairsTested() {
+        return pairsTested;
+    }
+
+    /**
+     * @return number of touching pairs resolved in the last step.
+     */
+    public int getContacts() {
+        return contacts;
+    }
+}
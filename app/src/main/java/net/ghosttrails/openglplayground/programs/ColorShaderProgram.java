@@ -1,44 +0,0 @@
-package net.ghosttrails.openglplayground.programs;
-
-import android.content.Context;
-
-import net.ghosttrails.openglplayground.R;
-
-import static android.opengl.GLES20.glGetAttribLocation;
-import static android.opengl.GLES20.glGetUniformLocation;
-import static android.opengl.GLES20.glUniform4f;
-import static android.opengl.GLES20.glUniformMatrix4fv;
-
-/**
- * Represents the simple color shader.
- */
-
-public class ColorShaderProgram extends ShaderProgram {
-
-    // Uniform locations
-    private final int uMatrixLocation;
-    private final int uColorLocation;
-
-    // Attribute locations
-    private final int aPositionLocation;
-
-    public ColorShaderProgram(Context context) {
-        super(context, R.raw.simple_vertex_shader, R.raw.simple_fragment_shader);
-
-        uMatrixLocation = glGetUniformLocation(program, U_MATRIX);
-        uColorLocation = glGetUniformLocation(program, U_COLOR);
-
-        aPositionLocation = glGetAttribLocation(program, A_POSITION);
-    }
-
-    public void setUniforms(float[] matrix, float r, float g, float b) {
-        // Pass the matrix to the shader program
-        glUniformMatrix4fv(uMatrixLocation, 1, false, matrix, 0);
-        glUniform4f(uColorLocation, r, g, b, 1f);
-    }
-
-    public int getPositionAttributeLocation() {
-        return aPositionLocation;
-    }
-
-}
@@ -0,0 +1,53 @@
+package net.ghosttrails.openglplayground.programs;
+
+import net.ghosttrails.openglplayground.R;
+import net.ghosttrails.openglplayground.gl.Gles;
+
+/**
+ * The color shader for instanced drawing: every instance of a mesh in one draw call, each
+ * translated and colored by per-instance attributes. Needs an ES 3.0 context.
+ */
+
+public class InstancedColorShaderProgram extends ShaderProgram {
+
+    // Uniform locations
+    private int uMatrixLocation;
+
+    // Attribute locations
+    private int aPositionLocation;
+    private int aInstanceTranslationLocation;
+    private int aInstanceColorLocation;
+
+    public InstancedColorShaderProgram(Gles gles, ProgramRegistry programs) {
+        super(gles, programs.get(R.raw.instanced_vertex_shader,
+                R.raw.instanced_fragment_shader));
+    }
+
+    @Override
+    protected void loadLocations() {
+        uMatrixLocation = variant.getUniformLocation(U_MATRIX);
+
+        aPositionLocation = variant.getAttribLocation(A_POSITION);
+        aInstanceTranslationLocation = variant.getAttribLocation(A_INSTANCE_TRANSLATION);
+        aInstanceColorLocation = variant.getAttribLocation(A_INSTANCE_COLOR);
+    }
+
+    /**
+     * @param matrix the view projection matrix; each instance's translation is added first.
+     */
+    public void setUniforms(float[] matrix) {
+        gles.glUniformMatrix4fv(uMatrixLocation, 1, false, matrix, 0);
+    }
+
+    public int getPositionAttributeLocation() {
+        return aPositionLocation;
+    }
+
+    public int getInstanceTranslationAttributeLocation() {
+        return aInstanceTranslationLocation;
+    }
+
+    public int getInstanceColorAttributeLocation() {
+        return aInstanceColorLocation;
+    }
+}
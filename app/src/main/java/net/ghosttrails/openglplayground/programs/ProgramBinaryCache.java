@@ -0,0 +1,315 @@
+package net.ghosttrails.openglplayground.programs;
+
+import android.opengl.GLES30;
+
+import net.ghosttrails.openglplayground.gl.GlContext;
+import net.ghosttrails.openglplayground.gl.Gles;
+import net.ghosttrails.openglplayground.util.EventTrace;
+import net.ghosttrails.openglplayground.util.LoggerConfig;
+import net.ghosttrails.openglplayground.util.ShaderHelper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static android.opengl.GLES20.GL_LINK_STATUS;
+import static android.opengl.GLES20.GL_RENDERER;
+import static android.opengl.GLES20.GL_VENDOR;
+import static android.opengl.GLES20.GL_VERSION;
+
+/**
+ * Keeps linked programs in files, so they can be loaded instead of compiled and linked from
+ * source next time, including after the context is lost.
+ *
+ * A program's file is named after a hash of its shader sources and the GL vendor, renderer and
+ * version strings, so a change to either shader or to the driver means a different file, and
+ * the program is built from source and saved again. If the driver won't take a binary back
+ * anyway (drivers may refuse their own old binaries), its file is deleted and the program is
+ * built from source.
+ *
+ * Only on ES 3.0 contexts, with glGetProgramBinary and glProgramBinary. ES 2.0 has
+ * OES_get_program_binary, but Android has no Java binding for it, so programs are always built
+ * from source there. Only use it on the GL thread.
+ */
+
+public class ProgramBinaryCache {
+
+    private static final String TAG = "ProgramBinaryCache";
+
+    private static final String FILE_SUFFIX = ".bin";
+    private static final int FILE_MAGIC = 0x50524f47;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final EventTrace trace = EventTrace.shared();
+    private static final int TRACE_PROGRAM_LOADED =
+            trace.define(TAG, "programLoaded", EventTrace.INFO, "bytes", "micros");
+    private static final int TRACE_PROGRAM_BUILT =
+            trace.define(TAG, "programBuilt", EventTrace.INFO, "bytesSaved", "micros");
+    private static final int TRACE_BINARY_REJECTED =
+            trace.define(TAG, "binaryRejected", EventTrace.WARN, "format");
+    private static final int TRACE_CACHE_IO_FAILED =
+            trace.define(TAG, "cacheIoFailed", EventTrace.WARN);
+
+    private final Gles gles;
+    private final File directory;
+    private final int[] status = new int[1];
+
+    // Counters.
+    private int hits = 0;
+    private int misses = 0;
+    private long hitNanos = 0;
+    private long missNanos = 0;
+
+    /**
+     * @param directory where to keep the binaries, e.g. a directory in the app's cache
+     * directory; made if it isn't there.
+     */
+    public ProgramBinaryCache(Gles gles, File directory) {
+        this.gles = gles;
+        this.directory = directory;
+    }
+
+    /**
+     * Load the program from its file if there is one that the driver accepts, or else build it
+     * from source and, if possible, save it for next time.
+     * @return the program id - 0 if it failed.
+     */
+    public int buildProgram(String vertexShaderSource, String fragmentShaderSource) {
+        final long start = System.nanoTime();
+        if (!supportsProgramBinaries()) {
+            final int program = buildFromSource(vertexShaderSource, fragmentShaderSource,
+                    false);
+            missed(start, 0);
+            return program;
+        }
+
+        final File file = new File(directory,
+                key(vertexShaderSource, fragmentShaderSource) + FILE_SUFFIX);
+        if (file.exists()) {
+            final int program = load(file);
+            if (program != 0) {
+                hits++;
+                final long nanos = System.nanoTime() - start;
+                hitNanos += nanos;
+                if (LoggerConfig.ON) {
+                    trace.record(TRACE_PROGRAM_LOADED, file.length(), nanos / 1000);
+                }
+                return program;
+            }
+            // Corrupt, or the driver won't have it; build it again below.
+            file.delete();
+        }
+
+        final int program = buildFromSource(vertexShaderSource, fragmentShaderSource, true);
+        missed(start, program != 0 ? save(program, file) : 0);
+        return program;
+    }
+
+    /**
+     * Compile and link the program; overridden in tests, which have no shader compiler.
+     */
+    int buildFromSource(String vertexShaderSource, String fragmentShaderSource,
+                        boolean retrievableBinary) {
+        return ShaderHelper.buildProgram(vertexShaderSource, fragmentShaderSource,
+                retrievableBinary);
+    }
+
+    private void missed(long start, int bytesSaved) {
+        misses++;
+        final long nanos = System.nanoTime() - start;
+        missNanos += nanos;
+        if (LoggerConfig.ON) {
+            trace.record(TRACE_PROGRAM_BUILT, bytesSaved, nanos / 1000);
+        }
+    }
+
+    private boolean supportsProgramBinaries() {
+        if (GlContext.getMajorVersion() < 3) {
+            return false;
+        }
+        gles.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, status, 0);
+        return status[0] > 0;
+    }
+
+    /**
+     * @return a hash of the sources and the driver, as hex.
+     */
+    private String key(String vertexShaderSource, String fragmentShaderSource) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-1 not available", e);
+        }
+        final String[] parts = {gles.glGetString(GL_VENDOR), gles.glGetString(GL_RENDERER),
+                gles.glGetString(GL_VERSION), vertexShaderSource, fragmentShaderSource};
+        for (String part : parts) {
+            digest.update(String.valueOf(part).getBytes(UTF_8));
+            // So moving text from one part to the next changes the hash.
+            digest.update((byte) 0);
+        }
+        final StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return the program, or 0 if the file or the driver wouldn't give one.
+     */
+    private int load(File file) {
+        final int format;
+        final byte[] binary;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != FILE_MAGIC) {
+                return 0;
+            }
+            format = in.readInt();
+            final int length = in.readInt();
+            if (length <= 0 || length > file.length()) {
+                return 0;
+            }
+            binary = new byte[length];
+            in.readFully(binary);
+        } catch (IOException e) {
+            if (LoggerConfig.ON) {
+                trace.record(TRACE_CACHE_IO_FAILED, e.toString());
+            }
+            return 0;
+        } finally {
+            close(in);
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(binary.length)
+                .order(ByteOrder.nativeOrder());
+        buffer.put(binary).position(0);
+        final int program = gles.glCreateProgram();
+        if (program == 0) {
+            return 0;
+        }
+        gles.glProgramBinary(program, format, buffer, binary.length);
+        gles.glGetProgramiv(program, GL_LINK_STATUS, status, 0);
+        if (status[0] == 0) {
+            if (LoggerConfig.ON) {
+                trace.record(TRACE_BINARY_REJECTED, format);
+            }
+            gles.glDeleteProgram(program);
+            return 0;
+        }
+        return program;
+    }
+
+    /**
+     * @return bytes saved; 0 if the driver had no binary to give, or it couldn't be written.
+     */
+    private int save(int program, File file) {
+        gles.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, status, 0);
+        final int length = status[0];
+        if (length <= 0) {
+            return 0;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(length)
+                .order(ByteOrder.nativeOrder());
+        final int[] written = new int[1];
+        final int[] format = new int[1];
+        gles.glGetProgramBinary(program, length, written, 0, format, 0, buffer);
+        if (written[0] <= 0) {
+            return 0;
+        }
+        final byte[] binary = new byte[written[0]];
+        buffer.position(0);
+        buffer.get(binary);
+
+        // Write to a temporary file and rename it, so a half written file is never read.
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return 0;
+        }
+        final File temporary = new File(directory, file.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(format[0]);
+            out.writeInt(binary.length);
+            out.write(binary);
+        } catch (IOException e) {
+            if (LoggerConfig.ON) {
+                trace.record(TRACE_CACHE_IO_FAILED, e.toString());
+            }
+            close(out);
+            temporary.delete();
+            return 0;
+        }
+        if (!close(out) || !temporary.renameTo(file)) {
+            temporary.delete();
+            return 0;
+        }
+        return binary.length;
+    }
+
+    /**
+     * @return false if it failed.
+     */
+    private static boolean close(Closeable closeable) {
+        if (closeable == null) {
+            return true;
+        }
+        try {
+            closeable.close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return programs loaded from their files since the counters were reset.
+     */
+    public int getHits() {
+        return hits;
+    }
+
+    /**
+     * @return programs built from source since the counters were reset.
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return time spent loading programs from their files since the counters were reset.
+     */
+    public long getHitNanos() {
+        return hitNanos;
+    }
+
+    /**
+     * @return time spent building programs from source, and saving them, since the counters
+     * were reset.
+     */
+    public long getMissNanos() {
+        return missNanos;
+    }
+
+    public void resetCounters() {
+        hits = 0;
+        misses = 0;
+        hitNanos = 0;
+        missNanos = 0;
+    }
+}
@@ -0,0 +1,216 @@
+package net.ghosttrails.openglplayground.programs;
+
+import android.content.Context;
+
+import net.ghosttrails.openglplayground.gl.GlContext;
+import net.ghosttrails.openglplayground.gl.Gles;
+import net.ghosttrails.openglplayground.util.EventTrace;
+import net.ghosttrails.openglplayground.util.LoggerConfig;
+import net.ghosttrails.openglplayground.util.ShaderHelper;
+import net.ghosttrails.openglplayground.util.ShaderPreprocessor;
+import net.ghosttrails.openglplayground.util.TextResourceReader;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hands out shader variants: a pair of raw shader resources, preprocessed with a set of
+ * defines (see ShaderPreprocessor), with #include "name.glsl" finding other raw resources.
+ *
+ * Asking for the same resources and defines again gives the same variant, and so do
+ * different defines that come out as the same sources, so they share one program. Programs
+ * are only built when a variant's program is first asked for, and at most maxPrograms are
+ * kept; building another deletes the one used least recently, which is built again if it's
+ * needed again. Programs are built through the program binary cache, if there is one.
+ * Only use it on the GL thread.
+ */
+
+public class ProgramRegistry {
+
+    private static final String TAG = "ProgramRegistry";
+
+    private static final EventTrace trace = EventTrace.shared();
+    private static final int TRACE_VARIANT_BUILT =
+            trace.define(TAG, "variantBuilt", EventTrace.INFO, "program", "built");
+    private static final int TRACE_VARIANT_EVICTED =
+            trace.define(TAG, "variantEvicted", EventTrace.INFO, "program");
+
+    private final Context context;
+    private final Gles gles;
+    private final ProgramBinaryCache cache;
+    private final int maxPrograms;
+
+    private final Map<String, ShaderVariant> variantsByKey = new HashMap<String, ShaderVariant>();
+    private final Map<String, ShaderVariant> variantsBySources =
+            new HashMap<String, ShaderVariant>();
+    private final Map<String, String> sourcesByName = new HashMap<String, String>();
+    private final ShaderPreprocessor.IncludeResolver includeResolver =
+            new ShaderPreprocessor.IncludeResolver() {
+                @Override
+                public String resolve(String name) {
+                    return readInclude(name);
+                }
+            };
+
+    // Variants with a program, least recently used first.
+    private final LinkedHashMap<ShaderVariant, ShaderVariant> built =
+            new LinkedHashMap<ShaderVariant, ShaderVariant>(16, 0.75f, true);
+    private int builtGeneration = 0;
+
+    // Counters.
+    private int builds = 0;
+    private int evictions = 0;
+
+    /**
+     * @param cache where to load programs from and save them to; null to always build them
+     * from source.
+     * @param maxPrograms how many programs to keep at once.
+     */
+    public ProgramRegistry(Context context, Gles gles, ProgramBinaryCache cache,
+                           int maxPrograms) {
+        if (maxPrograms < 1) {
+            throw new IllegalArgumentException("maxPrograms must be at least 1");
+        }
+        this.context = context;
+        this.gles = gles;
+        this.cache = cache;
+        this.maxPrograms = maxPrograms;
+    }
+
+    /**
+     * @param defines each either "NAME", for #ifdef, or "NAME value"; in any order.
+     * @return the variant. Its program isn't built until it's asked for.
+     */
+    public ShaderVariant get(int vertexShaderResourceId, int fragmentShaderResourceId,
+                             String... defines) {
+        final String[] sortedDefines = defines.clone();
+        Arrays.sort(sortedDefines);
+        final String key = vertexShaderResourceId + ":" + fragmentShaderResourceId + ":"
+                + Arrays.toString(sortedDefines);
+        ShaderVariant variant = variantsByKey.get(key);
+        if (variant != null) {
+            return variant;
+        }
+
+        final String vertexShaderSource = ShaderPreprocessor.preprocess(
+                readResource(vertexShaderResourceId), includeResolver, sortedDefines);
+        final String fragmentShaderSource = ShaderPreprocessor.preprocess(
+                readResource(fragmentShaderResourceId), includeResolver, sortedDefines);
+        final String sources = vertexShaderSource + '\0' + fragmentShaderSource;
+        variant = variantsBySources.get(sources);
+        if (variant == null) {
+            variant = new ShaderVariant(this, gles, vertexShaderSource, fragmentShaderSource);
+            variantsBySources.put(sources, variant);
+        }
+        variantsByKey.put(key, variant);
+        return variant;
+    }
+
+    private String readResource(int resourceId) {
+        return TextResourceReader.readTextFileFromResource(context, resourceId);
+    }
+
+    private String readInclude(String name) {
+        String source = sourcesByName.get(name);
+        if (source == null) {
+            final int dot = name.lastIndexOf('.');
+            final int resourceId = context.getResources().getIdentifier(
+                    dot >= 0 ? name.substring(0, dot) : name, "raw", context.getPackageName());
+            if (resourceId == 0) {
+                throw new IllegalArgumentException("No shader to include called " + name);
+            }
+            source = readResource(resourceId);
+            sourcesByName.put(name, source);
+        }
+        return source;
+    }
+
+    /**
+     * Make sure the variant has a program, and count it as just used.
+     */
+    void use(ShaderVariant variant) {
+        if (builtGeneration != GlContext.getGeneration()) {
+            // The context was lost, and every program with it.
+            for (ShaderVariant lost : built.keySet()) {
+                lost.program = 0;
+                lost.onProgramChanged();
+            }
+            built.clear();
+            builtGeneration = GlContext.getGeneration();
+        }
+        if (variant.program != 0) {
+            built.get(variant);
+            return;
+        }
+        if (variant.generation == builtGeneration) {
+            // It failed to build in this context, and would again.
+            return;
+        }
+
+        if (built.size() >= maxPrograms) {
+            final Iterator<ShaderVariant> leastRecentlyUsed = built.keySet().iterator();
+            final ShaderVariant evicted = leastRecentlyUsed.next();
+            leastRecentlyUsed.remove();
+            if (LoggerConfig.ON) {
+                trace.record(TRACE_VARIANT_EVICTED, evicted.program);
+            }
+            // Through the facade, so it forgets the program's uniforms, in case the name is
+            // reused.
+            gles.glDeleteProgram(evicted.program);
+            evicted.program = 0;
+            evicted.generation = 0;
+            evicted.onProgramChanged();
+            evictions++;
+        }
+
+        variant.program = cache != null
+                ? cache.buildProgram(variant.vertexShaderSource, variant.fragmentShaderSource)
+                : ShaderHelper.buildProgram(variant.vertexShaderSource,
+                        variant.fragmentShaderSource);
+        variant.generation = builtGeneration;
+        variant.onProgramChanged();
+        builds++;
+        if (variant.program != 0) {
+            built.put(variant, variant);
+        }
+        if (LoggerConfig.ON) {
+            trace.record(TRACE_VARIANT_BUILT, variant.program, built.size());
+        }
+    }
+
+    /**
+     * @return distinct variants handed out; ones with the same sources count once.
+     */
+    public int getVariantCount() {
+        return variantsBySources.size();
+    }
+
+    /**
+     * @return variants that have a program now.
+     */
+    public int getBuiltCount() {
+        return built.size();
+    }
+
+    /**
+     * @return programs built since the counters were reset.
+     */
+    public int getBuilds() {
+        return builds;
+    }
+
+    /**
+     * @return programs deleted to make room since the counters were reset.
+     */
+    public int getEvictions() {
+        return evictions;
+    }
+
+    public void resetCounters() {
+        builds = 0;
+        evictions = 0;
+    }
+}
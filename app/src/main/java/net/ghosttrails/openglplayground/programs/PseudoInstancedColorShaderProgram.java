@@ -0,0 +1,72 @@
+package net.ghosttrails.openglplayground.programs;
+
+import net.ghosttrails.openglplayground.R;
+import net.ghosttrails.openglplayground.gl.Gles;
+
+/**
+ * The color shader for drawing instances on ES 2.0, which can't draw instanced. The mesh is
+ * drawn from a copy repeated MAX_INSTANCES times, each copy's vertices tagged with its
+ * instance index, and the translations and colors of up to MAX_INSTANCES instances are set as
+ * uniform arrays, so a batch of them takes one draw call.
+ */
+
+public class PseudoInstancedColorShaderProgram extends ShaderProgram {
+
+    // Size of the uniform arrays in the vertex shader. Two vectors per instance, plus the
+    // matrix, stays inside the 128 vertex uniform vectors every ES 2.0 device has.
+    public static final int MAX_INSTANCES = 32;
+    private static final int FLOATS_PER_VECTOR = 4;
+
+    // Uniform locations
+    private int uMatrixLocation;
+    private int uInstanceTranslationsLocation;
+    private int uInstanceColorsLocation;
+
+    // Attribute locations
+    private int aPositionLocation;
+    private int aInstanceIndexLocation;
+
+    public PseudoInstancedColorShaderProgram(Gles gles, ProgramRegistry programs) {
+        super(gles, programs.get(R.raw.pseudo_instanced_vertex_shader,
+                R.raw.pseudo_instanced_fragment_shader, "MAX_INSTANCES " + MAX_INSTANCES));
+    }
+
+    @Override
+    protected void loadLocations() {
+        uMatrixLocation = variant.getUniformLocation(U_MATRIX);
+        uInstanceTranslationsLocation =
+                variant.getUniformLocation(U_INSTANCE_TRANSLATIONS);
+        uInstanceColorsLocation = variant.getUniformLocation(U_INSTANCE_COLORS);
+
+        aPositionLocation = variant.getAttribLocation(A_POSITION);
+        aInstanceIndexLocation = variant.getAttribLocation(A_INSTANCE_INDEX);
+    }
+
+    /**
+     * @param matrix the view projection matrix; each instance's translation is added first.
+     */
+    public void setUniforms(float[] matrix) {
+        gles.glUniformMatrix4fv(uMatrixLocation, 1, false, matrix, 0);
+    }
+
+    /**
+     * Set the translations and colors of a batch of instances.
+     * @param translations x, y, z and an unused w for each instance.
+     * @param colors r, g, b and a for each instance.
+     * @param first the first instance of the batch.
+     * @param count instances in the batch; at most MAX_INSTANCES.
+     */
+    public void setInstances(float[] translations, float[] colors, int first, int count) {
+        gles.glUniform4fv(uInstanceTranslationsLocation, count, translations,
+                first * FLOATS_PER_VECTOR);
+        gles.glUniform4fv(uInstanceColorsLocation, count, colors, first * FLOATS_PER_VECTOR);
+    }
+
+    public int getPositionAttributeLocation() {
+        return aPositionLocation;
+    }
+
+    public int getInstanceIndexAttributeLocation() {
+        return aInstanceIndexLocation;
+    }
+}
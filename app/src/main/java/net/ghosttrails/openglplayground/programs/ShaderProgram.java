@@ -1,11 +1,6 @@
 package net.ghosttrails.openglplayground.programs;
 
-import android.content.Context;
-
-import net.ghosttrails.openglplayground.util.ShaderHelper;
-import net.ghosttrails.openglplayground.util.TextResourceReader;
-
-import static android.opengl.GLES20.glUseProgram;
+import net.ghosttrails.openglplayground.gl.Gles;
 
 /**
  * Represents an OpenGL shader program.
@@ -16,28 +11,54 @@ public class ShaderProgram {
     // Uniform constants
     protected static final String U_MATRIX = "u_Matrix";
     protected static final String U_TEXTURE_UNIT = "u_TextureUnit";
-    protected static final String U_COLOR = "u_Color";
+    protected static final String U_INSTANCE_TRANSLATIONS = "u_InstanceTranslations";
+    protected static final String U_INSTANCE_COLORS = "u_InstanceColors";
 
     // Attribute constants
     protected static final String A_POSITION = "a_Position";
     protected static final String A_COLOR = "a_color";
     protected static final String A_TEXTURE_COORDINATES = "a_TextureCoordinates";
+    protected static final String A_INSTANCE_TRANSLATION = "a_InstanceTranslation";
+    protected static final String A_INSTANCE_COLOR = "a_InstanceColor";
+    protected static final String A_INSTANCE_INDEX = "a_InstanceIndex";
+
+    protected final Gles gles;
+    protected final ShaderVariant variant;
+
+    // Shader program, and the build of it the subclass's locations were looked up for.
+    protected int program = 0;
+    private int programBuild = -1;
 
-    // Shader program
-    protected final int program;
-
-    protected ShaderProgram(Context context, int vertexShaderResourceId,
-                            int fragmentShaderResourceId) {
-        // Compile the shaders and link the program
-        program = ShaderHelper.buildProgram(
-                TextResourceReader.readTextFileFromResource(
-                        context, vertexShaderResourceId),
-                TextResourceReader.readTextFileFromResource(
-                        context, fragmentShaderResourceId));
+    /**
+     * @param variant the shaders to use; its program isn't built until this is first used.
+     */
+    protected ShaderProgram(Gles gles, ShaderVariant variant) {
+        this.gles = gles;
+        this.variant = variant;
+    }
+
+    /**
+     * Build the program now, if it needs building, rather than when it's first used.
+     */
+    public void prepare() {
+        variant.getProgram();
     }
 
     public void useProgram() {
+        program = variant.getProgram();
+        if (variant.getBuild() != programBuild) {
+            // Built for the first time, or again since the locations were looked up.
+            programBuild = variant.getBuild();
+            loadLocations();
+        }
         // Set the current OpenGL shader program to this program.
-        glUseProgram(program);
+        gles.glUseProgram(program);
+    }
+
+    /**
+     * Look up the uniform and attribute locations in the variant. Called on first use, and
+     * whenever the program has been built again since.
+     */
+    protected void loadLocations() {
     }
 }
@@ -0,0 +1,93 @@
+package net.ghosttrails.openglplayground.programs;
+
+import net.ghosttrails.openglplayground.gl.Gles;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One permutation of a pair of shaders: their preprocessed sources, and the program linked
+ * from them, which isn't built until something asks for it. The registry that made it may
+ * delete the program again to stay within its limit, or the context may be lost, in which
+ * case it's built again the next time it's asked for; getBuild() changes each time, so
+ * anything that looked up locations knows to look them up again.
+ */
+
+public class ShaderVariant {
+
+    private final ProgramRegistry registry;
+    private final Gles gles;
+    final String vertexShaderSource;
+    final String fragmentShaderSource;
+
+    // Set by the registry: the program, and the context it was built in (0 if it hasn't
+    // been, or has been deleted since).
+    int program = 0;
+    int generation = 0;
+    private int build = 0;
+
+    // Locations looked up since the program was last built.
+    private final Map<String, Integer> uniformLocations = new HashMap<String, Integer>();
+    private final Map<String, Integer> attributeLocations = new HashMap<String, Integer>();
+
+    ShaderVariant(ProgramRegistry registry, Gles gles, String vertexShaderSource,
+                  String fragmentShaderSource) {
+        this.registry = registry;
+        this.gles = gles;
+        this.vertexShaderSource = vertexShaderSource;
+        this.fragmentShaderSource = fragmentShaderSource;
+    }
+
+    /**
+     * @return the program, built if it hasn't been, or has been deleted or lost since; 0 if it
+     * failed to build.
+     */
+    public int getProgram() {
+        registry.use(this);
+        return program;
+    }
+
+    /**
+     * @return a number that changes each time the program is built.
+     */
+    public int getBuild() {
+        return build;
+    }
+
+    public int getUniformLocation(String name) {
+        final int program = getProgram();
+        Integer location = uniformLocations.get(name);
+        if (location == null) {
+            location = gles.glGetUniformLocation(program, name);
+            uniformLocations.put(name, location);
+        }
+        return location;
+    }
+
+    public int getAttribLocation(String name) {
+        final int program = getProgram();
+        Integer location = attributeLocations.get(name);
+        if (location == null) {
+            location = gles.glGetAttribLocation(program, name);
+            attributeLocations.put(name, location);
+        }
+        return location;
+    }
+
+    /**
+     * Called by the registry when the program has been built, or deleted or lost.
+     */
+    void onProgramChanged() {
+        build++;
+        uniformLocations.clear();
+        attributeLocations.clear();
+    }
+
+    public String getVertexShaderSource() {
+        return vertexShaderSource;
+    }
+
+    public String getFragmentShaderSource() {
+        return fragmentShaderSource;
+    }
+}
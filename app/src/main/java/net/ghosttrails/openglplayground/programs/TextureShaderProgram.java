@@ -1,17 +1,10 @@
 package net.ghosttrails.openglplayground.programs;
 
-import android.content.Context;
-
 import net.ghosttrails.openglplayground.R;
+import net.ghosttrails.openglplayground.gl.Gles;
 
 import static android.opengl.GLES20.GL_TEXTURE0;
 import static android.opengl.GLES20.GL_TEXTURE_2D;
-import static android.opengl.GLES20.glActiveTexture;
-import static android.opengl.GLES20.glBindTexture;
-import static android.opengl.GLES20.glGetAttribLocation;
-import static android.opengl.GLES20.glGetUniformLocation;
-import static android.opengl.GLES20.glUniform1i;
-import static android.opengl.GLES20.glUniformMatrix4fv;
 
 /**
  * OpenGL program for the texture shader.
@@ -20,36 +13,39 @@ import static android.opengl.GLES20.glUniformMatrix4fv;
 public class TextureShaderProgram extends ShaderProgram {
 
     // Uniform locations
-    private final int uMatrixLocation;
-    private final int uTextureUnitLocation;
+    private int uMatrixLocation;
+    private int uTextureUnitLocation;
 
     // Attribute locations
-    private final int aPositionLocation;
-    private final int aTextureCoordinatesLocation;
+    private int aPositionLocation;
+    private int aTextureCoordinatesLocation;
 
-    public TextureShaderProgram(Context context) {
-        super(context, R.raw.texture_vertex_shader, R.raw.texture_fragment_shader);
+    public TextureShaderProgram(Gles gles, ProgramRegistry programs) {
+        super(gles, programs.get(R.raw.texture_vertex_shader, R.raw.texture_fragment_shader));
+    }
 
-        uMatrixLocation = glGetUniformLocation(program, U_MATRIX);
-        uTextureUnitLocation = glGetUniformLocation(program, U_TEXTURE_UNIT);
+    @Override
+    protected void loadLocations() {
+        uMatrixLocation = variant.getUniformLocation(U_MATRIX);
+        uTextureUnitLocation = variant.getUniformLocation(U_TEXTURE_UNIT);
 
-        aPositionLocation = glGetAttribLocation(program, A_POSITION);
-        aTextureCoordinatesLocation = glGetAttribLocation(program, A_TEXTURE_COORDINATES);
+        aPositionLocation = variant.getAttribLocation(A_POSITION);
+        aTextureCoordinatesLocation = variant.getAttribLocation(A_TEXTURE_COORDINATES);
     }
 
     public void setUniforms(float[] matrix, int textureId) {
         // Pass the matrix to the shader program
-        glUniformMatrix4fv(uMatrixLocation, 1, false, matrix, 0);
+        gles.glUniformMatrix4fv(uMatrixLocation, 1, false, matrix, 0);
 
         // Set the active texture unit to texture unit 0
-        glActiveTexture(GL_TEXTURE0);
+        gles.glActiveTexture(GL_TEXTURE0);
 
         // Bind the texture to this unit
-        glBindTexture(GL_TEXTURE_2D, textureId);
+        gles.glBindTexture(GL_TEXTURE_2D, textureId);
 
         // Tell the texture uniform sampler to use this texture in the shader by telling it to
         // read from texture unit 0
-        glUniform1i(uTextureUnitLocation, 0);
+        gles.glUniform1i(uTextureUnitLocation, 0);
     }
 
     public int getPositionAttributeLocation() {
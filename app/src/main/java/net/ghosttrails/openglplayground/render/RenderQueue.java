@@ -0,0 +1,311 @@
+package net.ghosttrails.openglplayground.render;
+
+import net.ghosttrails.openglplayground.programs.ShaderProgram;
+
+import java.util.Arrays;
+
+/**
+ * Collects a frame's draws as packets, then sorts and draws them in the order that changes
+ * the least state.
+ *
+ * Each packet names a layer, a program, a texture and a draw command (which draws one mesh),
+ * plus the uniform values to draw it with, and gets a 64 bit sort key made of those, most
+ * significant first: layer (4 bits), program (12), texture (16), command (16), depth (16).
+ * So within a layer the draws with the same program end up together, then those with the same
+ * texture, then those of the same mesh, nearest first. Packets are radix sorted by key, which
+ * keeps equal keys in the order they were submitted.
+ *
+ * Programs and commands are registered once by id; packets are primitive arrays and the
+ * uniform values are copied into one float array, all of which only grow, so once they're big
+ * enough queueing and drawing allocate nothing.
+ */
+
+public class RenderQueue {
+
+    public static final int MAX_LAYERS = 1 << 4;
+    public static final int MAX_PROGRAMS = 1 << 12;
+    public static final int MAX_COMMANDS = 1 << 16;
+
+    private static final int LAYER_SHIFT = 60;
+    private static final int PROGRAM_SHIFT = 48;
+    private static final int TEXTURE_SHIFT = 32;
+    private static final int COMMAND_SHIFT = 16;
+    private static final int DEPTH_MAX = 0xffff;
+
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    /**
+     * Draws one mesh.
+     */
+    public interface DrawCommand {
+        /**
+         * Set the uniforms and draw. The packet's program (if it has one) is in use.
+         * @param uniforms the packet's uniform values, starting at offset.
+         * @param texture the packet's texture; 0 if it has none.
+         */
+        void draw(float[] uniforms, int offset, int texture);
+    }
+
+    private ShaderProgram[] programs = new ShaderProgram[16];
+    private DrawCommand[] commands = new DrawCommand[16];
+
+    // Packets, in the order they were submitted.
+    private int count = 0;
+    private int[] programIds;
+    private int[] textures;
+    private int[] commandIds;
+    private int[] uniformOffsets;
+    private float[] uniforms;
+    private int uniformCount = 0;
+
+    // Sort keys and packet indices, and the same again to sort from one into the other.
+    private long[] keys;
+    private int[] order;
+    private long[] sortKeys;
+    private int[] sortOrder;
+    private final int[] digitCounts = new int[RADIX];
+
+    // Counters.
+    private long packets = 0;
+    private long stateChanges = 0;
+    private long unsortedStateChanges = 0;
+
+    /**
+     * @param initialCapacity packets per frame to make room for at first.
+     * @param initialUniformFloats uniform values per frame to make room for at first.
+     */
+    public RenderQueue(int initialCapacity, int initialUniformFloats) {
+        allocatePackets(Math.max(1, initialCapacity));
+        uniforms = new float[Math.max(1, initialUniformFloats)];
+    }
+
+    private void allocatePackets(int capacity) {
+        programIds = copyOf(programIds, capacity);
+        textures = copyOf(textures, capacity);
+        commandIds = copyOf(commandIds, capacity);
+        uniformOffsets = copyOf(uniformOffsets, capacity);
+        keys = keys == null ? new long[capacity] : Arrays.copyOf(keys, capacity);
+        order = new int[capacity];
+        sortKeys = new long[capacity];
+        sortOrder = new int[capacity];
+    }
+
+    private static int[] copyOf(int[] array, int length) {
+        return array == null ? new int[length] : Arrays.copyOf(array, length);
+    }
+
+    /**
+     * @param id 1 to MAX_PROGRAMS - 1; 0 means no program, for commands that use their own.
+     */
+    public void setProgram(int id, ShaderProgram program) {
+        if (id <= 0 || id >= MAX_PROGRAMS) {
+            throw new IllegalArgumentException("Program id out of range: " + id);
+        }
+        if (id >= programs.length) {
+            programs = Arrays.copyOf(programs, Math.max(id + 1, programs.length * 2));
+        }
+        programs[id] = program;
+    }
+
+    /**
+     * @param id 0 to MAX_COMMANDS - 1. Give commands that draw the same mesh the same id.
+     */
+    public void setCommand(int id, DrawCommand command) {
+        if (id < 0 || id >= MAX_COMMANDS) {
+            throw new IllegalArgumentException("Command id out of range: " + id);
+        }
+        if (id >= commands.length) {
+            commands = Arrays.copyOf(commands, Math.max(id + 1, commands.length * 2));
+        }
+        commands[id] = command;
+    }
+
+    /**
+     * Queue a draw.
+     * @param layer 0 to MAX_LAYERS - 1; lower layers are drawn first, whatever their state.
+     * @param programId a registered program, or 0 for none.
+     * @param texture the texture to draw with, or 0 for none.
+     * @param depth 0 (nearest) to 1 (furthest), to draw nearer things first in a group.
+     * @param uniformValues the uniform values, copied from offset to offset + uniformLength.
+     */
+    public void submit(int layer, int programId, int texture, int commandId, float depth,
+                       float[] uniformValues, int offset, int uniformLength) {
+        if (count == keys.length) {
+            allocatePackets(count * 2);
+        }
+        if (uniformCount + uniformLength > uniforms.length) {
+            uniforms = Arrays.copyOf(uniforms,
+                    Math.max(uniformCount + uniformLength, uniforms.length * 2));
+        }
+        programIds[count] = programId;
+        textures[count] = texture;
+        commandIds[count] = commandId;
+        uniformOffsets[count] = uniformCount;
+        System.arraycopy(uniformValues, offset, uniforms, uniformCount, uniformLength);
+        uniformCount += uniformLength;
+        keys[count] = makeKey(layer, programId, texture, commandId, depth);
+        count++;
+    }
+
+    static long makeKey(int layer, int programId, int texture, int commandId, float depth) {
+        final long quantizedDepth =
+                (long) (Math.min(1f, Math.max(depth, 0f)) * DEPTH_MAX + 0.5f);
+        return ((long) (layer & (MAX_LAYERS - 1)) << LAYER_SHIFT)
+                | ((long) (programId & (MAX_PROGRAMS - 1)) << PROGRAM_SHIFT)
+                // Only for ordering; the texture itself is kept with the packet.
+                | ((long) (texture & 0xffff) << TEXTURE_SHIFT)
+                | ((long) (commandId & (MAX_COMMANDS - 1)) << COMMAND_SHIFT)
+                | quantizedDepth;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Sort and draw everything queued, and empty the queue. Call on the GL thread.
+     */
+    public void flush() {
+        unsortedStateChanges += countStateChanges(null);
+        sort();
+        stateChanges += countStateChanges(order);
+
+        int currentProgram = -1;
+        for (int i = 0; i < count; i++) {
+            final int packet = order[i];
+            final int programId = programIds[packet];
+            if (programId != currentProgram) {
+                if (programId != 0) {
+                    programs[programId].useProgram();
+                }
+                currentProgram = programId;
+            }
+            commands[commandIds[packet]].draw(uniforms, uniformOffsets[packet],
+                    textures[packet]);
+        }
+        packets += count;
+        clear();
+    }
+
+    /**
+     * Forget everything queued without drawing it.
+     */
+    public void clear() {
+        count = 0;
+        uniformCount = 0;
+    }
+
+    /**
+     * @param packetOrder the order to draw the packets in; null for the order submitted.
+     * @return how many times the program, texture or mesh would change drawing them.
+     */
+    private int countStateChanges(int[] packetOrder) {
+        int changes = 0;
+        int program = -1;
+        int texture = -1;
+        int command = -1;
+        for (int i = 0; i < count; i++) {
+            final int packet = packetOrder != null ? packetOrder[i] : i;
+            if (programIds[packet] != program) {
+                program = programIds[packet];
+                changes++;
+            }
+            if (textures[packet] != texture) {
+                texture = textures[packet];
+                changes++;
+            }
+            if (commandIds[packet] != command) {
+                command = commandIds[packet];
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Least significant digit first radix sort of the keys, leaving the packet indices in
+     * order. Digits that are the same in every key are skipped.
+     */
+    void sort() {
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        long[] fromKeys = keys;
+        int[] fromOrder = order;
+        long[] toKeys = sortKeys;
+        int[] toOrder = sortOrder;
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(digitCounts, 0);
+            for (int i = 0; i < count; i++) {
+                digitCounts[(int) (fromKeys[i] >>> shift) & (RADIX - 1)]++;
+            }
+            if (count == 0
+                    || digitCounts[(int) (fromKeys[0] >>> shift) & (RADIX - 1)] == count) {
+                continue;
+            }
+            int position = 0;
+            for (int digit = 0; digit < RADIX; digit++) {
+                final int digitCount = digitCounts[digit];
+                digitCounts[digit] = position;
+                position += digitCount;
+            }
+            for (int i = 0; i < count; i++) {
+                final int digit = (int) (fromKeys[i] >>> shift) & (RADIX - 1);
+                final int target = digitCounts[digit]++;
+                toKeys[target] = fromKeys[i];
+                toOrder[target] = fromOrder[i];
+            }
+            final long[] swapKeys = fromKeys;
+            fromKeys = toKeys;
+            toKeys = swapKeys;
+            final int[] swapOrder = fromOrder;
+            fromOrder = toOrder;
+            toOrder = swapOrder;
+        }
+        // Keep the sorted arrays as keys and order; the others are scratch space next time.
+        keys = fromKeys;
+        order = fromOrder;
+        sortKeys = toKeys;
+        sortOrder = toOrder;
+    }
+
+    /**
+     * @return sort key of the i'th packet in sorted order; only after sort().
+     */
+    long getSortedKey(int i) {
+        return keys[i];
+    }
+
+    int getSortedPacket(int i) {
+        return order[i];
+    }
+
+    /**
+     * @return packets drawn since the counters were reset.
+     */
+    public long getPackets() {
+        return packets;
+    }
+
+    /**
+     * @return program, texture and mesh changes in the packets drawn, as sorted.
+     */
+    public long getStateChanges() {
+        return stateChanges;
+    }
+
+    /**
+     * @return program, texture and mesh changes there would have been drawing the packets in
+     * the order they were submitted.
+     */
+    public long getUnsortedStateChanges() {
+        return unsortedStateChanges;
+    }
+
+    public void resetCounters() {
+        packets = 0;
+        stateChanges = 0;
+        unsortedStateChanges = 0;
+    }
+}
@@ -0,0 +1,403 @@
+package net.ghosttrails.openglplayground.scene;
+
+import net.ghosttrails.openglplayground.util.Geometry.MutableRay;
+
+import java.util.Arrays;
+
+/**
+ * Things that can be touched, each a sphere, kept in a bounding volume hierarchy so finding
+ * what a ray hits first only looks at the few spheres near the ray, however many there are.
+ *
+ * The hierarchy is a binary tree of axis-aligned boxes in flat arrays, nodes in depth-first
+ * order (so a node's left child comes straight after it), with up to LEAF_SIZE spheres in each
+ * leaf. It's built top down, splitting each node's spheres in half along the longest axis of
+ * their centers. Adding or removing a sphere rebuilds it the next time it's used; moving one
+ * just refits the boxes around the spheres, which keeps the same tree. Rays are tested against
+ * boxes with the slab test, and against spheres with squared distances, taking a square root
+ * only to find where along the ray a hit is. Nothing is allocated once the arrays are big
+ * enough.
+ */
+
+public class Pickables {
+
+    public static final int NONE = -1;
+
+    private static final int LEAF_SIZE = 4;
+    // Plenty for a tree over any number of spheres that fits in an int.
+    private static final int MAX_DEPTH = 64;
+
+    /**
+     * The nearest hit from pick().
+     */
+    public static class Hit {
+        public int id = NONE;
+        // From the ray's start, in world units.
+        public float distance;
+    }
+
+    // Spheres, by id: x, y, z and radius. A removed id has a negative radius.
+    private float[] spheres;
+    private int count = 0;
+    private int live = 0;
+
+    // The tree. Leaves have a count and the start of their spheres in order; other nodes
+    // have a count of 0, their left child next and their right child at rights[node].
+    private float[] nodeBoxes;
+    private int[] starts;
+    private int[] counts;
+    private int[] rights;
+    private int nodeCount = 0;
+    private int[] order;
+    private final int[] stack = new int[MAX_DEPTH * 2];
+    private boolean rebuild = true;
+    private boolean refit = false;
+
+    // Counters.
+    private long picks = 0;
+    private long nodesVisited = 0;
+    private long spheresTested = 0;
+
+    public Pickables(int initialCapacity) {
+        final int capacity = Math.max(1, initialCapacity);
+        spheres = new float[capacity * 4];
+        allocateTree(capacity);
+    }
+
+    private void allocateTree(int capacity) {
+        // A tree over n spheres has fewer than 2n nodes.
+        final int nodes = capacity * 2;
+        nodeBoxes = new float[nodes * 6];
+        starts = new int[nodes];
+        counts = new int[nodes];
+        rights = new int[nodes];
+        order = new int[capacity];
+    }
+
+    /**
+     * @return the new sphere's id.
+     */
+    public int add(float x, float y, float z, float radius) {
+        if (count * 4 == spheres.length) {
+            spheres = Arrays.copyOf(spheres, spheres.length * 2);
+        }
+        final int id = count++;
+        setSphere(id, x, y, z, radius);
+        live++;
+        rebuild = true;
+        return id;
+    }
+
+    public void move(int id, float x, float y, float z) {
+        setSphere(id, x, y, z, spheres[id * 4 + 3]);
+        refit = true;
+    }
+
+    /**
+     * Stop the sphere being picked. Its id isn't used again.
+     */
+    public void remove(int id) {
+        if (spheres[id * 4 + 3] >= 0f) {
+            spheres[id * 4 + 3] = -1f;
+            live--;
+            rebuild = true;
+        }
+    }
+
+    private void setSphere(int id, float x, float y, float z, float radius) {
+        final int offset = id * 4;
+        spheres[offset] = x;
+        spheres[offset + 1] = y;
+        spheres[offset + 2] = z;
+        spheres[offset + 3] = radius;
+    }
+
+    public int size() {
+        return live;
+    }
+
+    /**
+     * Find the nearest sphere the ray hits, from its start onwards.
+     * @param hit receives the sphere's id and how far along the ray it was hit; the id is NONE
+     * if nothing was hit.
+     * @return hit's id.
+     */
+    public int pick(MutableRay ray, Hit hit) {
+        if (rebuild) {
+            build();
+        } else if (refit) {
+            refit();
+        }
+        picks++;
+        hit.id = NONE;
+        if (nodeCount == 0) {
+            return NONE;
+        }
+
+        final float ox = ray.point.x, oy = ray.point.y, oz = ray.point.z;
+        final float dx = ray.vector.x, dy = ray.vector.y, dz = ray.vector.z;
+        // Infinite for an axis the ray doesn't move along, which the slab test copes with.
+        final float inverseX = 1f / dx, inverseY = 1f / dy, inverseZ = 1f / dz;
+        final float a = dx * dx + dy * dy + dz * dz;
+        // Nearest hit so far, in multiples of the ray's vector.
+        float nearest = Float.POSITIVE_INFINITY;
+
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            final int node = stack[--top];
+            nodesVisited++;
+            // Something nearer may have been hit since it was pushed.
+            if (enterBox(node, ox, oy, oz, inverseX, inverseY, inverseZ) >= nearest) {
+                continue;
+            }
+            if (counts[node] > 0) {
+                final int end = starts[node] + counts[node];
+                for (int i = starts[node]; i < end; i++) {
+                    final int id = order[i];
+                    spheresTested++;
+                    final float t = enterSphere(id, ox, oy, oz, dx, dy, dz, a);
+                    if (t < nearest) {
+                        nearest = t;
+                        hit.id = id;
+                    }
+                }
+            } else {
+                // Visit the nearer child first, so the further one can often be skipped.
+                final int left = node + 1;
+                final int right = rights[node];
+                final float tLeft = enterBox(left, ox, oy, oz, inverseX, inverseY, inverseZ);
+                final float tRight = enterBox(right, ox, oy, oz, inverseX, inverseY, inverseZ);
+                final int near = tLeft <= tRight ? left : right;
+                final int far = tLeft <= tRight ? right : left;
+                if (Math.max(tLeft, tRight) < nearest) {
+                    stack[top++] = far;
+                }
+                if (Math.min(tLeft, tRight) < nearest) {
+                    stack[top++] = near;
+                }
+            }
+        }
+        if (hit.id != NONE) {
+            hit.distance = nearest * (float) Math.sqrt(a);
+        }
+        return hit.id;
+    }
+
+    /**
+     * Slab test.
+     * @return how far along the ray it enters the node's box, in multiples of the ray's vector,
+     * or infinity if it misses.
+     */
+    private float enterBox(int node, float ox, float oy, float oz, float inverseX,
+                           float inverseY, float inverseZ) {
+        final int b = node * 6;
+        float t0 = (nodeBoxes[b] - ox) * inverseX;
+        float t1 = (nodeBoxes[b + 3] - ox) * inverseX;
+        float tMin = Math.min(t0, t1);
+        float tMax = Math.max(t0, t1);
+        t0 = (nodeBoxes[b + 1] - oy) * inverseY;
+        t1 = (nodeBoxes[b + 4] - oy) * inverseY;
+        tMin = Math.max(tMin, Math.min(t0, t1));
+        tMax = Math.min(tMax, Math.max(t0, t1));
+        t0 = (nodeBoxes[b + 2] - oz) * inverseZ;
+        t1 = (nodeBoxes[b + 5] - oz) * inverseZ;
+        tMin = Math.max(tMin, Math.min(t0, t1));
+        tMax = Math.min(tMax, Math.max(t0, t1));
+        if (tMax < 0f || tMin > tMax) {
+            return Float.POSITIVE_INFINITY;
+        }
+        return Math.max(tMin, 0f);
+    }
+
+    /**
+     * @return how far along the ray it enters the sphere, in multiples of the ray's vector; 0
+     * if it starts inside; infinity if it misses.
+     */
+    private float enterSphere(int id, float ox, float oy, float oz, float dx, float dy,
+                              float dz, float a) {
+        final int s = id * 4;
+        final float radius = spheres[s + 3];
+        if (radius < 0f) {
+            return Float.POSITIVE_INFINITY;
+        }
+        final float cx = ox - spheres[s];
+        final float cy = oy - spheres[s + 1];
+        final float cz = oz - spheres[s + 2];
+        final float c = cx * cx + cy * cy + cz * cz - radius * radius;
+        if (c <= 0f) {
+            return 0f;
+        }
+        final float b = cx * dx + cy * dy + cz * dz;
+        // Heading away, or the line passes further than the radius from the center (in
+        // squared distances, times a).
+        final float discriminant = b * b - a * c;
+        if (b >= 0f || discriminant < 0f) {
+            return Float.POSITIVE_INFINITY;
+        }
+        return (-b - (float) Math.sqrt(discriminant)) / a;
+    }
+
+    private void build() {
+        if (order.length < count) {
+            allocateTree(Math.max(count, order.length * 2));
+        }
+        int n = 0;
+        for (int id = 0; id < count; id++) {
+            if (spheres[id * 4 + 3] >= 0f) {
+                order[n++] = id;
+            }
+        }
+        nodeCount = 0;
+        if (n > 0) {
+            buildNode(0, n, 0);
+        }
+        rebuild = false;
+        refit = false;
+    }
+
+    private int buildNode(int start, int end, int depth) {
+        final int node = nodeCount++;
+        fitBox(node, start, end);
+        if (end - start <= LEAF_SIZE || depth >= MAX_DEPTH - 1) {
+            starts[node] = start;
+            counts[node] = end - start;
+            return node;
+        }
+
+        // Split at the median center along the longest axis of the centers.
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        for (int i = start; i < end; i++) {
+            final int s = order[i] * 4;
+            minX = Math.min(minX, spheres[s]);
+            maxX = Math.max(maxX, spheres[s]);
+            minY = Math.min(minY, spheres[s + 1]);
+            maxY = Math.max(maxY, spheres[s + 1]);
+            minZ = Math.min(minZ, spheres[s + 2]);
+            maxZ = Math.max(maxZ, spheres[s + 2]);
+        }
+        final float extentX = maxX - minX, extentY = maxY - minY, extentZ = maxZ - minZ;
+        final int axis = extentX >= extentY && extentX >= extentZ ? 0
+                : (extentY >= extentZ ? 1 : 2);
+        final int middle = (start + end) >>> 1;
+        select(start, end, middle, axis);
+
+        counts[node] = 0;
+        buildNode(start, middle, depth + 1);
+        rights[node] = buildNode(middle, end, depth + 1);
+        return node;
+    }
+
+    /**
+     * Partially sort order[start, end) so that the k'th is where it would be if sorted by the
+     * axis, with nothing bigger before it and nothing smaller after it.
+     */
+    private void select(int start, int end, int k, int axis) {
+        int lo = start;
+        int hi = end - 1;
+        while (lo < hi) {
+            final float pivot = spheres[order[(lo + hi) >>> 1] * 4 + axis];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (spheres[order[i] * 4 + axis] < pivot) {
+                    i++;
+                }
+                while (spheres[order[j] * 4 + axis] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    final int swap = order[i];
+                    order[i] = order[j];
+                    order[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void fitBox(int node, int start, int end) {
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        for (int i = start; i < end; i++) {
+            final int s = order[i] * 4;
+            final float radius = spheres[s + 3];
+            minX = Math.min(minX, spheres[s] - radius);
+            maxX = Math.max(maxX, spheres[s] + radius);
+            minY = Math.min(minY, spheres[s + 1] - radius);
+            maxY = Math.max(maxY, spheres[s + 1] + radius);
+            minZ = Math.min(minZ, spheres[s + 2] - radius);
+            maxZ = Math.max(maxZ, spheres[s + 2] + radius);
+        }
+        setBox(node, minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    private void setBox(int node, float minX, float minY, float minZ, float maxX, float maxY,
+                        float maxZ) {
+        final int b = node * 6;
+        nodeBoxes[b] = minX;
+        nodeBoxes[b + 1] = minY;
+        nodeBoxes[b + 2] = minZ;
+        nodeBoxes[b + 3] = maxX;
+        nodeBoxes[b + 4] = maxY;
+        nodeBoxes[b + 5] = maxZ;
+    }
+
+    /**
+     * Children come after their parents, so going backwards every node's children are
+     * refitted before it is.
+     */
+    private void refit() {
+        for (int node = nodeCount - 1; node >= 0; node--) {
+            if (counts[node] > 0) {
+                fitBox(node, starts[node], starts[node] + counts[node]);
+            } else {
+                final int l = (node + 1) * 6;
+                final int r = rights[node] * 6;
+                setBox(node,
+                        Math.min(nodeBoxes[l], nodeBoxes[r]),
+                        Math.min(nodeBoxes[l + 1], nodeBoxes[r + 1]),
+                        Math.min(nodeBoxes[l + 2], nodeBoxes[r + 2]),
+                        Math.max(nodeBoxes[l + 3], nodeBoxes[r + 3]),
+                        Math.max(nodeBoxes[l + 4], nodeBoxes[r + 4]),
+                        Math.max(nodeBoxes[l + 5], nodeBoxes[r + 5]));
+            }
+        }
+        refit = false;
+    }
+
+    /**
+     * @return pick() calls since the counters were reset.
+     */
+    public long getPicks() {
+        return picks;
+    }
+
+    /**
+     * @return tree nodes looked at by pick() since the counters were reset.
+     */
+    public long getNodesVisited() {
+        return nodesVisited;
+    }
+
+    /**
+     * @return spheres tested by pick() since the counters were reset.
+     */
+    public long getSpheresTested() {
+        return spheresTested;
+    }
+
+    public void resetCounters() {
+        picks = 0;
+        nodesVisited = 0;
+        spheresTested = 0;
+    }
+}
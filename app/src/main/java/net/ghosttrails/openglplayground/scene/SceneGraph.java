@@ -0,0 +1,415 @@
+package net.ghosttrails.openglplayground.scene;
+
+import net.ghosttrails.openglplayground.render.RenderQueue;
+import net.ghosttrails.openglplayground.util.Bounds;
+import net.ghosttrails.openglplayground.util.Camera;
+import net.ghosttrails.openglplayground.util.Frustum;
+import net.ghosttrails.openglplayground.util.Matrix4;
+
+import java.util.Arrays;
+
+/**
+ * A hierarchy of nodes, each with a transform relative to its parent, that works out each
+ * node's world and model view projection matrices only when something has changed.
+ *
+ * Nodes are ints, and everything about them is kept in flat arrays indexed by node: 16 floats
+ * each for the local, world and model view projection matrices, the parent, and what to draw.
+ * A node's parent is always added before it, so one pass in node order sees every parent
+ * before its children. A node whose local transform changed is dirty; in update() its world
+ * matrix is made again, and so are those of everything under it, but nothing else. Model view
+ * projection matrices are made again for those nodes, and for every node when the camera
+ * moves, so a node that never moves (like the table) keeps its matrix until the camera does.
+ *
+ * Nodes that draw something name a render queue command, program and texture, and submit()
+ * queues them with their model view projection matrix as the uniforms, unless they're outside
+ * the camera's frustum. Each node can have a bounding sphere, in its own space, which is moved
+ * into the world with its world matrix; each node also gets a sphere around its own and all
+ * its descendants' spheres. Culling goes down the hierarchy: a subtree whose sphere is outside
+ * the frustum is skipped without looking at anything in it, and one whose sphere is wholly
+ * inside is drawn without testing anything in it. A node that draws but has no bounds is
+ * always drawn, and the subtrees it's in are never skipped.
+ */
+
+public class SceneGraph {
+
+    public static final int NO_PARENT = -1;
+    public static final int NO_COMMAND = -1;
+
+    private static final int FLOATS_PER_MATRIX = 16;
+    // Spheres are x, y, z and radius.
+    private static final int FLOATS_PER_SPHERE = 4;
+    // Radii of spheres around nothing, and around something with no bounds.
+    private static final float EMPTY = -1f;
+    private static final float UNBOUNDED = Float.POSITIVE_INFINITY;
+
+    private int count = 0;
+    private int[] parents;
+    private float[] localMatrices;
+    private float[] worldMatrices;
+    private float[] modelViewProjectionMatrices;
+    private boolean[] dirty;
+    // Set during update() for the nodes whose world matrix was made again.
+    private boolean[] worldChanged;
+
+    // Bounding spheres: each node's own, in its space and in the world, and the one around it
+    // and all its descendants, in the world.
+    private float[] localBounds;
+    private float[] worldBounds;
+    private float[] subtreeBounds;
+    // Set during submit(), from Frustum.OUTSIDE, INTERSECTING or INSIDE.
+    private int[] visibility;
+
+    // What each node draws.
+    private int[] layers;
+    private int[] programIds;
+    private int[] textures;
+    private int[] commandIds;
+
+    // The camera version the model view projection matrices were made for.
+    private int cameraVersion = -1;
+
+    // Counters.
+    private long worldUpdates = 0;
+    private long modelViewProjectionUpdates = 0;
+    private long drawn = 0;
+    private long culled = 0;
+
+    /**
+     * @param initialCapacity nodes to make room for at first.
+     */
+    public SceneGraph(int initialCapacity) {
+        allocate(Math.max(1, initialCapacity));
+    }
+
+    private void allocate(int capacity) {
+        parents = copyOf(parents, capacity);
+        localMatrices = copyOf(localMatrices, capacity * FLOATS_PER_MATRIX);
+        worldMatrices = copyOf(worldMatrices, capacity * FLOATS_PER_MATRIX);
+        modelViewProjectionMatrices =
+                copyOf(modelViewProjectionMatrices, capacity * FLOATS_PER_MATRIX);
+        dirty = dirty == null ? new boolean[capacity] : Arrays.copyOf(dirty, capacity);
+        worldChanged = new boolean[capacity];
+        localBounds = copyOf(localBounds, capacity * FLOATS_PER_SPHERE);
+        worldBounds = copyOf(worldBounds, capacity * FLOATS_PER_SPHERE);
+        subtreeBounds = copyOf(subtreeBounds, capacity * FLOATS_PER_SPHERE);
+        visibility = new int[capacity];
+        layers = copyOf(layers, capacity);
+        programIds = copyOf(programIds, capacity);
+        textures = copyOf(textures, capacity);
+        commandIds = copyOf(commandIds, capacity);
+    }
+
+    private static int[] copyOf(int[] array, int length) {
+        return array == null ? new int[length] : Arrays.copyOf(array, length);
+    }
+
+    private static float[] copyOf(float[] array, int length) {
+        return array == null ? new float[length] : Arrays.copyOf(array, length);
+    }
+
+    /**
+     * Add a node with an identity transform, that draws nothing.
+     * @param parent an existing node, or NO_PARENT.
+     * @return the new node.
+     */
+    public int addNode(int parent) {
+        if (parent != NO_PARENT && (parent < 0 || parent >= count)) {
+            throw new IllegalArgumentException("No such parent node: " + parent);
+        }
+        if (count == parents.length) {
+            allocate(count * 2);
+        }
+        final int node = count++;
+        parents[node] = parent;
+        Matrix4.setIdentity(localMatrices, node * FLOATS_PER_MATRIX);
+        dirty[node] = true;
+        commandIds[node] = NO_COMMAND;
+        localBounds[node * FLOATS_PER_SPHERE + 3] = EMPTY;
+        return node;
+    }
+
+    public int getNodeCount() {
+        return count;
+    }
+
+    public int getParent(int node) {
+        return parents[node];
+    }
+
+    /**
+     * Set the node's transform relative to its parent to a translation.
+     */
+    public void setTranslation(int node, float x, float y, float z) {
+        final int offset = node * FLOATS_PER_MATRIX;
+        Matrix4.setIdentity(localMatrices, offset);
+        localMatrices[offset + 12] = x;
+        localMatrices[offset + 13] = y;
+        localMatrices[offset + 14] = z;
+        dirty[node] = true;
+    }
+
+    /**
+     * Follow the node's transform relative to its parent with a rotation about the x axis.
+     */
+    public void rotateX(int node, float degrees) {
+        final int offset = node * FLOATS_PER_MATRIX;
+        Matrix4.multiplyRotateX(localMatrices, offset, localMatrices, offset, degrees);
+        dirty[node] = true;
+    }
+
+    /**
+     * Set the node's transform relative to its parent.
+     * @param m 16 floats from offset, column-major.
+     */
+    public void setLocalMatrix(int node, float[] m, int offset) {
+        System.arraycopy(m, offset, localMatrices, node * FLOATS_PER_MATRIX, FLOATS_PER_MATRIX);
+        dirty[node] = true;
+    }
+
+    /**
+     * Have the node draw with a render queue command. Give it bounds too, or it can't be
+     * culled.
+     * @see RenderQueue#submit
+     */
+    public void setDrawable(int node, int layer, int programId, int texture, int commandId) {
+        layers[node] = layer;
+        programIds[node] = programId;
+        textures[node] = texture;
+        commandIds[node] = commandId;
+        dirty[node] = true;
+    }
+
+    /**
+     * Set a sphere, in the node's own space, around whatever it draws.
+     */
+    public void setBounds(int node, float x, float y, float z, float radius) {
+        final int offset = node * FLOATS_PER_SPHERE;
+        localBounds[offset] = x;
+        localBounds[offset + 1] = y;
+        localBounds[offset + 2] = z;
+        localBounds[offset + 3] = radius;
+        dirty[node] = true;
+    }
+
+    public void setBounds(int node, Bounds bounds) {
+        setBounds(node, bounds.centerX, bounds.centerY, bounds.centerZ, bounds.radius);
+    }
+
+    public void setTexture(int node, int texture) {
+        textures[node] = texture;
+    }
+
+    /**
+     * Work out the world matrices and bounds of the nodes that moved, and anything under them,
+     * and the model view projection matrices of those, or of everything if the camera moved.
+     */
+    public void update(Camera camera) {
+        final boolean cameraChanged = camera.getVersion() != cameraVersion;
+        final float[] viewProjectionMatrix = camera.getViewProjectionMatrix();
+        boolean anyChanged = false;
+        for (int node = 0; node < count; node++) {
+            final int parent = parents[node];
+            final int offset = node * FLOATS_PER_MATRIX;
+            final boolean changed = dirty[node] || (parent != NO_PARENT && worldChanged[parent]);
+            if (changed) {
+                if (parent == NO_PARENT) {
+                    System.arraycopy(localMatrices, offset, worldMatrices, offset,
+                            FLOATS_PER_MATRIX);
+                } else {
+                    Matrix4.multiply(worldMatrices, offset, worldMatrices,
+                            parent * FLOATS_PER_MATRIX, localMatrices, offset);
+                }
+                updateWorldBounds(node);
+                dirty[node] = false;
+                anyChanged = true;
+                worldUpdates++;
+            }
+            worldChanged[node] = changed;
+            if (changed || cameraChanged) {
+                Matrix4.multiply(modelViewProjectionMatrices, offset, viewProjectionMatrix, 0,
+                        worldMatrices, offset);
+                modelViewProjectionUpdates++;
+            }
+        }
+        cameraVersion = camera.getVersion();
+        if (anyChanged) {
+            updateSubtreeBounds();
+        }
+    }
+
+    private void updateWorldBounds(int node) {
+        final int sphere = node * FLOATS_PER_SPHERE;
+        final float radius = localBounds[sphere + 3];
+        if (radius < 0f) {
+            worldBounds[sphere + 3] = commandIds[node] != NO_COMMAND ? UNBOUNDED : EMPTY;
+            return;
+        }
+        final int m = node * FLOATS_PER_MATRIX;
+        Matrix4.transformPoint(worldBounds, sphere, worldMatrices, m, localBounds[sphere],
+                localBounds[sphere + 1], localBounds[sphere + 2]);
+        // Scale the radius by the longest axis, in case the scaling isn't uniform.
+        float scaleSquared = 0f;
+        for (int column = 0; column < 3; column++) {
+            final int c = m + column * 4;
+            scaleSquared = Math.max(scaleSquared, worldMatrices[c] * worldMatrices[c]
+                    + worldMatrices[c + 1] * worldMatrices[c + 1]
+                    + worldMatrices[c + 2] * worldMatrices[c + 2]);
+        }
+        worldBounds[sphere + 3] = radius * (float) Math.sqrt(scaleSquared);
+    }
+
+    /**
+     * Children come after their parents, so going backwards every node's subtree sphere is
+     * finished before it's merged into its parent's.
+     */
+    private void updateSubtreeBounds() {
+        System.arraycopy(worldBounds, 0, subtreeBounds, 0, count * FLOATS_PER_SPHERE);
+        for (int node = count - 1; node >= 0; node--) {
+            final int parent = parents[node];
+            if (parent != NO_PARENT) {
+                mergeSphere(subtreeBounds, parent * FLOATS_PER_SPHERE,
+                        node * FLOATS_PER_SPHERE);
+            }
+        }
+    }
+
+    /**
+     * Grow the sphere at into so it also holds the one at from.
+     */
+    static void mergeSphere(float[] spheres, int into, int from) {
+        final float fromRadius = spheres[from + 3];
+        final float intoRadius = spheres[into + 3];
+        if (fromRadius == EMPTY || intoRadius == UNBOUNDED) {
+            return;
+        }
+        if (intoRadius == EMPTY || fromRadius == UNBOUNDED) {
+            System.arraycopy(spheres, from, spheres, into, FLOATS_PER_SPHERE);
+            return;
+        }
+        final float dx = spheres[from] - spheres[into];
+        final float dy = spheres[from + 1] - spheres[into + 1];
+        final float dz = spheres[from + 2] - spheres[into + 2];
+        final float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (distance + fromRadius <= intoRadius) {
+            return;
+        }
+        if (distance + intoRadius <= fromRadius) {
+            System.arraycopy(spheres, from, spheres, into, FLOATS_PER_SPHERE);
+            return;
+        }
+        final float radius = (distance + intoRadius + fromRadius) / 2f;
+        final float t = (radius - intoRadius) / distance;
+        spheres[into] += dx * t;
+        spheres[into + 1] += dy * t;
+        spheres[into + 2] += dz * t;
+        spheres[into + 3] = radius;
+    }
+
+    /**
+     * Queue every node that draws something and can be seen. Call update() first.
+     * @param frustum what the camera can see; null to queue everything.
+     */
+    public void submit(RenderQueue queue, Frustum frustum) {
+        for (int node = 0; node < count; node++) {
+            final int parent = parents[node];
+            final int sphere = node * FLOATS_PER_SPHERE;
+            int state = parent == NO_PARENT || frustum == null
+                    ? Frustum.INTERSECTING : visibility[parent];
+            if (state == Frustum.INTERSECTING) {
+                state = classify(frustum, subtreeBounds, sphere);
+                if (state == Frustum.INTERSECTING) {
+                    // Some of the subtree may be visible; this node itself may not be.
+                    visibility[node] = state;
+                    state = classify(frustum, worldBounds, sphere);
+                    if (state == Frustum.INSIDE) {
+                        state = Frustum.INTERSECTING;
+                    }
+                } else {
+                    visibility[node] = state;
+                }
+            } else {
+                visibility[node] = state;
+            }
+
+            if (commandIds[node] == NO_COMMAND) {
+                continue;
+            }
+            if (state == Frustum.OUTSIDE) {
+                culled++;
+                continue;
+            }
+            queue.submit(layers[node], programIds[node], textures[node], commandIds[node],
+                    0f, modelViewProjectionMatrices, node * FLOATS_PER_MATRIX,
+                    FLOATS_PER_MATRIX);
+            drawn++;
+        }
+    }
+
+    private static int classify(Frustum frustum, float[] spheres, int sphere) {
+        final float radius = spheres[sphere + 3];
+        if (frustum == null || radius == UNBOUNDED) {
+            return Frustum.INTERSECTING;
+        }
+        if (radius == EMPTY) {
+            return Frustum.OUTSIDE;
+        }
+        return frustum.classifySphere(spheres[sphere], spheres[sphere + 1], spheres[sphere + 2],
+                radius);
+    }
+
+    /**
+     * @return the array holding the world matrices; the node's is 16 floats from
+     * getMatrixOffset(node). Don't change it.
+     */
+    public float[] getWorldMatrices() {
+        return worldMatrices;
+    }
+
+    /**
+     * @return the array holding the model view projection matrices, laid out like
+     * getWorldMatrices(). Don't change it.
+     */
+    public float[] getModelViewProjectionMatrices() {
+        return modelViewProjectionMatrices;
+    }
+
+    public static int getMatrixOffset(int node) {
+        return node * FLOATS_PER_MATRIX;
+    }
+
+    /**
+     * @return world matrices made since the counters were reset.
+     */
+    public long getWorldUpdates() {
+        return worldUpdates;
+    }
+
+    /**
+     * @return model view projection matrices made since the counters were reset.
+     */
+    public long getModelViewProjectionUpdates() {
+        return modelViewProjectionUpdates;
+    }
+
+    /**
+     * @return nodes queued by submit() since the counters were reset.
+     */
+    public long getDrawn() {
+        return drawn;
+    }
+
+    /**
+     * @return nodes left out by submit() since the counters were reset, for being outside the
+     * frustum.
+     */
+    public long getCulled() {
+        return culled;
+    }
+
+    public void resetCounters() {
+        worldUpdates = 0;
+        modelViewProjectionUpdates = 0;
+        drawn = 0;
+        culled = 0;
+    }
+}
@@ -0,0 +1,62 @@
+package net.ghosttrails.openglplayground.util;
+
+/**
+ * The axis-aligned box around a mesh's vertices, and a sphere around them: centered on the box,
+ * with a radius just big enough to reach the furthest vertex, which is often smaller than half
+ * the box's diagonal.
+ */
+
+public class Bounds {
+
+    public final float minX, minY, minZ;
+    public final float maxX, maxY, maxZ;
+    public final float centerX, centerY, centerZ;
+    public final float radius;
+
+    public Bounds(float minX, float minY, float minZ, float maxX, float maxY, float maxZ,
+                  float radius) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+        centerX = (minX + maxX) / 2f;
+        centerY = (minY + maxY) / 2f;
+        centerZ = (minZ + maxZ) / 2f;
+        this.radius = radius;
+    }
+
+    /**
+     * @param vertexData vertices, each starting with its position.
+     * @param floatsPerVertex the stride, in floats.
+     * @param positionComponents 2 or 3; a missing z is 0.
+     */
+    public static Bounds of(float[] vertexData, int floatsPerVertex, int positionComponents) {
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        for (int i = 0; i + positionComponents <= vertexData.length; i += floatsPerVertex) {
+            final float x = vertexData[i];
+            final float y = vertexData[i + 1];
+            final float z = positionComponents > 2 ? vertexData[i + 2] : 0f;
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            maxZ = Math.max(maxZ, z);
+        }
+
+        final float centerX = (minX + maxX) / 2f;
+        final float centerY = (minY + maxY) / 2f;
+        final float centerZ = (minZ + maxZ) / 2f;
+        float radiusSquared = 0f;
+        for (int i = 0; i + positionComponents <= vertexData.length; i += floatsPerVertex) {
+            final float dx = vertexData[i] - centerX;
+            final float dy = vertexData[i + 1] - centerY;
+            final float dz = (positionComponents > 2 ? vertexData[i + 2] : 0f) - centerZ;
+            radiusSquared = Math.max(radiusSquared, dx * dx + dy * dy + dz * dz);
+        }
+        return new Bounds(minX, minY, minZ, maxX, maxY, maxZ, (float) Math.sqrt(radiusSquared));
+    }
+}
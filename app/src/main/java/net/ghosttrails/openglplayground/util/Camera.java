@@ -0,0 +1,95 @@
+package net.ghosttrails.openglplayground.util;
+
+/**
+ * The projection and view matrices, and the view projection matrix and its inverse made from
+ * them. Those are only worked out again when asked for after the projection or view has
+ * changed, so a camera that doesn't move costs nothing per frame, and the inverse (which is
+ * only needed to turn touches into rays) isn't worked out at all until something asks for it.
+ * The same goes for the frustum, for culling.
+ */
+
+public class Camera {
+
+    private final float[] projectionMatrix = new float[16];
+    private final float[] viewMatrix = new float[16];
+    private final float[] viewProjectionMatrix = new float[16];
+    private final float[] invertedViewProjectionMatrix = new float[16];
+    private final Frustum frustum = new Frustum();
+
+    private boolean viewProjectionDirty = true;
+    private boolean inverseDirty = true;
+    private boolean frustumDirty = true;
+    // Changes whenever the view projection matrix does.
+    private int version = 0;
+
+    public Camera() {
+        Matrix4.setIdentity(projectionMatrix, 0);
+        Matrix4.setIdentity(viewMatrix, 0);
+    }
+
+    /**
+     * @see MatrixHelper#perspectiveM
+     */
+    public void setPerspective(float yFovInDegrees, float aspect, float near, float far) {
+        MatrixHelper.perspectiveM(projectionMatrix, yFovInDegrees, aspect, near, far);
+        changed();
+    }
+
+    /**
+     * @see Matrix4#setLookAt
+     */
+    public void setLookAt(float eyeX, float eyeY, float eyeZ, float centerX, float centerY,
+                          float centerZ, float upX, float upY, float upZ) {
+        Matrix4.setLookAt(viewMatrix, 0, eyeX, eyeY, eyeZ, centerX, centerY, centerZ,
+                upX, upY, upZ);
+        changed();
+    }
+
+    private void changed() {
+        viewProjectionDirty = true;
+        inverseDirty = true;
+        frustumDirty = true;
+        version++;
+    }
+
+    /**
+     * @return the view projection matrix. Don't change it; it's the camera's own copy.
+     */
+    public float[] getViewProjectionMatrix() {
+        if (viewProjectionDirty) {
+            Matrix4.multiply(viewProjectionMatrix, 0, projectionMatrix, 0, viewMatrix, 0);
+            viewProjectionDirty = false;
+        }
+        return viewProjectionMatrix;
+    }
+
+    /**
+     * @return the inverse of the view projection matrix. Don't change it either.
+     */
+    public float[] getInvertedViewProjectionMatrix() {
+        if (inverseDirty) {
+            Matrix4.invert(invertedViewProjectionMatrix, 0, getViewProjectionMatrix(), 0);
+            inverseDirty = false;
+        }
+        return invertedViewProjectionMatrix;
+    }
+
+    /**
+     * @return the planes around what the camera can see.
+     */
+    public Frustum getFrustum() {
+        if (frustumDirty) {
+            frustum.set(getViewProjectionMatrix(), 0);
+            frustumDirty = false;
+        }
+        return frustum;
+    }
+
+    /**
+     * @return a number that changes whenever the view projection matrix does, so anything
+     * made from it can tell when it needs making again.
+     */
+    public int getVersion() {
+        return version;
+    }
+}
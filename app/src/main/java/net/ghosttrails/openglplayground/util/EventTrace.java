@@ -0,0 +1,402 @@
+package net.ghosttrails.openglplayground.util;
+
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records typed trace events into a preallocated ring buffer, in place of building log strings.
+ *
+ * Each kind of event is defined once, up front, with a name and the names of up to three
+ * numeric arguments. Recording an event just stores its id, the time, the thread and the
+ * arguments (and optionally a reference to a string that already exists), so it costs about as
+ * much as a System.nanoTime(). Nothing is formatted until the buffer is exported, which happens
+ * on a background thread, as plain text or as Chrome trace JSON (open it in chrome://tracing or
+ * Perfetto). Once the buffer is full the oldest events are overwritten.
+ *
+ * Recording never takes a lock: each event claims its slot with one atomic increment and
+ * publishes it with a per-slot sequence number, so any thread can record, the physics workers
+ * and texture decoders included. A snapshot leaves out, and counts as lost, any event that was
+ * still being written or was overwritten while it was being copied.
+ *
+ * Warnings are rare and usually mean something is broken, so those are also written to logcat
+ * as they happen.
+ */
+
+public class EventTrace {
+
+    private static final String TAG = "EventTrace";
+
+    public static final int VERBOSE = 0;
+    public static final int INFO = 1;
+    public static final int WARN = 2;
+
+    public static final int FORMAT_TEXT = 0;
+    public static final int FORMAT_CHROME_JSON = 1;
+
+    public static final int MAX_ARGS = 3;
+
+    private static final int SHARED_CAPACITY = 4096;
+    private static final EventTrace shared = new EventTrace(SHARED_CAPACITY);
+
+    private static class Definition {
+        final String category;
+        final String name;
+        final int level;
+        final String[] argNames;
+
+        Definition(String category, String name, int level, String[] argNames) {
+            this.category = category;
+            this.name = name;
+            this.level = level;
+            this.argNames = argNames;
+        }
+    }
+
+    /**
+     * A copy of the events in the buffer at one moment, oldest first.
+     */
+    public static class Snapshot {
+        private final Definition[] definitions;
+        public final int size;
+        // How many events were overwritten, or being written, when this snapshot was taken.
+        public final long lostEvents;
+        private final int[] events;
+        private final long[] timesNanos;
+        private final long[] threadIds;
+        private final double[] args;
+        private final String[] details;
+
+        private Snapshot(Definition[] definitions, int size, long lostEvents, int[] events,
+                         long[] timesNanos, long[] threadIds, double[] args, String[] details) {
+            this.definitions = definitions;
+            this.size = size;
+            this.lostEvents = lostEvents;
+            this.events = events;
+            this.timesNanos = timesNanos;
+            this.threadIds = threadIds;
+            this.args = args;
+            this.details = details;
+        }
+
+        public String getName(int index) {
+            return definitions[events[index]].name;
+        }
+
+        public long getTimeNanos(int index) {
+            return timesNanos[index];
+        }
+
+        public double getArg(int index, int arg) {
+            return args[index * MAX_ARGS + arg];
+        }
+
+        public String getDetail(int index) {
+            return details[index];
+        }
+    }
+
+    // Replaced, never changed, by define(), so record() can read it without a lock.
+    private volatile Definition[] definitions = new Definition[0];
+
+    private final int mask;
+    private final int[] events;
+    private final long[] timesNanos;
+    private final long[] threadIds;
+    private final double[] args;
+    private final String[] details;
+    // For each slot, 1 + the index of the event written there, or 0 while one is being written.
+    private final AtomicLongArray sequences;
+    private final AtomicLong nextIndex = new AtomicLong();
+    // Events before this one were cleared.
+    private volatile long firstIndex = 0;
+
+    /**
+     * @return the trace shared by the whole app.
+     */
+    public static EventTrace shared() {
+        return shared;
+    }
+
+    /**
+     * @param capacity number of events kept; rounded up to a power of two.
+     */
+    public EventTrace(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        mask = size - 1;
+        events = new int[size];
+        timesNanos = new long[size];
+        threadIds = new long[size];
+        args = new double[size * MAX_ARGS];
+        details = new String[size];
+        sequences = new AtomicLongArray(size);
+    }
+
+    /**
+     * Define a kind of event. Do this once, e.g. in a static initializer, and keep the id.
+     * @param category where it comes from, e.g. the class's log tag.
+     * @param level VERBOSE, INFO or WARN.
+     * @param argNames names of the numeric arguments it's recorded with; at most MAX_ARGS.
+     * @return the id to record it with.
+     */
+    public synchronized int define(String category, String name, int level, String... argNames) {
+        if (argNames.length > MAX_ARGS) {
+            throw new IllegalArgumentException("At most " + MAX_ARGS + " arguments");
+        }
+        final Definition[] defined = Arrays.copyOf(definitions, definitions.length + 1);
+        defined[definitions.length] = new Definition(category, name, level, argNames);
+        definitions = defined;
+        return defined.length - 1;
+    }
+
+    public void record(int event) {
+        record(event, null, 0, 0, 0);
+    }
+
+    public void record(int event, double arg0) {
+        record(event, null, arg0, 0, 0);
+    }
+
+    public void record(int event, double arg0, double arg1) {
+        record(event, null, arg0, arg1, 0);
+    }
+
+    public void record(int event, double arg0, double arg1, double arg2) {
+        record(event, null, arg0, arg1, arg2);
+    }
+
+    public void record(int event, String detail) {
+        record(event, detail, 0, 0, 0);
+    }
+
+    public void record(int event, String detail, double arg0) {
+        record(event, detail, arg0, 0, 0);
+    }
+
+    /**
+     * @param detail an existing string to keep with the event, e.g. a GL info log, or null.
+     */
+    public void record(int event, String detail, double arg0, double arg1, double arg2) {
+        final long index = nextIndex.getAndIncrement();
+        final int slot = (int) (index & mask);
+        // A full write, so a snapshot can't see the fields below change under an old number.
+        sequences.set(slot, 0);
+        events[slot] = event;
+        timesNanos[slot] = System.nanoTime();
+        threadIds[slot] = Thread.currentThread().getId();
+        args[slot * MAX_ARGS] = arg0;
+        args[slot * MAX_ARGS + 1] = arg1;
+        args[slot * MAX_ARGS + 2] = arg2;
+        details[slot] = detail;
+        sequences.lazySet(slot, index + 1);
+
+        final Definition definition = definitions[event];
+        if (definition.level >= WARN) {
+            // Not from the slot, which another thread may already be reusing.
+            final StringBuilder line = new StringBuilder();
+            appendDescription(line, definition, detail, new double[]{arg0, arg1, arg2}, 0);
+            Log.w(definition.category, line.toString());
+        }
+    }
+
+    /**
+     * @return how many events have been recorded, including any overwritten since.
+     */
+    public long getRecordedEvents() {
+        return nextIndex.get() - firstIndex;
+    }
+
+    /**
+     * Forget the events recorded so far. Ones being recorded at the same time may be kept.
+     */
+    public synchronized void clear() {
+        firstIndex = nextIndex.get();
+    }
+
+    public synchronized Snapshot snapshot() {
+        final long endIndex = nextIndex.get();
+        final long startIndex = Math.max(firstIndex, endIndex - (mask + 1));
+        final int capacity = (int) (endIndex - startIndex);
+        final int[] copiedEvents = new int[capacity];
+        final long[] copiedTimesNanos = new long[capacity];
+        final long[] copiedThreadIds = new long[capacity];
+        final double[] copiedArgs = new double[capacity * MAX_ARGS];
+        final String[] copiedDetails = new String[capacity];
+        int size = 0;
+        for (long index = startIndex; index < endIndex; index++) {
+            final int slot = (int) (index & mask);
+            if (sequences.get(slot) != index + 1) {
+                continue;
+            }
+            copiedEvents[size] = events[slot];
+            copiedTimesNanos[size] = timesNanos[slot];
+            copiedThreadIds[size] = threadIds[slot];
+            copiedDetails[size] = details[slot];
+            System.arraycopy(args, slot * MAX_ARGS, copiedArgs, size * MAX_ARGS, MAX_ARGS);
+            // Keep it only if it wasn't overwritten while it was being copied.
+            if (sequences.get(slot) == index + 1) {
+                size++;
+            }
+        }
+        return new Snapshot(definitions, size, endIndex - firstIndex - size, copiedEvents,
+                copiedTimesNanos, copiedThreadIds, copiedArgs, copiedDetails);
+    }
+
+    /**
+     * Take a snapshot now and write it to a file on a background thread.
+     * @param format FORMAT_TEXT or FORMAT_CHROME_JSON.
+     */
+    public void exportAsync(final File file, final int format) {
+        final Snapshot snapshot = snapshot();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Writer writer = null;
+                try {
+                    writer = new BufferedWriter(new FileWriter(file));
+                    if (format == FORMAT_CHROME_JSON) {
+                        writeChromeJson(snapshot, writer);
+                    } else {
+                        writeText(snapshot, writer);
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "Could not write trace to " + file, e);
+                } finally {
+                    if (writer != null) {
+                        try {
+                            writer.close();
+                        } catch (IOException e) {
+                            // Nothing more to do.
+                        }
+                    }
+                }
+            }
+        }, TAG).start();
+    }
+
+    /**
+     * One line per event: time in milliseconds, thread, category, then the description.
+     */
+    public static void writeText(Snapshot snapshot, Appendable out) throws IOException {
+        if (snapshot.lostEvents > 0) {
+            out.append("(").append(Long.toString(snapshot.lostEvents))
+                    .append(" earlier events overwritten)\n");
+        }
+        final StringBuilder line = new StringBuilder();
+        for (int i = 0; i < snapshot.size; i++) {
+            final Definition definition = snapshot.definitions[snapshot.events[i]];
+            line.setLength(0);
+            line.append(String.format(Locale.US, "%.3f", snapshot.timesNanos[i] / 1e6))
+                    .append(" [").append(snapshot.threadIds[i]).append("] ")
+                    .append(definition.category).append(' ');
+            appendDescription(line, definition, snapshot.details[i], snapshot.args,
+                    i * MAX_ARGS);
+            out.append(line).append('\n');
+        }
+    }
+
+    /**
+     * The Chrome trace event format: every event is an instant event, with its arguments.
+     */
+    public static void writeChromeJson(Snapshot snapshot, Appendable out) throws IOException {
+        out.append("{\"traceEvents\":[");
+        for (int i = 0; i < snapshot.size; i++) {
+            final Definition definition = snapshot.definitions[snapshot.events[i]];
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append("\n{\"name\":");
+            appendJsonString(out, definition.name);
+            out.append(",\"cat\":");
+            appendJsonString(out, definition.category);
+            out.append(",\"ph\":\"i\",\"s\":\"t\",\"pid\":0,\"tid\":")
+                    .append(Long.toString(snapshot.threadIds[i]))
+                    .append(",\"ts\":")
+                    .append(String.format(Locale.US, "%.3f", snapshot.timesNanos[i] / 1e3))
+                    .append(",\"args\":{");
+            for (int arg = 0; arg < definition.argNames.length; arg++) {
+                if (arg > 0) {
+                    out.append(',');
+                }
+                appendJsonString(out, definition.argNames[arg]);
+                out.append(':');
+                appendNumber(out, snapshot.args[i * MAX_ARGS + arg]);
+            }
+            if (snapshot.details[i] != null) {
+                if (definition.argNames.length > 0) {
+                    out.append(',');
+                }
+                out.append("\"detail\":");
+                appendJsonString(out, snapshot.details[i]);
+            }
+            out.append("}}");
+        }
+        out.append("\n]}\n");
+    }
+
+    private static void appendDescription(StringBuilder out, Definition definition,
+                                          String detail, double[] args, int firstArg) {
+        out.append(definition.name);
+        for (int arg = 0; arg < definition.argNames.length; arg++) {
+            out.append(' ').append(definition.argNames[arg]).append('=');
+            try {
+                appendNumber(out, args[firstArg + arg]);
+            } catch (IOException e) {
+                // StringBuilder doesn't throw.
+            }
+        }
+        if (detail != null) {
+            out.append(": ").append(detail);
+        }
+    }
+
+    private static void appendNumber(Appendable out, double value) throws IOException {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append(Long.toString((long) value));
+        } else if (Double.isNaN(value) || Double.isInfinite(value)) {
+            // Not valid JSON numbers.
+            out.append("null");
+        } else {
+            out.append(Double.toString(value));
+        }
+    }
+
+    private static void appendJsonString(Appendable out, String value) throws IOException {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format(Locale.US, "\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
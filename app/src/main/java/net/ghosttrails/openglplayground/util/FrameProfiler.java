@@ -0,0 +1,232 @@
+package net.ghosttrails.openglplayground.util;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Times the phases of each frame and keeps histograms of them, to see where frame time goes.
+ *
+ * Call beginFrame() at the start of a frame, begin(phase) as each phase starts (which ends the
+ * previous one), end() when a phase finishes and endFrame() at the end. A phase may be entered
+ * any number of times in a frame; its times are added up and recorded once per frame. Each call
+ * is a System.nanoTime() and some arithmetic, and nothing allocates until the results are dumped.
+ *
+ * Not thread safe; use it and dump it from the thread that renders.
+ */
+
+public class FrameProfiler {
+
+    private static final String TAG = "FrameProfiler";
+
+    private static final EventTrace trace = EventTrace.shared();
+    private static final int TRACE_DUMP_FAILED =
+            trace.define(TAG, "dumpFailed", EventTrace.WARN);
+
+    public static final int PHASE_INPUT = 0;
+    public static final int PHASE_SIMULATION = 1;
+    public static final int PHASE_TRANSFORMS = 2;
+    public static final int PHASE_DRAW = 3;
+    public static final int PHASE_UPLOAD = 4;
+    public static final int PHASE_COUNT = 5;
+
+    private static final String[] PHASE_NAMES =
+            {"input", "simulation", "transforms", "draw", "upload"};
+
+    private final long jankThresholdNanos;
+
+    private final LogLinearHistogram[] phaseHistograms = new LogLinearHistogram[PHASE_COUNT];
+    // Time from beginFrame() to endFrame().
+    private final LogLinearHistogram frameWorkHistogram = new LogLinearHistogram();
+    // Time from one beginFrame() to the next.
+    private final LogLinearHistogram frameIntervalHistogram = new LogLinearHistogram();
+
+    private final long[] phaseNanosThisFrame = new long[PHASE_COUNT];
+    private int currentPhase = -1;
+    private long phaseStartNanos;
+    private long frameStartNanos = -1;
+    private long lastFrameStartNanos = -1;
+    private long jankFrames = 0;
+
+    /**
+     * @param jankThresholdNanos frames further apart than this are counted as janky, e.g. one
+     *                           and a half display refreshes.
+     */
+    public FrameProfiler(long jankThresholdNanos) {
+        this.jankThresholdNanos = jankThresholdNanos;
+        for (int phase = 0; phase < PHASE_COUNT; phase++) {
+            phaseHistograms[phase] = new LogLinearHistogram();
+        }
+    }
+
+    public void beginFrame() {
+        final long now = System.nanoTime();
+        if (lastFrameStartNanos >= 0) {
+            final long interval = now - lastFrameStartNanos;
+            frameIntervalHistogram.record(interval);
+            if (interval > jankThresholdNanos) {
+                jankFrames++;
+            }
+        }
+        lastFrameStartNanos = now;
+        frameStartNanos = now;
+        currentPhase = -1;
+        for (int phase = 0; phase < PHASE_COUNT; phase++) {
+            phaseNanosThisFrame[phase] = 0;
+        }
+    }
+
+    /**
+     * Start timing a phase, ending whichever phase was running.
+     */
+    public void begin(int phase) {
+        final long now = System.nanoTime();
+        if (currentPhase >= 0) {
+            phaseNanosThisFrame[currentPhase] += now - phaseStartNanos;
+        }
+        currentPhase = phase;
+        phaseStartNanos = now;
+    }
+
+    /**
+     * End the running phase, if any.
+     */
+    public void end() {
+        if (currentPhase >= 0) {
+            phaseNanosThisFrame[currentPhase] += System.nanoTime() - phaseStartNanos;
+            currentPhase = -1;
+        }
+    }
+
+    public void endFrame() {
+        if (frameStartNanos < 0) {
+            return;
+        }
+        end();
+        frameWorkHistogram.record(System.nanoTime() - frameStartNanos);
+        for (int phase = 0; phase < PHASE_COUNT; phase++) {
+            phaseHistograms[phase].record(phaseNanosThisFrame[phase]);
+        }
+        frameStartNanos = -1;
+    }
+
+    /**
+     * Don't count the time until the next frame as a frame interval, e.g. because rendering is
+     * about to be paused.
+     */
+    public void skipNextInterval() {
+        lastFrameStartNanos = -1;
+    }
+
+    public void reset() {
+        for (int phase = 0; phase < PHASE_COUNT; phase++) {
+            phaseHistograms[phase].reset();
+        }
+        frameWorkHistogram.reset();
+        frameIntervalHistogram.reset();
+        jankFrames = 0;
+        frameStartNanos = -1;
+        lastFrameStartNanos = -1;
+        currentPhase = -1;
+    }
+
+    public static String getPhaseName(int phase) {
+        return PHASE_NAMES[phase];
+    }
+
+    /**
+     * @return time spent in the given phase per frame, in nanoseconds.
+     */
+    public LogLinearHistogram getPhaseHistogram(int phase) {
+        return phaseHistograms[phase];
+    }
+
+    /**
+     * @return time from the start to the end of each frame, in nanoseconds.
+     */
+    public LogLinearHistogram getFrameWorkHistogram() {
+        return frameWorkHistogram;
+    }
+
+    /**
+     * @return time between the starts of consecutive frames, in nanoseconds.
+     */
+    public LogLinearHistogram getFrameIntervalHistogram() {
+        return frameIntervalHistogram;
+    }
+
+    /**
+     * @return number of frame intervals over the jank threshold.
+     */
+    public long getJankFrames() {
+        return jankFrames;
+    }
+
+    /**
+     * Write a summary table, one line per histogram, times in milliseconds.
+     */
+    public void dump(Appendable out) throws IOException {
+        out.append(String.format(Locale.US, "%-12s %8s %8s %8s %8s %8s%n",
+                "", "count", "mean", "p50", "p99", "max"));
+        dumpLine(out, "interval", frameIntervalHistogram);
+        dumpLine(out, "frame", frameWorkHistogram);
+        for (int phase = 0; phase < PHASE_COUNT; phase++) {
+            dumpLine(out, PHASE_NAMES[phase], phaseHistograms[phase]);
+        }
+        out.append(String.format(Locale.US, "jank: %d of %d intervals over %.2fms%n",
+                jankFrames, frameIntervalHistogram.getCount(), jankThresholdNanos / 1e6));
+    }
+
+    private static void dumpLine(Appendable out, String name, LogLinearHistogram histogram)
+            throws IOException {
+        out.append(String.format(Locale.US, "%-12s %8d %8.3f %8.3f %8.3f %8.3f%n",
+                name, histogram.getCount(), histogram.getMean() / 1e6,
+                histogram.getValueAtPercentile(50) / 1e6,
+                histogram.getValueAtPercentile(99) / 1e6, histogram.getMax() / 1e6));
+    }
+
+    /**
+     * Write the summary straight to logcat; this is an explicit request for output, so it
+     * doesn't go through the trace.
+     */
+    public void dumpToLog(String tag) {
+        final StringBuilder summary = new StringBuilder();
+        try {
+            dump(summary);
+        } catch (IOException e) {
+            // StringBuilder doesn't throw.
+        }
+        for (String line : summary.toString().split("\n")) {
+            Log.i(tag, line);
+        }
+    }
+
+    /**
+     * @return false if the file couldn't be written.
+     */
+    public boolean dumpToFile(File file) {
+        Writer writer = null;
+        try {
+            writer = new FileWriter(file);
+            dump(writer);
+            return true;
+        } catch (IOException e) {
+            if (LoggerConfig.ON) {
+                trace.record(TRACE_DUMP_FAILED, file + ": " + e);
+            }
+            return false;
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // Nothing more to do.
+                }
+            }
+        }
+    }
+}
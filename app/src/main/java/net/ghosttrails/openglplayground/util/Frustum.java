@@ -0,0 +1,88 @@
+package net.ghosttrails.openglplayground.util;
+
+/**
+ * The six planes bounding what a view projection matrix can see, for telling whether a sphere
+ * or box can be seen without drawing it.
+ *
+ * The planes come straight from the matrix's rows (Gribb and Hartmann): a point is inside the
+ * clip volume when -w <= x, y, z <= w, and each of those six inequalities is a plane in world
+ * space. They're normalized, so a point's distance from a plane is just a dot product. Planes
+ * face inwards.
+ */
+
+public class Frustum {
+
+    public static final int OUTSIDE = 0;
+    public static final int INTERSECTING = 1;
+    public static final int INSIDE = 2;
+
+    private static final int PLANE_COUNT = 6;
+
+    // a, b, c, d for each plane: left, right, bottom, top, near, far.
+    private final float[] planes = new float[PLANE_COUNT * 4];
+
+    /**
+     * @param m a view projection matrix, 16 floats from offset.
+     */
+    public void set(float[] m, int offset) {
+        for (int i = 0; i < PLANE_COUNT; i++) {
+            // Row 3 plus or minus row 0, 1 or 2.
+            final int row = offset + i / 2;
+            final float sign = (i % 2 == 0) ? 1f : -1f;
+            final float a = m[offset + 3] + sign * m[row];
+            final float b = m[offset + 7] + sign * m[row + 4];
+            final float c = m[offset + 11] + sign * m[row + 8];
+            final float d = m[offset + 15] + sign * m[row + 12];
+            final float length = (float) Math.sqrt(a * a + b * b + c * c);
+            planes[i * 4] = a / length;
+            planes[i * 4 + 1] = b / length;
+            planes[i * 4 + 2] = c / length;
+            planes[i * 4 + 3] = d / length;
+        }
+    }
+
+    /**
+     * @return OUTSIDE, INTERSECTING or INSIDE. Near the frustum's corners a sphere that can't
+     * be seen can come out as INTERSECTING, which only means it's drawn anyway.
+     */
+    public int classifySphere(float x, float y, float z, float radius) {
+        int result = INSIDE;
+        for (int i = 0; i < planes.length; i += 4) {
+            final float distance =
+                    planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3];
+            if (distance < -radius) {
+                return OUTSIDE;
+            }
+            if (distance < radius) {
+                result = INTERSECTING;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return OUTSIDE, INTERSECTING or INSIDE for an axis-aligned box. For each plane only the
+     * corner furthest along its normal, and the one furthest against it, are tested.
+     */
+    public int classifyBox(float minX, float minY, float minZ, float maxX, float maxY,
+                           float maxZ) {
+        int result = INSIDE;
+        for (int i = 0; i < planes.length; i += 4) {
+            final float a = planes[i];
+            final float b = planes[i + 1];
+            final float c = planes[i + 2];
+            final float d = planes[i + 3];
+            final float furthest = a * (a >= 0f ? maxX : minX) + b * (b >= 0f ? maxY : minY)
+                    + c * (c >= 0f ? maxZ : minZ) + d;
+            if (furthest < 0f) {
+                return OUTSIDE;
+            }
+            final float nearest = a * (a >= 0f ? minX : maxX) + b * (b >= 0f ? minY : maxY)
+                    + c * (c >= 0f ? minZ : maxZ) + d;
+            if (nearest < 0f) {
+                result = INTERSECTING;
+            }
+        }
+        return result;
+    }
+}
@@ -111,6 +111,91 @@ public class Geometry {
         }
     }
 
+    /**
+     * Mutable companion to Point and Vector for code that runs every frame. Operations update
+     * this instance (or write into caller-owned storage) instead of allocating a new object.
+     */
+    public static class Vec3 {
+        public float x, y, z;
+
+        public Vec3() {
+        }
+
+        public Vec3(float x, float y, float z) {
+            set(x, y, z);
+        }
+
+        public Vec3 set(float x, float y, float z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            return this;
+        }
+
+        public Vec3 set(Vec3 other) {
+            return set(other.x, other.y, other.z);
+        }
+
+        public Vec3 add(Vec3 other) {
+            return set(x + other.x, y + other.y, z + other.z);
+        }
+
+        public Vec3 addScaled(Vec3 other, float f) {
+            return set(x + other.x * f, y + other.y * f, z + other.z * f);
+        }
+
+        public Vec3 sub(Vec3 other) {
+            return set(x - other.x, y - other.y, z - other.z);
+        }
+
+        public Vec3 scaleInPlace(float f) {
+            return set(x * f, y * f, z * f);
+        }
+
+        /**
+         * Set this to the vector from one point to another.
+         */
+        public Vec3 setBetween(Vec3 from, Vec3 to) {
+            return set(to.x - from.x, to.y - from.y, to.z - from.z);
+        }
+
+        /**
+         * Set this to a x b. Safe to call with this as one of the arguments.
+         */
+        public Vec3 setCrossProduct(Vec3 a, Vec3 b) {
+            return set(
+                    (a.y * b.z) - (a.z * b.y),
+                    (a.z * b.x) - (a.x * b.z),
+                    (a.x * b.y) - (a.y * b.x));
+        }
+
+        public float dotProduct(Vec3 other) {
+            return x * other.x + y * other.y + z * other.z;
+        }
+
+        public float lengthSquared() {
+            return x * x + y * y + z * z;
+        }
+
+        public float length() {
+            return (float) Math.sqrt(lengthSquared());
+        }
+    }
+
+    /**
+     * Mutable companion to Ray. Both parts are owned by the ray and updated in place.
+     */
+    public static class MutableRay {
+        public final Vec3 point = new Vec3();
+        public final Vec3 vector = new Vec3();
+
+        public MutableRay set(float px, float py, float pz, float vx, float vy, float vz) {
+            point.set(px, py, pz);
+            vector.set(vx, vy, vz);
+            return this;
+        }
+    }
+
     public static Point intersectionPoint(Ray ray, Plane plane) {
         Vector rayToPlaneVector = vectorBetween(ray.point, plane.point);
 
@@ -145,4 +230,113 @@ public class Geometry {
         float distanceFromPointToRay = areaOfTriangleTimeTwo / lengthOfBase;
         return distanceFromPointToRay;
     }
+
+    /**
+     * Allocation-free version of intersectionPoint(Ray, Plane).
+     * @param out receives the point where the ray meets the plane.
+     * @return out, for chaining.
+     */
+    public static Vec3 intersectionPoint(MutableRay ray, Vec3 planePoint, Vec3 planeNormal,
+                                         Vec3 out) {
+        float scaleFactor = ((planePoint.x - ray.point.x) * planeNormal.x
+                + (planePoint.y - ray.point.y) * planeNormal.y
+                + (planePoint.z - ray.point.z) * planeNormal.z)
+                / ray.vector.dotProduct(planeNormal);
+
+        return out.set(ray.point).addScaled(ray.vector, scaleFactor);
+    }
+
+    /**
+     * Allocation-free version of intersects(Sphere, Ray). Compares squared distances, so there
+     * is no square root either.
+     */
+    public static boolean intersects(Vec3 sphereCenter, float sphereRadius, MutableRay ray) {
+        return distanceSquaredBetween(sphereCenter, ray) < sphereRadius * sphereRadius;
+    }
+
+    /**
+     * Squared distance from a point to the (infinite) line through a ray. Same method as
+     * distanceBetween(Point, Ray), but on plain floats.
+     */
+    public static float distanceSquaredBetween(Vec3 point, MutableRay ray) {
+        // Vector from the ray's start to the point, and from the ray's end to the point.
+        final float ax = point.x - ray.point.x;
+        final float ay = point.y - ray.point.y;
+        final float az = point.z - ray.point.z;
+        final float bx = ax - ray.vector.x;
+        final float by = ay - ray.vector.y;
+        final float bz = az - ray.vector.z;
+
+        // Twice the triangle's area, squared.
+        final float cx = (ay * bz) - (az * by);
+        final float cy = (az * bx) - (ax * bz);
+        final float cz = (ax * by) - (ay * bx);
+        final float areaOfTriangleTimesTwoSquared = cx * cx + cy * cy + cz * cz;
+
+        return areaOfTriangleTimesTwoSquared / ray.vector.lengthSquared();
+    }
+
+    /**
+     * Swept circle-vs-circle test on the table (x/z) plane. Each circle moves in a straight line
+     * by the given displacement over one step.
+     * @param radiusSum sum of the two circles' radii.
+     * @return the fraction of the step in [0, 1] at which the circles first touch, 0 if they
+     * already overlap at the start, or -1 if they don't touch during the step.
+     */
+    public static float timeOfImpact(float ax, float az, float aDisplacementX,
+                                     float aDisplacementZ, float bx, float bz,
+                                     float bDisplacementX, float bDisplacementZ,
+                                     float radiusSum) {
+        // Work in b's frame relative to a: solve |p + t * d| = radiusSum for the smallest t.
+        final float px = bx - ax;
+        final float pz = bz - az;
+        final float dx = bDisplacementX - aDisplacementX;
+        final float dz = bDisplacementZ - aDisplacementZ;
+
+        final float c = px * px + pz * pz - radiusSum * radiusSum;
+        if (c <= 0f) {
+            return 0f;
+        }
+        final float a = dx * dx + dz * dz;
+        final float b = px * dx + pz * dz;
+        if (a == 0f || b >= 0f) {
+            // Not moving relative to each other, or moving apart.
+            return -1f;
+        }
+        final float discriminant = b * b - a * c;
+        if (discriminant < 0f) {
+            return -1f;
+        }
+        final float t = (-b - (float) Math.sqrt(discriminant)) / a;
+        return t <= 1f ? t : -1f;
+    }
+
+    /**
+     * Swept circle-vs-wall test along one axis. A circle moves by the given displacement over one
+     * step between two walls.
+     * @param min position of the wall on the low side.
+     * @param max position of the wall on the high side.
+     * @return the fraction of the step in [0, 1] at which the circle first touches the wall it's
+     * heading towards, 0 if it's already touching or past that wall, or -1 if it doesn't reach
+     * it during the step.
+     */
+    public static float timeOfImpactWithWalls(float position, float displacement, float radius,
+                                              float min, float max) {
+        final float limit;
+        if (displacement > 0f) {
+            limit = max - radius;
+            if (position >= limit) {
+                return 0f;
+            }
+        } else if (displacement < 0f) {
+            limit = min + radius;
+            if (position <= limit) {
+                return 0f;
+            }
+        } else {
+            return -1f;
+        }
+        final float t = (limit - position) / displacement;
+        return t <= 1f ? t : -1f;
+    }
 }
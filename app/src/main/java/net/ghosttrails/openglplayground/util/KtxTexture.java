@@ -0,0 +1,134 @@
+package net.ghosttrails.openglplayground.util;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * A compressed 2D texture read from a KTX file, with all its mipmap levels, ready for
+ * glCompressedTexImage2D. The build makes these from the drawable textures; see the app
+ * module's compressTextures task.
+ */
+
+public class KtxTexture {
+
+    private static final byte[] IDENTIFIER = {(byte) 0xab, 'K', 'T', 'X', ' ', '1', '1',
+            (byte) 0xbb, '\r', '\n', 0x1a, '\n'};
+    private static final int ENDIANNESS = 0x04030201;
+    // Levels are padded to a multiple of this.
+    private static final int ALIGNMENT = 4;
+
+    public final int internalFormat;
+    public final int width;
+    public final int height;
+    // Largest first, each a direct buffer positioned at 0.
+    public final ByteBuffer[] levels;
+
+    private KtxTexture(int internalFormat, int width, int height, ByteBuffer[] levels) {
+        this.internalFormat = internalFormat;
+        this.width = width;
+        this.height = height;
+        this.levels = levels;
+    }
+
+    public int getLevelWidth(int level) {
+        return Math.max(1, width >> level);
+    }
+
+    public int getLevelHeight(int level) {
+        return Math.max(1, height >> level);
+    }
+
+    /**
+     * @return the bytes of all the levels.
+     */
+    public int getSize() {
+        int size = 0;
+        for (ByteBuffer level : levels) {
+            size += level.capacity();
+        }
+        return size;
+    }
+
+    /**
+     * Read a compressed 2D texture; doesn't close the stream.
+     * @throws IOException if it isn't one, or has no mipmap levels in it.
+     */
+    public static KtxTexture read(InputStream stream) throws IOException {
+        final DataInputStream in = new DataInputStream(stream);
+        final byte[] identifier = new byte[IDENTIFIER.length];
+        in.readFully(identifier);
+        if (!Arrays.equals(identifier, IDENTIFIER)) {
+            throw new IOException("Not a KTX file");
+        }
+        final boolean swap;
+        final int endianness = in.readInt();
+        if (endianness == ENDIANNESS) {
+            swap = false;
+        } else if (endianness == Integer.reverseBytes(ENDIANNESS)) {
+            swap = true;
+        } else {
+            throw new IOException("Bad KTX endianness: " + Integer.toHexString(endianness));
+        }
+
+        final int glType = readInt(in, swap);
+        readInt(in, swap); // glTypeSize
+        readInt(in, swap); // glFormat
+        final int internalFormat = readInt(in, swap);
+        readInt(in, swap); // glBaseInternalFormat
+        final int width = readInt(in, swap);
+        final int height = readInt(in, swap);
+        final int depth = readInt(in, swap);
+        final int arrayElements = readInt(in, swap);
+        final int faces = readInt(in, swap);
+        final int levelCount = readInt(in, swap);
+        final int keyValueBytes = readInt(in, swap);
+        if (glType != 0 || width <= 0 || height <= 0 || depth != 0 || arrayElements != 0
+                || faces != 1) {
+            throw new IOException("Not a compressed 2D KTX texture");
+        }
+        // 0 levels means "generate them", and they're supposed to have been made already.
+        if (levelCount < 1 || levelCount > 32) {
+            throw new IOException("Bad KTX mipmap level count: " + levelCount);
+        }
+        skipFully(in, keyValueBytes);
+
+        final ByteBuffer[] levels = new ByteBuffer[levelCount];
+        byte[] buffer = new byte[0];
+        for (int level = 0; level < levelCount; level++) {
+            final int size = readInt(in, swap);
+            if (size <= 0) {
+                throw new IOException("Bad KTX level size: " + size);
+            }
+            if (buffer.length < size) {
+                buffer = new byte[size];
+            }
+            in.readFully(buffer, 0, size);
+            levels[level] = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+            levels[level].put(buffer, 0, size).position(0);
+            skipFully(in, (ALIGNMENT - size % ALIGNMENT) % ALIGNMENT);
+        }
+        return new KtxTexture(internalFormat, width, height, levels);
+    }
+
+    private static int readInt(DataInputStream in, boolean swap) throws IOException {
+        final int value = in.readInt();
+        return swap ? Integer.reverseBytes(value) : value;
+    }
+
+    private static void skipFully(DataInputStream in, int bytes) throws IOException {
+        if (bytes < 0) {
+            throw new IOException("Bad KTX length: " + bytes);
+        }
+        while (bytes > 0) {
+            final int skipped = in.skipBytes(bytes);
+            if (skipped <= 0) {
+                throw new IOException("KTX file ends early");
+            }
+            bytes -= skipped;
+        }
+    }
+}
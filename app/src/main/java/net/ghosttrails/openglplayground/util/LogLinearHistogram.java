@@ -0,0 +1,122 @@
+package net.ghosttrails.openglplayground.util;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-memory histogram of non-negative long values, e.g. durations in nanoseconds.
+ *
+ * Buckets are log-linear: each power-of-two range is split into 16 equal buckets, so any value
+ * is placed in a bucket no more than 1/16th (6.25%) wider than the value, from 1ns right up to
+ * minutes. Recording a value is a few shifts and an array increment, and never allocates.
+ */
+
+public class LogLinearHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values of 2^MAX_VALUE_BITS and over all go in the last bucket. 2^40ns is about 18 minutes.
+    private static final int MAX_VALUE_BITS = 40;
+    private static final long MAX_TRACKED_VALUE = (1L << MAX_VALUE_BITS) - 1;
+    private static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount = 0;
+    private long sum = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[bucketOf(Math.min(value, MAX_TRACKED_VALUE))]++;
+        totalCount++;
+        sum += value;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // Keep the top SUB_BUCKET_BITS + 1 bits of the value; the leading one picks the
+        // power-of-two range and the rest pick the bucket within it.
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the largest value that goes in the given bucket.
+     */
+    private static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    /**
+     * @param percentile from 0 to 100.
+     * @return a value that at least that percentage of recorded values are less than or equal
+     * to, accurate to the bucket width. Zero if nothing has been recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        final long target = Math.max(1, (long) Math.ceil(totalCount * percentile / 100.0));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += counts[bucket];
+            if (seen >= target) {
+                return Math.min(max, highestValueIn(bucket));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return how many recorded values were greater than the given value, accurate to the
+     * bucket width.
+     */
+    public long getCountAbove(long value) {
+        final int firstBucket = bucketOf(Math.min(Math.max(0, value), MAX_TRACKED_VALUE)) + 1;
+        long count = 0;
+        for (int bucket = firstBucket; bucket < BUCKET_COUNT; bucket++) {
+            count += counts[bucket];
+        }
+        return count;
+    }
+}
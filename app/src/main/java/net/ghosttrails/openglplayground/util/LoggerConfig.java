@@ -1,9 +1,11 @@
 package net.ghosttrails.openglplayground.util;
 
+import net.ghosttrails.openglplayground.BuildConfig;
+
 /**
- * Global flag for turning logging on/off
+ * Global flag for turning logging on/off. On in debug builds only.
  */
 
 public class LoggerConfig {
-    public static final boolean ON = true;
+    public static final boolean ON = BuildConfig.DEBUG;
 }
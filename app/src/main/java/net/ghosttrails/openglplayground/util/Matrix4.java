@@ -0,0 +1,195 @@
+package net.ghosttrails.openglplayground.util;
+
+/**
+ * 4x4 matrix functions that allocate nothing, including fast versions of the common cases:
+ * multiplying by a translation or by a rotation about the x axis only touches the columns that
+ * change, instead of building the second matrix and doing a full multiply.
+ *
+ * Matrices are 16 floats in column-major order, as android.opengl.Matrix and glUniformMatrix4fv
+ * use, at an offset in the caller's array. Results go into arrays the caller supplies, so
+ * nothing needs scratch storage of its own.
+ */
+
+public class Matrix4 {
+
+    public static void setIdentity(float[] m, int offset) {
+        for (int i = 0; i < 16; i++) {
+            m[offset + i] = 0f;
+        }
+        m[offset] = 1f;
+        m[offset + 5] = 1f;
+        m[offset + 10] = 1f;
+        m[offset + 15] = 1f;
+    }
+
+    /**
+     * result = lhs * rhs. result mustn't overlap lhs or rhs.
+     */
+    public static void multiply(float[] result, int resultOffset, float[] lhs, int lhsOffset,
+                                float[] rhs, int rhsOffset) {
+        for (int column = 0; column < 4; column++) {
+            final int r = rhsOffset + column * 4;
+            final float r0 = rhs[r];
+            final float r1 = rhs[r + 1];
+            final float r2 = rhs[r + 2];
+            final float r3 = rhs[r + 3];
+            for (int row = 0; row < 4; row++) {
+                final int l = lhsOffset + row;
+                result[resultOffset + column * 4 + row] = lhs[l] * r0 + lhs[l + 4] * r1
+                        + lhs[l + 8] * r2 + lhs[l + 12] * r3;
+            }
+        }
+    }
+
+    /**
+     * result = m * translation(x, y, z). Only the last column changes; result may be m.
+     */
+    public static void multiplyTranslate(float[] result, int resultOffset, float[] m,
+                                         int offset, float x, float y, float z) {
+        if (result != m || resultOffset != offset) {
+            System.arraycopy(m, offset, result, resultOffset, 12);
+        }
+        for (int row = 0; row < 4; row++) {
+            final int i = offset + row;
+            result[resultOffset + 12 + row] = m[i] * x + m[i + 4] * y + m[i + 8] * z + m[i + 12];
+        }
+    }
+
+    /**
+     * result = m * rotation about the x axis. Only the middle two columns change; result may
+     * be m.
+     */
+    public static void multiplyRotateX(float[] result, int resultOffset, float[] m, int offset,
+                                       float degrees) {
+        final double radians = Math.toRadians(degrees);
+        final float c = (float) Math.cos(radians);
+        final float s = (float) Math.sin(radians);
+        if (result != m || resultOffset != offset) {
+            System.arraycopy(m, offset, result, resultOffset, 4);
+            System.arraycopy(m, offset + 12, result, resultOffset + 12, 4);
+        }
+        for (int row = 0; row < 4; row++) {
+            final float y = m[offset + 4 + row];
+            final float z = m[offset + 8 + row];
+            result[resultOffset + 4 + row] = c * y + s * z;
+            result[resultOffset + 8 + row] = c * z - s * y;
+        }
+    }
+
+    /**
+     * Invert a general matrix, by cofactors. result mustn't overlap m.
+     * @return false, leaving result alone, if m can't be inverted.
+     */
+    public static boolean invert(float[] result, int resultOffset, float[] m, int offset) {
+        final float m0 = m[offset], m1 = m[offset + 1], m2 = m[offset + 2],
+                m3 = m[offset + 3];
+        final float m4 = m[offset + 4], m5 = m[offset + 5], m6 = m[offset + 6],
+                m7 = m[offset + 7];
+        final float m8 = m[offset + 8], m9 = m[offset + 9], m10 = m[offset + 10],
+                m11 = m[offset + 11];
+        final float m12 = m[offset + 12], m13 = m[offset + 13], m14 = m[offset + 14],
+                m15 = m[offset + 15];
+
+        // 2x2 determinants of the bottom two rows, then the top two.
+        final float b0 = m2 * m7 - m3 * m6;
+        final float b1 = m2 * m11 - m3 * m10;
+        final float b2 = m2 * m15 - m3 * m14;
+        final float b3 = m6 * m11 - m7 * m10;
+        final float b4 = m6 * m15 - m7 * m14;
+        final float b5 = m10 * m15 - m11 * m14;
+        final float a0 = m0 * m5 - m1 * m4;
+        final float a1 = m0 * m9 - m1 * m8;
+        final float a2 = m0 * m13 - m1 * m12;
+        final float a3 = m4 * m9 - m5 * m8;
+        final float a4 = m4 * m13 - m5 * m12;
+        final float a5 = m8 * m13 - m9 * m12;
+
+        final float determinant = a0 * b5 - a1 * b4 + a2 * b3 + a3 * b2 - a4 * b1 + a5 * b0;
+        if (determinant == 0f) {
+            return false;
+        }
+        final float d = 1f / determinant;
+
+        result[resultOffset] = (m5 * b5 - m9 * b4 + m13 * b3) * d;
+        result[resultOffset + 1] = (-m1 * b5 + m9 * b2 - m13 * b1) * d;
+        result[resultOffset + 2] = (m1 * b4 - m5 * b2 + m13 * b0) * d;
+        result[resultOffset + 3] = (-m1 * b3 + m5 * b1 - m9 * b0) * d;
+        result[resultOffset + 4] = (-m4 * b5 + m8 * b4 - m12 * b3) * d;
+        result[resultOffset + 5] = (m0 * b5 - m8 * b2 + m12 * b1) * d;
+        result[resultOffset + 6] = (-m0 * b4 + m4 * b2 - m12 * b0) * d;
+        result[resultOffset + 7] = (m0 * b3 - m4 * b1 + m8 * b0) * d;
+        result[resultOffset + 8] = (m7 * a5 - m11 * a4 + m15 * a3) * d;
+        result[resultOffset + 9] = (-m3 * a5 + m11 * a2 - m15 * a1) * d;
+        result[resultOffset + 10] = (m3 * a4 - m7 * a2 + m15 * a0) * d;
+        result[resultOffset + 11] = (-m3 * a3 + m7 * a1 - m11 * a0) * d;
+        result[resultOffset + 12] = (-m6 * a5 + m10 * a4 - m14 * a3) * d;
+        result[resultOffset + 13] = (m2 * a5 - m10 * a2 + m14 * a1) * d;
+        result[resultOffset + 14] = (-m2 * a4 + m6 * a2 - m14 * a0) * d;
+        result[resultOffset + 15] = (m2 * a3 - m6 * a1 + m10 * a0) * d;
+        return true;
+    }
+
+    /**
+     * Transform the point (x, y, z, 1) and divide by w, e.g. to take a point in normalized
+     * device coordinates back into the world with an inverted view projection matrix.
+     * @param result x, y and z are written from resultOffset.
+     */
+    public static void transformPoint(float[] result, int resultOffset, float[] m, int offset,
+                                      float x, float y, float z) {
+        final float w = m[offset + 3] * x + m[offset + 7] * y + m[offset + 11] * z
+                + m[offset + 15];
+        for (int row = 0; row < 3; row++) {
+            final int i = offset + row;
+            result[resultOffset + row] =
+                    (m[i] * x + m[i + 4] * y + m[i + 8] * z + m[i + 12]) / w;
+        }
+    }
+
+    /**
+     * A view matrix looking from the eye towards the center, the same as
+     * android.opengl.Matrix.setLookAtM().
+     */
+    public static void setLookAt(float[] m, int offset, float eyeX, float eyeY, float eyeZ,
+                                 float centerX, float centerY, float centerZ, float upX,
+                                 float upY, float upZ) {
+        // Forward, normalized.
+        float fx = centerX - eyeX;
+        float fy = centerY - eyeY;
+        float fz = centerZ - eyeZ;
+        final float fLength = 1f / (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+        fx *= fLength;
+        fy *= fLength;
+        fz *= fLength;
+
+        // Side = forward x up, normalized.
+        float sx = fy * upZ - fz * upY;
+        float sy = fz * upX - fx * upZ;
+        float sz = fx * upY - fy * upX;
+        final float sLength = 1f / (float) Math.sqrt(sx * sx + sy * sy + sz * sz);
+        sx *= sLength;
+        sy *= sLength;
+        sz *= sLength;
+
+        // Up = side x forward, already unit length.
+        final float ux = sy * fz - sz * fy;
+        final float uy = sz * fx - sx * fz;
+        final float uz = sx * fy - sy * fx;
+
+        m[offset] = sx;
+        m[offset + 1] = ux;
+        m[offset + 2] = -fx;
+        m[offset + 3] = 0f;
+        m[offset + 4] = sy;
+        m[offset + 5] = uy;
+        m[offset + 6] = -fy;
+        m[offset + 7] = 0f;
+        m[offset + 8] = sz;
+        m[offset + 9] = uz;
+        m[offset + 10] = -fz;
+        m[offset + 11] = 0f;
+        m[offset + 12] = -(sx * eyeX + sy * eyeY + sz * eyeZ);
+        m[offset + 13] = -(ux * eyeX + uy * eyeY + uz * eyeZ);
+        m[offset + 14] = fx * eyeX + fy * eyeY + fz * eyeZ;
+        m[offset + 15] = 1f;
+    }
+}
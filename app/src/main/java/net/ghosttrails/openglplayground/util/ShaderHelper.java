@@ -1,6 +1,6 @@
 package net.ghosttrails.openglplayground.util;
 
-import android.util.Log;
+import android.opengl.GLES30;
 
 import java.util.logging.Logger;
 
@@ -15,6 +15,7 @@ import static android.opengl.GLES20.glCreateProgram;
 import static android.opengl.GLES20.glCreateShader;
 import static android.opengl.GLES20.glDeleteProgram;
 import static android.opengl.GLES20.glDeleteShader;
+import static android.opengl.GLES20.glDetachShader;
 import static android.opengl.GLES20.glGetProgramInfoLog;
 import static android.opengl.GLES20.glGetProgramiv;
 import static android.opengl.GLES20.glGetShaderInfoLog;
@@ -31,6 +32,22 @@ public class ShaderHelper {
 
     private static final String TAG = "ShaderHelper";
 
+    private static final EventTrace trace = EventTrace.shared();
+    private static final int TRACE_PROGRAM_CREATE_FAILED =
+            trace.define(TAG, "programCreateFailed", EventTrace.WARN);
+    private static final int TRACE_PROGRAM_LINKED =
+            trace.define(TAG, "programLinked", EventTrace.VERBOSE, "program", "status");
+    private static final int TRACE_PROGRAM_VALIDATED =
+            trace.define(TAG, "programValidated", EventTrace.VERBOSE, "program", "status");
+    private static final int TRACE_LINK_FAILED =
+            trace.define(TAG, "linkFailed", EventTrace.WARN, "program");
+    private static final int TRACE_SHADER_CREATE_FAILED =
+            trace.define(TAG, "shaderCreateFailed", EventTrace.WARN, "type");
+    private static final int TRACE_SHADER_COMPILED = trace.define(TAG, "shaderCompiled",
+            EventTrace.VERBOSE, "shader", "status", "sourceLength");
+    private static final int TRACE_COMPILE_FAILED =
+            trace.define(TAG, "compileFailed", EventTrace.WARN, "shader");
+
     public static int compileVertexShader(String shaderCode) {
         return compileShader(GL_VERTEX_SHADER, shaderCode);
     }
@@ -40,17 +57,30 @@ public class ShaderHelper {
     }
 
     public static int linkProgram(int vertexShaderId, int fragmentShaderId) {
+        return linkProgram(vertexShaderId, fragmentShaderId, false);
+    }
+
+    /**
+     * @param retrievableBinary whether glGetProgramBinary() will be used on the program; only
+     * on an ES 3.0 context.
+     */
+    public static int linkProgram(int vertexShaderId, int fragmentShaderId,
+                                  boolean retrievableBinary) {
         final int programObjectId = glCreateProgram();
 
         if (programObjectId == 0) {
             if (LoggerConfig.ON) {
-                Log.w(TAG, "Could not create new program.");
+                trace.record(TRACE_PROGRAM_CREATE_FAILED);
             }
             return 0;
         }
 
         glAttachShader(programObjectId, vertexShaderId);
         glAttachShader(programObjectId, fragmentShaderId);
+        if (retrievableBinary) {
+            GLES30.glProgramParameteri(programObjectId, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT,
+                    GLES30.GL_TRUE);
+        }
 
         glLinkProgram(programObjectId);
 
@@ -58,14 +88,15 @@ public class ShaderHelper {
         glGetProgramiv(programObjectId, GL_LINK_STATUS, linkStatus, 0);
 
         if (LoggerConfig.ON) {
-            Log.v(TAG, "Results from linking program:\n" + glGetProgramInfoLog(programObjectId));
+            trace.record(TRACE_PROGRAM_LINKED, glGetProgramInfoLog(programObjectId),
+                    programObjectId, linkStatus[0], 0);
         }
 
         if (linkStatus[0] == 0) {
-            glDeleteProgram(programObjectId);
             if (LoggerConfig.ON) {
-                Log.w(TAG, "Linking of program failed.");
+                trace.record(TRACE_LINK_FAILED, programObjectId);
             }
+            glDeleteProgram(programObjectId);
             return 0;
         }
         return programObjectId;
@@ -77,8 +108,8 @@ public class ShaderHelper {
         final int[] validateStatus = new int[1];
         glGetProgramiv(programObjectId, GL_VALIDATE_STATUS, validateStatus, 0);
         if (LoggerConfig.ON) {
-            Log.v(TAG, "Results for validating program: " + validateStatus[0] + "\nLog: "
-                    + glGetProgramInfoLog(programObjectId));
+            trace.record(TRACE_PROGRAM_VALIDATED, glGetProgramInfoLog(programObjectId),
+                    programObjectId, validateStatus[0], 0);
         }
 
         return validateStatus[0] != 0;
@@ -89,7 +120,7 @@ public class ShaderHelper {
 
         if (shaderObjectId == 0) {
             if (LoggerConfig.ON) {
-                Log.w(TAG, "Could not create new shader.");
+                trace.record(TRACE_SHADER_CREATE_FAILED, type);
             }
             return 0;
         }
@@ -105,18 +136,18 @@ public class ShaderHelper {
         glGetShaderiv(shaderObjectId, GL_COMPILE_STATUS, compileStatus, 0);
 
         if (LoggerConfig.ON) {
-            // Log shader info log.
-            Log.v(TAG, "Results for compiling \n" + shaderCode + "\n: "
-                + glGetShaderInfoLog(shaderObjectId));
+            // Keep the info log, but not the whole source.
+            trace.record(TRACE_SHADER_COMPILED, glGetShaderInfoLog(shaderObjectId),
+                    shaderObjectId, compileStatus[0], shaderCode.length());
         }
 
         if (compileStatus[0] == 0) {
             // compilation failed
-            glDeleteShader(shaderObjectId);
-
             if (LoggerConfig.ON) {
-                Log.w(TAG, "Compilation of shader failed.");
+                trace.record(TRACE_COMPILE_FAILED, glGetShaderInfoLog(shaderObjectId),
+                        shaderObjectId);
             }
+            glDeleteShader(shaderObjectId);
             return 0;
         }
 
@@ -130,6 +161,15 @@ public class ShaderHelper {
      * @return the program id - 0 if failed.
      */
     public static int buildProgram(String vertexShaderSource, String fragmentShaderSource) {
+        return buildProgram(vertexShaderSource, fragmentShaderSource, false);
+    }
+
+    /**
+     * @param retrievableBinary whether glGetProgramBinary() will be used on the program; only
+     * on an ES 3.0 context.
+     */
+    public static int buildProgram(String vertexShaderSource, String fragmentShaderSource,
+                                   boolean retrievableBinary) {
         int program;
 
         // Compile the shaders.
@@ -137,12 +177,21 @@ public class ShaderHelper {
         int fragmentShader = compileFragmentShader(fragmentShaderSource);
 
         // link them into a shader program
-        program = linkProgram(vertexShader, fragmentShader);
+        program = linkProgram(vertexShader, fragmentShader, retrievableBinary);
 
         if (LoggerConfig.ON) {
             validateProgram(program);
         }
 
+        // The linked program doesn't need them; deleting them now, rather than with the
+        // program, means programs built again and again don't leak them.
+        if (program != 0) {
+            glDetachShader(program, vertexShader);
+            glDetachShader(program, fragmentShader);
+        }
+        glDeleteShader(vertexShader);
+        glDeleteShader(fragmentShader);
+
         return program;
     }
 }
@@ -0,0 +1,223 @@
+package net.ghosttrails.openglplayground.util;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns shader source with includes and variant defines into what the GLSL compiler is given.
+ *
+ * - #include "name" is replaced by that file's source, found by the IncludeResolver, which is
+ *   preprocessed the same way. A file is only included once, however many times it's asked
+ *   for, so files can include what they need without worrying about what else includes it.
+ * - #ifdef NAME, #ifndef NAME, #else and #endif are evaluated against the defines given, and
+ *   the lines they leave out are dropped. Other conditionals (#if, #elif) are left for the
+ *   compiler.
+ * - #version is moved to the top, wherever it was, so includes and comments can come first.
+ * - Defines with a value ("MAX_INSTANCES 32") become #define lines, after the #version line if
+ *   there is one, but only if the source still uses them.
+ *
+ * So two sets of defines that make no difference to a shader give exactly the same source,
+ * and anything keyed by source (compiled shaders, linked programs, program binaries) can be
+ * shared between them.
+ */
+
+public class ShaderPreprocessor {
+
+    /**
+     * Finds the source of an included file.
+     */
+    public interface IncludeResolver {
+        /**
+         * @throws IllegalArgumentException if there is no such file.
+         */
+        String resolve(String name);
+    }
+
+    // What each open conditional is doing.
+    private static final int BRANCH_TAKEN = 0;
+    private static final int BRANCH_SKIPPED = 1;
+    // One for the compiler to evaluate.
+    private static final int BRANCH_PASSED_THROUGH = 2;
+
+    private final IncludeResolver resolver;
+    private final Map<String, String> defines = new LinkedHashMap<String, String>();
+    private final Set<String> included = new HashSet<String>();
+    private final StringBuilder body = new StringBuilder();
+    private String versionLine = null;
+
+    private ShaderPreprocessor(IncludeResolver resolver, String[] defines) {
+        this.resolver = resolver;
+        for (String define : defines) {
+            final String trimmed = define.trim();
+            final int space = indexOfWhitespace(trimmed);
+            if (space < 0) {
+                this.defines.put(trimmed, null);
+            } else {
+                this.defines.put(trimmed.substring(0, space), trimmed.substring(space).trim());
+            }
+        }
+    }
+
+    /**
+     * @param defines each either "NAME", for #ifdef, or "NAME value".
+     * @return the source to compile.
+     */
+    public static String preprocess(String source, IncludeResolver resolver, String... defines) {
+        ShaderPreprocessor preprocessor = new ShaderPreprocessor(resolver, defines);
+        preprocessor.append(source, "<source>");
+        return preprocessor.finish();
+    }
+
+    private void append(String source, String name) {
+        final int[] branches = new int[16];
+        int depth = 0;
+        int skipping = 0;
+        int lineNumber = 0;
+        for (String line : source.split("\n", -1)) {
+            lineNumber++;
+            final String trimmed = line.trim();
+            if (!trimmed.startsWith("#")) {
+                if (skipping == 0) {
+                    body.append(line).append('\n');
+                }
+                continue;
+            }
+            final String directive = trimmed.substring(1).trim();
+            final String keyword = firstWord(directive);
+            final String argument = directive.substring(keyword.length()).trim();
+
+            if (keyword.equals("ifdef") || keyword.equals("ifndef")) {
+                if (depth == branches.length) {
+                    throw error(name, lineNumber, "conditionals nested too deeply");
+                }
+                final boolean taken = defines.containsKey(firstWord(argument))
+                        == keyword.equals("ifdef");
+                branches[depth++] = taken ? BRANCH_TAKEN : BRANCH_SKIPPED;
+                if (!taken) {
+                    skipping++;
+                }
+            } else if (keyword.equals("if")) {
+                if (depth == branches.length) {
+                    throw error(name, lineNumber, "conditionals nested too deeply");
+                }
+                branches[depth++] = BRANCH_PASSED_THROUGH;
+                if (skipping == 0) {
+                    body.append(line).append('\n');
+                }
+            } else if (keyword.equals("else") || keyword.equals("elif")
+                    || keyword.equals("endif")) {
+                if (depth == 0) {
+                    throw error(name, lineNumber, "#" + keyword + " without #if");
+                }
+                final int branch = branches[depth - 1];
+                if (branch == BRANCH_PASSED_THROUGH) {
+                    if (skipping == 0) {
+                        body.append(line).append('\n');
+                    }
+                    if (keyword.equals("endif")) {
+                        depth--;
+                    }
+                } else if (keyword.equals("elif")) {
+                    throw error(name, lineNumber, "#elif after #ifdef or #ifndef");
+                } else if (keyword.equals("else")) {
+                    branches[depth - 1] = branch == BRANCH_TAKEN ? BRANCH_SKIPPED : BRANCH_TAKEN;
+                    skipping += branch == BRANCH_TAKEN ? 1 : -1;
+                } else {
+                    if (branch == BRANCH_SKIPPED) {
+                        skipping--;
+                    }
+                    depth--;
+                }
+            } else if (skipping > 0) {
+                // Nothing else matters in a branch that's left out.
+            } else if (keyword.equals("include")) {
+                final String includeName = unquote(argument);
+                if (includeName == null) {
+                    throw error(name, lineNumber, "bad #include: " + argument);
+                }
+                if (included.add(includeName)) {
+                    append(resolver.resolve(includeName), includeName);
+                }
+            } else if (keyword.equals("version")) {
+                if (versionLine != null) {
+                    throw error(name, lineNumber, "more than one #version");
+                }
+                versionLine = trimmed;
+            } else {
+                body.append(line).append('\n');
+            }
+        }
+        if (depth != 0) {
+            throw error(name, lineNumber, "missing #endif");
+        }
+    }
+
+    private String finish() {
+        final StringBuilder result = new StringBuilder();
+        if (versionLine != null) {
+            result.append(versionLine).append('\n');
+        }
+        final String source = body.toString();
+        for (Map.Entry<String, String> define : defines.entrySet()) {
+            if (define.getValue() != null && usesIdentifier(source, define.getKey())) {
+                result.append("#define ").append(define.getKey()).append(' ')
+                        .append(define.getValue()).append('\n');
+            }
+        }
+        return result.append(source).toString();
+    }
+
+    /**
+     * @return whether the identifier appears as a whole word.
+     */
+    static boolean usesIdentifier(String source, String identifier) {
+        int from = 0;
+        while (true) {
+            final int at = source.indexOf(identifier, from);
+            if (at < 0) {
+                return false;
+            }
+            final int end = at + identifier.length();
+            if ((at == 0 || !isIdentifierChar(source.charAt(at - 1)))
+                    && (end == source.length() || !isIdentifierChar(source.charAt(end)))) {
+                return true;
+            }
+            from = at + 1;
+        }
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static String firstWord(String text) {
+        int end = 0;
+        while (end < text.length() && isIdentifierChar(text.charAt(end))) {
+            end++;
+        }
+        return text.substring(0, end);
+    }
+
+    private static int indexOfWhitespace(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String unquote(String text) {
+        if (text.length() >= 2 && ((text.startsWith("\"") && text.endsWith("\""))
+                || (text.startsWith("<") && text.endsWith(">")))) {
+            return text.substring(1, text.length() - 1);
+        }
+        return null;
+    }
+
+    private static IllegalArgumentException error(String name, int line, String message) {
+        return new IllegalArgumentException(name + ":" + line + ": " + message);
+    }
+}
@@ -1,21 +1,10 @@
 package net.ghosttrails.openglplayground.util;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.util.Log;
 
-import static android.opengl.GLES20.GL_LINEAR;
-import static android.opengl.GLES20.GL_LINEAR_MIPMAP_LINEAR;
-import static android.opengl.GLES20.GL_TEXTURE_2D;
-import static android.opengl.GLES20.GL_TEXTURE_MAG_FILTER;
-import static android.opengl.GLES20.GL_TEXTURE_MIN_FILTER;
-import static android.opengl.GLES20.glBindTexture;
-import static android.opengl.GLES20.glDeleteTextures;
-import static android.opengl.GLES20.glGenTextures;
-import static android.opengl.GLES20.glGenerateMipmap;
-import static android.opengl.GLES20.glTexParameteri;
-import static android.opengl.GLUtils.texImage2D;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 
 /**
  *
@@ -26,54 +15,43 @@ public class TextureHelper {
 
     private static final String TAG = "TextureHelper";
 
+    private static final EventTrace trace = EventTrace.shared();
+    private static final int TRACE_COMPRESSED_READ_FAILED =
+            trace.define(TAG, "compressedReadFailed", EventTrace.WARN);
+
+    // Where the build puts the compressed textures in the assets, named after their drawables.
+    private static final String COMPRESSED_TEXTURE_DIRECTORY = "textures/";
+    private static final String COMPRESSED_TEXTURE_SUFFIX = ".ktx";
+
     /**
-     * Load a bitmap into OpenGL from a resource Id
-     * @param context the context
-     * @param resourceId a bitmap resource
-     * @return a texture object Id.
+     * Read the compressed version of a drawable that the build made, if there is one. Doesn't
+     * check whether the context can use it; see GlContext.supportsEtc1(). Can be called on any
+     * thread.
+     * @return the texture, or null if there isn't one, or it couldn't be read.
      */
-    public static int loadTexture(Context context, int resourceId) {
-        final int[] textureObjectIds = new int[1];
-        glGenTextures(1, textureObjectIds, 0);
-
-        if (textureObjectIds[0] == 0) {
+    static KtxTexture readCompressed(Context context, int resourceId) {
+        final String path = COMPRESSED_TEXTURE_DIRECTORY
+                + context.getResources().getResourceEntryName(resourceId)
+                + COMPRESSED_TEXTURE_SUFFIX;
+        InputStream in = null;
+        try {
+            in = context.getAssets().open(path);
+            return KtxTexture.read(in);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
             if (LoggerConfig.ON) {
-                Log.w(TAG, "Could not generate a new OpenGL texture object.");
+                trace.record(TRACE_COMPRESSED_READ_FAILED, path + ": " + e);
             }
-            return 0;
-        }
-
-        final BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inScaled = false;
-
-        final Bitmap bitmap = BitmapFactory.decodeResource(
-                context.getResources(), resourceId, options);
-
-        if (bitmap == null) {
-            if (LoggerConfig.ON) {
-                Log.w(TAG, "Resource ID " + resourceId + " could not be decoded");
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing more to do.
+                }
             }
-
-            glDeleteTextures(1, textureObjectIds, 0);
-            return 0;
         }
-
-        // Future calls will apply to this texture...
-        glBindTexture(GL_TEXTURE_2D, textureObjectIds[0]);
-
-        // Trilinear mipmap on minification, bilinear interp on magnification.
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-
-        // load the bitmap into OpenGL
-        texImage2D(GL_TEXTURE_2D, 0, bitmap, 0);
-        bitmap.recycle();
-
-        glGenerateMipmap(GL_TEXTURE_2D);
-
-        // unbind
-        glBindTexture(GL_TEXTURE_2D, 0);
-
-        return textureObjectIds[0];
     }
 }
@@ -0,0 +1,480 @@
+package net.ghosttrails.openglplayground.util;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Process;
+
+import net.ghosttrails.openglplayground.gl.GlContext;
+import net.ghosttrails.openglplayground.gl.Gles;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import static android.opengl.GLES20.GL_LINEAR;
+import static android.opengl.GLES20.GL_LINEAR_MIPMAP_LINEAR;
+import static android.opengl.GLES20.GL_NEAREST;
+import static android.opengl.GLES20.GL_RGBA;
+import static android.opengl.GLES20.GL_TEXTURE_2D;
+import static android.opengl.GLES20.GL_TEXTURE_MAG_FILTER;
+import static android.opengl.GLES20.GL_TEXTURE_MIN_FILTER;
+import static android.opengl.GLES20.GL_UNSIGNED_BYTE;
+
+/**
+ * Loads bitmap resources into textures without holding up frames.
+ *
+ * Bitmaps are decoded, and their mipmaps made, on background threads. The GL thread then
+ * calls upload() once a frame, which uploads them a slice of rows at a time with
+ * glTexSubImage2D until the frame's time budget is spent. Until a texture has every level
+ * uploaded, getTexture() gives a 1x1 placeholder texture instead.
+ *
+ * If the build made a compressed version of a bitmap (see TextureHelper.readCompressed()) and
+ * the context can use it, that's read instead, already with its mipmaps, and uploaded a whole
+ * level at a time with glCompressedTexImage2D.
+ *
+ * Textures are lost with the context; after that, load them again. Apart from the decoding
+ * and release(), only use it on the GL thread.
+ */
+
+public class TextureLoader {
+
+    private static final String TAG = "TextureLoader";
+
+    private static final int DECODE_THREADS = 2;
+    private static final int BYTES_PER_PIXEL = 4;
+    // Most bytes one glTexSubImage2D call uploads; the budget is checked between calls.
+    private static final int SLICE_BYTES = 64 * 1024;
+
+    private static final EventTrace trace = EventTrace.shared();
+    private static final int TRACE_DECODED =
+            trace.define(TAG, "decoded", EventTrace.INFO, "resourceId", "levels", "micros");
+    private static final int TRACE_RESIDENT =
+            trace.define(TAG, "resident", EventTrace.INFO, "resourceId", "bytes",
+                    "latencyMicros");
+    private static final int TRACE_UPLOADED =
+            trace.define(TAG, "uploaded", EventTrace.VERBOSE, "slices", "bytes", "micros");
+    private static final int TRACE_DECODE_FAILED =
+            trace.define(TAG, "decodeFailed", EventTrace.WARN, "resourceId");
+    private static final int TRACE_GEN_TEXTURE_FAILED =
+            trace.define(TAG, "genTextureFailed", EventTrace.WARN);
+
+    /**
+     * One texture being loaded. The decoding thread fills in the levels, then hands it back
+     * through the decoded queue.
+     */
+    private static class Load {
+        final int resourceId;
+        final int generation;
+        final boolean compressedAllowed;
+        final long requestNanos;
+
+        // Set by the decoding thread: the mipmap levels, largest first, as RGBA pixels or, if
+        // compressedFormat isn't 0, compressed in that format.
+        ByteBuffer[] levels;
+        int compressedFormat = 0;
+        int[] widths;
+        int[] heights;
+        int bytes;
+
+        // Set on the GL thread.
+        int texture = 0;
+        int level = 0;
+        int row = 0;
+        boolean resident = false;
+
+        Load(int resourceId, int generation, boolean compressedAllowed) {
+            this.resourceId = resourceId;
+            this.generation = generation;
+            this.compressedAllowed = compressedAllowed;
+            this.requestNanos = System.nanoTime();
+        }
+    }
+
+    private final Context context;
+    private final Gles gles;
+    private final int placeholderColor;
+    private final ExecutorService decoder = Executors.newFixedThreadPool(DECODE_THREADS,
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    // Indexed by handle.
+    private final List<Load> loads = new ArrayList<Load>();
+    private final ConcurrentLinkedQueue<Load> decoded = new ConcurrentLinkedQueue<Load>();
+    // Decoded and waiting to be uploaded, oldest first.
+    private final ArrayDeque<Load> pending = new ArrayDeque<Load>();
+    private int generation = 0;
+    private int placeholder = 0;
+    private final int[] textureIds = new int[1];
+
+    // Counters.
+    private int uploadFrames = 0;
+    private long uploadNanos = 0;
+    private long maxFrameUploadNanos = 0;
+    private long bytesUploaded = 0;
+    private int texturesLoaded = 0;
+    private long loadNanos = 0;
+
+    /**
+     * @param placeholderColor what to draw with until a texture is loaded, as a
+     * android.graphics.Color int.
+     */
+    public TextureLoader(Context context, Gles gles, int placeholderColor) {
+        this.context = context.getApplicationContext();
+        this.gles = gles;
+        this.placeholderColor = placeholderColor;
+    }
+
+    /**
+     * Start loading a bitmap resource. Loading the same one again in the same context gives
+     * the same handle.
+     * @return a handle for getTexture().
+     */
+    public int load(final int resourceId) {
+        checkContext();
+        for (int handle = 0; handle < loads.size(); handle++) {
+            if (loads.get(handle).resourceId == resourceId) {
+                return handle;
+            }
+        }
+        final Load load = new Load(resourceId, generation, GlContext.supportsEtc1());
+        loads.add(load);
+        decoder.execute(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                decode(load);
+                if (!decoder.isShutdown()) {
+                    decoded.add(load);
+                }
+            }
+        });
+        return loads.size() - 1;
+    }
+
+    /**
+     * Stop the decoding threads and drop whatever they've decoded, e.g. when the activity is
+     * destroyed. Nothing can be loaded after this. Can be called from any thread.
+     */
+    public void release() {
+        decoder.shutdownNow();
+        decoded.clear();
+    }
+
+    /**
+     * @return the texture, or the placeholder if it isn't all uploaded yet, or failed to load.
+     */
+    public int getTexture(int handle) {
+        checkContext();
+        final Load load = handle < loads.size() ? loads.get(handle) : null;
+        if (load != null && load.resident) {
+            return load.texture;
+        }
+        if (placeholder == 0) {
+            placeholder = createPlaceholder();
+        }
+        return placeholder;
+    }
+
+    public boolean isResident(int handle) {
+        return handle < loads.size() && loads.get(handle).resident;
+    }
+
+    /**
+     * Upload decoded textures for up to about budgetNanos; at least one slice is uploaded if
+     * there's anything to upload, so loads always finish. Call once a frame.
+     */
+    public void upload(long budgetNanos) {
+        checkContext();
+        Load load;
+        while ((load = decoded.poll()) != null) {
+            // Ones decoded for a lost context are forgotten.
+            if (load.generation == generation && load.levels != null) {
+                pending.add(load);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        final long start = System.nanoTime();
+        int slices = 0;
+        int bytes = 0;
+        while (!pending.isEmpty()) {
+            final Load current = pending.peek();
+            bytes += uploadSlice(current);
+            slices++;
+            if (current.levels == null) {
+                // All uploaded, or given up on.
+                pending.poll();
+            }
+            if (System.nanoTime() - start >= budgetNanos) {
+                break;
+            }
+        }
+        gles.glBindTexture(GL_TEXTURE_2D, 0);
+
+        final long nanos = System.nanoTime() - start;
+        uploadFrames++;
+        uploadNanos += nanos;
+        maxFrameUploadNanos = Math.max(maxFrameUploadNanos, nanos);
+        bytesUploaded += bytes;
+        if (LoggerConfig.ON) {
+            trace.record(TRACE_UPLOADED, slices, bytes, nanos / 1000);
+        }
+    }
+
+    /**
+     * Upload the next rows of the load's current level.
+     * @return bytes uploaded.
+     */
+    private int uploadSlice(Load load) {
+        if (load.texture == 0) {
+            gles.glGenTextures(1, textureIds, 0);
+            if (textureIds[0] == 0) {
+                if (LoggerConfig.ON) {
+                    trace.record(TRACE_GEN_TEXTURE_FAILED);
+                }
+                // Leave it on the placeholder.
+                load.levels = null;
+                return 0;
+            }
+            load.texture = textureIds[0];
+            gles.glBindTexture(GL_TEXTURE_2D, load.texture);
+            // Trilinear mipmap on minification, bilinear interp on magnification.
+            gles.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
+            gles.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        } else {
+            gles.glBindTexture(GL_TEXTURE_2D, load.texture);
+        }
+
+        final int level = load.level;
+        final int width = load.widths[level];
+        final int height = load.heights[level];
+        final ByteBuffer pixels = load.levels[level];
+        final int bytes;
+        if (load.compressedFormat != 0) {
+            // Compressed levels go up whole; the largest is an eighth of an RGBA one.
+            bytes = pixels.capacity();
+            gles.glCompressedTexImage2D(GL_TEXTURE_2D, level, load.compressedFormat, width,
+                    height, 0, bytes, pixels);
+            load.row = height;
+        } else {
+            if (load.row == 0) {
+                // Allocate the level; its rows are filled in below, over as many frames as it
+                // takes.
+                gles.glTexImage2D(GL_TEXTURE_2D, level, GL_RGBA, width, height, 0, GL_RGBA,
+                        GL_UNSIGNED_BYTE, null);
+            }
+            final int rowBytes = width * BYTES_PER_PIXEL;
+            final int rows = Math.min(height - load.row, Math.max(1, SLICE_BYTES / rowBytes));
+            pixels.position(load.row * rowBytes);
+            gles.glTexSubImage2D(GL_TEXTURE_2D, level, 0, load.row, width, rows, GL_RGBA,
+                    GL_UNSIGNED_BYTE, pixels);
+            load.row += rows;
+            bytes = rows * rowBytes;
+        }
+
+        if (load.row == height) {
+            load.levels[level] = null;
+            load.row = 0;
+            load.level++;
+            if (load.level == load.levels.length) {
+                load.resident = true;
+                load.levels = null;
+                texturesLoaded++;
+                final long latencyNanos = System.nanoTime() - load.requestNanos;
+                loadNanos += latencyNanos;
+                if (LoggerConfig.ON) {
+                    trace.record(TRACE_RESIDENT, load.resourceId, load.bytes,
+                            latencyNanos / 1000);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * On a decoding thread: read the compressed texture, or else decode the bitmap and make
+     * its mipmaps, down to 1x1.
+     */
+    private void decode(Load load) {
+        final long start = System.nanoTime();
+        if (load.compressedAllowed) {
+            final KtxTexture compressed = TextureHelper.readCompressed(context, load.resourceId);
+            if (compressed != null) {
+                final int levelCount = compressed.levels.length;
+                load.widths = new int[levelCount];
+                load.heights = new int[levelCount];
+                for (int level = 0; level < levelCount; level++) {
+                    load.widths[level] = compressed.getLevelWidth(level);
+                    load.heights[level] = compressed.getLevelHeight(level);
+                }
+                load.bytes = compressed.getSize();
+                load.compressedFormat = compressed.internalFormat;
+                load.levels = compressed.levels;
+                if (LoggerConfig.ON) {
+                    trace.record(TRACE_DECODED, load.resourceId, levelCount,
+                            (System.nanoTime() - start) / 1000);
+                }
+                return;
+            }
+        }
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap bitmap = BitmapFactory.decodeResource(context.getResources(), load.resourceId,
+                options);
+        if (bitmap == null) {
+            if (LoggerConfig.ON) {
+                trace.record(TRACE_DECODE_FAILED, load.resourceId);
+            }
+            return;
+        }
+
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        final int levelCount = 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+        final ByteBuffer[] levels = new ByteBuffer[levelCount];
+        final int[] widths = new int[levelCount];
+        final int[] heights = new int[levelCount];
+        int bytes = 0;
+        for (int level = 0; level < levelCount; level++) {
+            if (Thread.currentThread().isInterrupted()) {
+                // Released; don't bother with the rest.
+                bitmap.recycle();
+                return;
+            }
+            if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+                final Bitmap converted = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+                bitmap.recycle();
+                bitmap = converted;
+            }
+            // ARGB_8888 bitmaps are laid out as RGBA bytes, as glTexSubImage2D wants them.
+            levels[level] = ByteBuffer.allocateDirect(width * height * BYTES_PER_PIXEL)
+                    .order(ByteOrder.nativeOrder());
+            bitmap.copyPixelsToBuffer(levels[level]);
+            levels[level].position(0);
+            widths[level] = width;
+            heights[level] = height;
+            bytes += width * height * BYTES_PER_PIXEL;
+
+            if (level + 1 < levelCount) {
+                width = Math.max(1, width / 2);
+                height = Math.max(1, height / 2);
+                final Bitmap smaller = Bitmap.createScaledBitmap(bitmap, width, height, true);
+                if (smaller != bitmap) {
+                    bitmap.recycle();
+                }
+                bitmap = smaller;
+            }
+        }
+        bitmap.recycle();
+
+        load.levels = levels;
+        load.widths = widths;
+        load.heights = heights;
+        load.bytes = bytes;
+        if (LoggerConfig.ON) {
+            trace.record(TRACE_DECODED, load.resourceId, levelCount,
+                    (System.nanoTime() - start) / 1000);
+        }
+    }
+
+    private int createPlaceholder() {
+        gles.glGenTextures(1, textureIds, 0);
+        if (textureIds[0] == 0) {
+            if (LoggerConfig.ON) {
+                trace.record(TRACE_GEN_TEXTURE_FAILED);
+            }
+            return 0;
+        }
+        final ByteBuffer pixel = ByteBuffer.allocateDirect(BYTES_PER_PIXEL)
+                .order(ByteOrder.nativeOrder());
+        pixel.put((byte) (placeholderColor >> 16)).put((byte) (placeholderColor >> 8))
+                .put((byte) placeholderColor).put((byte) (placeholderColor >>> 24))
+                .position(0);
+        gles.glBindTexture(GL_TEXTURE_2D, textureIds[0]);
+        // One level, so no mipmap filtering.
+        gles.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        gles.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        gles.glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, 1, 1, 0, GL_RGBA, GL_UNSIGNED_BYTE,
+                pixel);
+        gles.glBindTexture(GL_TEXTURE_2D, 0);
+        return textureIds[0];
+    }
+
+    /**
+     * Forget everything from the last context; its textures went with it.
+     */
+    private void checkContext() {
+        if (generation != GlContext.getGeneration()) {
+            generation = GlContext.getGeneration();
+            loads.clear();
+            pending.clear();
+            placeholder = 0;
+        }
+    }
+
+    /**
+     * @return frames that uploaded something since the counters were reset.
+     */
+    public int getUploadFrames() {
+        return uploadFrames;
+    }
+
+    /**
+     * @return time spent uploading since the counters were reset.
+     */
+    public long getUploadNanos() {
+        return uploadNanos;
+    }
+
+    /**
+     * @return the most time one frame spent uploading since the counters were reset.
+     */
+    public long getMaxFrameUploadNanos() {
+        return maxFrameUploadNanos;
+    }
+
+    public long getBytesUploaded() {
+        return bytesUploaded;
+    }
+
+    /**
+     * @return textures all uploaded since the counters were reset.
+     */
+    public int getTexturesLoaded() {
+        return texturesLoaded;
+    }
+
+    /**
+     * @return the total time, from load() until all uploaded, of the textures loaded since the
+     * counters were reset.
+     */
+    public long getLoadNanos() {
+        return loadNanos;
+    }
+
+    public void resetCounters() {
+        uploadFrames = 0;
+        uploadNanos = 0;
+        maxFrameUploadNanos = 0;
+        bytesUploaded = 0;
+        texturesLoaded = 0;
+        loadNanos = 0;
+    }
+}
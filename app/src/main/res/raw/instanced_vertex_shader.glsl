@@ -0,0 +1,17 @@
+#version 300 es
+
+#include "instancing.glsl"
+
+uniform mat4 u_Matrix;
+
+in vec4 a_Position;
+in vec3 a_InstanceTranslation;
+in vec4 a_InstanceColor;
+
+out vec4 v_Color;
+
+void main()
+{
+    v_Color = a_InstanceColor;
+    gl_Position = u_Matrix * instancePosition(a_Position, a_InstanceTranslation);
+}
@@ -0,0 +1,5 @@
+// Move a vertex of the mesh to where its instance is.
+vec4 instancePosition(vec4 position, vec3 translation)
+{
+    return position + vec4(translation, 0.0);
+}
@@ -0,0 +1,20 @@
+// Each copy of the mesh in a batch reads its own translation and color by its instance index.
+// MAX_INSTANCES is set by PseudoInstancedColorShaderProgram.
+#include "instancing.glsl"
+
+uniform mat4 u_Matrix;
+uniform vec4 u_InstanceTranslations[MAX_INSTANCES];
+uniform vec4 u_InstanceColors[MAX_INSTANCES];
+
+attribute vec4 a_Position;
+attribute float a_InstanceIndex;
+
+varying vec4 v_Color;
+
+void main()
+{
+    int instance = int(a_InstanceIndex);
+    v_Color = u_InstanceColors[instance];
+    gl_Position = u_Matrix
+            * instancePosition(a_Position, u_InstanceTranslations[instance].xyz);
+}
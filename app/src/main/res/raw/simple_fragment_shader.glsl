@@ -1,7 +0,0 @@
-precision mediump float;
-
-uniform vec4 u_Color;
-
-void main() {
-    gl_FragColor = u_Color;
-}
\ No newline at end of file
@@ -1,8 +0,0 @@
-uniform mat4 u_Matrix;
-
-attribute vec4 a_Position;
-
-void main()
-{
-    gl_Position = u_Matrix * a_Position;
-}
@@ -0,0 +1,88 @@
+package net.ghosttrails.openglplayground.data;
+
+import net.ghosttrails.openglplayground.gl.CountingGles;
+import net.ghosttrails.openglplayground.gl.GlContext;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StreamingVertexBufferTest {
+
+    private static final float[] DATA = new float[16];
+
+    private static StreamingVertexBuffer createBuffer(CountingGles gles, int capacityBytes) {
+        GlContext.onContextCreated(gles);
+        StreamingVertexBuffer buffer = new StreamingVertexBuffer(gles, capacityBytes);
+        buffer.beginFrame();
+        return buffer;
+    }
+
+    @Test
+    public void write_wrapsAndOrphansWhenFull() throws Exception {
+        CountingGles gles = new CountingGles();
+        StreamingVertexBuffer buffer = createBuffer(gles, 64);
+
+        assertEquals(0, buffer.write(DATA, 0, 8));
+        assertEquals(1, gles.bufferDataCalls);
+        assertEquals(32, buffer.write(DATA, 0, 8));
+        assertEquals(0, buffer.getWraps());
+
+        // Full; the next write starts again at the beginning of new storage.
+        assertEquals(0, buffer.write(DATA, 0, 4));
+        assertEquals(2, gles.bufferDataCalls);
+        assertEquals(64, gles.lastBufferDataSize);
+        assertEquals(1, buffer.getWraps());
+        assertEquals(0, buffer.getExtraWraps());
+
+        // A second wrap in the same frame is an extra one; in the next frame it isn't.
+        buffer.write(DATA, 0, 16);
+        assertEquals(1, buffer.getExtraWraps());
+        buffer.beginFrame();
+        buffer.write(DATA, 0, 16);
+        assertEquals(3, buffer.getWraps());
+        assertEquals(1, buffer.getExtraWraps());
+    }
+
+    @Test
+    public void reserve_keepsTheRangesInOneStorage() throws Exception {
+        CountingGles gles = new CountingGles();
+        StreamingVertexBuffer buffer = createBuffer(gles, 64);
+        buffer.write(DATA, 0, 10);
+
+        // Two 16 byte writes would wrap between them; reserved, they wrap before the first.
+        buffer.reserve(32);
+        final int orphans = gles.bufferDataCalls;
+        final int first = buffer.write(DATA, 0, 4);
+        final int second = buffer.write(DATA, 0, 4);
+        assertEquals(orphans, gles.bufferDataCalls);
+        assertEquals(0, first);
+        assertEquals(16, second);
+        assertEquals(1, buffer.getWraps());
+    }
+
+    @Test
+    public void write_growsForDataBiggerThanTheBuffer() throws Exception {
+        CountingGles gles = new CountingGles();
+        StreamingVertexBuffer buffer = createBuffer(gles, 16);
+
+        assertEquals(0, buffer.write(DATA, 0, 12));
+        assertEquals(64, buffer.getCapacityBytes());
+        assertEquals(64, gles.lastBufferDataSize);
+        assertEquals(1, buffer.getGrowths());
+        assertEquals(48, buffer.write(DATA, 0, 4));
+    }
+
+    @Test
+    public void contextLoss_makesANewBuffer() throws Exception {
+        CountingGles gles = new CountingGles();
+        StreamingVertexBuffer buffer = createBuffer(gles, 64);
+        buffer.write(DATA, 0, 8);
+        final int lostBuffer = gles.lastGeneratedBuffer;
+
+        GlContext.onContextCreated(gles);
+        assertEquals(0, buffer.write(DATA, 0, 8));
+        assertNotEquals(lostBuffer, gles.lastGeneratedBuffer);
+        assertEquals(0, buffer.getWraps());
+    }
+}
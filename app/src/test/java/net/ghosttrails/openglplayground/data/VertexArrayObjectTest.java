@@ -0,0 +1,77 @@
+package net.ghosttrails.openglplayground.data;
+
+import net.ghosttrails.openglplayground.gl.CountingGles;
+import net.ghosttrails.openglplayground.gl.GlContext;
+
+import org.junit.Test;
+
+import static android.opengl.GLES20.GL_SHORT;
+import static org.junit.Assert.*;
+
+public class VertexArrayObjectTest {
+
+    private static final VertexLayout LAYOUT = new VertexLayout.Builder()
+            .add(2, GL_SHORT, true)
+            .add(2, GL_SHORT, true)
+            .build();
+    private static final float[] VERTICES = {0f, 0f, 0f, 0f, 1f, 1f, 1f, 1f};
+
+    private static VertexArrayObject twoAttributes(CountingGles gles, int firstLocation) {
+        VertexArray array = new VertexArray(gles, VertexEncoder.encode(LAYOUT, VERTICES));
+        VertexArrayObject vertexArrayObject = new VertexArrayObject(gles);
+        vertexArrayObject.addAttribute(array, LAYOUT, 0, firstLocation);
+        vertexArrayObject.addAttribute(array, LAYOUT, 1, firstLocation + 1);
+        vertexArrayObject.setIndexBuffer(new IndexBuffer(gles, new short[]{0, 1, 0}));
+        return vertexArrayObject;
+    }
+
+    @Test
+    public void onEs3_laterBindsAreOneCall() throws Exception {
+        CountingGles gles = new CountingGles();
+        gles.version = "OpenGL ES 3.2 v1.r12p0";
+        GlContext.onContextCreated(gles);
+        VertexArrayObject vertexArrayObject = twoAttributes(gles, 0);
+        VertexArrayObject.resetCounters();
+
+        vertexArrayObject.bind();
+        gles.calls = 0;
+        vertexArrayObject.bind();
+        vertexArrayObject.bind();
+        assertEquals(2, gles.calls);
+        assertEquals(2 * (vertexArrayObject.getSetupCallCount() - 1),
+                VertexArrayObject.getSavedCalls());
+
+        // A new context needs a new vertex array object, set up again.
+        GlContext.onContextCreated(gles);
+        gles.calls = 0;
+        vertexArrayObject.bind();
+        assertTrue(gles.calls > vertexArrayObject.getSetupCallCount());
+    }
+
+    @Test
+    public void onEs2_bindingTheSameOneAgainIsFree() throws Exception {
+        CountingGles gles = new CountingGles();
+        GlContext.onContextCreated(gles);
+        VertexArrayObject first = twoAttributes(gles, 0);
+        VertexArrayObject second = twoAttributes(gles, 2);
+        VertexArrayObject.resetCounters();
+
+        // Upload everything.
+        second.bind();
+        first.bind();
+        gles.calls = 0;
+        first.bind();
+        assertEquals(0, gles.calls);
+        assertEquals(first.getSetupCallCount(), VertexArrayObject.getSavedCalls());
+
+        // Switching sets the new attributes up, and turns off the old ones.
+        second.bind();
+        assertEquals(second.getSetupCallCount() + 2, gles.calls);
+
+        // Anything set up directly means starting again.
+        VertexArrayObject.unbind(gles);
+        gles.calls = 0;
+        second.bind();
+        assertEquals(second.getSetupCallCount(), gles.calls);
+    }
+}
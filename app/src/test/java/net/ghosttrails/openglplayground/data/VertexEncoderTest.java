@@ -0,0 +1,100 @@
+package net.ghosttrails.openglplayground.data;
+
+import org.junit.Test;
+
+import static android.opengl.GLES20.GL_FLOAT;
+import static android.opengl.GLES20.GL_SHORT;
+import static android.opengl.GLES20.GL_UNSIGNED_SHORT;
+import static net.ghosttrails.openglplayground.data.VertexLayout.GL_HALF_FLOAT_OES;
+import static org.junit.Assert.*;
+
+public class VertexEncoderTest {
+
+    @Test
+    public void layout_alignsAttributesToFourBytes() throws Exception {
+        VertexLayout layout = new VertexLayout.Builder()
+                .add(3, GL_SHORT, true)
+                .add(2, GL_UNSIGNED_SHORT, true)
+                .add(1, GL_FLOAT, false)
+                .build();
+
+        assertEquals(0, layout.getAttribute(0).offset);
+        assertEquals(8, layout.getAttribute(1).offset);
+        assertEquals(12, layout.getAttribute(2).offset);
+        assertEquals(16, layout.getStride());
+        assertEquals(6, layout.getComponentCount());
+    }
+
+    @Test
+    public void normalizedShorts_halveTheTableAndStayPrecise() throws Exception {
+        VertexLayout layout = new VertexLayout.Builder()
+                .add(2, GL_SHORT, true)
+                .add(2, GL_UNSIGNED_SHORT, true)
+                .build();
+        float[] table = {
+                   0f,    0f, 0.5f, 0.5f,
+                -0.5f, -0.8f,   0f, 0.9f,
+                 0.5f,  0.8f,   1f, 0.1f,
+        };
+
+        VertexEncoder.PackedVertices packed = VertexEncoder.encode(layout, table);
+        assertEquals(3, packed.vertexCount);
+        assertEquals(48, packed.getUnpackedSizeInBytes());
+        assertEquals(24, packed.getSizeInBytes());
+        // Half a step of a normalized short.
+        assertTrue("Error " + packed.maxError, packed.maxError <= 0.5f / 32767f);
+        // Second vertex's x, and third vertex's u.
+        assertEquals(-16384, packed.data.getShort(8), 1);
+        assertEquals((short) 65535, packed.data.getShort(20));
+    }
+
+    @Test
+    public void outOfRangeValues_showUpInTheError() throws Exception {
+        VertexLayout layout = new VertexLayout.Builder().add(1, GL_SHORT, true).build();
+        VertexEncoder.PackedVertices packed = VertexEncoder.encode(layout, new float[]{1.5f});
+        assertEquals(0.5f, packed.maxError, 1e-6f);
+    }
+
+    @Test
+    public void halfFloats_roundTrip() throws Exception {
+        assertEquals(0x3c00, VertexEncoder.toHalfFloat(1f));
+        assertEquals((short) 0xc000, VertexEncoder.toHalfFloat(-2f));
+        assertEquals(0x7bff, VertexEncoder.toHalfFloat(65504f));
+        assertEquals(0x7c00, VertexEncoder.toHalfFloat(1e6f));
+        assertEquals(0x0001, VertexEncoder.toHalfFloat(5.9604645e-8f));
+        assertEquals(0, VertexEncoder.toHalfFloat(1e-9f));
+        assertEquals(0.099975586f, VertexEncoder.fromHalfFloat(VertexEncoder.toHalfFloat(0.1f)),
+                0f);
+        assertTrue(Float.isNaN(VertexEncoder.fromHalfFloat(VertexEncoder.toHalfFloat(Float.NaN))));
+
+        VertexLayout layout = new VertexLayout.Builder().add(3, GL_HALF_FLOAT_OES, false).build();
+        VertexEncoder.PackedVertices packed = VertexEncoder.encode(layout,
+                new float[]{0.08f, -0.0375f, 0.5f});
+        assertEquals(8, packed.getSizeInBytes());
+        // 11 significant bits.
+        assertTrue("Error " + packed.maxError, packed.maxError <= 0.08f / 2048f);
+    }
+
+    @Test
+    public void repeatedVertices_carryTheirInstanceIndex() throws Exception {
+        VertexLayout layout = new VertexLayout.Builder().add(3, GL_SHORT, true).build();
+        VertexEncoder.PackedVertices vertices = VertexEncoder.encode(layout,
+                new float[]{0.5f, -0.5f, 0.25f, 1f, 0f, -1f});
+
+        VertexEncoder.PackedVertices repeated =
+                VertexEncoder.repeatWithInstanceIndex(vertices, 3);
+        assertEquals(6, repeated.vertexCount);
+        assertEquals(12, repeated.layout.getStride());
+        assertEquals(8, repeated.layout.getAttribute(1).offset);
+        for (int copy = 0; copy < 3; copy++) {
+            for (int vertex = 0; vertex < 2; vertex++) {
+                final int offset = (copy * 2 + vertex) * 12;
+                for (int component = 0; component < 3; component++) {
+                    assertEquals(vertices.data.getShort(vertex * 8 + component * 2),
+                            repeated.data.getShort(offset + component * 2));
+                }
+                assertEquals(copy, repeated.data.get(offset + 8));
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package net.ghosttrails.openglplayground.gl;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+import static android.opengl.GLES20.GL_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_ELEMENT_ARRAY_BUFFER;
+import static android.opengl.GLES20.GL_FLOAT;
+import static android.opengl.GLES20.GL_TEXTURE0;
+import static android.opengl.GLES20.GL_TEXTURE_2D;
+import static org.junit.Assert.*;
+
+public class CachingGlesTest {
+
+    @Test
+    public void repeatedState_isSkipped() throws Exception {
+        CountingGles counting = new CountingGles();
+        CachingGles gles = new CachingGles(counting);
+        FloatBuffer vertices = FloatBuffer.allocate(16);
+        float[] matrix = new float[16];
+
+        for (int frame = 0; frame < 3; frame++) {
+            gles.glUseProgram(3);
+            gles.glUniformMatrix4fv(0, 1, false, matrix, 0);
+            gles.glUniform4f(1, 1f, 0f, 0f, 1f);
+            gles.glActiveTexture(GL_TEXTURE0);
+            gles.glBindTexture(GL_TEXTURE_2D, 7);
+            gles.glUniform1i(2, 0);
+            gles.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, vertices);
+            gles.glEnableVertexAttribArray(0);
+            gles.glDrawArrays(0, 0, 3);
+        }
+
+        // Everything the first time, then only the draws.
+        assertEquals(9 + 1 + 1, counting.calls);
+        assertEquals(counting.calls, gles.getIssuedCalls());
+        assertEquals(16, gles.getSkippedCalls());
+    }
+
+    @Test
+    public void changedValues_andOtherPrograms_areSent() throws Exception {
+        CountingGles counting = new CountingGles();
+        CachingGles gles = new CachingGles(counting);
+        float[] matrix = new float[16];
+
+        gles.glUseProgram(3);
+        gles.glUniformMatrix4fv(0, 1, false, matrix, 0);
+        matrix[12] = 0.5f;
+        gles.glUniformMatrix4fv(0, 1, false, matrix, 0);
+        assertEquals(3, counting.calls);
+
+        // Uniforms belong to the program; switching back finds the old values still set.
+        gles.glUseProgram(4);
+        gles.glUniformMatrix4fv(0, 1, false, matrix, 0);
+        gles.glUseProgram(3);
+        gles.glUniformMatrix4fv(0, 1, false, matrix, 0);
+        assertEquals(6, counting.calls);
+    }
+
+    @Test
+    public void deletedProgram_forgetsItsUniforms() throws Exception {
+        CountingGles counting = new CountingGles();
+        CachingGles gles = new CachingGles(counting);
+        float[] matrix = new float[16];
+
+        gles.glUseProgram(3);
+        gles.glUniformMatrix4fv(0, 1, false, matrix, 0);
+        gles.glDeleteProgram(3);
+        assertEquals(3, counting.calls);
+
+        // A new program given the same name is used, and its uniforms are sent.
+        gles.glUseProgram(3);
+        gles.glUniformMatrix4fv(0, 1, false, matrix, 0);
+        assertEquals(5, counting.calls);
+    }
+
+    @Test
+    public void invalidate_forgetsState() throws Exception {
+        CountingGles counting = new CountingGles();
+        CachingGles gles = new CachingGles(counting);
+
+        gles.glActiveTexture(GL_TEXTURE0);
+        gles.glBindTexture(GL_TEXTURE_2D, 7);
+        gles.glDeleteTextures(1, new int[]{7}, 0);
+        // Deleting it unbound it.
+        gles.glBindTexture(GL_TEXTURE_2D, 0);
+        assertEquals(3, counting.calls);
+
+        gles.invalidate();
+        gles.glActiveTexture(GL_TEXTURE0);
+        gles.glBindTexture(GL_TEXTURE_2D, 0);
+        assertEquals(5, counting.calls);
+    }
+
+    @Test
+    public void bufferObjectPointers_dependOnTheBoundBuffer() throws Exception {
+        CountingGles counting = new CountingGles();
+        CachingGles gles = new CachingGles(counting);
+
+        gles.glBindBuffer(GL_ARRAY_BUFFER, 1);
+        gles.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
+        gles.glBindBuffer(GL_ARRAY_BUFFER, 1);
+        gles.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
+        assertEquals(2, counting.calls);
+
+        // Same offset into a different buffer is a different pointer.
+        gles.glBindBuffer(GL_ARRAY_BUFFER, 2);
+        gles.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
+        assertEquals(4, counting.calls);
+
+        // After deleting the buffer, a new one could have the same name.
+        gles.glDeleteBuffers(1, new int[]{2}, 0);
+        gles.glBindBuffer(GL_ARRAY_BUFFER, 2);
+        gles.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
+        assertEquals(7, counting.calls);
+    }
+
+    @Test
+    public void vertexArrayObjects_keepTheirOwnBindings() throws Exception {
+        CountingGles counting = new CountingGles();
+        CachingGles gles = new CachingGles(counting);
+
+        gles.glBindVertexArray(1);
+        gles.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 5);
+        gles.glEnableVertexAttribArray(0);
+        gles.glBindVertexArray(2);
+        gles.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 6);
+        gles.glEnableVertexAttribArray(0);
+        assertEquals(6, counting.calls);
+
+        // Each one still has its own element array buffer bound.
+        gles.glBindVertexArray(1);
+        gles.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 5);
+        gles.glBindVertexArray(1);
+        assertEquals(7, counting.calls);
+
+        // Deleting it binds 0, whose bindings aren't known.
+        gles.glDeleteVertexArrays(1, new int[]{1}, 0);
+        gles.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 5);
+        gles.glBindVertexArray(0);
+        assertEquals(9, counting.calls);
+    }
+}
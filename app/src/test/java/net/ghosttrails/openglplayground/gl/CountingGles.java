@@ -0,0 +1,120 @@
+package net.ghosttrails.openglplayground.gl;
+
+import android.graphics.Bitmap;
+
+import java.nio.Buffer;
+
+/**
+ * Counts the calls that get through.
+ */
+public class CountingGles implements Gles {
+    public int calls = 0;
+    // What glGetString(GL_VERSION) returns.
+    public String version = "OpenGL ES 2.0";
+    // Buffer storage: how many times it was given, and the last size and name asked for.
+    public int bufferDataCalls = 0;
+    public int lastBufferDataSize = 0;
+    public int lastGeneratedBuffer = 0;
+    private int nextName = 1;
+
+    @Override public void glClearColor(float r, float g, float b, float a) { calls++; }
+    @Override public void glClear(int mask) { calls++; }
+    @Override public void glViewport(int x, int y, int w, int h) { calls++; }
+    @Override public String glGetString(int name) { calls++; return version; }
+    @Override public void glGetIntegerv(int pname, int[] params, int offset) {
+        calls++;
+        params[offset] = 0;
+    }
+    @Override public int glCreateProgram() {
+        calls++;
+        return nextName++;
+    }
+    @Override public void glUseProgram(int program) { calls++; }
+    @Override public void glDeleteProgram(int program) { calls++; }
+    @Override public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        calls++;
+        params[offset] = 0;
+    }
+    @Override public void glProgramBinary(int program, int binaryFormat, Buffer binary,
+                                          int length) { calls++; }
+    @Override public void glGetProgramBinary(int program, int bufSize, int[] length,
+                                             int lengthOffset, int[] binaryFormat,
+                                             int binaryFormatOffset, Buffer binary) {
+        calls++;
+        length[lengthOffset] = 0;
+    }
+    @Override public int glGetAttribLocation(int program, String name) { calls++; return 0; }
+    @Override public int glGetUniformLocation(int program, String name) { calls++; return 0; }
+    @Override public void glUniform1i(int location, int x) { calls++; }
+    @Override public void glUniform4f(int location, float x, float y, float z, float w) {
+        calls++;
+    }
+    @Override public void glUniform4fv(int location, int count, float[] v, int offset) {
+        calls++;
+    }
+    @Override public void glUniformMatrix4fv(int location, int count, boolean transpose,
+                                             float[] value, int offset) { calls++; }
+    @Override public void glActiveTexture(int texture) { calls++; }
+    @Override public void glBindTexture(int target, int texture) { calls++; }
+    @Override public void glGenTextures(int n, int[] textures, int offset) {
+        calls++;
+        generate(n, textures, offset);
+    }
+    @Override public void glDeleteTextures(int n, int[] textures, int offset) { calls++; }
+    @Override public void glTexParameteri(int target, int pname, int param) { calls++; }
+    @Override public void glGenerateMipmap(int target) { calls++; }
+    @Override public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+        calls++;
+    }
+    @Override public void glTexImage2D(int target, int level, int internalformat, int width,
+                                       int height, int border, int format, int type,
+                                       Buffer pixels) { calls++; }
+    @Override public void glTexSubImage2D(int target, int level, int xoffset, int yoffset,
+                                          int width, int height, int format, int type,
+                                          Buffer pixels) { calls++; }
+    @Override public void glCompressedTexImage2D(int target, int level, int internalformat,
+                                                 int width, int height, int border,
+                                                 int imageSize, Buffer data) { calls++; }
+    @Override public void glGenBuffers(int n, int[] buffers, int offset) {
+        calls++;
+        generate(n, buffers, offset);
+        lastGeneratedBuffer = buffers[offset + n - 1];
+    }
+    @Override public void glDeleteBuffers(int n, int[] buffers, int offset) { calls++; }
+    @Override public void glBindBuffer(int target, int buffer) { calls++; }
+    @Override public void glBufferData(int target, int size, Buffer data, int usage) {
+        calls++;
+        bufferDataCalls++;
+        lastBufferDataSize = size;
+    }
+    @Override public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        calls++;
+    }
+    @Override public void glVertexAttribPointer(int index, int size, int type,
+                                                boolean normalized, int stride,
+                                                Buffer pointer) { calls++; }
+    @Override public void glVertexAttribPointer(int index, int size, int type,
+                                                boolean normalized, int stride,
+                                                int offset) { calls++; }
+    @Override public void glEnableVertexAttribArray(int index) { calls++; }
+    @Override public void glDisableVertexAttribArray(int index) { calls++; }
+    @Override public void glVertexAttribDivisor(int index, int divisor) { calls++; }
+    @Override public void glDrawArrays(int mode, int first, int count) { calls++; }
+    @Override public void glDrawElements(int mode, int count, int type, int offset) {
+        calls++;
+    }
+    @Override public void glDrawElementsInstanced(int mode, int count, int type, int offset,
+                                                  int instanceCount) { calls++; }
+    @Override public void glGenVertexArrays(int n, int[] arrays, int offset) {
+        calls++;
+        generate(n, arrays, offset);
+    }
+    @Override public void glBindVertexArray(int array) { calls++; }
+    @Override public void glDeleteVertexArrays(int n, int[] arrays, int offset) { calls++; }
+
+    private void generate(int n, int[] names, int offset) {
+        for (int i = offset; i < offset + n; i++) {
+            names[i] = nextName++;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package net.ghosttrails.openglplayground.input;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TouchPredictorTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void constantVelocity_isExtrapolated() throws Exception {
+        TouchPredictor predictor = new TouchPredictor(32 * MS, 1f, 0.5f);
+        // Moving right at 1 unit per second, sampled every 8ms.
+        for (int i = 0; i <= 5; i++) {
+            predictor.addSample(i * 0.008f, 0f, i * 8 * MS);
+        }
+
+        float[] out = new float[2];
+        predictor.predict(40 * MS + 16 * MS, out);
+        assertEquals(0.056f, out[0], 1e-4f);
+        assertEquals(0f, out[1], 1e-6f);
+    }
+
+    @Test
+    public void prediction_isClampedToHorizonAndDistance() throws Exception {
+        TouchPredictor predictor = new TouchPredictor(10 * MS, 0.005f, 0f);
+        predictor.addSample(0f, 0f, 0);
+        predictor.addSample(0.008f, 0f, 8 * MS);
+
+        float[] out = new float[2];
+        predictor.predict(16 * MS, out);
+        assertEquals(0.008f + 0.005f, out[0], 1e-6f);
+
+        // Long after the last sample the finger is assumed to have stopped.
+        predictor.predict(200 * MS, out);
+        assertEquals(0.008f, out[0], 1e-6f);
+    }
+
+    @Test
+    public void predictionError_isMeasuredAgainstLaterSamples() throws Exception {
+        TouchPredictor predictor = new TouchPredictor(32 * MS, 1f, 0f);
+        predictor.addSample(0f, 0f, 0);
+        predictor.addSample(0.008f, 0f, 8 * MS);
+
+        float[] out = new float[2];
+        predictor.predict(16 * MS, out);
+        assertEquals(0.016f, out[0], 1e-6f);
+
+        // The finger actually stopped.
+        predictor.addSample(0.008f, 0f, 16 * MS);
+        assertEquals(1, predictor.getErrorCount());
+        assertEquals(0.008f, predictor.getMaxError(), 1e-6f);
+        assertEquals(0.008f, predictor.getRmsError(), 1e-6f);
+    }
+}
@@ -0,0 +1,35 @@
+package net.ghosttrails.openglplayground.objects;
+
+import net.ghosttrails.openglplayground.data.StreamingVertexBuffer;
+import net.ghosttrails.openglplayground.gl.CountingGles;
+import net.ghosttrails.openglplayground.gl.GlContext;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InstancedMeshTest {
+
+    @Test
+    public void writeInstances_keepsTranslationsAndColorsInOneStorage() throws Exception {
+        CountingGles gles = new CountingGles();
+        GlContext.onContextCreated(gles);
+        Instances instances = new Instances(2);
+        instances.add(1f, 2f, 3f, 1f, 0f, 0f);
+        instances.add(4f, 5f, 6f, 0f, 0f, 1f);
+        // 32 bytes of translations and 32 of colors a frame.
+        StreamingVertexBuffer instanceData = new StreamingVertexBuffer(gles, 96);
+
+        instanceData.beginFrame();
+        assertEquals(0, InstancedMesh.writeInstances(instanceData, instances));
+
+        // The translations would fit at 64, but the colors would then wrap the buffer, so
+        // both go at the start of new storage.
+        instanceData.beginFrame();
+        final int orphans = gles.bufferDataCalls;
+        assertEquals(0, InstancedMesh.writeInstances(instanceData, instances));
+        assertEquals(orphans + 1, gles.bufferDataCalls);
+        assertEquals(1, instanceData.getWraps());
+        assertEquals(64, instanceData.write(new float[1], 0, 1));
+    }
+}
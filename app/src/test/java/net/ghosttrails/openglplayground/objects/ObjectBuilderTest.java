@@ -0,0 +1,49 @@
+package net.ghosttrails.openglplayground.objects;
+
+import net.ghosttrails.openglplayground.util.Geometry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ObjectBuilderTest {
+
+    @Test
+    public void puck_isOneIndexedTriangleList() throws Exception {
+        ObjectBuilder.GeneratedData puck = ObjectBuilder.createPuck(
+                new Geometry.Cylinder(new Geometry.Point(0f, 0f, 0f), 0.06f, 0.02f), 32);
+
+        // Cap centre plus a top and bottom ring, in place of a fan and a strip.
+        assertEquals(1 + 32 * 2, puck.getVertexCount());
+        assertEquals(32 * 3 * 3, puck.indexData.length);
+        assertEquals(1, puck.getDrawCount());
+        assertEquals(3 * 32 + 4, puck.unindexedVertexCount);
+        assertEquals(2, puck.unindexedDrawCount);
+        assertIndicesValid(puck);
+    }
+
+    @Test
+    public void mallet_isOneIndexedTriangleList() throws Exception {
+        ObjectBuilder.GeneratedData mallet = ObjectBuilder.createMallet(
+                new Geometry.Point(0f, 0f, 0f), 0.08f, 0.15f, 32);
+
+        assertEquals((1 + 32 * 2) * 2, mallet.getVertexCount());
+        assertEquals(32 * 3 * 3 * 2, mallet.indexData.length);
+        assertEquals(1, mallet.getDrawCount());
+        assertEquals(6 * 32 + 8, mallet.unindexedVertexCount);
+        assertEquals(4, mallet.unindexedDrawCount);
+        assertIndicesValid(mallet);
+    }
+
+    private static void assertIndicesValid(ObjectBuilder.GeneratedData data) {
+        for (int i = 0; i < data.indexData.length; i += 3) {
+            int a = data.indexData[i];
+            int b = data.indexData[i + 1];
+            int c = data.indexData[i + 2];
+            assertTrue(a >= 0 && a < data.getVertexCount());
+            assertTrue(b >= 0 && b < data.getVertexCount());
+            assertTrue(c >= 0 && c < data.getVertexCount());
+            assertTrue("Degenerate triangle at " + i, a != b && b != c && a != c);
+        }
+    }
+}
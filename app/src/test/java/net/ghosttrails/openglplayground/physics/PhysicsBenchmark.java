@@ -0,0 +1,49 @@
+package net.ghosttrails.openglplayground.physics;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares single-threaded and fork/join stepping as the number of bodies and threads changes.
+ * Run the main method from the IDE; it isn't part of the unit test run.
+ */
+public class PhysicsBenchmark {
+
+    private static final float DT = 1f / 120f;
+    private static final int WARMUP_STEPS = 100;
+    private static final int MEASURED_STEPS = 300;
+
+    public static void main(String[] args) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int[] bodyCounts = {1000, 4000, 16000, 64000};
+
+        System.out.println("bodies\tthreads\tus/step\tsteps/s");
+        for (int bodies : bodyCounts) {
+            report(bodies, 0, null);
+            for (int threads = 1; threads <= cores; threads *= 2) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                report(bodies, threads, pool);
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * @param pool pool to step on, or null for the single-threaded path (reported as 0 threads).
+     */
+    private static void report(int bodies, int threads, ForkJoinPool pool) {
+        PhysicsWorld world = PhysicsWorldTest.createCrowdedWorld(bodies, 42);
+        world.setForkJoinPool(pool);
+
+        for (int i = 0; i < WARMUP_STEPS; i++) {
+            world.step(DT);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_STEPS; i++) {
+            world.step(DT);
+        }
+        long nanosPerStep = (System.nanoTime() - start) / MEASURED_STEPS;
+
+        System.out.println(bodies + "\t" + threads + "\t" + (nanosPerStep / 1000) + "\t"
+                + (1000000000L / Math.max(1, nanosPerStep)));
+    }
+}
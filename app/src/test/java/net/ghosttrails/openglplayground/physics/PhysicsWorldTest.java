@@ -0,0 +1,170 @@
+package net.ghosttrails.openglplayground.physics;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Headless tests for the physics world. These run on the JVM, no device needed.
+ */
+public class PhysicsWorldTest {
+
+    private static final float LEFT = -0.5f;
+    private static final float RIGHT = 0.5f;
+    private static final float FAR = -0.8f;
+    private static final float NEAR = 0.8f;
+    private static final float DT = 1f / 120f;
+
+    private static PhysicsWorld createWorld() {
+        return new PhysicsWorld(LEFT, RIGHT, FAR, NEAR);
+    }
+
+    /**
+     * Fill the table with small pucks moving in random directions.
+     */
+    static PhysicsWorld createCrowdedWorld(int pucks, long seed) {
+        PhysicsWorld world = createWorld();
+        Random random = new Random(seed);
+        float radius = 0.004f;
+        for (int i = 0; i < pucks; i++) {
+            int body = world.addPuck(
+                    LEFT + random.nextFloat() * (RIGHT - LEFT),
+                    FAR + random.nextFloat() * (NEAR - FAR),
+                    radius, 1f);
+            world.setVelocity(body, random.nextFloat() - 0.5f, random.nextFloat() - 0.5f);
+        }
+        world.addMallet(0f, -0.4f, 0.08f);
+        world.addMallet(0f, 0.4f, 0.08f);
+        return world;
+    }
+
+    @Test
+    public void puck_bouncesOffWallAndStaysOnTable() throws Exception {
+        PhysicsWorld world = createWorld();
+        int puck = world.addPuck(0.4f, 0f, 0.06f, 1f);
+        world.setVelocity(puck, 2f, 0f);
+
+        for (int i = 0; i < 30; i++) {
+            world.step(DT);
+            assertTrue(world.getX(puck) <= RIGHT - 0.06f);
+        }
+        assertTrue("puck should be heading back", world.getVelocityX(puck) < 0f);
+    }
+
+    @Test
+    public void overlappingPucks_arePushedApart() throws Exception {
+        PhysicsWorld world = createWorld();
+        int a = world.addPuck(0f, 0f, 0.06f, 1f);
+        int b = world.addPuck(0.05f, 0f, 0.06f, 1f);
+
+        world.step(DT);
+
+        float dx = world.getX(b) - world.getX(a);
+        float dz = world.getZ(b) - world.getZ(a);
+        assertEquals(0.12f, (float) Math.sqrt(dx * dx + dz * dz), 1e-4f);
+        assertEquals(1, world.getContacts());
+    }
+
+    @Test
+    public void movingMallet_hitsPuck() throws Exception {
+        PhysicsWorld world = createWorld();
+        int puck = world.addPuck(0f, 0f, 0.06f, 1f);
+        int mallet = world.addMallet(0f, 0.15f, 0.08f);
+
+        world.moveKinematic(mallet, 0f, 0.13f, DT);
+        world.step(DT);
+
+        assertTrue("puck should move away from the mallet", world.getVelocityZ(puck) < 0f);
+        assertEquals(0.13f, world.getZ(mallet), 1e-6f);
+    }
+
+    @Test
+    public void fastSwipe_doesNotTunnelThroughPuck() throws Exception {
+        PhysicsWorld world = createWorld();
+        int puck = world.addPuck(0f, 0f, 0.06f, 1f);
+        int mallet = world.addMallet(-0.2f, 0f, 0.08f);
+
+        // One long step takes the mallet from one side of the puck right past the other.
+        float bigStep = 1f / 15f;
+        world.moveKinematic(mallet, 0.2f, 0f, bigStep);
+        world.step(bigStep);
+
+        assertTrue("puck should have been hit", world.getVelocityX(puck) > 0f);
+        assertTrue("puck should be ahead of the mallet", world.getX(puck) > world.getX(mallet));
+    }
+
+    @Test
+    public void fastPuck_bouncesOffWallPartWayThroughStep() throws Exception {
+        PhysicsWorld world = createWorld();
+        int puck = world.addPuck(0.3f, 0f, 0.05f, 1f);
+        world.setVelocity(puck, 3f, 0f);
+
+        // Without friction it would reach the wall (x = 0.45) a third of the way through the
+        // step and come back most of the remaining 0.2.
+        world.step(0.1f);
+
+        assertTrue(world.getVelocityX(puck) < 0f);
+        assertTrue("puck should have travelled back from the wall",
+                world.getX(puck) < 0.45f - 0.1f);
+    }
+
+    @Test
+    public void puckPushedApartFromMallet_staysOffWall() throws Exception {
+        PhysicsWorld world = createWorld();
+        int puck = world.addPuck(LEFT + 0.05f, 0f, 0.05f, 1f);
+        // Overlapping the puck, which is against the wall, so the whole correction pushes the
+        // puck into it.
+        world.addMallet(LEFT + 0.12f, 0f, 0.08f);
+
+        world.step(DT);
+
+        assertTrue(world.getX(puck) >= LEFT + 0.05f);
+    }
+
+    @Test
+    public void thousandsOfPucks_stayOnTable() throws Exception {
+        PhysicsWorld world = createCrowdedWorld(4000, 1);
+        for (int i = 0; i < 120; i++) {
+            world.step(DT);
+        }
+
+        for (int i = 0; i < world.getBodyCount(); i++) {
+            float radius = world.getRadius(i);
+            assertTrue(world.getX(i) >= LEFT + radius && world.getX(i) <= RIGHT - radius);
+            assertTrue(world.getZ(i) >= FAR + radius && world.getZ(i) <= NEAR - radius);
+        }
+    }
+
+    @Test
+    public void parallelStep_matchesSequentialExactly() throws Exception {
+        for (int threads = 1; threads <= 4; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            PhysicsWorld parallel = createCrowdedWorld(3000, 2);
+            parallel.setForkJoinPool(pool);
+            PhysicsWorld reference = createCrowdedWorld(3000, 2);
+            assertNull(reference.getForkJoinPool());
+
+            for (int i = 0; i < 60; i++) {
+                parallel.step(DT);
+                reference.step(DT);
+            }
+            pool.shutdown();
+
+            for (int i = 0; i < reference.getBodyCount(); i++) {
+                assertEquals(Float.floatToIntBits(reference.getX(i)),
+                        Float.floatToIntBits(parallel.getX(i)));
+                assertEquals(Float.floatToIntBits(reference.getZ(i)),
+                        Float.floatToIntBits(parallel.getZ(i)));
+                assertEquals(Float.floatToIntBits(reference.getVelocityX(i)),
+                        Float.floatToIntBits(parallel.getVelocityX(i)));
+                assertEquals(Float.floatToIntBits(reference.getVelocityZ(i)),
+                        Float.floatToIntBits(parallel.getVelocityZ(i)));
+            }
+            assertEquals(reference.getContacts(), parallel.getContacts());
+            assertEquals(reference.getPairsTested(), parallel.getPairsTested());
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package net.ghosttrails.openglplayground.programs;
+
+import net.ghosttrails.openglplayground.gl.CountingGles;
+import net.ghosttrails.openglplayground.gl.GlContext;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class ProgramBinaryCacheTest {
+
+    private static final int GL_LINK_STATUS = 0x8b82;
+    private static final int GL_PROGRAM_BINARY_LENGTH = 0x8741;
+    private static final int FORMAT = 42;
+    private static final byte[] BINARY = {1, 2, 3, 4, 5};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * An ES 3.0 driver with one binary format, which gives out BINARY for every program and
+     * takes it back unless told not to.
+     */
+    private static class ProgramBinaryGles extends CountingGles {
+        boolean acceptBinaries = true;
+        byte[] loadedBinary = null;
+        int linkedProgram = 0;
+        int deletedProgram = 0;
+
+        ProgramBinaryGles() {
+            version = "OpenGL ES 3.0";
+        }
+
+        @Override public void glGetIntegerv(int pname, int[] params, int offset) {
+            super.glGetIntegerv(pname, params, offset);
+            params[offset] = 1;
+        }
+        @Override public void glDeleteProgram(int program) {
+            super.glDeleteProgram(program);
+            deletedProgram = program;
+        }
+        @Override public void glGetProgramiv(int program, int pname, int[] params,
+                                             int offset) {
+            super.glGetProgramiv(program, pname, params, offset);
+            if (pname == GL_LINK_STATUS) {
+                params[offset] = program == linkedProgram ? 1 : 0;
+            } else if (pname == GL_PROGRAM_BINARY_LENGTH) {
+                params[offset] = BINARY.length;
+            }
+        }
+        @Override public void glProgramBinary(int program, int binaryFormat, Buffer binary,
+                                              int length) {
+            super.glProgramBinary(program, binaryFormat, binary, length);
+            assertEquals(FORMAT, binaryFormat);
+            loadedBinary = new byte[length];
+            ((ByteBuffer) binary).get(loadedBinary);
+            if (acceptBinaries) {
+                linkedProgram = program;
+            }
+        }
+        @Override public void glGetProgramBinary(int program, int bufSize, int[] length,
+                                                 int lengthOffset, int[] binaryFormat,
+                                                 int binaryFormatOffset, Buffer binary) {
+            super.glGetProgramBinary(program, bufSize, length, lengthOffset, binaryFormat,
+                    binaryFormatOffset, binary);
+            ((ByteBuffer) binary).put(BINARY);
+            length[lengthOffset] = BINARY.length;
+            binaryFormat[binaryFormatOffset] = FORMAT;
+        }
+    }
+
+    /**
+     * A cache that "builds" programs by handing out a new name, as there's no shader compiler.
+     */
+    private static ProgramBinaryCache createCache(final ProgramBinaryGles gles, File directory) {
+        GlContext.onContextCreated(gles);
+        return new ProgramBinaryCache(gles, directory) {
+            @Override
+            int buildFromSource(String vertexShaderSource, String fragmentShaderSource,
+                                boolean retrievableBinary) {
+                assertTrue(retrievableBinary);
+                gles.linkedProgram = gles.glCreateProgram();
+                return gles.linkedProgram;
+            }
+        };
+    }
+
+    @Test
+    public void miss_savesBinary_thenLoadsIt() throws Exception {
+        File directory = new File(folder.getRoot(), "programs");
+        ProgramBinaryGles gles = new ProgramBinaryGles();
+
+        int built = createCache(gles, directory).buildProgram("vertex", "fragment");
+        assertTrue(built != 0);
+        File[] files = directory.listFiles();
+        assertEquals(1, files.length);
+
+        // As after a restart: a new cache, and a driver that has linked nothing yet.
+        ProgramBinaryGles warmGles = new ProgramBinaryGles();
+        ProgramBinaryCache cache = createCache(warmGles, directory);
+        int loaded = cache.buildProgram("vertex", "fragment");
+        assertTrue(loaded != 0);
+        assertEquals(loaded, warmGles.linkedProgram);
+        assertArrayEquals(BINARY, warmGles.loadedBinary);
+        assertEquals(1, cache.getHits());
+        assertEquals(0, cache.getMisses());
+
+        // Different sources are a different file.
+        cache.buildProgram("vertex", "other fragment");
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, directory.listFiles().length);
+    }
+
+    @Test
+    public void rejectedBinary_isDeletedAndBuiltAgain() throws Exception {
+        File directory = new File(folder.getRoot(), "programs");
+        createCache(new ProgramBinaryGles(), directory).buildProgram("vertex", "fragment");
+
+        ProgramBinaryGles gles = new ProgramBinaryGles();
+        gles.acceptBinaries = false;
+        ProgramBinaryCache cache = createCache(gles, directory);
+        int program = cache.buildProgram("vertex", "fragment");
+
+        assertArrayEquals(BINARY, gles.loadedBinary);
+        assertTrue(gles.deletedProgram != 0);
+        assertTrue(program != gles.deletedProgram);
+        assertEquals(program, gles.linkedProgram);
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        // Saved again, for a driver that will take it.
+        assertEquals(1, directory.listFiles().length);
+    }
+}
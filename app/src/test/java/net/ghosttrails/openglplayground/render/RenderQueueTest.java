@@ -0,0 +1,70 @@
+package net.ghosttrails.openglplayground.render;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RenderQueueTest {
+
+    @Test
+    public void sort_matchesComparisonSortAndIsStable() throws Exception {
+        Random random = new Random(17);
+        RenderQueue queue = new RenderQueue(4, 4);
+        float[] uniforms = new float[1];
+        long[] expected = new long[1000];
+        for (int i = 0; i < expected.length; i++) {
+            // Few distinct values, so there are plenty of equal keys.
+            int layer = random.nextInt(3);
+            int program = random.nextInt(4);
+            int texture = random.nextInt(3) * 1000;
+            int command = random.nextInt(5);
+            float depth = random.nextInt(4) / 3f;
+            uniforms[0] = i;
+            queue.submit(layer, program, texture, command, depth, uniforms, 0, 1);
+            expected[i] = RenderQueue.makeKey(layer, program, texture, command, depth);
+        }
+        Arrays.sort(expected);
+
+        queue.sort();
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], queue.getSortedKey(i));
+            if (i > 0 && queue.getSortedKey(i) == queue.getSortedKey(i - 1)) {
+                assertTrue(queue.getSortedPacket(i) > queue.getSortedPacket(i - 1));
+            }
+        }
+    }
+
+    @Test
+    public void flush_drawsGroupedByState() throws Exception {
+        final StringBuilder drawn = new StringBuilder();
+        RenderQueue queue = new RenderQueue(1, 1);
+        for (int id = 0; id < 3; id++) {
+            final char name = (char) ('a' + id);
+            queue.setCommand(id, new RenderQueue.DrawCommand() {
+                @Override
+                public void draw(float[] uniforms, int offset, int texture) {
+                    drawn.append(name).append((int) uniforms[offset]).append(' ');
+                }
+            });
+        }
+
+        float[] uniforms = {0f, 1f, 2f, 3f, 4f};
+        // Command, texture, then the depth within that.
+        queue.submit(0, 0, 5, 1, 0.5f, uniforms, 0, 1);
+        queue.submit(0, 0, 6, 0, 0f, uniforms, 1, 1);
+        queue.submit(0, 0, 5, 1, 0.1f, uniforms, 2, 1);
+        queue.submit(1, 0, 5, 2, 0f, uniforms, 3, 1);
+        queue.submit(0, 0, 5, 0, 0f, uniforms, 4, 1);
+        queue.flush();
+
+        assertEquals("a4 b2 b0 a1 c3 ", drawn.toString());
+        assertEquals(0, queue.size());
+        assertEquals(5, queue.getPackets());
+        // Program once, then each texture and command change.
+        assertEquals(1 + 3 + 4, queue.getStateChanges());
+        assertEquals(1 + 3 + 5, queue.getUnsortedStateChanges());
+    }
+}
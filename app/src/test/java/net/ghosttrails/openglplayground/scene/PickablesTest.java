@@ -0,0 +1,101 @@
+package net.ghosttrails.openglplayground.scene;
+
+import net.ghosttrails.openglplayground.util.Geometry;
+import net.ghosttrails.openglplayground.util.Geometry.MutableRay;
+import net.ghosttrails.openglplayground.util.Geometry.Vec3;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PickablesTest {
+
+    private static final int SPHERES = 4000;
+    private static final float RADIUS = 0.05f;
+
+    /**
+     * Nearest hit by testing every sphere, with Geometry's test for whether the line hits.
+     * @return the id, or Pickables.NONE.
+     */
+    private static int pickByBruteForce(float[] centers, boolean[] removed, MutableRay ray) {
+        int nearest = Pickables.NONE;
+        float nearestDistance = Float.MAX_VALUE;
+        Vec3 center = new Vec3();
+        for (int id = 0; id < removed.length; id++) {
+            center.set(centers[id * 3], centers[id * 3 + 1], centers[id * 3 + 2]);
+            if (removed[id] || !Geometry.intersects(center, RADIUS, ray)) {
+                continue;
+            }
+            // Along the ray; good enough to order spheres that are all the same size.
+            float along = new Vec3().setBetween(ray.point, center).dotProduct(ray.vector);
+            if (along > 0f && along < nearestDistance) {
+                nearestDistance = along;
+                nearest = id;
+            }
+        }
+        return nearest;
+    }
+
+    @Test
+    public void pick_matchesTestingEverySphere() throws Exception {
+        Random random = new Random(11);
+        Pickables pickables = new Pickables(16);
+        float[] centers = new float[SPHERES * 3];
+        boolean[] removed = new boolean[SPHERES];
+        for (int id = 0; id < SPHERES; id++) {
+            for (int i = 0; i < 3; i++) {
+                centers[id * 3 + i] = random.nextFloat() * 10f - 5f;
+            }
+            assertEquals(id, pickables.add(centers[id * 3], centers[id * 3 + 1],
+                    centers[id * 3 + 2], RADIUS));
+        }
+        for (int id = 0; id < SPHERES; id += 7) {
+            pickables.remove(id);
+            removed[id] = true;
+        }
+
+        MutableRay ray = new MutableRay();
+        Pickables.Hit hit = new Pickables.Hit();
+        int hits = 0;
+        for (int i = 0; i < 500; i++) {
+            // Aim at a sphere, mostly, so there's something to hit.
+            int target = random.nextInt(SPHERES);
+            float ox = random.nextFloat() * 20f - 10f;
+            float oy = 10f;
+            float oz = random.nextFloat() * 20f - 10f;
+            ray.set(ox, oy, oz, centers[target * 3] - ox, centers[target * 3 + 1] - oy,
+                    centers[target * 3 + 2] - oz);
+            if (i % 50 == 0) {
+                // And move some around.
+                pickables.move(target, centers[target * 3] + 1f, centers[target * 3 + 1],
+                        centers[target * 3 + 2]);
+                centers[target * 3] += 1f;
+            }
+            int expected = pickByBruteForce(centers, removed, ray);
+            assertEquals(expected, pickables.pick(ray, hit));
+            if (expected != Pickables.NONE) {
+                hits++;
+            }
+        }
+        assertTrue(hits > 400);
+        // A ray passes near few of the spheres, so few are looked at.
+        assertTrue(pickables.getSpheresTested() / pickables.getPicks() < SPHERES / 20);
+    }
+
+    @Test
+    public void pick_givesTheDistanceToTheSphere() throws Exception {
+        Pickables pickables = new Pickables(1);
+        int near = pickables.add(0f, 0f, -5f, 1f);
+        pickables.add(0f, 0f, -9f, 1f);
+        MutableRay ray = new MutableRay().set(0f, 0f, 0f, 0f, 0f, -0.5f);
+        Pickables.Hit hit = new Pickables.Hit();
+        assertEquals(near, pickables.pick(ray, hit));
+        assertEquals(4f, hit.distance, 1e-5f);
+
+        // Pointing away.
+        ray.set(0f, 0f, 0f, 0f, 0f, 1f);
+        assertEquals(Pickables.NONE, pickables.pick(ray, hit));
+    }
+}
@@ -0,0 +1,154 @@
+package net.ghosttrails.openglplayground.scene;
+
+import net.ghosttrails.openglplayground.render.RenderQueue;
+import net.ghosttrails.openglplayground.util.Camera;
+import net.ghosttrails.openglplayground.util.Matrix4;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SceneGraphTest {
+
+    private static final float EPSILON = 1e-5f;
+
+    private static Camera createCamera() {
+        Camera camera = new Camera();
+        camera.setPerspective(45, 1.5f, 1f, 10f);
+        camera.setLookAt(0f, 1.2f, 2.2f, 0f, 0f, 0f, 0f, 1f, 0f);
+        return camera;
+    }
+
+    @Test
+    public void update_composesParentTransforms() throws Exception {
+        SceneGraph scene = new SceneGraph(1);
+        int root = scene.addNode(SceneGraph.NO_PARENT);
+        int child = scene.addNode(root);
+        int grandchild = scene.addNode(child);
+        scene.setTranslation(root, 1f, 0f, 0f);
+        scene.setTranslation(child, 0f, 2f, 0f);
+        scene.rotateX(child, 90f);
+        scene.setTranslation(grandchild, 0f, 0f, 3f);
+        Camera camera = createCamera();
+        scene.update(camera);
+
+        float[] world = scene.getWorldMatrices();
+        int offset = SceneGraph.getMatrixOffset(grandchild);
+        // The child's rotation turns the grandchild's z into -y.
+        assertEquals(1f, world[offset + 12], EPSILON);
+        assertEquals(-1f, world[offset + 13], EPSILON);
+        assertEquals(0f, world[offset + 14], EPSILON);
+
+        float[] expected = new float[16];
+        Matrix4.multiply(expected, 0, camera.getViewProjectionMatrix(), 0, world, offset);
+        for (int i = 0; i < 16; i++) {
+            assertEquals(expected[i], scene.getModelViewProjectionMatrices()[offset + i],
+                    EPSILON);
+        }
+    }
+
+    @Test
+    public void update_onlyRedoesWhatMoved() throws Exception {
+        SceneGraph scene = new SceneGraph(4);
+        int root = scene.addNode(SceneGraph.NO_PARENT);
+        int still = scene.addNode(root);
+        int moving = scene.addNode(root);
+        int riding = scene.addNode(moving);
+        Camera camera = createCamera();
+        scene.update(camera);
+        assertEquals(4, scene.getWorldUpdates());
+        assertEquals(4, scene.getModelViewProjectionUpdates());
+
+        // Nothing moved.
+        scene.resetCounters();
+        scene.update(camera);
+        assertEquals(0, scene.getWorldUpdates());
+        assertEquals(0, scene.getModelViewProjectionUpdates());
+
+        // One subtree moved.
+        scene.setTranslation(moving, 0.5f, 0f, 0f);
+        scene.update(camera);
+        assertEquals(2, scene.getWorldUpdates());
+        assertEquals(2, scene.getModelViewProjectionUpdates());
+        assertEquals(0.5f, scene.getWorldMatrices()[SceneGraph.getMatrixOffset(riding) + 12],
+                EPSILON);
+        assertEquals(0f, scene.getWorldMatrices()[SceneGraph.getMatrixOffset(still) + 12],
+                EPSILON);
+
+        // The camera moved.
+        scene.resetCounters();
+        camera.setLookAt(0f, 2f, 2f, 0f, 0f, 0f, 0f, 1f, 0f);
+        scene.update(camera);
+        assertEquals(0, scene.getWorldUpdates());
+        assertEquals(4, scene.getModelViewProjectionUpdates());
+    }
+
+    @Test
+    public void submit_queuesNodesThatDraw() throws Exception {
+        SceneGraph scene = new SceneGraph(4);
+        int root = scene.addNode(SceneGraph.NO_PARENT);
+        int table = scene.addNode(root);
+        scene.setDrawable(table, 0, 1, 7, 3);
+        scene.update(createCamera());
+        RenderQueue queue = new RenderQueue(4, 64);
+        scene.submit(queue, null);
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void submit_cullsWhatCantBeSeen() throws Exception {
+        SceneGraph scene = new SceneGraph(4);
+        int root = scene.addNode(SceneGraph.NO_PARENT);
+        int seen = scene.addNode(root);
+        scene.setBounds(seen, 0f, 0f, 0f, 0.5f);
+        scene.setDrawable(seen, 0, 1, 0, 1);
+        // A group behind the camera.
+        int behind = scene.addNode(root);
+        scene.setTranslation(behind, 0f, 0f, 20f);
+        for (int i = 0; i < 3; i++) {
+            int child = scene.addNode(behind);
+            scene.setTranslation(child, i * 0.5f, 0f, 0f);
+            scene.setBounds(child, 0f, 0f, 0f, 0.2f);
+            scene.setDrawable(child, 0, 1, 0, 2);
+        }
+        // No bounds, so always drawn.
+        int unbounded = scene.addNode(behind);
+        scene.setDrawable(unbounded, 0, 1, 0, 3);
+
+        Camera camera = createCamera();
+        scene.update(camera);
+        RenderQueue queue = new RenderQueue(8, 128);
+        scene.submit(queue, camera.getFrustum());
+        assertEquals(2, queue.size());
+        assertEquals(2, scene.getDrawn());
+        assertEquals(3, scene.getCulled());
+
+        // Bring the group in front of the camera.
+        queue.clear();
+        scene.resetCounters();
+        scene.setTranslation(behind, 0f, 0f, 0f);
+        scene.update(camera);
+        scene.submit(queue, camera.getFrustum());
+        assertEquals(5, scene.getDrawn());
+        assertEquals(0, scene.getCulled());
+    }
+
+    @Test
+    public void mergeSphere_holdsBoth() throws Exception {
+        float[] spheres = {0f, 0f, 0f, 1f, 3f, 0f, 0f, 1f};
+        SceneGraph.mergeSphere(spheres, 0, 4);
+        assertEquals(1.5f, spheres[0], EPSILON);
+        assertEquals(2.5f, spheres[3], EPSILON);
+
+        // Already inside.
+        spheres = new float[]{0f, 0f, 0f, 5f, 1f, 1f, 0f, 1f};
+        SceneGraph.mergeSphere(spheres, 0, 4);
+        assertEquals(0f, spheres[0], EPSILON);
+        assertEquals(5f, spheres[3], EPSILON);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addNode_rejectsUnknownParent() throws Exception {
+        new SceneGraph(4).addNode(0);
+    }
+}
@@ -0,0 +1,94 @@
+package net.ghosttrails.openglplayground.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EventTraceTest {
+
+    @Test
+    public void fullBuffer_keepsNewestEvents() throws Exception {
+        EventTrace trace = new EventTrace(4);
+        int tick = trace.define("Test", "tick", EventTrace.VERBOSE, "n");
+        for (int i = 0; i < 10; i++) {
+            trace.record(tick, i);
+        }
+
+        EventTrace.Snapshot snapshot = trace.snapshot();
+        assertEquals(4, snapshot.size);
+        assertEquals(6, snapshot.lostEvents);
+        for (int i = 0; i < 4; i++) {
+            assertEquals("tick", snapshot.getName(i));
+            assertEquals(6 + i, snapshot.getArg(i, 0), 0);
+        }
+        assertEquals(10, trace.getRecordedEvents());
+    }
+
+    @Test
+    public void recordFromManyThreads_keepsEveryEvent() throws Exception {
+        final EventTrace trace = new EventTrace(4096);
+        final int tick = trace.define("Test", "tick", EventTrace.VERBOSE, "thread", "n");
+        final int threadCount = 4;
+        final int perThread = 1000;
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int thread = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        trace.record(tick, thread, i);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        EventTrace.Snapshot snapshot = trace.snapshot();
+        assertEquals(threadCount * perThread, snapshot.size);
+        assertEquals(0, snapshot.lostEvents);
+        // Each thread's own events come out in the order it recorded them.
+        int[] next = new int[threadCount];
+        for (int i = 0; i < snapshot.size; i++) {
+            int thread = (int) snapshot.getArg(i, 0);
+            assertEquals(next[thread]++, snapshot.getArg(i, 1), 0);
+        }
+    }
+
+    @Test
+    public void clear_forgetsEarlierEvents() throws Exception {
+        EventTrace trace = new EventTrace(8);
+        int tick = trace.define("Test", "tick", EventTrace.VERBOSE, "n");
+        trace.record(tick, 1);
+        trace.clear();
+        trace.record(tick, 2);
+
+        EventTrace.Snapshot snapshot = trace.snapshot();
+        assertEquals(1, snapshot.size);
+        assertEquals(0, snapshot.lostEvents);
+        assertEquals(2, snapshot.getArg(0, 0), 0);
+        assertEquals(1, trace.getRecordedEvents());
+    }
+
+    @Test
+    public void export_formatsArgumentsAndEscapesDetail() throws Exception {
+        EventTrace trace = new EventTrace(16);
+        int touch = trace.define("Test", "touch", EventTrace.VERBOSE, "x", "pressed");
+        trace.record(touch, "say \"hi\"\n", 0.25, 1, 0);
+
+        StringBuilder text = new StringBuilder();
+        EventTrace.writeText(trace.snapshot(), text);
+        assertTrue(text.toString(), text.toString().contains("Test touch x=0.25 pressed=1"));
+
+        StringBuilder json = new StringBuilder();
+        EventTrace.writeChromeJson(trace.snapshot(), json);
+        String output = json.toString();
+        assertTrue(output, output.startsWith("{\"traceEvents\":["));
+        assertTrue(output, output.contains("\"args\":{\"x\":0.25,\"pressed\":1,"
+                + "\"detail\":\"say \\\"hi\\\"\\n\"}"));
+        assertTrue(output, output.trim().endsWith("]}"));
+    }
+}
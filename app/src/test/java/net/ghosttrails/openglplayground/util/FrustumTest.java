@@ -0,0 +1,49 @@
+package net.ghosttrails.openglplayground.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrustumTest {
+
+    private static Frustum createFrustum() {
+        Camera camera = new Camera();
+        camera.setPerspective(90, 1f, 1f, 10f);
+        camera.setLookAt(0f, 0f, 0f, 0f, 0f, -1f, 0f, 1f, 0f);
+        return camera.getFrustum();
+    }
+
+    @Test
+    public void classifySphere() throws Exception {
+        Frustum frustum = createFrustum();
+        assertEquals(Frustum.INSIDE, frustum.classifySphere(0f, 0f, -5f, 1f));
+        assertEquals(Frustum.INTERSECTING, frustum.classifySphere(0f, 0f, -10f, 1f));
+        assertEquals(Frustum.INTERSECTING, frustum.classifySphere(5f, 0f, -5f, 0.5f));
+        assertEquals(Frustum.OUTSIDE, frustum.classifySphere(0f, 0f, 5f, 1f));
+        assertEquals(Frustum.OUTSIDE, frustum.classifySphere(0f, 0f, -12f, 1f));
+        assertEquals(Frustum.OUTSIDE, frustum.classifySphere(0f, 8f, -5f, 1f));
+    }
+
+    @Test
+    public void classifyBox() throws Exception {
+        Frustum frustum = createFrustum();
+        assertEquals(Frustum.INSIDE, frustum.classifyBox(-1f, -1f, -6f, 1f, 1f, -4f));
+        assertEquals(Frustum.INTERSECTING, frustum.classifyBox(-1f, -1f, -6f, 1f, 1f, 0f));
+        assertEquals(Frustum.OUTSIDE, frustum.classifyBox(7f, -1f, -6f, 9f, 1f, -4f));
+    }
+
+    @Test
+    public void bounds_reachTheFurthestVertex() throws Exception {
+        float[] vertexData = {
+                -1f, 0f, 9f,
+                 1f, 0f, 9f,
+                 0f, 2f, 9f,
+        };
+        Bounds bounds = Bounds.of(vertexData, 3, 2);
+        assertEquals(-1f, bounds.minX, 0f);
+        assertEquals(2f, bounds.maxY, 0f);
+        assertEquals(0f, bounds.maxZ, 0f);
+        assertEquals(1f, bounds.centerY, 0f);
+        assertEquals((float) Math.sqrt(2f), bounds.radius, 1e-6f);
+    }
+}
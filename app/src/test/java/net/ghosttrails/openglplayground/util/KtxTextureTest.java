@@ -0,0 +1,71 @@
+package net.ghosttrails.openglplayground.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class KtxTextureTest {
+
+    private static final int GL_ETC1_RGB8_OES = 0x8d64;
+    private static final int GL_RGB = 0x1907;
+
+    /**
+     * @return an 8x4 ETC1 KTX file with its 4 levels, the bytes of level n all n + 1.
+     */
+    private static byte[] etc1File(ByteOrder order, int levelCount) {
+        final int[] levelSizes = {16, 8, 8, 8};
+        final ByteBuffer file = ByteBuffer.allocate(256).order(order);
+        file.put(new byte[]{(byte) 0xab, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xbb, '\r', '\n',
+                0x1a, '\n'});
+        file.putInt(0x04030201);
+        file.putInt(0).putInt(1).putInt(0).putInt(GL_ETC1_RGB8_OES).putInt(GL_RGB);
+        file.putInt(8).putInt(4).putInt(0).putInt(0).putInt(1).putInt(levelCount);
+        // Some key/value data, which is skipped.
+        file.putInt(8).putInt(0).putInt(0);
+        for (int level = 0; level < levelCount; level++) {
+            file.putInt(levelSizes[level]);
+            for (int i = 0; i < levelSizes[level]; i++) {
+                file.put((byte) (level + 1));
+            }
+        }
+        final byte[] bytes = new byte[file.position()];
+        file.flip();
+        file.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void read_eitherEndianness() throws Exception {
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            KtxTexture texture = KtxTexture.read(
+                    new ByteArrayInputStream(etc1File(order, 4)));
+            assertEquals(GL_ETC1_RGB8_OES, texture.internalFormat);
+            assertEquals(8, texture.width);
+            assertEquals(4, texture.height);
+            assertEquals(4, texture.levels.length);
+            assertEquals(40, texture.getSize());
+            assertEquals(2, texture.getLevelWidth(2));
+            assertEquals(1, texture.getLevelHeight(2));
+            assertEquals(1, texture.getLevelWidth(3));
+            assertEquals(16, texture.levels[0].capacity());
+            assertEquals(0, texture.levels[1].position());
+            assertEquals(2, texture.levels[1].get(7));
+            assertEquals(4, texture.levels[3].get(0));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsMissingLevels() throws Exception {
+        KtxTexture.read(new ByteArrayInputStream(etc1File(ByteOrder.BIG_ENDIAN, 0)));
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsOtherFiles() throws Exception {
+        KtxTexture.read(new ByteArrayInputStream(new byte[64]));
+    }
+}
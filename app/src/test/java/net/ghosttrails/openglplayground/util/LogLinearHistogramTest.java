@@ -0,0 +1,52 @@
+package net.ghosttrails.openglplayground.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LogLinearHistogramTest {
+
+    @Test
+    public void percentiles_areWithinBucketWidth() throws Exception {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        // 1ms to 100ms, in nanoseconds.
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000000L);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(1000000L, histogram.getMin());
+        assertEquals(100000000L, histogram.getMax());
+        assertEquals(50.5e6, histogram.getMean(), 1e-3);
+
+        long p50 = histogram.getValueAtPercentile(50);
+        assertTrue(p50 >= 50000000L && p50 <= 50000000L * 17 / 16);
+        long p99 = histogram.getValueAtPercentile(99);
+        assertTrue(p99 >= 99000000L && p99 <= 100000000L);
+        assertEquals(100000000L, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void smallValues_areExact() throws Exception {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        for (int i = 0; i < 32; i++) {
+            histogram.record(i);
+        }
+        assertEquals(15, histogram.getValueAtPercentile(50));
+        assertEquals(16, histogram.getCountAbove(15));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void hugeValues_goInTheLastBucket() throws Exception {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        histogram.record(Long.MAX_VALUE / 2);
+        histogram.record(-5);
+        assertEquals(0, histogram.getMin());
+        assertEquals(Long.MAX_VALUE / 2, histogram.getMax());
+        assertEquals(1, histogram.getCountAbove(1000000000L));
+    }
+}
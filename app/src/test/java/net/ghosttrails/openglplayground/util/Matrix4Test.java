@@ -0,0 +1,93 @@
+package net.ghosttrails.openglplayground.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class Matrix4Test {
+
+    private static final float EPSILON = 1e-4f;
+
+    private static float[] randomMatrix(Random random) {
+        float[] m = new float[16];
+        for (int i = 0; i < 16; i++) {
+            m[i] = random.nextFloat() * 2f - 1f;
+        }
+        return m;
+    }
+
+    private static void assertMatrixEquals(float[] expected, float[] actual, int actualOffset) {
+        for (int i = 0; i < 16; i++) {
+            assertEquals("element " + i, expected[i], actual[actualOffset + i], EPSILON);
+        }
+    }
+
+    @Test
+    public void fastPaths_matchFullMultiplies() throws Exception {
+        Random random = new Random(3);
+        float[] m = randomMatrix(random);
+        float[] other = new float[16];
+        float[] expected = new float[16];
+        float[] result = new float[20];
+
+        Matrix4.setIdentity(other, 0);
+        other[12] = 0.5f;
+        other[13] = -2f;
+        other[14] = 3f;
+        Matrix4.multiply(expected, 0, m, 0, other, 0);
+        Matrix4.multiplyTranslate(result, 4, m, 0, 0.5f, -2f, 3f);
+        assertMatrixEquals(expected, result, 4);
+
+        final double radians = Math.toRadians(-90.0);
+        Matrix4.setIdentity(other, 0);
+        other[5] = (float) Math.cos(radians);
+        other[6] = (float) Math.sin(radians);
+        other[9] = -(float) Math.sin(radians);
+        other[10] = (float) Math.cos(radians);
+        Matrix4.multiply(expected, 0, m, 0, other, 0);
+        // In place.
+        Matrix4.multiplyRotateX(m, 0, m, 0, -90f);
+        assertMatrixEquals(expected, m, 0);
+    }
+
+    @Test
+    public void invert_givesTheIdentityBack() throws Exception {
+        Random random = new Random(5);
+        float[] identity = new float[16];
+        Matrix4.setIdentity(identity, 0);
+        float[] inverse = new float[16];
+        float[] product = new float[16];
+        for (int i = 0; i < 20; i++) {
+            float[] m = randomMatrix(random);
+            assertTrue(Matrix4.invert(inverse, 0, m, 0));
+            Matrix4.multiply(product, 0, m, 0, inverse, 0);
+            assertMatrixEquals(identity, product, 0);
+        }
+
+        assertFalse(Matrix4.invert(inverse, 0, new float[16], 0));
+    }
+
+    @Test
+    public void camera_onlyChangesWhenMoved() throws Exception {
+        Camera camera = new Camera();
+        camera.setPerspective(45f, 1.5f, 1f, 10f);
+        camera.setLookAt(0f, 1.2f, 2.2f, 0f, 0f, 0f, 0f, 1f, 0f);
+        final int version = camera.getVersion();
+        float[] viewProjection = camera.getViewProjectionMatrix().clone();
+        assertEquals(version, camera.getVersion());
+
+        // The eye is at the origin of view space, and goes to the near plane's centre.
+        float[] point = new float[3];
+        Matrix4.transformPoint(point, 0, camera.getInvertedViewProjectionMatrix(), 0,
+                0f, 0f, -1f);
+        float distance = (float) Math.sqrt(1.2 * 1.2 + 2.2 * 2.2);
+        assertEquals(1.2f * (1f - 1f / distance), point[1], EPSILON);
+        assertEquals(2.2f * (1f - 1f / distance), point[2], EPSILON);
+
+        camera.setLookAt(0f, 2f, 2f, 0f, 0f, 0f, 0f, 1f, 0f);
+        assertNotEquals(version, camera.getVersion());
+        assertNotEquals(viewProjection[5], camera.getViewProjectionMatrix()[5], EPSILON);
+    }
+}
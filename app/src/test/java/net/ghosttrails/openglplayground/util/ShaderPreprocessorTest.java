@@ -0,0 +1,81 @@
+package net.ghosttrails.openglplayground.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ShaderPreprocessorTest {
+
+    private static ShaderPreprocessor.IncludeResolver resolver(final String... namesAndSources) {
+        final Map<String, String> sources = new HashMap<String, String>();
+        for (int i = 0; i < namesAndSources.length; i += 2) {
+            sources.put(namesAndSources[i], namesAndSources[i + 1]);
+        }
+        return new ShaderPreprocessor.IncludeResolver() {
+            @Override
+            public String resolve(String name) {
+                if (!sources.containsKey(name)) {
+                    throw new IllegalArgumentException(name);
+                }
+                return sources.get(name);
+            }
+        };
+    }
+
+    @Test
+    public void include_onlyOnce() throws Exception {
+        ShaderPreprocessor.IncludeResolver resolver = resolver(
+                "a.glsl", "#include \"common.glsl\"\nfloat a;\n",
+                "common.glsl", "float common;\n");
+        String result = ShaderPreprocessor.preprocess(
+                "#include \"common.glsl\"\n#include \"a.glsl\"\nvoid main() {}", resolver);
+        assertEquals("float common;\n\nfloat a;\n\nvoid main() {}\n", result);
+    }
+
+    @Test
+    public void ifdef_keepsTheBranchesTaken() throws Exception {
+        String source = "#ifdef A\n"
+                + "a\n"
+                + "#ifndef B\n"
+                + "notB\n"
+                + "#else\n"
+                + "b\n"
+                + "#endif\n"
+                + "#else\n"
+                + "notA\n"
+                + "#endif\n";
+        assertEquals("notA\n\n", ShaderPreprocessor.preprocess(source, resolver()));
+        assertEquals("a\nnotB\n\n", ShaderPreprocessor.preprocess(source, resolver(), "A"));
+        assertEquals("a\nb\n\n", ShaderPreprocessor.preprocess(source, resolver(), "A", "B"));
+    }
+
+    @Test
+    public void if_isLeftForTheCompiler() throws Exception {
+        String source = "#if __VERSION__ >= 300\nx\n#else\ny\n#endif\n";
+        assertEquals(source + "\n", ShaderPreprocessor.preprocess(source, resolver()));
+    }
+
+    @Test
+    public void version_movesToTheTop() throws Exception {
+        String result = ShaderPreprocessor.preprocess(
+                "// comment\n#version 300 es\nfloat x[SIZE];\n", resolver(), "SIZE 4");
+        assertEquals("#version 300 es\n#define SIZE 4\n// comment\nfloat x[SIZE];\n\n", result);
+    }
+
+    @Test
+    public void unusedDefines_makeNoDifference() throws Exception {
+        String source = "#ifdef USED\nfloat x[SIZE];\n#endif\nvoid main() {}\n";
+        String plain = ShaderPreprocessor.preprocess(source, resolver());
+        assertEquals(plain, ShaderPreprocessor.preprocess(source, resolver(), "SIZE 4"));
+        assertEquals(plain, ShaderPreprocessor.preprocess(source, resolver(), "UNUSED"));
+        assertNotEquals(plain, ShaderPreprocessor.preprocess(source, resolver(), "USED"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingEndif_fails() throws Exception {
+        ShaderPreprocessor.preprocess("#ifdef A\nx\n", resolver());
+    }
+}
@@ -0,0 +1,248 @@
+package net.ghosttrails.openglplayground.tools;
+
+/**
+ * Encodes images as ETC1, the compressed texture format every OpenGL ES 2.0 Android device
+ * can sample from (OES_compressed_ETC1_RGB8_texture), at 4 bits per pixel.
+ *
+ * Each 4x4 block is split into two 2x4 or 4x2 halves, each with a base color and a table of
+ * brightness offsets, and each pixel picks one of the four offsets. The encoder tries both
+ * splits, both ways of storing the base colors (two 4 bit colors, or a 5 bit color and a 3 bit
+ * difference) and every table, with the base colors at the halves' averages, and keeps the
+ * block with the least squared error. Alpha is ignored; ETC1 has none.
+ *
+ * Plain Java, so it runs at build time on any JVM.
+ */
+
+public class Etc1Encoder {
+
+    public static final int BLOCK_SIZE = 4;
+    public static final int BYTES_PER_BLOCK = 8;
+
+    // The brightness offset tables; a pixel's index picks +small, +large, -small or -large.
+    static final int[][] MODIFIER_TABLES = {
+            {2, 8}, {5, 17}, {9, 29}, {13, 42}, {18, 60}, {24, 80}, {33, 106}, {47, 183}};
+
+    private Etc1Encoder() {
+    }
+
+    /**
+     * @param argb width * height pixels, row by row, as 0xAARRGGBB.
+     * @return the blocks, row by row, BYTES_PER_BLOCK each. Images that aren't a multiple of
+     * the block size are padded by repeating their last row and column.
+     */
+    public static byte[] encodeImage(int[] argb, int width, int height) {
+        final int blocksWide = (width + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        final int blocksHigh = (height + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        final byte[] encoded = new byte[blocksWide * blocksHigh * BYTES_PER_BLOCK];
+        final int[] block = new int[BLOCK_SIZE * BLOCK_SIZE];
+        int offset = 0;
+        for (int blockY = 0; blockY < blocksHigh; blockY++) {
+            for (int blockX = 0; blockX < blocksWide; blockX++) {
+                for (int y = 0; y < BLOCK_SIZE; y++) {
+                    final int sourceY = Math.min(blockY * BLOCK_SIZE + y, height - 1);
+                    for (int x = 0; x < BLOCK_SIZE; x++) {
+                        final int sourceX = Math.min(blockX * BLOCK_SIZE + x, width - 1);
+                        block[y * BLOCK_SIZE + x] = argb[sourceY * width + sourceX];
+                    }
+                }
+                final long bits = encodeBlock(block);
+                for (int i = 0; i < BYTES_PER_BLOCK; i++) {
+                    // Big endian.
+                    encoded[offset++] = (byte) (bits >>> (56 - 8 * i));
+                }
+            }
+        }
+        return encoded;
+    }
+
+    /**
+     * @param block 16 pixels, row by row, as 0xAARRGGBB.
+     * @return the block's 64 bits.
+     */
+    static long encodeBlock(int[] block) {
+        long best = 0;
+        long bestError = Long.MAX_VALUE;
+        final int[][] averages = new int[2][3];
+        final int[] result = new int[2];
+        for (int flip = 0; flip <= 1; flip++) {
+            for (int half = 0; half < 2; half++) {
+                int r = 0;
+                int g = 0;
+                int b = 0;
+                for (int i = 0; i < 8; i++) {
+                    final int pixel = block[pixelInHalf(flip, half, i)];
+                    r += (pixel >> 16) & 0xff;
+                    g += (pixel >> 8) & 0xff;
+                    b += pixel & 0xff;
+                }
+                averages[half][0] = (r + 4) / 8;
+                averages[half][1] = (g + 4) / 8;
+                averages[half][2] = (b + 4) / 8;
+            }
+
+            // Two 4 bit base colors.
+            final int[][] individual = new int[2][3];
+            for (int half = 0; half < 2; half++) {
+                for (int c = 0; c < 3; c++) {
+                    individual[half][c] = (averages[half][c] * 15 + 127) / 255;
+                }
+            }
+            long error = encodeHalves(block, flip, individual, false, result);
+            long bits = packHeader(individual, false, flip, result);
+            if (error < bestError) {
+                bestError = error;
+                best = bits | packIndices(block, flip, individual, false, result);
+            }
+
+            // A 5 bit base color and a 3 bit difference to the other, if it's close enough.
+            final int[][] differential = new int[2][3];
+            boolean fits = true;
+            for (int c = 0; c < 3; c++) {
+                differential[0][c] = (averages[0][c] * 31 + 127) / 255;
+                differential[1][c] = (averages[1][c] * 31 + 127) / 255;
+                final int difference = differential[1][c] - differential[0][c];
+                fits &= difference >= -4 && difference <= 3;
+            }
+            if (fits) {
+                error = encodeHalves(block, flip, differential, true, result);
+                bits = packHeader(differential, true, flip, result);
+                if (error < bestError) {
+                    bestError = error;
+                    best = bits | packIndices(block, flip, differential, true, result);
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Pick each half's best table.
+     * @param tables set to the two halves' table numbers.
+     * @return the block's squared error with those tables.
+     */
+    private static long encodeHalves(int[] block, int flip, int[][] baseColors,
+                                     boolean differential, int[] tables) {
+        long error = 0;
+        for (int half = 0; half < 2; half++) {
+            long bestError = Long.MAX_VALUE;
+            for (int table = 0; table < MODIFIER_TABLES.length; table++) {
+                long tableError = 0;
+                for (int i = 0; i < 8; i++) {
+                    final int pixel = block[pixelInHalf(flip, half, i)];
+                    tableError += nearestError(pixel, baseColors[half], differential, table);
+                }
+                if (tableError < bestError) {
+                    bestError = tableError;
+                    tables[half] = table;
+                }
+            }
+            error += bestError;
+        }
+        return error;
+    }
+
+    private static long packHeader(int[][] baseColors, boolean differential, int flip,
+                                   int[] tables) {
+        long header;
+        if (differential) {
+            header = ((long) baseColors[0][0] << 27)
+                    | ((long) ((baseColors[1][0] - baseColors[0][0]) & 7) << 24)
+                    | ((long) baseColors[0][1] << 19)
+                    | ((long) ((baseColors[1][1] - baseColors[0][1]) & 7) << 16)
+                    | ((long) baseColors[0][2] << 11)
+                    | ((long) ((baseColors[1][2] - baseColors[0][2]) & 7) << 8)
+                    | (1 << 1);
+        } else {
+            header = ((long) baseColors[0][0] << 28) | ((long) baseColors[1][0] << 24)
+                    | ((long) baseColors[0][1] << 20) | ((long) baseColors[1][1] << 16)
+                    | ((long) baseColors[0][2] << 12) | ((long) baseColors[1][2] << 8);
+        }
+        header |= (tables[0] << 5) | (tables[1] << 2) | flip;
+        return header << 32;
+    }
+
+    private static long packIndices(int[] block, int flip, int[][] baseColors,
+                                    boolean differential, int[] tables) {
+        long indices = 0;
+        for (int half = 0; half < 2; half++) {
+            for (int i = 0; i < 8; i++) {
+                final int position = pixelInHalf(flip, half, i);
+                final int x = position % BLOCK_SIZE;
+                final int y = position / BLOCK_SIZE;
+                final int index = nearestIndex(block[position], baseColors[half], differential,
+                        tables[half]);
+                // Pixels are numbered down the columns; the index's high bits come first.
+                final int bit = x * BLOCK_SIZE + y;
+                indices |= (long) (index >> 1) << (bit + 16);
+                indices |= (long) (index & 1) << bit;
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * @param i 0 to 7.
+     * @return which of the block's pixels, row by row, is the half's i'th.
+     */
+    private static int pixelInHalf(int flip, int half, int i) {
+        if (flip == 0) {
+            // Left and right 2x4 halves.
+            return (i / 2) * BLOCK_SIZE + half * 2 + i % 2;
+        }
+        // Top and bottom 4x2 halves.
+        return (half * 2 + i / BLOCK_SIZE) * BLOCK_SIZE + i % BLOCK_SIZE;
+    }
+
+    private static long nearestError(int pixel, int[] baseColor, boolean differential,
+                                     int table) {
+        return indexError(pixel, baseColor, differential, table,
+                nearestIndex(pixel, baseColor, differential, table));
+    }
+
+    private static int nearestIndex(int pixel, int[] baseColor, boolean differential,
+                                    int table) {
+        int best = 0;
+        long bestError = Long.MAX_VALUE;
+        for (int index = 0; index < 4; index++) {
+            final long error = indexError(pixel, baseColor, differential, table, index);
+            if (error < bestError) {
+                bestError = error;
+                best = index;
+            }
+        }
+        return best;
+    }
+
+    private static long indexError(int pixel, int[] baseColor, boolean differential, int table,
+                                   int index) {
+        final int modifier = modifier(table, index);
+        long error = 0;
+        for (int c = 0; c < 3; c++) {
+            final int expanded = differential ? expand5(baseColor[c]) : expand4(baseColor[c]);
+            final int decoded = clamp(expanded + modifier);
+            final int difference = decoded - ((pixel >> (16 - 8 * c)) & 0xff);
+            error += difference * difference;
+        }
+        return error;
+    }
+
+    /**
+     * @param index 0 and 1 are +small and +large, 2 and 3 are -small and -large.
+     */
+    static int modifier(int table, int index) {
+        final int magnitude = MODIFIER_TABLES[table][index & 1];
+        return index < 2 ? magnitude : -magnitude;
+    }
+
+    static int expand4(int value) {
+        return (value << 4) | value;
+    }
+
+    static int expand5(int value) {
+        return (value << 3) | (value >> 2);
+    }
+
+    static int clamp(int value) {
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+}
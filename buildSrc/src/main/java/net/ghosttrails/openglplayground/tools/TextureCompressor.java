@@ -0,0 +1,187 @@
+package net.ghosttrails.openglplayground.tools;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Turns texture images into ETC1 compressed KTX files, with every mipmap level down to 1x1
+ * made here rather than with glGenerateMipmap on the device. The app loads them with
+ * glCompressedTexImage2D; see TextureLoader.
+ *
+ * Images with any transparency are skipped, as ETC1 has no alpha; the app loads those as
+ * bitmaps. Run by the app module's compressTextures task, or from the command line:
+ *
+ *     java net.ghosttrails.openglplayground.tools.TextureCompressor input-dir output-dir
+ */
+
+public class TextureCompressor {
+
+    static final byte[] KTX_IDENTIFIER = {(byte) 0xab, 'K', 'T', 'X', ' ', '1', '1',
+            (byte) 0xbb, '\r', '\n', 0x1a, '\n'};
+    static final int KTX_ENDIANNESS = 0x04030201;
+    static final int GL_ETC1_RGB8_OES = 0x8d64;
+    static final int GL_RGB = 0x1907;
+
+    private static final String[] IMAGE_SUFFIXES = {".png", ".jpg", ".jpeg"};
+    private static final String KTX_SUFFIX = ".ktx";
+
+    private TextureCompressor() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: TextureCompressor input-dir output-dir");
+            System.exit(2);
+        }
+        compressDirectory(new File(args[0]), new File(args[1]));
+    }
+
+    /**
+     * Compress every image in the directory to a KTX file of the same name in outputDirectory.
+     * @return how many were compressed.
+     */
+    public static int compressDirectory(File inputDirectory, File outputDirectory)
+            throws IOException {
+        final File[] files = inputDirectory.listFiles();
+        if (files == null) {
+            throw new IOException("Not a directory: " + inputDirectory);
+        }
+        Arrays.sort(files);
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Could not make " + outputDirectory);
+        }
+        int compressed = 0;
+        for (File file : files) {
+            final String name = baseName(file.getName());
+            if (name == null) {
+                continue;
+            }
+            final BufferedImage image = ImageIO.read(file);
+            if (image == null) {
+                throw new IOException("Could not read " + file);
+            }
+            final File output = new File(outputDirectory, name + KTX_SUFFIX);
+            if (compress(image, output)) {
+                compressed++;
+            } else {
+                System.out.println("Not compressing " + file + ": it isn't opaque");
+                output.delete();
+            }
+        }
+        return compressed;
+    }
+
+    /**
+     * @return false, and nothing written, if the image isn't opaque.
+     */
+    public static boolean compress(BufferedImage image, File output) throws IOException {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        int[] argb = image.getRGB(0, 0, width, height, null, 0, width);
+        for (int pixel : argb) {
+            if ((pixel >>> 24) != 0xff) {
+                return false;
+            }
+        }
+
+        final List<byte[]> levels = new ArrayList<byte[]>();
+        int levelWidth = width;
+        int levelHeight = height;
+        while (true) {
+            levels.add(Etc1Encoder.encodeImage(argb, levelWidth, levelHeight));
+            if (levelWidth == 1 && levelHeight == 1) {
+                break;
+            }
+            final int nextWidth = Math.max(1, levelWidth / 2);
+            final int nextHeight = Math.max(1, levelHeight / 2);
+            argb = downsample(argb, levelWidth, levelHeight, nextWidth, nextHeight);
+            levelWidth = nextWidth;
+            levelHeight = nextHeight;
+        }
+
+        final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(output)));
+        try {
+            writeKtx(out, width, height, levels);
+        } finally {
+            out.close();
+        }
+        return true;
+    }
+
+    /**
+     * Average each 2x2 square (or 2x1, where a side is already 1) into one pixel.
+     */
+    static int[] downsample(int[] argb, int width, int height, int newWidth, int newHeight) {
+        final int[] result = new int[newWidth * newHeight];
+        final int spanX = width / newWidth;
+        final int spanY = height / newHeight;
+        for (int y = 0; y < newHeight; y++) {
+            for (int x = 0; x < newWidth; x++) {
+                int r = 0;
+                int g = 0;
+                int b = 0;
+                for (int dy = 0; dy < spanY; dy++) {
+                    for (int dx = 0; dx < spanX; dx++) {
+                        final int pixel = argb[(y * spanY + dy) * width + x * spanX + dx];
+                        r += (pixel >> 16) & 0xff;
+                        g += (pixel >> 8) & 0xff;
+                        b += pixel & 0xff;
+                    }
+                }
+                final int count = spanX * spanY;
+                result[y * newWidth + x] = 0xff000000 | (((r + count / 2) / count) << 16)
+                        | (((g + count / 2) / count) << 8) | ((b + count / 2) / count);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Write a KTX 1.1 file of ETC1 mipmap levels, largest first, in big endian order.
+     */
+    static void writeKtx(DataOutputStream out, int width, int height, List<byte[]> levels)
+            throws IOException {
+        out.write(KTX_IDENTIFIER);
+        out.writeInt(KTX_ENDIANNESS);
+        out.writeInt(0); // glType: compressed
+        out.writeInt(1); // glTypeSize
+        out.writeInt(0); // glFormat: compressed
+        out.writeInt(GL_ETC1_RGB8_OES);
+        out.writeInt(GL_RGB);
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(0); // pixelDepth
+        out.writeInt(0); // numberOfArrayElements
+        out.writeInt(1); // numberOfFaces
+        out.writeInt(levels.size());
+        out.writeInt(0); // bytesOfKeyValueData
+        for (byte[] level : levels) {
+            // ETC1 levels are whole 8 byte blocks, so no padding is needed.
+            out.writeInt(level.length);
+            out.write(level);
+        }
+    }
+
+    /**
+     * @return the file's name without its suffix, or null if it isn't an image.
+     */
+    private static String baseName(String fileName) {
+        final String lowerCase = fileName.toLowerCase();
+        for (String suffix : IMAGE_SUFFIXES) {
+            if (lowerCase.endsWith(suffix)) {
+                return fileName.substring(0, fileName.length() - suffix.length());
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,113 @@
+package net.ghosttrails.openglplayground.tools;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class Etc1EncoderTest {
+
+    /**
+     * Decode one block, as the GPU would.
+     * @return 16 pixels, row by row, as 0xRRGGBB.
+     */
+    private static int[] decodeBlock(byte[] data, int offset) {
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | (data[offset + i] & 0xff);
+        }
+        final int header = (int) (bits >>> 32);
+        final boolean differential = (header & 2) != 0;
+        final int flip = header & 1;
+        final int[][] colors = new int[2][3];
+        for (int c = 0; c < 3; c++) {
+            final int shift = 24 - 8 * c;
+            if (differential) {
+                final int base = (header >>> (shift + 3)) & 0x1f;
+                final int difference = ((header >>> shift) & 7) << 29 >> 29;
+                colors[0][c] = Etc1Encoder.expand5(base);
+                colors[1][c] = Etc1Encoder.expand5(base + difference);
+            } else {
+                colors[0][c] = Etc1Encoder.expand4((header >>> (shift + 4)) & 0xf);
+                colors[1][c] = Etc1Encoder.expand4((header >>> shift) & 0xf);
+            }
+        }
+        final int[] tables = {(header >>> 5) & 7, (header >>> 2) & 7};
+        final int[] pixels = new int[16];
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                final int bit = x * 4 + y;
+                final int index = (int) (((bits >>> (bit + 16)) & 1) << 1 | ((bits >>> bit) & 1));
+                final int half = flip == 0 ? x / 2 : y / 2;
+                final int modifier = Etc1Encoder.modifier(tables[half], index);
+                int pixel = 0;
+                for (int c = 0; c < 3; c++) {
+                    pixel = (pixel << 8) | Etc1Encoder.clamp(colors[half][c] + modifier);
+                }
+                pixels[y * 4 + x] = pixel;
+            }
+        }
+        return pixels;
+    }
+
+    private static int maxChannelError(int[] expected, int[] actual) {
+        int max = 0;
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                max = Math.max(max, Math.abs(((expected[i] >> shift) & 0xff)
+                        - ((actual[i] >> shift) & 0xff)));
+            }
+        }
+        return max;
+    }
+
+    @Test
+    public void encodeImage_padsToWholeBlocks() throws Exception {
+        assertEquals(2 * Etc1Encoder.BYTES_PER_BLOCK,
+                Etc1Encoder.encodeImage(new int[5 * 3], 5, 3).length);
+        assertEquals(Etc1Encoder.BYTES_PER_BLOCK,
+                Etc1Encoder.encodeImage(new int[1], 1, 1).length);
+    }
+
+    @Test
+    public void flatBlock_isNearlyExact() throws Exception {
+        final int[] block = new int[16];
+        Arrays.fill(block, 0xff3c82c8);
+        final byte[] encoded = Etc1Encoder.encodeImage(block, 4, 4);
+        assertTrue(maxChannelError(block, decodeBlock(encoded, 0)) <= 4);
+    }
+
+    @Test
+    public void halvesOfDifferentColors_areKeptApart() throws Exception {
+        final int[] block = new int[16];
+        for (int i = 0; i < 16; i++) {
+            // Top half red, bottom half blue, so only the flipped split fits.
+            block[i] = i < 8 ? 0xffe01010 : 0xff1010e0;
+        }
+        final byte[] encoded = Etc1Encoder.encodeImage(block, 4, 4);
+        assertTrue(maxChannelError(block, decodeBlock(encoded, 0)) <= 16);
+    }
+
+    @Test
+    public void gradient_staysClose() throws Exception {
+        final int[] block = new int[16];
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                final int level = 100 + 8 * x + 4 * y;
+                block[y * 4 + x] = 0xff000000 | (level << 16) | (level << 8) | level;
+            }
+        }
+        final byte[] encoded = Etc1Encoder.encodeImage(block, 4, 4);
+        assertTrue(maxChannelError(block, decodeBlock(encoded, 0)) <= 12);
+    }
+
+    @Test
+    public void downsample_averagesSquares() throws Exception {
+        final int[] image = {0xff000000, 0xff0000ff, 0xff000000, 0xff0000ff};
+        assertArrayEquals(new int[]{0xff000080},
+                TextureCompressor.downsample(image, 2, 2, 1, 1));
+        assertArrayEquals(new int[]{0xff000080, 0xff000080},
+                TextureCompressor.downsample(image, 4, 1, 2, 1));
+    }
+}